@@ -0,0 +1,41 @@
+#!/bin/sh
+# Tworzy archiwum klas (AppCDS) dla NanoPainta i uruchamia z nim program.
+# Wymaga JDK 13 lub nowszego.
+#
+#   ./appcds.sh train   - przebieg uczący: program startuje, rysuje pierwszą klatkę i kończy się,
+#                         a JVM zapisuje wszystkie załadowane klasy do archiwum
+#   ./appcds.sh run     - uruchomienie z archiwum (domyślnie)
+#
+# Zmienne środowiskowe:
+#   NANO_PAINT_CLASSES  - katalog ze skompilowanymi klasami i zasobami (domyślnie out/production/NanoPaint)
+#   JAVAFX_LIB          - katalog lib z JavaFX SDK (wymagany)
+#   NANO_PAINT_ARCHIVE  - plik archiwum (domyślnie nanopaint.jsa)
+
+CLASSES="${NANO_PAINT_CLASSES:-out/production/NanoPaint}"
+ARCHIVE="${NANO_PAINT_ARCHIVE:-nanopaint.jsa}"
+
+if [ -z "$JAVAFX_LIB" ]; then
+    echo "Ustaw JAVAFX_LIB na katalog lib z JavaFX SDK" >&2
+    exit 1
+fi
+
+JAVA_OPTS="--module-path $JAVAFX_LIB --add-modules javafx.controls,javafx.fxml -cp $CLASSES"
+
+case "${1:-run}" in
+train)
+    rm -f "$ARCHIVE"
+    java -XX:ArchiveClassesAtExit="$ARCHIVE" -Dnano.paint.exitAfterStartup=true \
+        -Dnano.paint.startupTiming=true $JAVA_OPTS nano.paint.Main
+    ;;
+run)
+    if [ -f "$ARCHIVE" ]; then
+        exec java -XX:SharedArchiveFile="$ARCHIVE" $JAVA_OPTS nano.paint.Main
+    fi
+    echo "Brak archiwum $ARCHIVE - uruchom najpierw: $0 train" >&2
+    exec java $JAVA_OPTS nano.paint.Main
+    ;;
+*)
+    echo "Użycie: $0 [train|run]" >&2
+    exit 1
+    ;;
+esac
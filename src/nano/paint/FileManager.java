@@ -2,16 +2,36 @@ package nano.paint;
 
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
-import nano.paint.shapes.MyCircle;
-import nano.paint.shapes.MyPolygon;
-import nano.paint.shapes.MyRectangle;
+import nano.paint.model.NumberWriter;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.ShapeLineCache;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+import nano.paint.model.TiledShapeFile;
+import nano.paint.model.UsedStyles;
 import nano.paint.shapes.MyShape;
+import nano.paint.shapes.StylePaints;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
-import java.nio.charset.Charset;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Klasa obsługująca zapis i odczyt figur. Weryfikuje poprawność
@@ -19,47 +39,113 @@ import java.util.List;
  * @author Sebastian Fojcik
  * @version 1.0
  * @see MyShape
+ * @see ShapeCodec
  */
 public class FileManager
 {
+    /**
+     * Rozszerzenie plików zapisywanych z kompresją.
+     */
+    public static final String COMPRESSED_EXTENSION = ".gz";
+    /**
+     * Rozmiar buforów używanych przy odczycie i zapisie.
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /**
+     * Rozszerzenie plików zapisywanych w kafelkach.
+     */
+    public static final String TILED_EXTENSION = ".tshapes";
     /**
      * Zbiór wszystkich elementów dodanych do planszy.
      */
     private ObservableList<Node> nodes;
+    /**
+     * Model przechowujący dane figur z planszy.
+     */
+    private SceneModel model;
     /**
      * Instancja konsoli służąca do wypisywania komunikatów.
      */
     private Console console;
+    /**
+     * Zapamiętane linie tekstu figur, które nie zmieniły się od poprzedniego zapisu.
+     */
+    private ShapeLineCache lineCache;
+    /**
+     * Poziom kompresji plików {@code .gz} (0-9). Domyślnie pobierany z właściwości
+     * systemowej {@code nano.paint.compressionLevel}.
+     */
+    private int compressionLevel = Integer.getInteger( "nano.paint.compressionLevel", 6 );
+    /**
+     * Sposób zapisu liczb w plikach. Domyślnie bez utraty dokładności; zaokrąglanie współrzędnych
+     * i 8-bitowe kolory można włączyć właściwościami systemowymi {@code nano.paint.coordinateDecimals}
+     * oraz {@code nano.paint.eightBitColors}.
+     */
+    private NumberWriter numbers = new NumberWriter( Integer.getInteger( "nano.paint.coordinateDecimals", NumberWriter.SHORTEST ),
+            Boolean.getBoolean( "nano.paint.eightBitColors" ) );
+    /**
+     * Widoczny obszar planszy: minX, minY, maxX, maxY.
+     */
+    private double[] viewport = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY };
+    /**
+     * Trwające wczytywanie pliku z kafelkami lub {@code null}.
+     */
+    private TiledLoader tiledLoader;
 
     /**
      * Konstruktor FileManager
      * @param nodes Lista zawierająca figury implementującye {@link MyShape}.
+     * @param model Model, w którym przechowywane są dane figur.
      * @param console Obiekt {@link Console}, który zostanie użyta do wypisywania komunikatów.
      */
-    public FileManager( ObservableList<Node> nodes, Console console )
+    public FileManager( ObservableList<Node> nodes, SceneModel model, Console console )
     {
         this.nodes = nodes;
+        this.model = model;
         this.console = console;
+        this.lineCache = new ShapeLineCache( model );
+        this.lineCache.setNumberWriter( numbers );
     }
 
     /**
      * Zapisuje wszystkie figury z planszy do pliku {@link File} podanego jako parametr.
+     * Na początku pliku zapisywane są style używane przez figury, a figury odwołują się do nich numerami.
+     * Jeśli nazwa pliku kończy się na {@code .gz}, plik jest kompresowany w trakcie zapisu,
+     * a jeśli na {@code .tshapes} - figury zapisywane są w kafelkach ({@link TiledShapeFile}).
      * @param file Plik, do którego zostaną zapisane figury.
      */
     public void saveShapes( File file )
     {
         if( file == null )
             return;
-        List<MyShape> shapes = getMyShapes();
-        List<String> lines = new ArrayList<>();
-
-        for( MyShape shape : shapes )
-            lines.add( shape.saveToString() );
-
         try
         {
-            Files.write( file.toPath(), lines, Charset.forName( "UTF-8" ) );
-            console.write( "Zapisano " + shapes.size() + " figur" );
+            // Plik z kafelkami mógł nie zostać jeszcze wczytany w całości - brakujące figury też muszą trafić do pliku.
+            finishLoading();
+            // Figury zapisywane są od najniższej do najwyższej, więc po wczytaniu zachowają kolejność.
+            int[] ids = model.getZOrder().idsInOrder();
+            // Zapisywane są tylko style używane przez figury, ponumerowane od nowa.
+            UsedStyles styles = new UsedStyles( model, ids );
+            try( BufferedWriter writer = openWriter( file ) )
+            {
+                if( file.getName().endsWith( TILED_EXTENSION ) )
+                    TiledShapeFile.write( model, styles.getStyles(), id -> lineCache.line( id, styles.indexOf( id ) ),
+                                          numbers, TiledShapeFile.DEFAULT_TILE_SIZE, writer );
+                else
+                {
+                    for( Style style : styles.getStyles() )
+                    {
+                        writer.write( ShapeCodec.formatStyle( style, numbers ) );
+                        writer.newLine();
+                    }
+                    for( int id : ids )
+                    {
+                        writer.write( lineCache.line( id, styles.indexOf( id ) ) );
+                        writer.newLine();
+                    }
+                }
+            }
+            console.write( "Zapisano " + ids.length + " figur (zmienionych: " + lineCache.takeFormattedCount() + ")" );
         }
         catch( Exception e )
         {
@@ -70,6 +156,12 @@ public class FileManager
     /**
      * Wczytuje figury na planszę z pliku {@link File} podanego jako parametr.
      * <b>Uwaga:</b> przed wczytaniem funkcja wyczyści całą planszę z obecnych figur.
+     * Pliki skompresowane (gzip) rozpoznawane są po zawartości i rozpakowywane
+     * w osobnym wątku, równolegle z interpretacją kolejnych linii.
+     * Linie interpretowane są w kilku wątkach naraz ({@link ParallelShapeParser}),
+     * a figury trafiają na planszę dopiero, gdy cały plik został poprawnie odczytany.
+     * Z pliku z kafelkami od razu wczytywany jest tylko widoczny obszar
+     * (zob. {@link FileManager#setViewport(double, double, double, double)}), a reszta w tle.
      * @param file Plik z którego zostaną odczytane figury.
      */
     public void loadShapes( File file )
@@ -78,45 +170,240 @@ public class FileManager
             return;
         try
         {
-            List<String> lines = Files.readAllLines( file.toPath(), Charset.forName( "UTF-8" ) );
+            if( isTiled( file ) )
+            {
+                loadTiled( file );
+                return;
+            }
+            List<ShapeRecord> records;
+            try( PrefetchingLineReader reader = new PrefetchingLineReader( openReader( file ) ) )
+            {
+                records = new ParallelShapeParser().parse( reader );
+            }
+
             newBoard();
-            for( String line : lines )
+            int[] ids = model.addAll( records, 0, 0 );
+            MyShape.createViews( nodes, model, ids );
+            console.write( "Wczytano " + records.size() + " figur" );
+        }
+        catch( Exception e )
+        {
+            console.write( "Błąd przy próbie odczytu!" );
+        }
+    }
+
+    /**
+     * Odczytuje po kolei figury z pliku w dowolnym formacie (zwykłym, gzip lub z kafelkami),
+     * bez dodawania ich na planszę i bez zapamiętywania ich - w pamięci jest naraz tylko jedna linia
+     * (lub jeden kafelek), więc można w ten sposób przejrzeć rysunek dowolnej wielkości.
+     * Figury ze zwykłego pliku podawane są w kolejności rysowania (od najniższej), a z pliku z kafelkami -
+     * kafelek po kafelku, w kolejności rysowania w obrębie kafelka.
+     * Funkcja nie korzysta z JavaFX ani z dodatkowych wątków, więc można ją wywoływać w tle,
+     * np. przy tworzeniu miniatur.
+     * @param file Plik z figurami.
+     * @param action Działanie wykonywane dla każdej figury.
+     * @throws IOException gdy odczyt się nie powiódł.
+     * @throws IllegalArgumentException gdy plik zawiera niepoprawne dane.
+     */
+    public static void readShapes( File file, Consumer<ShapeRecord> action ) throws IOException
+    {
+        if( isTiled( file ) )
+        {
+            try( TiledShapeFile tiled = TiledShapeFile.open( file.toPath() ) )
             {
-                switch( line.charAt( 0 ) )
+                for( TiledShapeFile.Tile tile : tiled.getTiles() )
                 {
-                case 'r':
-                    MyRectangle myRect = new MyRectangle( nodes, line );
-                    console.write( "Wczytano prostokąt (" + (int)myRect.getX() + ", " + (int)myRect.getY() + ") "
-                            + (int)myRect.getWidth() + "x" + (int)myRect.getHeight() );
-                    break;
-                case 'c':
-                    MyCircle myCircle = new MyCircle( nodes, line );
-                    console.write( "Wczytano koło (" + (int) myCircle.getCenterX() + ", "
-                            + (int) myCircle.getCenterY() + ")  r = " + (int) myCircle.getRadius() );
-                    break;
-                case 'p':
-                    MyPolygon myPolygon = new MyPolygon( nodes, line );
-                    console.write( "Wczytano " + myPolygon.getPoints().size() / 2 + "-kąt" );
-                    break;
-                default:
-                        throw new RuntimeException();
+                    List<TiledShapeFile.Entry> entries = tiled.readTile( tile );
+                    entries.sort( Comparator.comparingDouble( TiledShapeFile.Entry::getOrder ) );
+                    for( TiledShapeFile.Entry entry : entries )
+                        action.accept( entry.getRecord() );
                 }
             }
+            return;
         }
-        catch( Exception e )
+        List<Style> styles = new ArrayList<>();
+        try( BufferedReader reader = openReader( file ) )
         {
-            console.write( "Błąd przy próbie odczytu!" );
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( ShapeCodec.isStyle( line ) )
+                    styles.add( ShapeCodec.parseStyle( line ) );
+                else
+                    action.accept( ShapeCodec.parse( line, styles ) );
+            }
         }
     }
 
+    /**
+     * Ustawia obszar planszy widoczny dla użytkownika. Przy odczycie pliku z kafelkami
+     * najpierw wczytywane są kafelki z tego obszaru.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     */
+    public void setViewport( double minX, double minY, double maxX, double maxY )
+    {
+        viewport = new double[]{ minX, minY, maxX, maxY };
+    }
+
+    /**
+     * Wczytuje plik z kafelkami: od razu kafelki z widocznego obszaru, a pozostałe w tle.
+     * @param file Plik z kafelkami.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    private void loadTiled( File file ) throws IOException
+    {
+        TiledShapeFile tiled = TiledShapeFile.open( file.toPath() );
+        newBoard();
+        TiledLoader loader = new TiledLoader( tiled, nodes, model, console );
+        try
+        {
+            loader.loadRegion( viewport[ 0 ], viewport[ 1 ], viewport[ 2 ], viewport[ 3 ] );
+            if( loader.isComplete() )
+            {
+                loader.finish();
+                console.write( "Wczytano " + tiled.getShapeCount() + " figur" );
+                return;
+            }
+        }
+        catch( IOException | RuntimeException e )
+        {
+            // Na planszy nie może zostać niepełny rysunek, który dałoby się zapisać w miejsce oryginału.
+            loader.cancel();
+            newBoard();
+            throw e;
+        }
+        tiledLoader = loader;
+        console.write( "Wczytano widoczne figury, pozostałe z " + tiled.getShapeCount() + " są wczytywane w tle..." );
+        loader.startBackground();
+    }
+
+    /**
+     * Wczytuje wszystkie figury, których odczyt z pliku z kafelkami jeszcze trwa.
+     * Jeśli odczyt się nie powiedzie, wczytywanie pozostaje niezakończone, więc kolejne
+     * próby zapisu również się nie powiodą, dopóki brakujące kafelki nie zostaną wczytane.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    private void finishLoading() throws IOException
+    {
+        if( tiledLoader == null )
+            return;
+        tiledLoader.finish();
+        tiledLoader = null;
+    }
+
+    /**
+     * Sprawdza, czy plik jest plikiem z kafelkami.
+     * @param file Sprawdzany plik.
+     * @return {@code true}, jeśli plik zaczyna się nagłówkiem {@link TiledShapeFile}.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    private static boolean isTiled( File file ) throws IOException
+    {
+        try( BufferedReader reader = openReader( file ) )
+        {
+            return TiledShapeFile.isTiled( reader.readLine() );
+        }
+    }
+
+    /**
+     * Ustawia poziom kompresji zapisywanych plików {@code .gz}.
+     * @param level Poziom kompresji od 0 (bez kompresji, najszybciej) do 9 (najmocniejsza kompresja).
+     */
+    public void setCompressionLevel( int level )
+    {
+        if( level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION )
+            throw new IllegalArgumentException( "Niepoprawny poziom kompresji: " + level );
+        compressionLevel = level;
+    }
+
+    /**
+     * @return Poziom kompresji zapisywanych plików {@code .gz}.
+     */
+    public int getCompressionLevel()
+    {
+        return compressionLevel;
+    }
+
+    /**
+     * Ustawia sposób zapisu liczb w kolejnych zapisach (np. zaokrąglanie współrzędnych).
+     * Zmiana powoduje ponowne sformatowanie wszystkich figur przy następnym zapisie.
+     * @param numbers Sposób zapisu liczb.
+     */
+    public void setNumberWriter( NumberWriter numbers )
+    {
+        this.numbers = numbers;
+        lineCache.setNumberWriter( numbers );
+    }
+
+    /**
+     * @return Sposób zapisu liczb w zapisywanych plikach.
+     */
+    public NumberWriter getNumberWriter()
+    {
+        return numbers;
+    }
+
+    /**
+     * Otwiera plik do zapisu. Pliki z rozszerzeniem {@code .gz} są kompresowane.
+     * @param file Plik do zapisu.
+     * @return Strumień, do którego należy pisać linie tekstu.
+     * @throws IOException gdy nie udało się otworzyć pliku.
+     */
+    private BufferedWriter openWriter( File file ) throws IOException
+    {
+        OutputStream out = Files.newOutputStream( file.toPath() );
+        if( file.getName().endsWith( COMPRESSED_EXTENSION ) )
+        {
+            final int level = compressionLevel;
+            out = new GZIPOutputStream( out, BUFFER_SIZE )
+            {
+                {
+                    def.setLevel( level );
+                }
+            };
+        }
+        return new BufferedWriter( new OutputStreamWriter( out, StandardCharsets.UTF_8 ), BUFFER_SIZE );
+    }
+
+    /**
+     * Otwiera plik do odczytu. Plik skompresowany rozpoznawany jest po nagłówku gzip,
+     * niezależnie od rozszerzenia.
+     * @param file Plik do odczytu.
+     * @return Strumień, z którego należy czytać linie tekstu.
+     * @throws IOException gdy nie udało się otworzyć pliku.
+     */
+    private static BufferedReader openReader( File file ) throws IOException
+    {
+        InputStream in = new BufferedInputStream( Files.newInputStream( file.toPath() ), BUFFER_SIZE );
+        in.mark( 2 );
+        int first = in.read();
+        int second = in.read();
+        in.reset();
+        if( first == ( GZIPInputStream.GZIP_MAGIC & 0xff ) && second == ( GZIPInputStream.GZIP_MAGIC >> 8 ) )
+            in = new GZIPInputStream( in, BUFFER_SIZE );
+        return new BufferedReader( new InputStreamReader( in, StandardCharsets.UTF_8 ), BUFFER_SIZE );
+    }
+
     /**
      * Usuwa wszystkie figury z planszy i czyści konsolę.
      */
     public void newBoard()
     {
-        List<MyShape> shapes = getMyShapes();
-        for( MyShape shape : shapes )
-            shape.remove();
+        if( tiledLoader != null )
+        {
+            tiledLoader.cancel();
+            tiledLoader = null;
+        }
+        HashSet<Node> shapes = new HashSet<>();
+        for( MyShape shape : getMyShapes() )
+            shapes.add( (Node) shape );
+        nodes.removeAll( shapes );
+        model.clear();
+        // Tablica stylów modelu zaczyna od zera, więc kolory JavaFX tworzone z dawnych stylów też nie są już potrzebne.
+        StylePaints.clear();
         console.clear();
     }
 
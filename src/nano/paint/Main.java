@@ -2,6 +2,7 @@
 package nano.paint;
 
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
@@ -10,11 +11,18 @@ import nano.paint.controllers.MainController;
 
 /**
  * Podstawowa klasa programu ładująca zasoby i inicjująca start głównego okna.
+ * Czas uruchamiania mierzony jest przez {@link StartupTimer}. Z właściwością systemową
+ * {@code nano.paint.exitAfterStartup=true} program kończy się zaraz po narysowaniu pierwszej
+ * klatki - tak uruchamiany jest przebieg uczący, który zapisuje archiwum klas
+ * (AppCDS, zob. {@code appcds.sh}) przyspieszające kolejne uruchomienia.
  * @author Sebastian Fojcik
  * @version 1.0
  */
 public class Main extends Application {
 
+    /** Właściwość systemowa, która zamyka program po narysowaniu pierwszej klatki. */
+    public static final String EXIT_AFTER_STARTUP_PROPERTY = "nano.paint.exitAfterStartup";
+
     /**
      * Ładuje zasoby, towrzy kontroler i dodaje scenę do okna.
      * Funkcja jest wywoływana automatycznie. <b>Nie należy jej
@@ -25,9 +33,11 @@ public class Main extends Application {
     @Override
     public void start(Stage primaryStage) throws Exception
     {
+        StartupTimer.mark( "inicjalizacja JavaFX" );
         FXMLLoader loader = new FXMLLoader();
         loader.setLocation( this.getClass().getResource( "MainWindow.fxml" ) );
         Parent root = loader.load();
+        StartupTimer.mark( "FXML" );
 
         Scene scene = new Scene( root );
         MainController mainController = loader.getController();
@@ -37,13 +47,23 @@ public class Main extends Application {
         primaryStage.setTitle("NanoPaint");
         primaryStage.setScene( scene );
         primaryStage.show();
-
+        StartupTimer.mark( "okno" );
 
         primaryStage.setOnCloseRequest( we -> {we.consume(); mainController.onClose();} );
+        StartupTimer.finishOnFirstFrame( mainController.getConsole()::write, () ->
+        {
+            if( Boolean.getBoolean( EXIT_AFTER_STARTUP_PROPERTY ) )
+                Platform.exit();
+        } );
     }
 
+    /**
+     * Uruchamia program.
+     * @param args Argumenty przekazywane do JavaFX.
+     */
     public static void main(String[] args)
     {
+        StartupTimer.start();
         launch( args );
     }
 }
\ No newline at end of file
@@ -0,0 +1,147 @@
+package nano.paint;
+
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Równoległa interpretacja linii pliku z figurami.
+ * Kolejne linie figur zbierane są w paczki, które interpretowane są jednocześnie
+ * w puli {@link ForkJoinPool}. Wyniki paczek odbierane są w kolejności z pliku,
+ * więc figury zachowują kolejność rysowania. Linie stylów interpretowane są na bieżąco
+ * w wątku wywołującym - paczka widzi tylko style zapisane w pliku przed nią,
+ * tak samo jak przy odczycie linia po linii.
+ *
+ * Liczbę wątków można ustawić właściwością systemową {@code nano.paint.parseThreads}
+ * (domyślnie liczba procesorów). Przy jednym wątku linie interpretowane są w wątku wywołującym.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see FileManager
+ * @see PrefetchingLineReader
+ */
+class ParallelShapeParser
+{
+    /** Właściwość systemowa z liczbą wątków interpretujących linie. */
+    static final String THREADS_PROPERTY = "nano.paint.parseThreads";
+    /** Liczba linii w jednej paczce. */
+    private static final int CHUNK_SIZE = 4096;
+    /** Maksymalna liczba paczek na wątek, które czekają na odebranie wyników. */
+    private static final int PENDING_PER_THREAD = 4;
+
+    /** Liczba wątków interpretujących linie. */
+    private final int threads;
+    /** Pula wątków lub {@code null}, jeśli linie interpretowane są w wątku wywołującym. */
+    private ForkJoinPool pool;
+    /** Style odczytane dotąd z pliku. */
+    private final List<Style> styles = new ArrayList<>();
+    /** Niezmienna kopia stylów przekazywana paczkom. */
+    private List<Style> stylesSnapshot = Collections.emptyList();
+    /** Zbierana paczka linii. */
+    private List<String> chunk = new ArrayList<>( CHUNK_SIZE );
+    /** Paczki interpretowane w puli, w kolejności z pliku. */
+    private final ArrayDeque<ForkJoinTask<List<ShapeRecord>>> pending = new ArrayDeque<>();
+    /** Odczytane figury, w kolejności z pliku. */
+    private final List<ShapeRecord> records = new ArrayList<>();
+
+    /**
+     * Tworzy interpreter z liczbą wątków z właściwości systemowej.
+     */
+    ParallelShapeParser()
+    {
+        this( Integer.getInteger( THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() ) );
+    }
+
+    /**
+     * @param threads Liczba wątków interpretujących linie (co najmniej 1).
+     */
+    ParallelShapeParser( int threads )
+    {
+        this.threads = Math.max( 1, threads );
+    }
+
+    /**
+     * Odczytuje wszystkie figury z podanego źródła linii.
+     * @param reader Źródło linii.
+     * @return Figury w kolejności z pliku.
+     * @throws IOException gdy odczyt pliku się nie powiódł.
+     * @throws IllegalArgumentException gdy któraś linia nie opisuje poprawnej figury lub stylu.
+     */
+    List<ShapeRecord> parse( PrefetchingLineReader reader ) throws IOException
+    {
+        if( threads > 1 )
+            pool = new ForkJoinPool( threads );
+        try
+        {
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                if( ShapeCodec.isStyle( line ) )
+                {
+                    // Figury zapisane przed stylem nie mogą się do niego odwoływać.
+                    submitChunk();
+                    styles.add( ShapeCodec.parseStyle( line ) );
+                    continue;
+                }
+                chunk.add( line );
+                if( chunk.size() == CHUNK_SIZE )
+                    submitChunk();
+            }
+            submitChunk();
+            while( !pending.isEmpty() )
+                records.addAll( pending.poll().join() );
+            return records;
+        }
+        finally
+        {
+            if( pool != null )
+                pool.shutdownNow();
+            pool = null;
+        }
+    }
+
+    /**
+     * Przekazuje zebraną paczkę linii do interpretacji. Odbiera przy tym wyniki
+     * gotowych paczek, a gdy na odebranie czeka zbyt wiele paczek - czeka na najstarszą,
+     * aby w pamięci nie gromadziły się linie, których nikt nie zdąży zinterpretować.
+     */
+    private void submitChunk()
+    {
+        if( chunk.isEmpty() )
+            return;
+        if( stylesSnapshot.size() != styles.size() )
+            stylesSnapshot = Collections.unmodifiableList( new ArrayList<>( styles ) );
+        List<String> lines = chunk;
+        List<Style> visibleStyles = stylesSnapshot;
+        chunk = new ArrayList<>( CHUNK_SIZE );
+        if( pool == null )
+        {
+            records.addAll( parseChunk( lines, visibleStyles ) );
+            return;
+        }
+        pending.add( pool.submit( () -> parseChunk( lines, visibleStyles ) ) );
+        while( !pending.isEmpty() && ( pending.peek().isDone() || pending.size() > PENDING_PER_THREAD * threads ) )
+            records.addAll( pending.poll().join() );
+    }
+
+    /**
+     * Interpretuje paczkę linii figur.
+     * @param lines Linie figur.
+     * @param styles Style zapisane w pliku przed paczką.
+     * @return Figury w kolejności linii.
+     */
+    private static List<ShapeRecord> parseChunk( List<String> lines, List<Style> styles )
+    {
+        List<ShapeRecord> parsed = new ArrayList<>( lines.size() );
+        for( String line : lines )
+            parsed.add( ShapeCodec.parse( line, styles ) );
+        return parsed;
+    }
+}
@@ -0,0 +1,139 @@
+package nano.paint;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Czyta linie tekstu w osobnym wątku, zanim zostaną o nie poproszone.
+ * Odczyt z dysku i dekompresja pliku odbywają się w wątku czytającym,
+ * a wątek wywołujący {@link PrefetchingLineReader#readLine()} w tym czasie
+ * przetwarza wcześniej odczytane linie. Linie przekazywane są paczkami
+ * przez kolejkę o ograniczonej długości, więc w pamięci nigdy nie ma całego pliku.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see FileManager
+ */
+class PrefetchingLineReader implements Closeable
+{
+    /** Liczba linii w jednej paczce. */
+    private static final int BATCH_SIZE = 1024;
+    /** Maksymalna liczba paczek czekających w kolejce. */
+    private static final int QUEUE_CAPACITY = 16;
+    /** Pusta paczka oznacza koniec pliku. */
+    private static final List<String> END = Collections.emptyList();
+
+    /** Źródło linii. */
+    private final BufferedReader reader;
+    /** Paczki linii odczytane przez wątek czytający. */
+    private final BlockingQueue<List<String>> queue = new ArrayBlockingQueue<>( QUEUE_CAPACITY );
+    /** Wątek czytający. */
+    private final Thread thread;
+    /** Błąd, który wystąpił w wątku czytającym. */
+    private volatile IOException error;
+
+    /** Obecnie przetwarzana paczka. */
+    private List<String> batch = new ArrayList<>();
+    /** Pozycja następnej linii w obecnej paczce. */
+    private int position = 0;
+    /** Czy osiągnięto koniec pliku. */
+    private boolean isFinished = false;
+
+    /**
+     * Uruchamia wątek czytający linie z podanego źródła.
+     * @param reader Źródło linii.
+     */
+    PrefetchingLineReader( BufferedReader reader )
+    {
+        this.reader = reader;
+        this.thread = new Thread( this::readAll, "shapes-reader" );
+        this.thread.setDaemon( true );
+        this.thread.start();
+    }
+
+    /**
+     * Zwraca następną linię.
+     * @return Linia tekstu lub {@code null}, jeśli osiągnięto koniec pliku.
+     * @throws IOException gdy odczyt pliku się nie powiódł.
+     */
+    String readLine() throws IOException
+    {
+        while( position == batch.size() )
+        {
+            if( isFinished )
+                return null;
+            try
+            {
+                batch = queue.take();
+            }
+            catch( InterruptedException e )
+            {
+                Thread.currentThread().interrupt();
+                throw new IOException( "Przerwano odczyt", e );
+            }
+            position = 0;
+            if( batch == END )
+            {
+                isFinished = true;
+                if( error != null )
+                    throw error;
+            }
+        }
+        return batch.get( position++ );
+    }
+
+    /**
+     * Zatrzymuje wątek czytający i zamyka źródło linii.
+     * @throws IOException gdy zamknięcie źródła się nie powiodło.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        thread.interrupt();
+        reader.close();
+    }
+
+    /**
+     * Główna pętla wątku czytającego.
+     */
+    private void readAll()
+    {
+        try
+        {
+            List<String> lines = new ArrayList<>( BATCH_SIZE );
+            String line;
+            while( ( line = reader.readLine() ) != null )
+            {
+                lines.add( line );
+                if( lines.size() == BATCH_SIZE )
+                {
+                    queue.put( lines );
+                    lines = new ArrayList<>( BATCH_SIZE );
+                }
+            }
+            if( !lines.isEmpty() )
+                queue.put( lines );
+        }
+        catch( IOException e )
+        {
+            error = e;
+        }
+        catch( InterruptedException e )
+        {
+            return;
+        }
+        try
+        {
+            queue.put( END );
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package nano.paint;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Pomiar czasu kolejnych etapów uruchamiania programu, od wejścia do {@link Main#main(String[])}
+ * do narysowania pierwszej klatki okna. Raport wypisywany jest w konsoli programu,
+ * a przy właściwości systemowej {@code nano.paint.startupTiming=true} także na standardowe wyjście.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Main
+ */
+final class StartupTimer
+{
+    /** Właściwość systemowa włączająca wypisywanie raportu na standardowe wyjście. */
+    static final String PRINT_PROPERTY = "nano.paint.startupTiming";
+
+    /** Czas rozpoczęcia pomiaru (wejście do {@code main}). */
+    private static long startTime;
+    /** Czas zakończenia poprzedniego etapu. */
+    private static long lastTime;
+    /** Nazwy i czasy trwania zakończonych etapów (w milisekundach). */
+    private static final List<String> phases = new ArrayList<>();
+
+    /** Klasa zawiera wyłącznie metody statyczne. */
+    private StartupTimer()
+    {
+    }
+
+    /**
+     * Rozpoczyna pomiar.
+     */
+    static void start()
+    {
+        startTime = System.nanoTime();
+        lastTime = startTime;
+    }
+
+    /**
+     * Kończy etap uruchamiania.
+     * @param name Nazwa etapu.
+     */
+    static void mark( String name )
+    {
+        long now = System.nanoTime();
+        phases.add( name + ": " + ( now - lastTime ) / 1_000_000 + " ms" );
+        lastTime = now;
+    }
+
+    /**
+     * Czeka na pierwszą klatkę animacji po pokazaniu okna, kończy pomiar i przekazuje raport.
+     * @param report Odbiorca raportu.
+     * @param whenDone Wywoływane po przekazaniu raportu (np. zamknięcie programu w przebiegu uczącym).
+     */
+    static void finishOnFirstFrame( Consumer<String> report, Runnable whenDone )
+    {
+        new AnimationTimer()
+        {
+            @Override
+            public void handle( long now )
+            {
+                stop();
+                mark( "pierwsza klatka" );
+                String text = "Uruchomiono w " + ( System.nanoTime() - startTime ) / 1_000_000 + " ms ("
+                        + String.join( ", ", phases ) + ")";
+                report.accept( text );
+                if( Boolean.getBoolean( PRINT_PROPERTY ) )
+                    System.out.println( text );
+                whenDone.run();
+            }
+        }.start();
+    }
+}
@@ -0,0 +1,256 @@
+package nano.paint;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.TiledShapeFile;
+import nano.paint.shapes.MyShape;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Wczytywanie pliku z kafelkami ({@link TiledShapeFile}) na raty.
+ * Najpierw wczytywane są kafelki przecinające widoczny obszar, a pozostałe
+ * odczytywane są w tle i dodawane na planszę w wątku JavaFX, paczka po paczce.
+ * Widoczne kafelki wczytywane są przez {@link TiledLoader#loadRegion(double, double, double, double)}
+ * przed uruchomieniem wątku w tle. Plansza ma stały rozmiar i nie da się jej przewinąć,
+ * więc widoczny obszar nie zmienia się w trakcie wczytywania.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see FileManager
+ * @see TiledShapeFile
+ */
+class TiledLoader
+{
+    /** Wczytywany plik. */
+    private final TiledShapeFile file;
+    /** Kafelki z indeksu pliku. */
+    private final List<TiledShapeFile.Tile> tiles;
+    /** Czy kafelek został już odczytany (lub jest odczytywany) - według numeru kafelka. */
+    private final boolean[] claimed;
+    /** Lista elementów planszy. */
+    private final ObservableList<Node> nodes;
+    /** Model, do którego dodawane są figury. */
+    private final SceneModel model;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private final Console console;
+
+    /** Kafelki odczytane w tle, które czekają na dodanie do modelu. */
+    private final ConcurrentLinkedQueue<List<TiledShapeFile.Entry>> ready = new ConcurrentLinkedQueue<>();
+    /** Wątek odczytujący kafelki w tle. */
+    private Thread thread;
+    /** Czy wczytywanie zostało przerwane. */
+    private volatile boolean isCancelled = false;
+    /** Liczba figur dodanych do modelu. */
+    private int loaded = 0;
+
+    /**
+     * @param file Otwarty plik z kafelkami.
+     * @param nodes Lista elementów planszy.
+     * @param model Model, do którego dodawane będą figury.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     */
+    TiledLoader( TiledShapeFile file, ObservableList<Node> nodes, SceneModel model, Console console )
+    {
+        this.file = file;
+        this.tiles = file.getTiles();
+        this.claimed = new boolean[ tiles.size() ];
+        this.nodes = nodes;
+        this.model = model;
+        this.console = console;
+        // Figury dodane przed wczytaniem całego pliku mają leżeć nad figurami z pliku.
+        model.getZOrder().reserve( file.getShapeCount() - 1 );
+        model.reserveIds( file.getMaxId() );
+    }
+
+    /**
+     * Wczytuje od razu wszystkie kafelki, które przecinają podany obszar.
+     * Funkcję należy wywoływać w wątku JavaFX.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    void loadRegion( double minX, double minY, double maxX, double maxY ) throws IOException
+    {
+        for( int i = 0; i < tiles.size(); i++ )
+            if( tiles.get( i ).intersects( minX, minY, maxX, maxY ) && claim( i ) )
+                load( i );
+    }
+
+    /**
+     * Uruchamia odczyt pozostałych kafelków w tle.
+     */
+    void startBackground()
+    {
+        thread = new Thread( this::readRemaining, "tiles-reader" );
+        thread.setDaemon( true );
+        thread.start();
+    }
+
+    /**
+     * Kończy wczytywanie: czeka na wątek w tle i wczytuje wszystkie brakujące kafelki.
+     * Funkcję należy wywoływać w wątku JavaFX, np. przed zapisem pliku.
+     * Jeśli odczyt się nie powiedzie, plik pozostaje otwarty, a nieodczytane kafelki
+     * zostaną wczytane przy kolejnym wywołaniu.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    void finish() throws IOException
+    {
+        isCancelled = true;
+        join();
+        applyReady();
+        for( int i = 0; i < tiles.size(); i++ )
+            if( claim( i ) )
+                load( i );
+        file.close();
+    }
+
+    /**
+     * Przerywa wczytywanie bez dodawania brakujących figur.
+     */
+    void cancel()
+    {
+        isCancelled = true;
+        join();
+        ready.clear();
+        try
+        {
+            file.close();
+        }
+        catch( IOException e )
+        {
+            // Plik i tak nie będzie już czytany.
+        }
+    }
+
+    /**
+     * @return Czy wszystkie figury z pliku są już na planszy.
+     */
+    boolean isComplete()
+    {
+        return loaded == file.getShapeCount();
+    }
+
+    /**
+     * Główna pętla wątku w tle: odczytuje kolejne niewczytane kafelki
+     * i zleca dodanie ich do planszy w wątku JavaFX.
+     */
+    private void readRemaining()
+    {
+        for( int i = 0; i < tiles.size() && !isCancelled; i++ )
+        {
+            if( !claim( i ) )
+                continue;
+            try
+            {
+                ready.add( file.readTile( tiles.get( i ) ) );
+            }
+            catch( IOException | RuntimeException e )
+            {
+                // Kafelek zostanie odczytany ponownie przez finish(), np. przed zapisem pliku.
+                release( i );
+                if( !isCancelled )
+                    Platform.runLater( () -> console.write( "Błąd przy wczytywaniu kafelków!" ) );
+                return;
+            }
+            Platform.runLater( this::applyReady );
+        }
+    }
+
+    /**
+     * Odczytuje kafelek i dodaje jego figury do planszy. Jeśli odczyt się nie powiedzie,
+     * kafelek przestaje być oznaczony jako wczytywany, więc można go odczytać ponownie.
+     * @param index Numer kafelka, oznaczonego wcześniej przez {@link TiledLoader#claim(int)}.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    private void load( int index ) throws IOException
+    {
+        List<TiledShapeFile.Entry> entries;
+        try
+        {
+            entries = file.readTile( tiles.get( index ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            release( index );
+            throw e;
+        }
+        apply( entries );
+    }
+
+    /**
+     * Dodaje do planszy kafelki odczytane w tle.
+     */
+    private void applyReady()
+    {
+        List<TiledShapeFile.Entry> entries;
+        while( ( entries = ready.poll() ) != null )
+            apply( entries );
+        if( isComplete() && thread != null && !isCancelled )
+            console.write( "Wczytano " + loaded + " figur" );
+    }
+
+    /**
+     * Dodaje figury z kafelka do modelu i na planszę, w ich zapisanej kolejności rysowania.
+     * Figury dodawane są do modelu i na planszę naraz; kolejność ustawiana jest przed utworzeniem
+     * widoków, więc widoki od razu rysowane są na właściwym miejscu.
+     * @param entries Figury z kafelka.
+     */
+    private void apply( List<TiledShapeFile.Entry> entries )
+    {
+        List<ShapeRecord> records = new ArrayList<>( entries.size() );
+        for( TiledShapeFile.Entry entry : entries )
+            records.add( entry.getRecord() );
+        int[] ids = model.addAll( records, 0, 0 );
+        for( int i = 0; i < ids.length; i++ )
+            model.getZOrder().place( ids[ i ], entries.get( i ).getOrder() );
+        MyShape.createViews( nodes, model, ids );
+        loaded += entries.size();
+    }
+
+    /**
+     * Oznacza kafelek jako wczytywany.
+     * @param index Numer kafelka.
+     * @return {@code true}, jeśli kafelek nie był wcześniej wczytywany.
+     */
+    private synchronized boolean claim( int index )
+    {
+        if( claimed[ index ] )
+            return false;
+        claimed[ index ] = true;
+        return true;
+    }
+
+    /**
+     * Zwalnia kafelek, którego nie udało się odczytać.
+     * @param index Numer kafelka.
+     */
+    private synchronized void release( int index )
+    {
+        claimed[ index ] = false;
+    }
+
+    /**
+     * Czeka na zakończenie wątku w tle.
+     */
+    private void join()
+    {
+        if( thread == null )
+            return;
+        try
+        {
+            thread.join();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
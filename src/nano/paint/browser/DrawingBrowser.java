@@ -0,0 +1,482 @@
+package nano.paint.browser;
+
+import javafx.application.Platform;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.scene.layout.StackPane;
+import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
+import javafx.stage.Modality;
+import javafx.stage.Stage;
+import javafx.stage.Window;
+import nano.paint.FileManager;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Okno z listą rysunków z wybranego folderu i ich miniaturami.
+ * Lista tworzy komórki tylko dla widocznych plików, więc folder z tysiącami rysunków
+ * przewija się płynnie. Miniatury odczytywane są z {@link ThumbnailCache}, a brakujące
+ * rysowane w wątkach w tle ({@link ThumbnailRenderer}) - tylko dla plików, które nadal
+ * są widoczne, gdy przyjdzie na nie kolej.
+ *
+ * Pamięć podręczną miniatur można ustawić właściwościami systemowymi:
+ * <ul>
+ *     <li>{@code nano.paint.thumbnailCache} - katalog z miniaturami na dysku lub {@code OFF},
+ *     domyślnie {@code .nano-paint/thumbnails} w katalogu domowym</li>
+ *     <li>{@code nano.paint.thumbnailCacheBytes} - największa liczba bajtów miniatur w pamięci, domyślnie 64 MB</li>
+ *     <li>{@code nano.paint.thumbnailDiskBytes} - największa liczba bajtów miniatur na dysku, domyślnie 256 MB</li>
+ * </ul>
+ * Rozmiar i czas modyfikacji plików odczytywane są raz, przy wczytaniu folderu, a obrazy
+ * miniatur tworzone są raz na miniaturę - przewijanie listy nie sięga na dysk
+ * i nie kopiuje pikseli.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ThumbnailCache
+ * @see FileManager#readShapes(File, java.util.function.Consumer)
+ */
+public class DrawingBrowser
+{
+    /** Właściwość systemowa z katalogiem miniatur na dysku. */
+    public static final String CACHE_DIRECTORY_PROPERTY = "nano.paint.thumbnailCache";
+    /** Właściwość systemowa z największą liczbą bajtów miniatur w pamięci. */
+    public static final String CACHE_BYTES_PROPERTY = "nano.paint.thumbnailCacheBytes";
+    /** Właściwość systemowa z największą liczbą bajtów miniatur na dysku. */
+    public static final String CACHE_DISK_BYTES_PROPERTY = "nano.paint.thumbnailDiskBytes";
+    /** Szerokość miniatur w pikselach. */
+    private static final int THUMBNAIL_WIDTH = 160;
+    /** Wysokość miniatur w pikselach. */
+    private static final int THUMBNAIL_HEIGHT = 120;
+    /** Format daty modyfikacji pliku. */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern( "yyyy-MM-dd HH:mm" );
+
+    /** Okno przeglądarki. */
+    private final Stage stage = new Stage();
+    /** Lista rysunków. */
+    private final ListView<Drawing> list = new ListView<>();
+    /** Opis zawartości folderu i postępu tworzenia miniatur. */
+    private final Label status = new Label();
+    /** Rysowanie miniatur. */
+    private final ThumbnailRenderer renderer = new ThumbnailRenderer( THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT );
+    /** Pamięć podręczna miniatur. */
+    private final ThumbnailCache cache;
+    /** Wątki tworzące miniatury. */
+    private final ExecutorService executor;
+    /** Pliki pokazywane teraz w komórkach listy (z liczbą komórek, które je pokazują). */
+    private final ConcurrentHashMap<File, Integer> visible = new ConcurrentHashMap<>();
+    /** Klucze miniatur, które są właśnie tworzone. */
+    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+    /** Klucze plików, których nie udało się odczytać. */
+    private final Set<String> failed = ConcurrentHashMap.newKeySet();
+    /** Wszystkie komórki utworzone przez listę. */
+    private final List<ThumbnailCell> cells = new ArrayList<>();
+    /** Liczba narysowanych miniatur. */
+    private final AtomicLong renderedCount = new AtomicLong();
+    /**
+     * Obrazy utworzone z miniatur (używane tylko w wątku JavaFX). Obraz znika razem z miniaturą,
+     * gdy {@link ThumbnailCache} usunie ją z pamięci.
+     */
+    private final WeakHashMap<Thumbnail, Image> images = new WeakHashMap<>();
+
+    /** Pokazywany folder. */
+    private File directory;
+    /** Wybrany rysunek lub {@code null}. */
+    private File chosen;
+
+    /**
+     * Tworzy okno przeglądarki (jeszcze go nie pokazując).
+     * @param owner Okno, nad którym przeglądarka będzie pokazywana.
+     */
+    public DrawingBrowser( Window owner )
+    {
+        cache = new ThumbnailCache( cacheDirectory(), Long.getLong( CACHE_BYTES_PROPERTY, 64L << 20 ),
+                Long.getLong( CACHE_DISK_BYTES_PROPERTY, 256L << 20 ) );
+        executor = Executors.newFixedThreadPool( Math.max( 1, Runtime.getRuntime().availableProcessors() - 1 ), task ->
+        {
+            Thread thread = new Thread( task, "thumbnails" );
+            thread.setDaemon( true );
+            thread.setPriority( Thread.MIN_PRIORITY );
+            return thread;
+        } );
+
+        list.setFixedCellSize( THUMBNAIL_HEIGHT + 12 );
+        list.setCellFactory( view ->
+        {
+            ThumbnailCell cell = new ThumbnailCell();
+            cells.add( cell );
+            return cell;
+        } );
+        list.setOnMouseClicked( e ->
+        {
+            if( e.getClickCount() == 2 )
+                choose();
+        } );
+
+        Button folder = new Button( "Zmień folder..." );
+        folder.setOnAction( e -> onChangeDirectory() );
+        Button open = new Button( "Otwórz" );
+        open.setDefaultButton( true );
+        open.disableProperty().bind( list.getSelectionModel().selectedItemProperty().isNull() );
+        open.setOnAction( e -> choose() );
+        Button cancel = new Button( "Anuluj" );
+        cancel.setCancelButton( true );
+        cancel.setOnAction( e -> stage.hide() );
+        Region spacer = new Region();
+        HBox.setHgrow( spacer, Priority.ALWAYS );
+        HBox buttons = new HBox( 8, folder, status, spacer, open, cancel );
+        buttons.setAlignment( Pos.CENTER_LEFT );
+        buttons.setPadding( new Insets( 8 ) );
+        BorderPane root = new BorderPane( list );
+        root.setBottom( buttons );
+
+        stage.initOwner( owner );
+        stage.initModality( Modality.WINDOW_MODAL );
+        stage.setScene( new Scene( root, 560, 640 ) );
+    }
+
+    /**
+     * Pokazuje przeglądarkę i czeka, aż użytkownik wybierze rysunek lub zamknie okno.
+     * @return Wybrany plik lub {@code null}, jeśli niczego nie wybrano.
+     */
+    public File showAndWait()
+    {
+        chosen = null;
+        setDirectory( directory );
+        stage.showAndWait();
+        // Puste komórki nie zlecają już miniatur - wątki w tle pominą wszystko, co jeszcze czeka.
+        list.getItems().clear();
+        return chosen;
+    }
+
+    /**
+     * Ustawia folder pokazywany w przeglądarce. Jeśli folder nie istnieje, pokazywany jest katalog domowy.
+     * @param directory Folder z rysunkami.
+     */
+    public void setDirectory( File directory )
+    {
+        if( directory == null || !directory.isDirectory() )
+            directory = new File( System.getProperty( "user.home" ) );
+        this.directory = directory;
+        File[] files = directory.listFiles( ( folder, name ) -> isDrawing( name ) );
+        List<Drawing> drawings = new ArrayList<>( files == null ? 0 : files.length );
+        for( File file : files == null ? new File[ 0 ] : files )
+        {
+            try
+            {
+                // Jedno odczytanie atrybutów pliku wystarcza na klucz miniatury i opis w komórce.
+                BasicFileAttributes attributes = Files.readAttributes( file.toPath(), BasicFileAttributes.class );
+                if( attributes.isRegularFile() )
+                    drawings.add( new Drawing( file, attributes.lastModifiedTime().toMillis(), attributes.size() ) );
+            }
+            catch( IOException e )
+            {
+                // Plik zniknął w trakcie przeglądania folderu.
+            }
+        }
+        drawings.sort( Comparator.comparing( drawing -> drawing.file.getName(), String.CASE_INSENSITIVE_ORDER ) );
+        list.getItems().setAll( drawings );
+        stage.setTitle( "Przeglądaj rysunki - " + directory.getAbsolutePath() );
+        updateStatus();
+    }
+
+    /**
+     * @return Pokazywany folder.
+     */
+    public File getDirectory()
+    {
+        return directory;
+    }
+
+    /**
+     * @return Pamięć podręczna miniatur.
+     */
+    public ThumbnailCache getCache()
+    {
+        return cache;
+    }
+
+    /**
+     * @return Liczba miniatur narysowanych przez przeglądarkę (a nie odczytanych z pamięci podręcznej).
+     */
+    public long getRenderedCount()
+    {
+        return renderedCount.get();
+    }
+
+    /**
+     * Sprawdza, czy nazwa pliku jest nazwą rysunku, który można otworzyć.
+     * @param name Nazwa pliku.
+     * @return {@code true} dla plików {@code .shapes}, {@code .shapes.gz} i {@code .tshapes}.
+     */
+    private static boolean isDrawing( String name )
+    {
+        return name.endsWith( ".shapes" ) || name.endsWith( ".shapes" + FileManager.COMPRESSED_EXTENSION )
+                || name.endsWith( FileManager.TILED_EXTENSION );
+    }
+
+    /**
+     * @return Katalog z miniaturami na dysku lub {@code null}, jeśli zapis na dysku jest wyłączony.
+     */
+    private static Path cacheDirectory()
+    {
+        String value = System.getProperty( CACHE_DIRECTORY_PROPERTY );
+        if( value == null )
+            return Paths.get( System.getProperty( "user.home" ), ".nano-paint", "thumbnails" );
+        return value.equalsIgnoreCase( "OFF" ) ? null : Paths.get( value );
+    }
+
+    /**
+     * Pozwala wybrać inny folder z rysunkami.
+     */
+    private void onChangeDirectory()
+    {
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle( "Wybierz folder z rysunkami" );
+        chooser.setInitialDirectory( directory );
+        File selected = chooser.showDialog( stage );
+        if( selected != null )
+            setDirectory( selected );
+    }
+
+    /**
+     * Zamyka przeglądarkę, zapamiętując zaznaczony rysunek.
+     */
+    private void choose()
+    {
+        Drawing selected = list.getSelectionModel().getSelectedItem();
+        chosen = selected != null ? selected.file : null;
+        if( chosen != null )
+            stage.hide();
+    }
+
+    /**
+     * Zleca utworzenie miniatury w tle (jeśli nie jest już tworzona).
+     * @param file Plik z rysunkiem.
+     * @param key Klucz miniatury.
+     */
+    private void request( File file, String key )
+    {
+        if( pending.add( key ) )
+            executor.execute( () -> produce( file, key ) );
+    }
+
+    /**
+     * Tworzy miniaturę w wątku w tle: odczytuje ją z pamięci podręcznej albo rysuje z pliku.
+     * @param file Plik z rysunkiem.
+     * @param key Klucz miniatury.
+     */
+    private void produce( File file, String key )
+    {
+        try
+        {
+            // Przy szybkim przewijaniu plik mógł już zniknąć z widoku - wtedy szkoda go odczytywać.
+            if( !visible.containsKey( file ) )
+                return;
+            Thumbnail thumbnail = cache.load( key );
+            if( thumbnail == null )
+            {
+                thumbnail = renderer.render( action -> FileManager.readShapes( file, action ) );
+                renderedCount.incrementAndGet();
+                try
+                {
+                    cache.store( key, thumbnail );
+                }
+                catch( IOException e )
+                {
+                    // Miniatura zostaje tylko w pamięci.
+                }
+            }
+            Thumbnail result = thumbnail;
+            Platform.runLater( () -> show( file, result ) );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            failed.add( key );
+            Platform.runLater( () -> show( file, null ) );
+        }
+        finally
+        {
+            pending.remove( key );
+        }
+    }
+
+    /**
+     * Pokazuje gotową miniaturę we wszystkich komórkach, które pokazują dany plik.
+     * @param file Plik z rysunkiem.
+     * @param thumbnail Miniatura lub {@code null}, jeśli pliku nie udało się odczytać.
+     */
+    private void show( File file, Thumbnail thumbnail )
+    {
+        for( ThumbnailCell cell : cells )
+            if( cell.getItem() != null && file.equals( cell.getItem().file ) )
+                cell.showThumbnail( thumbnail );
+        updateStatus();
+    }
+
+    /**
+     * Odświeża opis zawartości folderu.
+     */
+    private void updateStatus()
+    {
+        status.setText( list.getItems().size() + " rysunków, narysowano miniatur: " + renderedCount.get() );
+    }
+
+    /**
+     * Zwraca obraz miniatury, tworząc go tylko przy pierwszym pokazaniu miniatury.
+     * @param thumbnail Miniatura.
+     * @return Obraz do pokazania w komórce.
+     */
+    private Image imageOf( Thumbnail thumbnail )
+    {
+        Image picture = images.get( thumbnail );
+        if( picture == null )
+        {
+            WritableImage writable = new WritableImage( thumbnail.getWidth(), thumbnail.getHeight() );
+            writable.getPixelWriter().setPixels( 0, 0, thumbnail.getWidth(), thumbnail.getHeight(),
+                    PixelFormat.getIntArgbInstance(), thumbnail.getPixels(), 0, thumbnail.getWidth() );
+            picture = writable;
+            images.put( thumbnail, picture );
+        }
+        return picture;
+    }
+
+    /**
+     * Rysunek z folderu, z rozmiarem i czasem modyfikacji odczytanymi przy wczytaniu folderu.
+     */
+    private static class Drawing
+    {
+        /** Plik z rysunkiem. */
+        final File file;
+        /** Klucz miniatury. */
+        final String key;
+        /** Rozmiar i data modyfikacji pliku. */
+        final String details;
+
+        /**
+         * @param file Plik z rysunkiem.
+         * @param lastModified Czas ostatniej modyfikacji pliku (w milisekundach).
+         * @param size Rozmiar pliku w bajtach.
+         */
+        Drawing( File file, long lastModified, long size )
+        {
+            this.file = file;
+            this.key = ThumbnailCache.keyOf( file, lastModified, size );
+            LocalDateTime modified = LocalDateTime.ofInstant( Instant.ofEpochMilli( lastModified ), ZoneId.systemDefault() );
+            this.details = String.format( "%.1f kB, %s", size / 1024.0, DATE_FORMAT.format( modified ) );
+        }
+    }
+
+    /**
+     * Komórka listy z miniaturą, nazwą, rozmiarem i datą modyfikacji pliku.
+     */
+    private class ThumbnailCell extends ListCell<Drawing>
+    {
+        /** Miniatura. */
+        private final ImageView image = new ImageView();
+        /** Nazwa pliku. */
+        private final Label name = new Label();
+        /** Rozmiar i data modyfikacji pliku. */
+        private final Label details = new Label();
+        /** Zawartość komórki. */
+        private final HBox content;
+        /** Plik zgłoszony jako widoczny przez tę komórkę. */
+        private File shown;
+
+        /**
+         * Tworzy pustą komórkę.
+         */
+        private ThumbnailCell()
+        {
+            image.setFitWidth( THUMBNAIL_WIDTH );
+            image.setFitHeight( THUMBNAIL_HEIGHT );
+            image.setPreserveRatio( true );
+            StackPane frame = new StackPane( image );
+            frame.setMinSize( THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT );
+            frame.setMaxSize( THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT );
+            frame.setStyle( "-fx-background-color: #e8e8e8;" );
+            VBox text = new VBox( 4, name, details );
+            text.setAlignment( Pos.CENTER_LEFT );
+            content = new HBox( 10, frame, text );
+            content.setAlignment( Pos.CENTER_LEFT );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        protected void updateItem( Drawing drawing, boolean empty )
+        {
+            super.updateItem( drawing, empty );
+            if( shown != null )
+                visible.computeIfPresent( shown, ( key, count ) -> count > 1 ? count - 1 : null );
+            shown = null;
+            setText( null );
+            if( empty || drawing == null )
+            {
+                setGraphic( null );
+                return;
+            }
+            shown = drawing.file;
+            visible.merge( drawing.file, 1, Integer::sum );
+
+            name.setText( drawing.file.getName() );
+            details.setText( drawing.details );
+            setGraphic( content );
+            Thumbnail thumbnail = cache.getCached( drawing.key );
+            if( thumbnail != null )
+                showThumbnail( thumbnail );
+            else
+            {
+                image.setImage( null );
+                if( failed.contains( drawing.key ) )
+                    showThumbnail( null );
+                else
+                    request( drawing.file, drawing.key );
+            }
+        }
+
+        /**
+         * Pokazuje miniaturę w komórce.
+         * @param thumbnail Miniatura lub {@code null}, jeśli pliku nie udało się odczytać.
+         */
+        private void showThumbnail( Thumbnail thumbnail )
+        {
+            if( thumbnail == null )
+            {
+                image.setImage( null );
+                details.setText( getItem().details + "\nNie udało się odczytać pliku" );
+                return;
+            }
+            image.setImage( imageOf( thumbnail ) );
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package nano.paint.browser;
+
+/**
+ * Niezmienna miniatura rysunku - piksele w formacie ARGB (8 bitów na składową),
+ * wiersz po wierszu. Miniatury nie zależą od JavaFX, więc można je tworzyć
+ * i zapisywać w dowolnym wątku.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ThumbnailRenderer
+ * @see ThumbnailCache
+ */
+public final class Thumbnail
+{
+    /** Szerokość w pikselach. */
+    private final int width;
+    /** Wysokość w pikselach. */
+    private final int height;
+    /** Piksele ARGB. */
+    private final int[] pixels;
+
+    /**
+     * @param width Szerokość w pikselach.
+     * @param height Wysokość w pikselach.
+     * @param pixels Piksele ARGB (tablica przechodzi na własność miniatury).
+     */
+    public Thumbnail( int width, int height, int[] pixels )
+    {
+        if( width <= 0 || height <= 0 || pixels.length != width * height )
+            throw new IllegalArgumentException( "Niepoprawny rozmiar miniatury" );
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    /** @return Szerokość w pikselach. */
+    public int getWidth() { return width; }
+
+    /** @return Wysokość w pikselach. */
+    public int getHeight() { return height; }
+
+    /** @return Piksele ARGB, wiersz po wierszu. Tablicy nie należy modyfikować. */
+    public int[] getPixels() { return pixels; }
+
+    /** @return Przybliżona liczba bajtów zajmowanych przez miniaturę w pamięci. */
+    public long getByteSize() { return 4L * pixels.length; }
+}
@@ -0,0 +1,349 @@
+package nano.paint.browser;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Pamięć podręczna miniatur rysunków - w pamięci i na dysku.
+ * Miniatura przypisana jest do klucza złożonego ze ścieżki pliku, czasu jego ostatniej
+ * modyfikacji i rozmiaru ({@link ThumbnailCache#keyOf(File, long, long)}), więc zmieniony plik
+ * dostaje nową miniaturę, a niezmieniony nigdy nie jest rysowany ponownie.
+ *
+ * W pamięci miniatury trzymane są do podanej łącznej liczby bajtów - po jej przekroczeniu
+ * usuwane są te, których najdawniej używano. Na dysku każda miniatura zapisana jest
+ * w osobnym, skompresowanym pliku nazwanym skrótem klucza. Miniatury zmienionych plików
+ * nigdy nie są już odczytywane, więc pliki na dysku także mają limit łącznego rozmiaru -
+ * po jego przekroczeniu usuwane są pliki najdawniej zapisane lub odczytane.
+ * Wszystkie metody można wywoływać z wielu wątków naraz.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Thumbnail
+ * @see DrawingBrowser
+ */
+public class ThumbnailCache
+{
+    /** Rozszerzenie plików z miniaturami. */
+    private static final String EXTENSION = ".thumb";
+    /** Pierwsze bajty pliku z miniaturą. */
+    private static final int MAGIC = 0x4e505431; // "NPT1"
+
+    /** Katalog z miniaturami lub {@code null}, jeśli miniatury nie są zapisywane na dysku. */
+    private final Path directory;
+    /** Największa łączna liczba bajtów miniatur w pamięci. */
+    private final long maxBytes;
+    /** Największa łączna liczba bajtów plików z miniaturami na dysku. */
+    private final long maxDiskBytes;
+    /** Łączna liczba bajtów plików z miniaturami na dysku (-1, dopóki katalog nie został przejrzany). */
+    private long diskBytes = -1;
+    /** Blokada dla {@link ThumbnailCache#diskBytes}, aby przeglądanie katalogu nie wstrzymywało odczytów z pamięci. */
+    private final Object diskLock = new Object();
+    /** Miniatury w pamięci, od najdawniej używanej. */
+    private final LinkedHashMap<String, Thumbnail> memory = new LinkedHashMap<>( 16, 0.75f, true );
+    /** Łączna liczba bajtów miniatur w pamięci. */
+    private long bytes = 0;
+
+    /** Liczba miniatur znalezionych w pamięci. */
+    private long memoryHits = 0;
+    /** Liczba miniatur odczytanych z dysku. */
+    private long diskHits = 0;
+    /** Liczba miniatur, których nie było ani w pamięci, ani na dysku. */
+    private long misses = 0;
+
+    /**
+     * @param directory Katalog z miniaturami lub {@code null}, aby nie zapisywać ich na dysku.
+     * @param maxBytes Największa łączna liczba bajtów miniatur w pamięci.
+     * @param maxDiskBytes Największa łączna liczba bajtów plików z miniaturami na dysku.
+     */
+    public ThumbnailCache( Path directory, long maxBytes, long maxDiskBytes )
+    {
+        this.directory = directory;
+        this.maxBytes = Math.max( 0, maxBytes );
+        this.maxDiskBytes = Math.max( 0, maxDiskBytes );
+    }
+
+    /**
+     * Tworzy klucz miniatury pliku. Czas modyfikacji i rozmiar podawane są osobno,
+     * aby odczytać je z dysku tylko raz, razem z listą plików.
+     * @param file Plik z rysunkiem.
+     * @param lastModified Czas ostatniej modyfikacji pliku (w milisekundach).
+     * @param size Rozmiar pliku w bajtach.
+     * @return Klucz zależny od ścieżki, czasu modyfikacji i rozmiaru pliku.
+     */
+    public static String keyOf( File file, long lastModified, long size )
+    {
+        return file.getAbsolutePath() + '|' + lastModified + '|' + size;
+    }
+
+    /**
+     * Zwraca miniaturę z pamięci, nie sięgając na dysk.
+     * @param key Klucz miniatury.
+     * @return Miniatura lub {@code null}, jeśli nie ma jej w pamięci.
+     */
+    public synchronized Thumbnail getCached( String key )
+    {
+        Thumbnail thumbnail = memory.get( key );
+        if( thumbnail != null )
+            memoryHits++;
+        return thumbnail;
+    }
+
+    /**
+     * Zwraca miniaturę z pamięci albo z dysku (wtedy zapamiętuje ją także w pamięci).
+     * @param key Klucz miniatury.
+     * @return Miniatura lub {@code null}, jeśli trzeba ją narysować.
+     */
+    public Thumbnail load( String key )
+    {
+        Thumbnail thumbnail = getCached( key );
+        if( thumbnail != null )
+            return thumbnail;
+        thumbnail = readFromDisk( key );
+        synchronized( this )
+        {
+            if( thumbnail == null )
+            {
+                misses++;
+                return null;
+            }
+            diskHits++;
+            putInMemory( key, thumbnail );
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Zapamiętuje miniaturę w pamięci i na dysku.
+     * @param key Klucz miniatury.
+     * @param thumbnail Miniatura.
+     * @throws IOException gdy zapis na dysku się nie powiódł (miniatura zostaje wtedy tylko w pamięci).
+     */
+    public void store( String key, Thumbnail thumbnail ) throws IOException
+    {
+        synchronized( this )
+        {
+            putInMemory( key, thumbnail );
+        }
+        if( directory == null )
+            return;
+        Files.createDirectories( directory );
+        // Miniatura trafia pod docelową nazwę w całości - inny wątek nigdy nie odczyta niedokończonego pliku.
+        Path temporary = Files.createTempFile( directory, "thumb", ".tmp" );
+        try
+        {
+            try( DataOutputStream out = new DataOutputStream( new DeflaterOutputStream( Files.newOutputStream( temporary ) ) ) )
+            {
+                out.writeInt( MAGIC );
+                out.writeInt( thumbnail.getWidth() );
+                out.writeInt( thumbnail.getHeight() );
+                ByteBuffer buffer = ByteBuffer.allocate( 4 * thumbnail.getPixels().length );
+                buffer.asIntBuffer().put( thumbnail.getPixels() );
+                out.write( buffer.array() );
+            }
+            Path path = pathOf( key );
+            Files.move( temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE );
+            addDiskBytes( Files.size( path ) );
+        }
+        finally
+        {
+            Files.deleteIfExists( temporary );
+        }
+    }
+
+    /**
+     * Usuwa wszystkie miniatury z pamięci (pliki na dysku zostają).
+     */
+    public synchronized void clearMemory()
+    {
+        memory.clear();
+        bytes = 0;
+    }
+
+    /** @return Liczba miniatur w pamięci. */
+    public synchronized int getMemoryCount() { return memory.size(); }
+
+    /** @return Łączna liczba bajtów miniatur w pamięci. */
+    public synchronized long getMemoryBytes() { return bytes; }
+
+    /** @return Liczba miniatur znalezionych w pamięci. */
+    public synchronized long getMemoryHits() { return memoryHits; }
+
+    /** @return Liczba miniatur odczytanych z dysku. */
+    public synchronized long getDiskHits() { return diskHits; }
+
+    /** @return Liczba miniatur, których nie było ani w pamięci, ani na dysku. */
+    public synchronized long getMisses() { return misses; }
+
+    /**
+     * Zapamiętuje miniaturę w pamięci i usuwa najdawniej używane, jeśli zajmują za dużo miejsca.
+     * Należy wywoływać w bloku synchronizowanym.
+     * @param key Klucz miniatury.
+     * @param thumbnail Miniatura.
+     */
+    private void putInMemory( String key, Thumbnail thumbnail )
+    {
+        Thumbnail previous = memory.put( key, thumbnail );
+        if( previous != null )
+            bytes -= previous.getByteSize();
+        bytes += thumbnail.getByteSize();
+        Iterator<Map.Entry<String, Thumbnail>> eldest = memory.entrySet().iterator();
+        while( bytes > maxBytes && eldest.hasNext() )
+        {
+            bytes -= eldest.next().getValue().getByteSize();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Dolicza zapisany plik do rozmiaru miniatur na dysku. Jeśli limit został przekroczony,
+     * usuwa pliki najdawniej zapisane lub odczytane, aż zajmą najwyżej trzy czwarte limitu
+     * (dzięki temu katalog nie jest przeglądany przy każdym kolejnym zapisie).
+     * @param size Rozmiar zapisanego pliku.
+     * @throws IOException gdy nie udało się przejrzeć katalogu.
+     */
+    private void addDiskBytes( long size ) throws IOException
+    {
+        synchronized( diskLock )
+        {
+            if( diskBytes < 0 )
+                diskBytes = prune( Long.MAX_VALUE );
+            else
+                diskBytes += size;
+            if( diskBytes > maxDiskBytes )
+                diskBytes = prune( maxDiskBytes / 4 * 3 );
+        }
+    }
+
+    /**
+     * Usuwa najdawniej używane pliki z miniaturami, aż zajmą najwyżej podaną liczbę bajtów.
+     * Należy wywoływać w bloku synchronizowanym na {@link ThumbnailCache#diskLock}.
+     * @param limit Największa łączna liczba bajtów plików, które mają zostać.
+     * @return Łączna liczba bajtów plików, które zostały.
+     * @throws IOException gdy nie udało się przejrzeć katalogu.
+     */
+    private long prune( long limit ) throws IOException
+    {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        long total = 0;
+        try( DirectoryStream<Path> stream = Files.newDirectoryStream( directory, "*" + EXTENSION ) )
+        {
+            for( Path file : stream )
+            {
+                BasicFileAttributes fileAttributes = Files.readAttributes( file, BasicFileAttributes.class );
+                files.add( file );
+                attributes.put( file, fileAttributes );
+                total += fileAttributes.size();
+            }
+        }
+        if( total <= limit )
+            return total;
+        files.sort( Comparator.comparing( file -> attributes.get( file ).lastModifiedTime() ) );
+        for( Path file : files )
+        {
+            if( total <= limit )
+                break;
+            // Plik mógł zostać już usunięty lub jest właśnie odczytywany - wtedy zostaje do następnego razu.
+            try
+            {
+                Files.delete( file );
+                total -= attributes.get( file ).size();
+            }
+            catch( IOException e )
+            {
+                // Pomijamy ten plik.
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Odczytuje miniaturę z dysku. Odczytany plik oznaczany jest jako świeżo używany,
+     * więc przy przekroczeniu limitu na dysku zostanie usunięty jako jeden z ostatnich.
+     * @param key Klucz miniatury.
+     * @return Miniatura lub {@code null}, jeśli nie ma jej na dysku albo plik jest uszkodzony.
+     */
+    private Thumbnail readFromDisk( String key )
+    {
+        if( directory == null )
+            return null;
+        try( InputStream file = Files.newInputStream( pathOf( key ) );
+             DataInputStream in = new DataInputStream( new InflaterInputStream( file ) ) )
+        {
+            if( in.readInt() != MAGIC )
+                return null;
+            int width = in.readInt();
+            int height = in.readInt();
+            if( width <= 0 || height <= 0 || width > 4096 || height > 4096 )
+                return null;
+            byte[] data = new byte[ 4 * width * height ];
+            in.readFully( data );
+            int[] pixels = new int[ width * height ];
+            ByteBuffer.wrap( data ).asIntBuffer().get( pixels );
+            touch( pathOf( key ) );
+            return new Thumbnail( width, height, pixels );
+        }
+        catch( IOException e )
+        {
+            // Brakująca lub uszkodzona miniatura zostanie narysowana i zapisana od nowa.
+            return null;
+        }
+    }
+
+    /**
+     * Ustawia czas modyfikacji pliku na bieżący.
+     * @param path Plik z miniaturą.
+     */
+    private static void touch( Path path )
+    {
+        try
+        {
+            Files.setLastModifiedTime( path, FileTime.fromMillis( System.currentTimeMillis() ) );
+        }
+        catch( IOException e )
+        {
+            // Plik zostanie najwyżej usunięty wcześniej, niż powinien.
+        }
+    }
+
+    /**
+     * @param key Klucz miniatury.
+     * @return Ścieżka do pliku z miniaturą.
+     */
+    private Path pathOf( String key )
+    {
+        try
+        {
+            byte[] digest = MessageDigest.getInstance( "SHA-1" ).digest( key.getBytes( StandardCharsets.UTF_8 ) );
+            StringBuilder name = new StringBuilder( 2 * digest.length + EXTENSION.length() );
+            for( byte b : digest )
+                name.append( Character.forDigit( b >> 4 & 15, 16 ) ).append( Character.forDigit( b & 15, 16 ) );
+            return directory.resolve( name.append( EXTENSION ).toString() );
+        }
+        catch( NoSuchAlgorithmException e )
+        {
+            throw new IllegalStateException( "Brak algorytmu SHA-1", e );
+        }
+    }
+}
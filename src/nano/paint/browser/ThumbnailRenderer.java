@@ -0,0 +1,485 @@
+package nano.paint.browser;
+
+import nano.paint.model.CompoundLayout;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Programowe rysowanie miniatur rysunków, bez JavaFX - można go używać w wielu wątkach naraz.
+ * Rysunek jest skalowany tak, aby cały zmieścił się w miniaturze. Figury rysowane są
+ * w kolejności podanej przez źródło (od najniższej), z wypełnieniem i jednopikselowym obramowaniem,
+ * tak jak na planszy: koła jako wielokąty, a kolejne części figur złożonych o tym samym kolorze
+ * jako jeden obszar. Piksel jest wypełniany, jeśli jego środek leży wewnątrz figury.
+ * Figury nie są zapamiętywane: źródło ({@link Source}) odczytywane jest dwa razy - najpierw
+ * dla rozmiaru rysunku, potem do rysowania - więc pamięć nie zależy od wielkości rysunku.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Thumbnail
+ */
+public class ThumbnailRenderer
+{
+    /** Kolor tła miniatury (taki jak tło planszy). */
+    public static final int BACKGROUND = 0xffe8e8e8;
+    /** Odstęp rysunku od krawędzi miniatury w pikselach. */
+    private static final int MARGIN = 4;
+    /** Najmniejsza liczba boków wielokąta przybliżającego koło. */
+    private static final int MIN_CIRCLE_SEGMENTS = 8;
+    /** Największa liczba boków wielokąta przybliżającego koło. */
+    private static final int MAX_CIRCLE_SEGMENTS = 128;
+
+    /**
+     * Źródło figur rysunku, które można przejrzeć kilka razy, np. plik.
+     */
+    public interface Source
+    {
+        /**
+         * Podaje po kolei wszystkie figury rysunku, w kolejności rysowania (od najniższej).
+         * @param action Działanie wykonywane dla każdej figury.
+         * @throws IOException gdy odczyt się nie powiódł.
+         */
+        void forEach( Consumer<ShapeRecord> action ) throws IOException;
+    }
+
+    /** Szerokość miniatur w pikselach. */
+    private final int width;
+    /** Wysokość miniatur w pikselach. */
+    private final int height;
+
+    /**
+     * @param width Szerokość miniatur w pikselach.
+     * @param height Wysokość miniatur w pikselach.
+     */
+    public ThumbnailRenderer( int width, int height )
+    {
+        if( width <= 2 * MARGIN || height <= 2 * MARGIN )
+            throw new IllegalArgumentException( "Za mały rozmiar miniatury" );
+        this.width = width;
+        this.height = height;
+    }
+
+    /** @return Szerokość miniatur w pikselach. */
+    public int getWidth() { return width; }
+
+    /** @return Wysokość miniatur w pikselach. */
+    public int getHeight() { return height; }
+
+    /**
+     * Rysuje miniaturę rysunku.
+     * @param records Figury rysunku; źródło przeglądane jest dwa razy.
+     * @return Miniatura rysunku.
+     * @throws IOException gdy odczyt figur się nie powiódł.
+     */
+    public Thumbnail render( Source records ) throws IOException
+    {
+        int[] pixels = new int[ width * height ];
+        Arrays.fill( pixels, BACKGROUND );
+        double[] bounds = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY };
+        records.forEach( record -> includeBounds( record.getKind(), record.getCoords(), bounds ) );
+        if( bounds[ 0 ] > bounds[ 2 ] )
+            return new Thumbnail( width, height, pixels );
+
+        double drawingWidth = Math.max( bounds[ 2 ] - bounds[ 0 ], 1 );
+        double drawingHeight = Math.max( bounds[ 3 ] - bounds[ 1 ], 1 );
+        double scale = Math.min( ( width - 2 * MARGIN ) / drawingWidth, ( height - 2 * MARGIN ) / drawingHeight );
+        Raster raster = new Raster( pixels, scale,
+                ( width - drawingWidth * scale ) / 2 - bounds[ 0 ] * scale,
+                ( height - drawingHeight * scale ) / 2 - bounds[ 1 ] * scale );
+        records.forEach( raster::draw );
+        return new Thumbnail( width, height, pixels );
+    }
+
+    /**
+     * Powiększa prostokąt o prostokąt opisany na figurze.
+     * @param kind Rodzaj figury.
+     * @param coords Współrzędne figury.
+     * @param bounds Prostokąt: minX, minY, maxX, maxY.
+     */
+    private static void includeBounds( byte kind, double[] coords, double[] bounds )
+    {
+        if( kind != SceneModel.COMPOUND )
+        {
+            includePartBounds( kind, coords, 0, coords.length, bounds );
+            return;
+        }
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+            includePartBounds( CompoundLayout.kind( coords, part ), coords, CompoundLayout.valuesStart( coords, part ),
+                    CompoundLayout.valueCount( coords, part ), bounds );
+    }
+
+    /**
+     * Powiększa prostokąt o prostokąt opisany na prostej figurze.
+     * @param kind Rodzaj figury (prostokąt, koło lub wielokąt).
+     * @param coords Tablica ze współrzędnymi.
+     * @param start Indeks pierwszej współrzędnej figury.
+     * @param count Liczba współrzędnych figury.
+     * @param bounds Prostokąt: minX, minY, maxX, maxY.
+     */
+    private static void includePartBounds( byte kind, double[] coords, int start, int count, double[] bounds )
+    {
+        switch( kind )
+        {
+        case SceneModel.RECTANGLE:
+            include( bounds, coords[ start ], coords[ start + 1 ] );
+            include( bounds, coords[ start ] + coords[ start + 2 ], coords[ start + 1 ] + coords[ start + 3 ] );
+            break;
+        case SceneModel.CIRCLE:
+            include( bounds, coords[ start ] - coords[ start + 2 ], coords[ start + 1 ] - coords[ start + 2 ] );
+            include( bounds, coords[ start ] + coords[ start + 2 ], coords[ start + 1 ] + coords[ start + 2 ] );
+            break;
+        default:
+            for( int i = start; i + 1 < start + count; i += 2 )
+                include( bounds, coords[ i ], coords[ i + 1 ] );
+            break;
+        }
+    }
+
+    /**
+     * Powiększa prostokąt o punkt.
+     * @param bounds Prostokąt: minX, minY, maxX, maxY.
+     * @param x Współrzędna x punktu.
+     * @param y Współrzędna y punktu.
+     */
+    private static void include( double[] bounds, double x, double y )
+    {
+        bounds[ 0 ] = Math.min( bounds[ 0 ], x );
+        bounds[ 1 ] = Math.min( bounds[ 1 ], y );
+        bounds[ 2 ] = Math.max( bounds[ 2 ], x );
+        bounds[ 3 ] = Math.max( bounds[ 3 ], y );
+    }
+
+    /**
+     * Zamienia kolor na piksel ARGB.
+     * @param r Składowa czerwona (0.0-1.0).
+     * @param g Składowa zielona (0.0-1.0).
+     * @param b Składowa niebieska (0.0-1.0).
+     * @param a Nieprzezroczystość (0.0-1.0).
+     * @return Piksel ARGB.
+     */
+    private static int argb( double r, double g, double b, double a )
+    {
+        return channel( a ) << 24 | channel( r ) << 16 | channel( g ) << 8 | channel( b );
+    }
+
+    /**
+     * @param value Składowa koloru (0.0-1.0).
+     * @return Składowa koloru (0-255).
+     */
+    private static int channel( double value )
+    {
+        return (int) Math.round( Math.min( 1, Math.max( 0, value ) ) * 255 );
+    }
+
+    /**
+     * Rysowanie figur w jednej miniaturze.
+     */
+    private class Raster
+    {
+        /** Piksele miniatury. */
+        private final int[] pixels;
+        /** Skala rysunku. */
+        private final double scale;
+        /** Przesunięcie rysunku w poziomie (w pikselach). */
+        private final double offsetX;
+        /** Przesunięcie rysunku w pionie (w pikselach). */
+        private final double offsetY;
+        /** Położenia przecięć konturów z wierszem pikseli. */
+        private double[] crossings = new double[ 16 ];
+        /** Kierunki krawędzi w kolejnych przecięciach (+1 w dół, -1 w górę). */
+        private int[] directions = new int[ 16 ];
+
+        /**
+         * @param pixels Piksele miniatury.
+         * @param scale Skala rysunku.
+         * @param offsetX Przesunięcie rysunku w poziomie.
+         * @param offsetY Przesunięcie rysunku w pionie.
+         */
+        private Raster( int[] pixels, double scale, double offsetX, double offsetY )
+        {
+            this.pixels = pixels;
+            this.scale = scale;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+        }
+
+        /**
+         * Rysuje figurę.
+         * @param record Figura.
+         */
+        private void draw( ShapeRecord record )
+        {
+            Style style = record.getStyle();
+            int stroke = argb( style.getStrokeRed(), style.getStrokeGreen(), style.getStrokeBlue(), style.getStrokeOpacity() );
+            double[] coords = record.getCoords();
+            if( record.getKind() != SceneModel.COMPOUND )
+            {
+                List<double[]> contours = new ArrayList<>( 1 );
+                contours.add( contour( record.getKind(), coords, 0, coords.length ) );
+                draw( contours, style, stroke );
+                return;
+            }
+            // Łączone są tylko kolejne części tego samego koloru, aby części leżały na sobie tak jak na planszy.
+            Style runStyle = null;
+            List<double[]> contours = new ArrayList<>();
+            for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+            {
+                Style partStyle = CompoundLayout.style( coords, part, style );
+                if( !partStyle.equals( runStyle ) )
+                {
+                    if( runStyle != null )
+                        draw( contours, runStyle, stroke );
+                    runStyle = partStyle;
+                    contours = new ArrayList<>();
+                }
+                contours.add( contour( CompoundLayout.kind( coords, part ), coords,
+                        CompoundLayout.valuesStart( coords, part ), CompoundLayout.valueCount( coords, part ) ) );
+            }
+            if( runStyle != null )
+                draw( contours, runStyle, stroke );
+        }
+
+        /**
+         * Wypełnia kontury jednym kolorem jako jeden obszar i rysuje ich obramowanie.
+         * @param contours Kontury w pikselach miniatury.
+         * @param fill Styl z kolorem wypełnienia.
+         * @param stroke Kolor obramowania ARGB.
+         */
+        private void draw( List<double[]> contours, Style fill, int stroke )
+        {
+            fill( contours, argb( fill.getFillRed(), fill.getFillGreen(), fill.getFillBlue(), fill.getFillOpacity() ) );
+            for( double[] contour : contours )
+                stroke( contour, stroke );
+        }
+
+        /**
+         * Zamienia prostą figurę na wielokąt w pikselach miniatury, skierowany zgodnie z ruchem wskazówek zegara.
+         * @param kind Rodzaj figury (prostokąt, koło lub wielokąt).
+         * @param coords Tablica ze współrzędnymi.
+         * @param start Indeks pierwszej współrzędnej figury.
+         * @param count Liczba współrzędnych figury.
+         * @return Wierzchołki wielokąta (x, y kolejno).
+         */
+        private double[] contour( byte kind, double[] coords, int start, int count )
+        {
+            double[] points;
+            switch( kind )
+            {
+            case SceneModel.RECTANGLE:
+            {
+                double x = coords[ start ];
+                double y = coords[ start + 1 ];
+                double w = coords[ start + 2 ];
+                double h = coords[ start + 3 ];
+                points = new double[]{ x, y, x + w, y, x + w, y + h, x, y + h };
+                break;
+            }
+            case SceneModel.CIRCLE:
+            {
+                double r = coords[ start + 2 ];
+                int segments = (int) Math.min( MAX_CIRCLE_SEGMENTS, Math.max( MIN_CIRCLE_SEGMENTS, Math.ceil( Math.PI * r * scale ) ) );
+                points = new double[ 2 * segments ];
+                for( int i = 0; i < segments; i++ )
+                {
+                    double angle = 2 * Math.PI * i / segments;
+                    points[ 2 * i ] = coords[ start ] + r * Math.cos( angle );
+                    points[ 2 * i + 1 ] = coords[ start + 1 ] + r * Math.sin( angle );
+                }
+                break;
+            }
+            default:
+                points = Arrays.copyOfRange( coords, start, start + count );
+                break;
+            }
+
+            double area = 0;
+            int n = points.length / 2;
+            for( int i = 0; i < n; i++ )
+            {
+                points[ 2 * i ] = points[ 2 * i ] * scale + offsetX;
+                points[ 2 * i + 1 ] = points[ 2 * i + 1 ] * scale + offsetY;
+            }
+            for( int i = 0; i < n; i++ )
+            {
+                int j = i + 1 == n ? 0 : i + 1;
+                area += points[ 2 * i ] * points[ 2 * j + 1 ] - points[ 2 * j ] * points[ 2 * i + 1 ];
+            }
+            // Wspólny kierunek konturów sprawia, że nakładające się części tego samego koloru tworzą jeden obszar.
+            if( area < 0 )
+            {
+                for( int i = 0, j = n - 1; i < j; i++, j-- )
+                {
+                    double x = points[ 2 * i ];
+                    double y = points[ 2 * i + 1 ];
+                    points[ 2 * i ] = points[ 2 * j ];
+                    points[ 2 * i + 1 ] = points[ 2 * j + 1 ];
+                    points[ 2 * j ] = x;
+                    points[ 2 * j + 1 ] = y;
+                }
+            }
+            return points;
+        }
+
+        /**
+         * Wypełnia obszar ograniczony konturami (reguła niezerowego nawinięcia), wiersz po wierszu.
+         * @param contours Kontury w pikselach miniatury.
+         * @param color Kolor wypełnienia ARGB.
+         */
+        private void fill( List<double[]> contours, int color )
+        {
+            if( color >>> 24 == 0 )
+                return;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            for( double[] contour : contours )
+            {
+                for( int i = 1; i < contour.length; i += 2 )
+                {
+                    minY = Math.min( minY, contour[ i ] );
+                    maxY = Math.max( maxY, contour[ i ] );
+                }
+            }
+            int firstRow = Math.max( 0, (int) Math.ceil( minY - 0.5 ) );
+            int lastRow = Math.min( height - 1, (int) Math.ceil( maxY - 0.5 ) - 1 );
+            for( int row = firstRow; row <= lastRow; row++ )
+            {
+                double y = row + 0.5;
+                int count = 0;
+                for( double[] contour : contours )
+                {
+                    int n = contour.length / 2;
+                    for( int i = 0; i < n; i++ )
+                    {
+                        int j = i + 1 == n ? 0 : i + 1;
+                        double y0 = contour[ 2 * i + 1 ];
+                        double y1 = contour[ 2 * j + 1 ];
+                        int direction;
+                        if( y0 <= y && y1 > y )
+                            direction = 1;
+                        else if( y1 <= y && y0 > y )
+                            direction = -1;
+                        else
+                            continue;
+                        double x0 = contour[ 2 * i ];
+                        double x = x0 + ( y - y0 ) * ( contour[ 2 * j ] - x0 ) / ( y1 - y0 );
+                        count = addCrossing( count, x, direction );
+                    }
+                }
+
+                int winding = 0;
+                double spanStart = 0;
+                for( int k = 0; k < count; k++ )
+                {
+                    int before = winding;
+                    winding += directions[ k ];
+                    if( before == 0 && winding != 0 )
+                        spanStart = crossings[ k ];
+                    else if( before != 0 && winding == 0 )
+                        fillSpan( row, spanStart, crossings[ k ], color );
+                }
+            }
+        }
+
+        /**
+         * Dodaje przecięcie krawędzi z wierszem, zachowując kolejność rosnącą.
+         * @param count Liczba dotychczasowych przecięć.
+         * @param x Położenie przecięcia.
+         * @param direction Kierunek krawędzi.
+         * @return Nowa liczba przecięć.
+         */
+        private int addCrossing( int count, double x, int direction )
+        {
+            if( count == crossings.length )
+            {
+                crossings = Arrays.copyOf( crossings, 2 * count );
+                directions = Arrays.copyOf( directions, 2 * count );
+            }
+            int i = count;
+            while( i > 0 && crossings[ i - 1 ] > x )
+            {
+                crossings[ i ] = crossings[ i - 1 ];
+                directions[ i ] = directions[ i - 1 ];
+                i--;
+            }
+            crossings[ i ] = x;
+            directions[ i ] = direction;
+            return count + 1;
+        }
+
+        /**
+         * Wypełnia piksele wiersza, których środki leżą między podanymi położeniami.
+         * @param row Numer wiersza.
+         * @param from Początek odcinka.
+         * @param to Koniec odcinka.
+         * @param color Kolor ARGB.
+         */
+        private void fillSpan( int row, double from, double to, int color )
+        {
+            int first = Math.max( 0, (int) Math.ceil( from - 0.5 ) );
+            int last = Math.min( width - 1, (int) Math.ceil( to - 0.5 ) - 1 );
+            for( int column = first; column <= last; column++ )
+                blend( row * width + column, color );
+        }
+
+        /**
+         * Rysuje jednopikselowe obramowanie konturu. Kontur mniejszy od piksela
+         * zostawia co najmniej jeden piksel, więc drobne figury nie znikają z miniatury.
+         * @param contour Kontur w pikselach miniatury.
+         * @param color Kolor ARGB.
+         */
+        private void stroke( double[] contour, int color )
+        {
+            if( color >>> 24 == 0 )
+                return;
+            int n = contour.length / 2;
+            int lastPixel = -1;
+            for( int i = 0; i < n; i++ )
+            {
+                int j = i + 1 == n ? 0 : i + 1;
+                double x0 = contour[ 2 * i ];
+                double y0 = contour[ 2 * i + 1 ];
+                double dx = contour[ 2 * j ] - x0;
+                double dy = contour[ 2 * j + 1 ] - y0;
+                int steps = Math.max( 1, (int) Math.ceil( Math.max( Math.abs( dx ), Math.abs( dy ) ) ) );
+                for( int s = 0; s < steps; s++ )
+                {
+                    int column = (int) Math.floor( x0 + dx * s / steps );
+                    int row = (int) Math.floor( y0 + dy * s / steps );
+                    if( column < 0 || row < 0 || column >= width || row >= height )
+                        continue;
+                    // Sąsiednie punkty odcinka często trafiają w ten sam piksel - nie może on ściemnieć dwukrotnie.
+                    int pixel = row * width + column;
+                    if( pixel != lastPixel )
+                        blend( pixel, color );
+                    lastPixel = pixel;
+                }
+            }
+        }
+
+        /**
+         * Nakłada kolor na piksel z uwzględnieniem przezroczystości.
+         * @param index Indeks piksela.
+         * @param color Kolor ARGB.
+         */
+        private void blend( int index, int color )
+        {
+            int alpha = color >>> 24;
+            if( alpha == 255 )
+            {
+                pixels[ index ] = color;
+                return;
+            }
+            int target = pixels[ index ];
+            int inverse = 255 - alpha;
+            int r = ( ( color >> 16 & 255 ) * alpha + ( target >> 16 & 255 ) * inverse + 127 ) / 255;
+            int g = ( ( color >> 8 & 255 ) * alpha + ( target >> 8 & 255 ) * inverse + 127 ) / 255;
+            int b = ( ( color & 255 ) * alpha + ( target & 255 ) * inverse + 127 ) / 255;
+            pixels[ index ] = 0xff000000 | r << 16 | g << 8 | b;
+        }
+    }
+}
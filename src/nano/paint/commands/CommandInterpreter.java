@@ -0,0 +1,480 @@
+package nano.paint.commands;
+
+import javafx.application.Platform;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import nano.paint.Console;
+import nano.paint.editor.Editor;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+import nano.paint.model.StyleTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Interpreter poleceń wpisywanych w konsoli i skryptów złożonych z takich poleceń.
+ * Pozwala wykonać duże, powtarzalne zmiany bez tysięcy kliknięć, np.:
+ * <pre>
+ * generate 100000 circles
+ * select color=#8066cc
+ * scale 0.5
+ * translate 10 20
+ * run skrypt.txt
+ * </pre>
+ * Polecenia wykonywane są po kolei w osobnym wątku, więc długie polecenie nie blokuje okna.
+ * W tym wątku tworzone są nowe figury i odczytywane skrypty, a model i plansza zmieniane są
+ * wyłącznie w wątku JavaFX - zbiorczo, jedną operacją na polecenie (figury z {@code generate}
+ * trafiają na planszę w paczkach po {@value #BATCH_SIZE}, a między paczkami okno jest odświeżane).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see ShapeGenerator
+ */
+public class CommandInterpreter
+{
+    /** Liczba figur dodawanych na planszę w jednej paczce. */
+    private static final int BATCH_SIZE = 10000;
+    /** Największa liczba figur tworzonych jednym poleceniem. */
+    private static final int MAX_GENERATED = 10000000;
+    /** Największe zagnieżdżenie skryptów (skrypt uruchamiający skrypt itd.). */
+    private static final int MAX_SCRIPT_DEPTH = 8;
+    /** Opis poleceń wypisywany przez {@code help}. */
+    private static final String[] HELP = {
+            "generate N [circles|rectangles|polygons|shapes] [seed=S]",
+            "select all|none|color=#rrggbb|kind=circle|rectangle|polygon|compound ...",
+            "scale S",
+            "translate DX DY",
+            "color #rrggbb",
+            "duplicate",
+            "delete",
+            "run PLIK"
+    };
+
+    /** Edytor, na którego figurach wykonywane są polecenia. */
+    private Editor editor;
+    /** Plansza z figurami (jej rozmiar wyznacza obszar nowych figur). */
+    private Pane board;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private Console console;
+    /** Wątek wykonujący polecenia po kolei. */
+    private final ExecutorService worker = Executors.newSingleThreadExecutor( task ->
+    {
+        Thread thread = new Thread( task, "commands" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    /**
+     * @param editor Edytor, na którego figurach wykonywane będą polecenia.
+     * @param board Plansza z figurami.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     */
+    public CommandInterpreter( Editor editor, Pane board, Console console )
+    {
+        this.editor = editor;
+        this.board = board;
+        this.console = console;
+    }
+
+    /**
+     * Zleca wykonanie polecenia wpisanego przez użytkownika. Polecenie jest wypisywane w konsoli
+     * i wykonywane, gdy zakończą się wcześniej zlecone polecenia.
+     * Funkcję należy wywoływać w wątku JavaFX.
+     * @param line Treść polecenia.
+     */
+    public void submit( String line )
+    {
+        String command = line.trim();
+        if( command.isEmpty() )
+            return;
+        console.write( command );
+        worker.execute( () -> executeReporting( command ) );
+    }
+
+    /**
+     * Zleca wykonanie wszystkich poleceń z pliku skryptu.
+     * Funkcję należy wywoływać w wątku JavaFX.
+     * @param file Plik skryptu.
+     */
+    public void runScript( File file )
+    {
+        if( file != null )
+            submit( "run " + file.getPath() );
+    }
+
+    /**
+     * Wykonuje polecenie i wypisuje w konsoli błąd, jeśli się nie powiodło.
+     * @param command Treść polecenia.
+     */
+    private void executeReporting( String command )
+    {
+        try
+        {
+            execute( command, 0 );
+        }
+        catch( IOException e )
+        {
+            report( "Błąd przy próbie odczytu skryptu: " + e.getMessage() );
+        }
+        catch( RuntimeException e )
+        {
+            report( e.getMessage() != null ? e.getMessage() : "Błąd: " + e );
+        }
+    }
+
+    /**
+     * Wykonuje jedno polecenie w wątku poleceń.
+     * @param line Treść polecenia.
+     * @param depth Zagnieżdżenie skryptu, z którego pochodzi polecenie (0 - wpisane w konsoli).
+     * @throws IOException gdy nie udało się odczytać skryptu.
+     * @throws IllegalArgumentException gdy polecenie jest niepoprawne.
+     */
+    private void execute( String line, int depth ) throws IOException
+    {
+        String[] words = line.trim().split( "\\s+" );
+        String name = words[ 0 ].toLowerCase( Locale.ROOT );
+        switch( name )
+        {
+        case "generate":
+            generate( words );
+            break;
+        case "select":
+            select( words );
+            break;
+        case "scale":
+            checkArguments( words, 1 );
+            double scale = parseNumber( words[ 1 ] );
+            if( scale <= 0 )
+                throw new IllegalArgumentException( "Skala musi być dodatnia: " + words[ 1 ] );
+            onFxThread( () -> editor.resizeShapes( scale ) );
+            break;
+        case "translate":
+            checkArguments( words, 2 );
+            double dx = parseNumber( words[ 1 ] );
+            double dy = parseNumber( words[ 2 ] );
+            onFxThread( () -> editor.translateShapes( dx, dy ) );
+            break;
+        case "color":
+            checkArguments( words, 1 );
+            Color color = parseColor( words[ 1 ] );
+            onFxThread( () -> editor.setColor( color ) );
+            break;
+        case "duplicate":
+            checkArguments( words, 0 );
+            onFxThread( editor::duplicateShapes );
+            break;
+        case "delete":
+            checkArguments( words, 0 );
+            onFxThread( editor::removeShapes );
+            break;
+        case "run":
+            if( words.length < 2 )
+                throw new IllegalArgumentException( "Podaj plik skryptu!" );
+            run( new File( line.trim().substring( words[ 0 ].length() ).trim() ), depth );
+            break;
+        case "help":
+            for( String help : HELP )
+                report( help );
+            break;
+        default:
+            throw new IllegalArgumentException( "Nieznane polecenie: " + words[ 0 ] + " (wpisz help)" );
+        }
+    }
+
+    /**
+     * Polecenie {@code generate}: tworzy w wątku poleceń losowe figury i dodaje je na planszę
+     * w paczkach. Kolejna paczka tworzona jest, gdy poprzednia jest dodawana w wątku JavaFX.
+     * Nowe figury zostają zaznaczone.
+     * @param words Słowa polecenia.
+     */
+    private void generate( String[] words )
+    {
+        if( words.length < 2 || words.length > 4 )
+            throw new IllegalArgumentException( "Użycie: " + HELP[ 0 ] );
+        int count = (int) parseNumber( words[ 1 ] );
+        if( count <= 0 || count > MAX_GENERATED )
+            throw new IllegalArgumentException( "Liczba figur musi być z zakresu 1-" + MAX_GENERATED + ": " + words[ 1 ] );
+        byte kind = ShapeGenerator.MIXED;
+        long seed = System.nanoTime();
+        for( int i = 2; i < words.length; i++ )
+        {
+            String word = words[ i ].toLowerCase( Locale.ROOT );
+            if( word.startsWith( "seed=" ) )
+                seed = (long) parseNumber( word.substring( 5 ) );
+            else
+                kind = parseKind( word.endsWith( "s" ) ? word.substring( 0, word.length() - 1 ) : word, true );
+        }
+
+        double[] size = onFxThread( () -> new double[]{ board.getWidth(), board.getHeight() } );
+        ShapeGenerator generator = new ShapeGenerator( seed );
+        long start = System.nanoTime();
+        Future<?> previous = null;
+        for( int done = 0; done < count; done += BATCH_SIZE )
+        {
+            List<ShapeRecord> batch = generator.generate( kind, Math.min( BATCH_SIZE, count - done ), size[ 0 ], size[ 1 ] );
+            if( previous != null )
+                await( previous );
+            boolean keepFocus = done > 0;
+            previous = runLater( () -> editor.addShapes( batch, keepFocus ) );
+        }
+        await( previous );
+        report( "Wygenerowano " + count + " figur (" + ( System.nanoTime() - start ) / 1000000 + " ms)" );
+    }
+
+    /**
+     * Polecenie {@code select}: zaznacza figury spełniające wszystkie podane warunki.
+     * @param words Słowa polecenia.
+     */
+    private void select( String[] words )
+    {
+        if( words.length < 2 )
+            throw new IllegalArgumentException( "Użycie: " + HELP[ 1 ] );
+        boolean none = false;
+        Color color = null;
+        byte kind = 0;
+        for( int i = 1; i < words.length; i++ )
+        {
+            String word = words[ i ].toLowerCase( Locale.ROOT );
+            if( word.equals( "all" ) )
+                continue;
+            if( word.equals( "none" ) )
+                none = true;
+            else if( word.startsWith( "color=" ) )
+                color = parseColor( word.substring( 6 ) );
+            else if( word.startsWith( "kind=" ) )
+                kind = parseKind( word.substring( 5 ), false );
+            else
+                throw new IllegalArgumentException( "Nieznany warunek: " + words[ i ] );
+        }
+
+        final boolean selectNone = none;
+        final Color selectedColor = color;
+        final byte selectedKind = kind;
+        onFxThread( () ->
+        {
+            SceneModel model = editor.getModel();
+            boolean[] styles = selectedColor != null ? matchingStyles( model.getStyleTable(), selectedColor ) : null;
+            int count = editor.selectWhere( id -> !selectNone
+                    && ( selectedKind == 0 || model.getKind( id ) == selectedKind )
+                    && ( styles == null || styles[ model.getStyleIndex( id ) ] ) );
+            console.write( "Zaznaczono " + count + " figur" );
+        } );
+    }
+
+    /**
+     * Polecenie {@code run}: wykonuje po kolei polecenia z pliku skryptu.
+     * Puste linie i linie zaczynające się od {@code #} są pomijane.
+     * Wykonywanie skryptu przerywa pierwsze niepoprawne polecenie.
+     * @param file Plik skryptu.
+     * @param depth Zagnieżdżenie skryptu, z którego uruchomiono ten skrypt.
+     * @throws IOException gdy nie udało się odczytać skryptu.
+     */
+    private void run( File file, int depth ) throws IOException
+    {
+        if( depth >= MAX_SCRIPT_DEPTH )
+            throw new IllegalArgumentException( "Zbyt głęboko zagnieżdżone skrypty: " + file.getName() );
+        List<String> lines = Files.readAllLines( file.toPath(), StandardCharsets.UTF_8 );
+        int executed = 0;
+        for( int i = 0; i < lines.size(); i++ )
+        {
+            String line = lines.get( i ).trim();
+            if( line.isEmpty() || line.startsWith( "#" ) )
+                continue;
+            report( file.getName() + ":" + ( i + 1 ) + " " + line );
+            try
+            {
+                execute( line, depth + 1 );
+            }
+            catch( IllegalArgumentException e )
+            {
+                throw new IllegalArgumentException( "Błąd w linii " + ( i + 1 ) + " pliku " + file.getName() + ": " + e.getMessage(), e );
+            }
+            executed++;
+        }
+        report( "Wykonano skrypt " + file.getName() + " (poleceń: " + executed + ")" );
+    }
+
+    /**
+     * Wyznacza style, których kolor wypełnienia jest taki sam jak podany (z dokładnością do 8 bitów na składową).
+     * @param styles Tablica stylów modelu.
+     * @param color Szukany kolor.
+     * @return Czy styl pasuje - według numeru stylu.
+     */
+    private static boolean[] matchingStyles( StyleTable styles, Color color )
+    {
+        boolean[] matches = new boolean[ styles.size() ];
+        for( int i = 0; i < matches.length; i++ )
+        {
+            Style style = styles.get( i );
+            matches[ i ] = toByte( style.getFillRed() ) == toByte( color.getRed() )
+                    && toByte( style.getFillGreen() ) == toByte( color.getGreen() )
+                    && toByte( style.getFillBlue() ) == toByte( color.getBlue() )
+                    && toByte( style.getFillOpacity() ) == toByte( color.getOpacity() );
+        }
+        return matches;
+    }
+
+    /**
+     * @param value Składowa koloru od 0 do 1.
+     * @return Składowa koloru od 0 do 255.
+     */
+    private static int toByte( double value )
+    {
+        return (int) Math.round( value * 255 );
+    }
+
+    /**
+     * Odczytuje rodzaj figury z jego nazwy.
+     * @param name Nazwa rodzaju (w liczbie pojedynczej).
+     * @param allowMixed Czy dozwolona jest nazwa {@code shape} (wszystkie rodzaje).
+     * @return Rodzaj figury z {@link SceneModel} lub {@link ShapeGenerator#MIXED}.
+     */
+    private static byte parseKind( String name, boolean allowMixed )
+    {
+        switch( name )
+        {
+        case "rectangle":
+            return SceneModel.RECTANGLE;
+        case "circle":
+            return SceneModel.CIRCLE;
+        case "polygon":
+            return SceneModel.POLYGON;
+        case "compound":
+            if( !allowMixed )
+                return SceneModel.COMPOUND;
+            break;
+        case "shape":
+            if( allowMixed )
+                return ShapeGenerator.MIXED;
+            break;
+        }
+        throw new IllegalArgumentException( "Nieznany rodzaj figury: " + name );
+    }
+
+    /**
+     * @param value Tekst z liczbą.
+     * @return Odczytana liczba.
+     */
+    private static double parseNumber( String value )
+    {
+        try
+        {
+            double number = Double.parseDouble( value );
+            if( Double.isNaN( number ) || Double.isInfinite( number ) )
+                throw new NumberFormatException();
+            return number;
+        }
+        catch( NumberFormatException e )
+        {
+            throw new IllegalArgumentException( "Niepoprawna liczba: " + value );
+        }
+    }
+
+    /**
+     * @param value Tekst z kolorem, np. {@code #8066cc}.
+     * @return Odczytany kolor.
+     */
+    private static Color parseColor( String value )
+    {
+        try
+        {
+            return Color.web( value );
+        }
+        catch( IllegalArgumentException e )
+        {
+            throw new IllegalArgumentException( "Niepoprawny kolor: " + value );
+        }
+    }
+
+    /**
+     * Sprawdza liczbę argumentów polecenia.
+     * @param words Słowa polecenia (pierwsze to nazwa polecenia).
+     * @param count Wymagana liczba argumentów.
+     */
+    private static void checkArguments( String[] words, int count )
+    {
+        if( words.length != count + 1 )
+            throw new IllegalArgumentException( "Polecenie " + words[ 0 ] + " wymaga argumentów: " + count );
+    }
+
+    /**
+     * Wypisuje komunikat w konsoli (w wątku JavaFX).
+     * @param text Treść komunikatu.
+     */
+    private void report( String text )
+    {
+        Platform.runLater( () -> console.write( text ) );
+    }
+
+    /**
+     * Wykonuje działanie w wątku JavaFX i czeka na jego zakończenie.
+     * @param action Działanie.
+     */
+    private void onFxThread( Runnable action )
+    {
+        await( runLater( action ) );
+    }
+
+    /**
+     * Wykonuje obliczenie w wątku JavaFX i czeka na jego wynik.
+     * @param action Obliczenie.
+     * @param <T> Typ wyniku.
+     * @return Wynik obliczenia.
+     */
+    private static <T> T onFxThread( Callable<T> action )
+    {
+        FutureTask<T> task = new FutureTask<>( action );
+        Platform.runLater( task );
+        return await( task );
+    }
+
+    /**
+     * Zleca działanie do wykonania w wątku JavaFX, bez czekania na nie.
+     * @param action Działanie.
+     * @return Zlecone działanie, na którego zakończenie można poczekać.
+     */
+    private static Future<?> runLater( Runnable action )
+    {
+        FutureTask<Void> task = new FutureTask<>( action, null );
+        Platform.runLater( task );
+        return task;
+    }
+
+    /**
+     * Czeka na zakończenie działania zleconego w wątku JavaFX.
+     * Wyjątek rzucony przez działanie jest rzucany dalej.
+     * @param task Zlecone działanie.
+     * @param <T> Typ wyniku.
+     * @return Wynik działania.
+     */
+    private static <T> T await( Future<T> task )
+    {
+        try
+        {
+            return task.get();
+        }
+        catch( InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException( "Przerwano wykonywanie polecenia" );
+        }
+        catch( ExecutionException e )
+        {
+            if( e.getCause() instanceof RuntimeException )
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException( e.getCause() );
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package nano.paint.commands;
+
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Tworzenie losowych figur, np. do testowania programu na dużych rysunkach.
+ * Klasa nie korzysta z JavaFX i nie zmienia {@link SceneModel}, więc figury można tworzyć
+ * w dowolnym wątku, a dopiero później dodać na planszę.
+ * Kolory losowane są z niewielkiej palety, aby figury można było potem zaznaczać po kolorze
+ * (np. {@code select color=#8066cc}), a tablica stylów modelu nie rozrastała się.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see CommandInterpreter
+ */
+public class ShapeGenerator
+{
+    /** Rodzaj figur: wszystkie rodzaje na przemian. */
+    public static final byte MIXED = 0;
+
+    /** Rodzaje figur losowane przy {@link ShapeGenerator#MIXED}. */
+    private static final byte[] MIXED_KINDS = { SceneModel.RECTANGLE, SceneModel.CIRCLE, SceneModel.POLYGON };
+
+    /** Paleta kolorów wypełnienia (RGB). */
+    private static final int[] PALETTE = {
+            0x8066cc, 0x1e90ff, 0xff4500, 0x2e8b57, 0xffd700, 0xdc143c, 0x20b2aa, 0x708090
+    };
+    /** Najmniejszy rozmiar figury (jak w {@link SceneModel#MIN_SIZE}). */
+    private static final double MIN_SIZE = SceneModel.MIN_SIZE;
+    /** Największy rozmiar figury. */
+    private static final double MAX_SIZE = 60;
+
+    /** Źródło liczb losowych. */
+    private final SplittableRandom random;
+
+    /**
+     * @param seed Ziarno liczb losowych (to samo ziarno daje te same figury).
+     */
+    public ShapeGenerator( long seed )
+    {
+        this.random = new SplittableRandom( seed );
+    }
+
+    /**
+     * Tworzy losowe figury leżące w podanym obszarze.
+     * @param kind Rodzaj figur ({@link SceneModel#RECTANGLE}, {@link SceneModel#CIRCLE},
+     *             {@link SceneModel#POLYGON} lub {@link ShapeGenerator#MIXED}).
+     * @param count Liczba figur.
+     * @param width Szerokość obszaru.
+     * @param height Wysokość obszaru.
+     * @return Nowe figury.
+     */
+    public List<ShapeRecord> generate( byte kind, int count, double width, double height )
+    {
+        List<ShapeRecord> records = new ArrayList<>( count );
+        for( int i = 0; i < count; i++ )
+        {
+            byte shapeKind = kind != MIXED ? kind : MIXED_KINDS[ random.nextInt( MIXED_KINDS.length ) ];
+            records.add( new ShapeRecord( shapeKind, randomStyle(), randomCoords( shapeKind, width, height ) ) );
+        }
+        return records;
+    }
+
+    /**
+     * @return Styl z losowym kolorem z palety.
+     */
+    private Style randomStyle()
+    {
+        int rgb = PALETTE[ random.nextInt( PALETTE.length ) ];
+        return new Style( ( rgb >> 16 & 0xff ) / 255.0, ( rgb >> 8 & 0xff ) / 255.0, ( rgb & 0xff ) / 255.0, 1 );
+    }
+
+    /**
+     * Losuje współrzędne figury w układzie opisanym w {@link SceneModel}. Figura mieści się w obszarze,
+     * o ile jest on większy od największej figury.
+     * @param kind Rodzaj figury.
+     * @param width Szerokość obszaru.
+     * @param height Wysokość obszaru.
+     * @return Współrzędne figury.
+     */
+    private double[] randomCoords( byte kind, double width, double height )
+    {
+        double size = MIN_SIZE + random.nextDouble() * ( MAX_SIZE - MIN_SIZE );
+        double x = random.nextDouble() * Math.max( 0, width - size );
+        double y = random.nextDouble() * Math.max( 0, height - size );
+        switch( kind )
+        {
+        case SceneModel.RECTANGLE:
+            return new double[]{ x, y, size, MIN_SIZE + random.nextDouble() * ( size - MIN_SIZE ) };
+        case SceneModel.CIRCLE:
+            return new double[]{ x + size / 2, y + size / 2, size / 2 };
+        default:
+            // Wierzchołki leżą na okręgu w rosnących kątach, więc wielokąt nie przecina sam siebie.
+            int vertices = 3 + random.nextInt( 6 );
+            double[] coords = new double[ 2 * vertices ];
+            double radius = size / 2;
+            for( int i = 0; i < vertices; i++ )
+            {
+                double angle = 2 * Math.PI * ( i + random.nextDouble() * 0.8 ) / vertices;
+                coords[ 2 * i ] = x + radius + radius * Math.cos( angle );
+                coords[ 2 * i + 1 ] = y + radius + radius * Math.sin( angle );
+            }
+            return coords;
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package nano.paint.controllers;
 
+import javafx.event.ActionEvent;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
 import javafx.scene.control.Menu;
@@ -13,6 +14,8 @@ import javafx.stage.FileChooser;
 import javafx.stage.Stage;
 import nano.paint.Console;
 import nano.paint.FileManager;
+import nano.paint.browser.DrawingBrowser;
+import nano.paint.commands.CommandInterpreter;
 import nano.paint.editor.Editor;
 
 import java.io.File;
@@ -38,6 +41,9 @@ public class MainController
      *  wszystkie pozostałe komponenty programu. */
     @FXML
     private StackPane mainStackPane;
+    /** Tutaj wpisywane są polecenia konsoli. */
+    @FXML
+    private TextField commandField;
     /** Wybierałka kolorów pokazywana po kliknięciu
      *  w odpowiednią opcje w menu. */
     @FXML
@@ -55,6 +61,8 @@ public class MainController
     private Editor editor;
     /** Menedżer plików obsługujący zapis/odczyt figur. */
     private FileManager fileManager;
+    /** Interpreter poleceń wpisywanych w konsoli. */
+    private CommandInterpreter commandInterpreter;
 
     /** Okno dialogowe z informacjami o programie. */
     private Alert aboutDialog;
@@ -68,6 +76,8 @@ public class MainController
      *  do którego chcemy zapisać zmiany. */
     private FileChooser fileChooser;        // Systemowa przeglądarka plików. Używana przy wyborze pliku
                                             // który chcemy odczytać lub do którego chcemy zapisać zmiany.
+    /** Przeglądarka rysunków z miniaturami. */
+    private DrawingBrowser drawingBrowser;
 
     /**
      * Odziedziczona metoda ustawiająca wartości początkowe elementom GUI.
@@ -78,18 +88,26 @@ public class MainController
 
         console = new Console( consoleTextArea );
         editor = new Editor( mainBoard, console );
-        fileManager = new FileManager( mainBoard.getChildren(), console );
-        createContextMenu();
-        createAboutDialog();
-        createResizeDialog();
-        createFileChooser();
-        createWarningDialog();
+        fileManager = new FileManager( mainBoard.getChildren(), editor.getModel(), console );
+        commandInterpreter = new CommandInterpreter( editor, mainBoard, console );
+        // Menu kontekstowe, okna dialogowe i przeglądarka plików tworzone są dopiero przy pierwszym
+        // użyciu - ich budowa (wraz z ładowaniem klas i stylów) wydłużałaby uruchamianie programu.
+        mainBoard.setOnContextMenuRequested( e -> getContextMenu().show( mainBoard.getScene().getWindow(), e.getScreenX(), e.getScreenY() ) );
 
         mainStackPane.addEventFilter( MouseEvent.MOUSE_PRESSED, e -> editor.removeFocused(e.getSceneX(), e.getSceneY()) );
 
         colorPicker.setValue(Color.RED);
     }
 
+    /**
+     * Zwraca konsolę, w której wypisywane są komunikaty programu.
+     * @return Konsola programu.
+     */
+    public Console getConsole()
+    {
+        return console;
+    }
+
     /**
      * Ustawia scenę, do której zostaną dowiązane okna dialogowe.
      * @param primaryStage Główna scena aplikacji.
@@ -99,6 +117,17 @@ public class MainController
         this.stage = primaryStage;
     }
 
+    /**
+     * Zwraca menu kontekstowe, tworząc je przy pierwszym użyciu.
+     * @return Menu kontekstowe planszy.
+     */
+    private ContextMenu getContextMenu()
+    {
+        if( contextMenu == null )
+            createContextMenu();
+        return contextMenu;
+    }
+
     /**
      * Tworzy obiekt menu kontekstowego.
      * Wydzielone do osobnej funkcji z uwagi na czytelność.
@@ -112,10 +141,34 @@ public class MainController
         changeColor.setOnAction( e -> onShowColorPicker() );
         MenuItem remove = new MenuItem( "Usuń" );
         remove.setOnAction( e -> onRemove() );
+        MenuItem cut = new MenuItem( "Wytnij" );
+        cut.setOnAction( e -> onCut() );
+        MenuItem copy = new MenuItem( "Kopiuj" );
+        copy.setOnAction( e -> onCopy() );
+        MenuItem paste = new MenuItem( "Wklej" );
+        paste.setOnAction( e -> onPaste() );
+        MenuItem duplicate = new MenuItem( "Powiel" );
+        duplicate.setOnAction( e -> onDuplicate() );
+        Menu order = new Menu( "Kolejność" );
+        MenuItem toFront = new MenuItem( "Na wierzch" );
+        toFront.setOnAction( e -> onBringToFront() );
+        MenuItem forward = new MenuItem( "Do przodu" );
+        forward.setOnAction( e -> onBringForward() );
+        MenuItem backward = new MenuItem( "Do tyłu" );
+        backward.setOnAction( e -> onSendBackward() );
+        MenuItem toBack = new MenuItem( "Na spód" );
+        toBack.setOnAction( e -> onSendToBack() );
+        order.getItems().addAll( toFront, forward, backward, toBack );
+        MenuItem flatten = new MenuItem( "Spłaszcz" );
+        flatten.setOnAction( e -> onFlatten() );
+        MenuItem vertices = new MenuItem( "Edytuj wierzchołki" );
+        vertices.setOnAction( e -> onVertexMode() );
         MenuItem selectAll = new MenuItem( "Zaznacz wszystko" );
         selectAll.setOnAction( e -> onFocusAll() );
         MenuItem deselectAll = new MenuItem( "Odznacz wszystko" );
         deselectAll.setOnAction( e -> onClearFocus() );
+        MenuItem selectOverlapping = new MenuItem( "Zaznacz nakładające się" );
+        selectOverlapping.setOnAction( e -> onSelectOverlapping() );
 
         Menu insert = new Menu( "Wstaw" );
         MenuItem rectangle = new MenuItem( "Prostokąt" );
@@ -124,11 +177,71 @@ public class MainController
         circle.setOnAction( e -> onCircleMode() );
         MenuItem polygon = new MenuItem( "Wielokąt" );
         polygon.setOnAction( e -> onPolygonMode() );
+        MenuItem freehand = new MenuItem( "Odręcznie" );
+        freehand.setOnAction( e -> onFreehandMode() );
+
+        insert.getItems().addAll( rectangle, circle, new SeparatorMenuItem(), polygon, freehand );
 
-        insert.getItems().addAll( rectangle, circle, new SeparatorMenuItem(), polygon );
+        contextMenu.getItems().addAll( insert, resize, changeColor, remove, cut, copy, paste, duplicate, order, flatten, vertices, selectAll, deselectAll, selectOverlapping );
+    }
 
-        contextMenu.getItems().addAll( insert, resize, changeColor, remove, selectAll, deselectAll );
-        mainBoard.setOnContextMenuRequested( e -> contextMenu.show( mainBoard.getScene().getWindow(), e.getScreenX(), e.getScreenY() ) );
+    /**
+     * Zwraca okno dialogowe z informacjami o programie, tworząc je przy pierwszym użyciu.
+     * @return Okno dialogowe z informacjami o programie.
+     */
+    private Alert getAboutDialog()
+    {
+        if( aboutDialog == null )
+            createAboutDialog();
+        return aboutDialog;
+    }
+
+    /**
+     * Zwraca okno dialogowe z ostrzeżeniem o utracie zmian, tworząc je przy pierwszym użyciu.
+     * @return Okno dialogowe z ostrzeżeniem.
+     */
+    private Alert getWarningDialog()
+    {
+        if( warningDialog == null )
+            createWarningDialog();
+        return warningDialog;
+    }
+
+    /**
+     * Zwraca okno dialogowe do zmiany rozmiaru figur, tworząc je przy pierwszym użyciu.
+     * @return Okno dialogowe do zmiany rozmiaru.
+     */
+    private TextInputDialog getResizeDialog()
+    {
+        if( resizeDialog == null )
+            createResizeDialog();
+        return resizeDialog;
+    }
+
+    /**
+     * Zwraca systemową przeglądarkę plików, tworząc ją przy pierwszym użyciu.
+     * @return Przeglądarka plików.
+     */
+    private FileChooser getFileChooser()
+    {
+        if( fileChooser == null )
+            createFileChooser();
+        return fileChooser;
+    }
+
+    /**
+     * Zwraca przeglądarkę rysunków, tworząc ją przy pierwszym użyciu.
+     * Przeglądarka zachowuje miniatury w pamięci między kolejnymi otwarciami.
+     * @return Przeglądarka rysunków.
+     */
+    private DrawingBrowser getDrawingBrowser()
+    {
+        if( drawingBrowser == null )
+        {
+            drawingBrowser = new DrawingBrowser( stage );
+            drawingBrowser.setDirectory( new File( System.getProperty( "user.home" ) + "/Desktop" ) );
+        }
+        return drawingBrowser;
     }
 
     /**
@@ -183,7 +296,11 @@ public class MainController
     {
         fileChooser = new FileChooser();
         fileChooser.setInitialDirectory( new File( System.getProperty("user.home") + "/Desktop" ) );
-        fileChooser.getExtensionFilters().add( new FileChooser.ExtensionFilter( "Shapes", "*.shapes" ) );
+        fileChooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter( "Shapes", "*.shapes", "*.shapes" + FileManager.COMPRESSED_EXTENSION,
+                        "*" + FileManager.TILED_EXTENSION ),
+                new FileChooser.ExtensionFilter( "Shapes (gzip)", "*.shapes" + FileManager.COMPRESSED_EXTENSION ),
+                new FileChooser.ExtensionFilter( "Shapes (kafelki)", "*" + FileManager.TILED_EXTENSION ) );
     }
 
     /**
@@ -213,6 +330,24 @@ public class MainController
         editor.setMode( Editor.Mode.POLYGON );
     }
 
+    /**
+     * Uruchamia tryb rysowania odręcznego.
+     */
+    @FXML
+    private void onFreehandMode()
+    {
+        editor.setMode( Editor.Mode.FREEHAND );
+    }
+
+    /**
+     * Przełącza edytor w tryb edycji wierzchołków zaznaczonego wielokąta.
+     */
+    @FXML
+    private void onVertexMode()
+    {
+        editor.setMode( Editor.Mode.VERTICES );
+    }
+
     /**
      * Wyświetla wybierałkę kolorów.
      */
@@ -237,12 +372,103 @@ public class MainController
     @FXML
     private void onClearFocus() { Editor.clearFocus(); }
 
+    /**
+     * Zleca do edytora zaznaczenie figur nakładających się na zaznaczone figury.
+     */
+    @FXML
+    private void onSelectOverlapping() { editor.selectOverlapping(); }
+
+    /**
+     * Włącza lub wyłącza w edytorze przyciąganie do punktów figur.
+     * @param e zdarzenie zmiany stanu opcji w menu.
+     */
+    @FXML
+    private void onToggleSnapping( ActionEvent e ) { editor.setSnapping( ( (CheckMenuItem) e.getSource() ).isSelected() ); }
+
     /**
      * Zleca do edytora usunięcie zaznaczonych figur.
      */
     @FXML
     private void onRemove() { editor.removeShapes(); }
 
+    /**
+     * Zleca do edytora wycięcie zaznaczonych figur do schowka.
+     */
+    @FXML
+    private void onCut() { editor.cutShapes(); }
+
+    /**
+     * Zleca do edytora skopiowanie zaznaczonych figur do schowka.
+     */
+    @FXML
+    private void onCopy() { editor.copyShapes(); }
+
+    /**
+     * Zleca do edytora wklejenie figur ze schowka.
+     */
+    @FXML
+    private void onPaste() { editor.pasteShapes(); }
+
+    /**
+     * Zleca do edytora powielenie zaznaczonych figur.
+     */
+    @FXML
+    private void onDuplicate() { editor.duplicateShapes(); }
+
+    /**
+     * Zleca do edytora spłaszczenie zaznaczonych figur w jedną figurę złożoną.
+     */
+    @FXML
+    private void onFlatten() { editor.flatten(); }
+
+    /**
+     * Zleca do edytora przesunięcie zaznaczonych figur na wierzch.
+     */
+    @FXML
+    private void onBringToFront() { editor.bringToFront(); }
+
+    /**
+     * Zleca do edytora przesunięcie zaznaczonych figur o jedną pozycję w górę.
+     */
+    @FXML
+    private void onBringForward() { editor.bringForward(); }
+
+    /**
+     * Zleca do edytora przesunięcie zaznaczonych figur o jedną pozycję w dół.
+     */
+    @FXML
+    private void onSendBackward() { editor.sendBackward(); }
+
+    /**
+     * Zleca do edytora przesunięcie zaznaczonych figur na spód.
+     */
+    @FXML
+    private void onSendToBack() { editor.sendToBack(); }
+
+    /**
+     * Zleca wykonanie polecenia wpisanego w konsoli i czyści pole polecenia.
+     */
+    @FXML
+    private void onCommand()
+    {
+        commandInterpreter.submit( commandField.getText() );
+        commandField.clear();
+    }
+
+    /**
+     * Zleca wykonanie poleceń z wybranego przez użytkownika pliku skryptu.
+     */
+    @FXML
+    private void onRunScript()
+    {
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle( "Uruchom skrypt" );
+        chooser.getExtensionFilters().addAll(
+                new FileChooser.ExtensionFilter( "Skrypty", "*.txt" ),
+                new FileChooser.ExtensionFilter( "Wszystkie pliki", "*.*" ) );
+        commandInterpreter.runScript( chooser.showOpenDialog( stage ) );
+    }
+
     /**
      * Zleca wyczyszczenie konsoli.
      */
@@ -253,7 +479,7 @@ public class MainController
      * Wyświetla okno dialogowe z informacjami o programie.
      */
     @FXML
-    private void onAbout() { aboutDialog.showAndWait(); }
+    private void onAbout() { getAboutDialog().showAndWait(); }
 
     /**
      * Zamyka program.
@@ -263,7 +489,7 @@ public class MainController
     {
         if( mainBoard.getChildren().size() > 0 )
         {
-            Optional<ButtonType> result = warningDialog.showAndWait();
+            Optional<ButtonType> result = getWarningDialog().showAndWait();
             if( result.get().getText().equals( "Nie" ) )
                 return;
         }
@@ -279,7 +505,7 @@ public class MainController
     {
         console.write( "Zmiana rozmiaru..." );
         console.write("Podaj docelowy rozmiar w procentach");
-        Optional<String> result = resizeDialog.showAndWait();
+        Optional<String> result = getResizeDialog().showAndWait();
         if( result.isPresent() )
         {
             try
@@ -307,7 +533,7 @@ public class MainController
     {
         if( mainBoard.getChildren().size() > 0 )
         {
-            Optional<ButtonType> result = warningDialog.showAndWait();
+            Optional<ButtonType> result = getWarningDialog().showAndWait();
             if( result.get().getText().equals( "Nie" ) )
                 return;
         }
@@ -323,13 +549,34 @@ public class MainController
     {
         if( mainBoard.getChildren().size() > 0 )
         {
-            Optional<ButtonType> result = warningDialog.showAndWait();
+            Optional<ButtonType> result = getWarningDialog().showAndWait();
             if( result.get().getText().equals( "Nie" ) )
                 return;
         }
 
-        fileChooser.setTitle( "Wczytaj plik" );
-        File file = fileChooser.showOpenDialog( stage );
+        FileChooser chooser = getFileChooser();
+        chooser.setTitle( "Wczytaj plik" );
+        File file = chooser.showOpenDialog( stage );
+        fileManager.setViewport( 0, 0, mainBoard.getWidth(), mainBoard.getHeight() );
+        fileManager.loadShapes( file );
+    }
+
+    /**
+     * Pokazuje przeglądarkę rysunków z miniaturami i zleca do {@link FileManager}
+     * odczyt wybranego przez użytkownika pliku.
+     */
+    @FXML
+    private void onBrowseFiles()
+    {
+        if( mainBoard.getChildren().size() > 0 )
+        {
+            Optional<ButtonType> result = getWarningDialog().showAndWait();
+            if( result.get().getText().equals( "Nie" ) )
+                return;
+        }
+
+        File file = getDrawingBrowser().showAndWait();
+        fileManager.setViewport( 0, 0, mainBoard.getWidth(), mainBoard.getHeight() );
         fileManager.loadShapes( file );
     }
 
@@ -340,8 +587,17 @@ public class MainController
     @FXML
     private void onSaveFile()
     {
-        fileChooser.setTitle( "Zapisz plik" );
-        File file = fileChooser.showSaveDialog( stage );
+        FileChooser chooser = getFileChooser();
+        chooser.setTitle( "Zapisz plik" );
+        File file = chooser.showSaveDialog( stage );
+        // Wybrano filtr z jednym rozszerzeniem (gzip, kafelki), ale nazwa pliku go nie ma.
+        FileChooser.ExtensionFilter filter = chooser.getSelectedExtensionFilter();
+        if( file != null && filter != null && filter.getExtensions().size() == 1 )
+        {
+            String extension = filter.getExtensions().get( 0 ).substring( 1 );
+            if( !file.getName().endsWith( extension ) )
+                file = new File( file.getPath() + extension );
+        }
         fileManager.saveShapes( file );
     }
 
@@ -1,5 +1,6 @@
 package nano.paint.editor;
 
+import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.input.MouseButton;
@@ -9,12 +10,26 @@ import javafx.scene.layout.Pane;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Shape;
 import nano.paint.Console;
+import nano.paint.model.CompoundLayout;
+import nano.paint.model.OverlapQuery;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.SpatialIndex;
+import nano.paint.model.Style;
+import nano.paint.model.ZOrder;
 import nano.paint.shapes.MyCircle;
 import nano.paint.shapes.MyPolygon;
 import nano.paint.shapes.MyRectangle;
 import nano.paint.shapes.MyShape;
+import nano.paint.shapes.StylePaints;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
 
 /**
  * Klasa zarządzająca planszą z figurami.
@@ -29,6 +44,7 @@ import java.util.ArrayList;
  * @see MyCircle
  * @see MyPolygon
  * @see Console
+ * @see SceneModel
  */
 public class Editor
 {
@@ -44,18 +60,33 @@ public class Editor
         /** Dodawanie koła. */
         CIRCLE,
         /** Dodawanie wielokąta. */
-        POLYGON
+        POLYGON,
+        /** Edycja wierzchołków zaznaczonego wielokąta. */
+        VERTICES,
+        /** Rysowanie figury odręcznie. */
+        FREEHAND
     }
 
+    /** Przesunięcie wklejanych i powielanych figur względem oryginałów. */
+    private static final double PASTE_OFFSET = 10;
+
     /** Instancja konsoli, któa będzie używana do wypisywania komunikatów. */
     public static Console console;
 
     /** Plansza, do której będą dodawane figury. */
     private Pane board;
 
+    /** Model przechowujący dane wszystkich figur na planszy. */
+    private SceneModel model = new SceneModel();
+
     /** Obecny tryb, w którym działa edytor.*/
     private Mode currentMode = Mode.DEFAULT;
 
+    /** Ostatnia znana pozycja X kursora nad planszą. */
+    private double lastPointerX;
+    /** Ostatnia znana pozycja Y kursora nad planszą. */
+    private double lastPointerY;
+
     /** Licznik kliknięć używany, przy dodawaniu figur, m.in {@link MyRectangle}, {@link MyPolygon} */
     private int clickCount = 0;
 
@@ -66,6 +97,45 @@ public class Editor
     /** Tymczasowy obiekt figury, która jest właśnie w trakcie tworzenia. */
     private MyPolygon myPolygon;
 
+    /** Indeks przestrzenny figur z modelu. */
+    private SpatialIndex spatialIndex = new SpatialIndex( model );
+
+    /** Widoki figur na planszy według identyfikatorów figur w modelu. */
+    private HashMap<Integer, MyShape> views = new HashMap<>();
+
+    /** Przeciąganie zaznaczonych figur. */
+    private SelectionDrag selectionDrag;
+
+    /** Buforowanie figur w trakcie przeciągania i skalowania. */
+    private InteractionCache interactionCache = new InteractionCache( model );
+
+    /** Skalowanie zaznaczonych figur kółkiem myszy. */
+    private SelectionScale selectionScale = new SelectionScale( model, interactionCache );
+
+    /** Łączy zdarzenia ruchu myszy i scrolla z jednej klatki. */
+    private InputCoalescer inputCoalescer = new InputCoalescer( this::applyPointerMoved, this::applyScale );
+
+    /** Zaznaczanie figur prostokątem. */
+    private MarqueeSelection marqueeSelection;
+
+    /** Przyciąganie kursora do punktów figur. */
+    private Snapping snapping;
+
+    /** Edycja wierzchołków wielokąta. */
+    private VertexEditing vertexEditing;
+
+    /** Rysowanie odręczne. */
+    private FreehandDrawing freehandDrawing;
+
+    /** Wyszukiwanie nakładających się figur. */
+    private OverlapQuery overlapQuery = new OverlapQuery( model, spatialIndex );
+
+    /** Kopiowanie figur do schowka systemowego. */
+    private ShapeClipboard clipboard = new ShapeClipboard( model );
+
+    /** Przesunięcie figur przy następnym wklejeniu (rośnie z każdym wklejeniem, aby kopie na siebie nie nachodziły). */
+    private double pasteOffset = PASTE_OFFSET;
+
     /** Pomocnicza tablica elementów na planszy
      *  <b>Uwaga:</b> niektóre z tych elementów mogą <u>nie</u> być figurami */
     private static ObservableList<Node> shapes;
@@ -83,8 +153,40 @@ public class Editor
         this.board.addEventFilter( MouseEvent.MOUSE_CLICKED, this::onClick );
         this.board.addEventFilter( MouseEvent.MOUSE_MOVED, this::onMouseMoved );
         this.board.addEventFilter( ScrollEvent.SCROLL, this::onScroll );
+        this.board.addEventFilter( MouseEvent.ANY, this::onFreehandEvent );
+        this.board.addEventHandler( MouseEvent.MOUSE_PRESSED, this::onMousePressed );
+        this.board.addEventHandler( MouseEvent.MOUSE_DRAGGED, this::onMouseDragged );
+        this.board.addEventHandler( MouseEvent.MOUSE_RELEASED, this::onMouseReleased );
 
         shapes = this.board.getChildren();
+        shapes.addListener( this::onBoardChanged );
+        model.getZOrder().addListener( this::onOrderChanged );
+        snapping = new Snapping( board, model );
+        selectionDrag = new SelectionDrag( model, console, interactionCache, snapping );
+        vertexEditing = new VertexEditing( board, model, snapping, console );
+        freehandDrawing = new FreehandDrawing( shapes, model, console );
+        marqueeSelection = new MarqueeSelection( board, model, overlapQuery, views, console );
+    }
+
+    /**
+     * Zwraca model przechowujący dane figur z planszy.
+     * @return Model figur.
+     */
+    public SceneModel getModel()
+    {
+        return model;
+    }
+
+    /**
+     * Wyszukuje figurę na planszy po jej identyfikatorze.
+     * Identyfikator jest stały przez cały czas życia figury i zapisywany jest w pliku,
+     * więc po ponownym wczytaniu rysunku wskazuje tę samą figurę.
+     * @param id Identyfikator figury.
+     * @return Figura o podanym identyfikatorze lub {@code null}, jeśli jej nie ma na planszy.
+     */
+    public MyShape getShape( int id )
+    {
+        return views.get( id );
     }
 
     /**
@@ -95,6 +197,11 @@ public class Editor
      */
     public void setMode( Mode mode )
     {
+        inputCoalescer.flush();
+        selectionScale.end();
+        snapping.hide();
+        vertexEditing.end();
+        freehandDrawing.cancel();
         currentMode = mode;
         clickCount = 0;
         switch( mode )
@@ -118,6 +225,22 @@ public class Editor
             console.write( "Dodawanie wielokąta..." );
             console.write( "Wierzchołek 1: ");
             break;
+        case VERTICES:
+            enableShapes();
+            ArrayList<MyShape> focusedShapes = getFocusedShapes();
+            if( focusedShapes.size() != 1 || !( focusedShapes.get( 0 ) instanceof MyPolygon ) )
+            {
+                console.write( "Zaznacz jeden wielokąt!" );
+                currentMode = Mode.DEFAULT;
+                break;
+            }
+            vertexEditing.begin( (MyPolygon) focusedShapes.get( 0 ), lastPointerX, lastPointerY );
+            console.write( "Edycja wierzchołków (dwuklik: wstaw lub usuń wierzchołek)..." );
+            break;
+        case FREEHAND:
+            disableShapes();
+            console.write( "Rysowanie odręczne (przeciągnij myszą)..." );
+            break;
         }
     }
 
@@ -127,12 +250,20 @@ public class Editor
      */
     public void setColor( Color color )
     {
+        selectionScale.end();
         ArrayList<MyShape> focusedShapes = getFocusedShapes();
         if( focusedShapes.size() > 0 )
         {
             console.write( "Wybrano kolor: " + color );
+            int[] ids = idsOf( focusedShapes );
+            model.setColorAll( ids, ids.length, color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity() );
             for( MyShape shape : focusedShapes )
-                shape.changeColor( color );
+            {
+                if( shape instanceof Shape )
+                    ( (Shape) shape ).setFill( StylePaints.fill( model.getStyle( shape.getShapeId() ) ) );
+                else
+                    shape.refresh();
+            }
         }
         else
             console.write( "Nie zaznaczono figury!" );
@@ -149,19 +280,75 @@ public class Editor
     }
 
     /**
-     * Usuwa zaznaczenie ze wszystkich figur.
+     * Dodaje do zaznaczenia wszystkie figury, które nakładają się na którąś z zaznaczonych figur.
      */
-    public static void clearFocus()
+    public void selectOverlapping()
     {
-        for( int i = 0; i < shapes.size(); i++ )
+        ArrayList<MyShape> focusedShapes = getFocusedShapes();
+        if( focusedShapes.isEmpty() )
         {
-            if( shapes.get(i) instanceof MyShape )
-                if( ( (MyShape) shapes.get(i) ).getFocused() )
-                {
-                    ( (MyShape) shapes.get(i) ).removeFocused();
-                    i = 0;
-                }
+            console.write( "Nie zaznaczono figury!" );
+            return;
         }
+        HashSet<Integer> found = new HashSet<>();
+        for( MyShape shape : focusedShapes )
+            overlapQuery.intersecting( shape.getShapeId(), id ->
+            {
+                if( !model.isFocused( id ) )
+                    found.add( id );
+            } );
+        for( Integer id : found )
+            if( views.containsKey( id ) )
+                views.get( id ).makeFocused( true );
+        console.write( "Zaznaczono " + found.size() + " nakładających się figur" );
+    }
+
+    /**
+     * Zwraca zasadę buforowania figur w trakcie przeciągania i skalowania
+     * (np. aby ją zmienić albo odczytać liczniki).
+     * @return Buforowanie figur.
+     */
+    public InteractionCache getInteractionCache()
+    {
+        return interactionCache;
+    }
+
+    /**
+     * Włącza lub wyłącza przyciąganie do wierzchołków, narożników i środków figur.
+     * @param isEnabled Czy przyciąganie ma być włączone.
+     */
+    public void setSnapping( boolean isEnabled )
+    {
+        snapping.setEnabled( isEnabled );
+        console.write( isEnabled ? "Przyciąganie włączone" : "Przyciąganie wyłączone" );
+    }
+
+    /**
+     * Zwraca przyciąganie kursora do punktów figur (np. aby odczytać indeks punktów).
+     * @return Przyciąganie do punktów figur.
+     */
+    public Snapping getSnapping()
+    {
+        return snapping;
+    }
+
+    /**
+     * Zwraca obiekt wyszukujący nakładające się figury na planszy.
+     * @return Wyszukiwanie nakładających się figur.
+     */
+    public OverlapQuery getOverlapQuery()
+    {
+        return overlapQuery;
+    }
+
+    /**
+     * Usuwa zaznaczenie ze wszystkich figur.
+     */
+    public static void clearFocus()
+    {
+        for( Node shape : shapes )
+            if( shape instanceof MyShape && ( (MyShape) shape ).getFocused() )
+                ( (MyShape) shape ).removeFocused();
     }
 
     /**
@@ -174,6 +361,7 @@ public class Editor
     {
         if( x < 300 || y < 26 )
         {
+            inputCoalescer.flush();
             switch( currentMode )
             {
             case RECTANGLE:
@@ -187,11 +375,21 @@ public class Editor
                     myCircle.remove();
                 console.write( "Anulowano dodawanie koła" );
                 setMode( Mode.DEFAULT );
+                break;
             case POLYGON:
                 if( myPolygon != null && clickCount > 0 )
                     myPolygon.remove();
                 console.write( "Anulowano dodawanie wielokąta" );
                 setMode( Mode.DEFAULT );
+                break;
+            case VERTICES:
+                setMode( Mode.DEFAULT );
+                break;
+            case FREEHAND:
+                if( freehandDrawing.isActive() )
+                    console.write( "Anulowano rysowanie odręczne" );
+                setMode( Mode.DEFAULT );
+                break;
             }
 
         }
@@ -203,23 +401,305 @@ public class Editor
     public void removeShapes()
     {
         ArrayList<MyShape> focusedShapes = getFocusedShapes();
-        if( focusedShapes.size() > 0 )
+        if( focusedShapes.size() == 1 )
+            focusedShapes.get( 0 ).remove();
+        else if( focusedShapes.size() > 1 )
         {
-            if( focusedShapes.size() > 1 )
-                console.write( "Usuwanie " + focusedShapes.size() + " figur..." );
-            for( MyShape shape : focusedShapes )
-                shape.remove();
+            console.write( "Usuwanie " + focusedShapes.size() + " figur..." );
+            removeAll( focusedShapes );
+            console.write( "Usunięto " + focusedShapes.size() + " figur" );
         }
         else
             console.write( "Nie zaznaczono figury!" );
     }
 
+    /**
+     * Kopiuje zaznaczone figury do schowka systemowego.
+     */
+    public void copyShapes()
+    {
+        ArrayList<MyShape> focusedShapes = getFocusedShapesInOrder();
+        if( focusedShapes.isEmpty() )
+        {
+            console.write( "Nie zaznaczono figury!" );
+            return;
+        }
+        clipboard.copy( idsOf( focusedShapes ) );
+        pasteOffset = PASTE_OFFSET;
+        console.write( "Skopiowano " + focusedShapes.size() + " figur" );
+    }
+
+    /**
+     * Kopiuje zaznaczone figury do schowka systemowego i usuwa je z planszy.
+     * Pierwsze wklejenie umieści je z powrotem w tym samym miejscu.
+     */
+    public void cutShapes()
+    {
+        selectionScale.end();
+        ArrayList<MyShape> focusedShapes = getFocusedShapesInOrder();
+        if( focusedShapes.isEmpty() )
+        {
+            console.write( "Nie zaznaczono figury!" );
+            return;
+        }
+        clipboard.copy( idsOf( focusedShapes ) );
+        removeAll( focusedShapes );
+        pasteOffset = 0;
+        console.write( "Wycięto " + focusedShapes.size() + " figur" );
+    }
+
+    /**
+     * Wkleja figury ze schowka systemowego na wierzch planszy i zaznacza je.
+     * Kolejne wklejenia tych samych figur są coraz bardziej przesunięte.
+     */
+    public void pasteShapes()
+    {
+        List<ShapeRecord> records;
+        try
+        {
+            records = clipboard.paste();
+        }
+        catch( IllegalArgumentException e )
+        {
+            console.write( "Schowek zawiera niepoprawne dane!" );
+            return;
+        }
+        if( records == null || records.isEmpty() )
+        {
+            console.write( "Schowek nie zawiera figur!" );
+            return;
+        }
+        insertAll( records, pasteOffset, false );
+        pasteOffset += PASTE_OFFSET;
+        console.write( "Wklejono " + records.size() + " figur" );
+    }
+
+    /**
+     * Powiela zaznaczone figury (bez udziału schowka): kopie trafiają na wierzch,
+     * przesunięte względem oryginałów, i to one zostają zaznaczone.
+     */
+    public void duplicateShapes()
+    {
+        ArrayList<MyShape> focusedShapes = getFocusedShapesInOrder();
+        if( focusedShapes.isEmpty() )
+        {
+            console.write( "Nie zaznaczono figury!" );
+            return;
+        }
+        List<ShapeRecord> records = new ArrayList<>( focusedShapes.size() );
+        for( MyShape shape : focusedShapes )
+        {
+            int id = shape.getShapeId();
+            records.add( new ShapeRecord( model.getKind( id ), model.getStyle( id ), model.getCoords( id ) ) );
+        }
+        insertAll( records, PASTE_OFFSET, false );
+        console.write( "Powielono " + records.size() + " figur" );
+    }
+
+    /**
+     * Dodaje figury na wierzch planszy w jednym przebiegu i zaznacza je.
+     * Konsola nie jest zapełniana komunikatami o każdej figurze.
+     * @param records Dane figur w kolejności rysowania.
+     * @param keepFocus Czy zachować dotychczasowe zaznaczenie (np. przy dodawaniu figur w kilku paczkach).
+     */
+    public void addShapes( List<ShapeRecord> records, boolean keepFocus )
+    {
+        insertAll( records, 0, keepFocus );
+    }
+
+    /**
+     * Zaznacza figury spełniające podany warunek. Pozostałe figury zostają odznaczone.
+     * @param filter Sprawdza, czy figura o podanym identyfikatorze ma zostać zaznaczona.
+     * @return Liczba zaznaczonych figur.
+     */
+    public int selectWhere( IntPredicate filter )
+    {
+        selectionScale.end();
+        clearFocus();
+        int count = 0;
+        for( int i = 0; i < model.size(); i++ )
+        {
+            int id = model.idAt( i );
+            MyShape view = views.get( id );
+            if( view != null && filter.test( id ) )
+            {
+                view.makeFocused( true );
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Przesuwa zaznaczone figury o podany wektor.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     */
+    public void translateShapes( double dx, double dy )
+    {
+        selectionScale.end();
+        ArrayList<MyShape> focusedShapes = getFocusedShapes();
+        if( focusedShapes.isEmpty() )
+        {
+            console.write( "Nie zaznaczono figury!" );
+            return;
+        }
+        int[] ids = idsOf( focusedShapes );
+        model.translateAll( ids, ids.length, dx, dy );
+        for( MyShape shape : focusedShapes )
+            shape.refresh();
+        console.write( "Przesunięto " + focusedShapes.size() + " figur o (" + dx + ", " + dy + ")" );
+    }
+
+    /**
+     * Dodaje figury do modelu i na planszę w jednym przebiegu, przesunięte o podany wektor,
+     * i zaznacza je. Konsola nie jest zapełniana komunikatami o każdej figurze.
+     * @param records Dane figur w kolejności rysowania.
+     * @param offset Przesunięcie figur w obu osiach.
+     * @param keepFocus Czy zachować dotychczasowe zaznaczenie.
+     */
+    private void insertAll( List<ShapeRecord> records, double offset, boolean keepFocus )
+    {
+        if( currentMode != Mode.DEFAULT )
+            setMode( Mode.DEFAULT );
+        selectionScale.end();
+        if( !keepFocus )
+            clearFocus();
+        int[] ids = model.addAll( records, offset, offset );
+        for( MyShape shape : MyShape.createViews( shapes, model, ids ) )
+            shape.makeFocused( true );
+    }
+
+    /**
+     * Usuwa podane figury z planszy i z modelu.
+     * W przeciwieństwie do {@link MyShape#remove()} wywoływanego dla każdej figury
+     * osobno, lista elementów planszy zmienia się tylko raz, a konsola nie jest
+     * zapełniana komunikatami o każdej figurze.
+     * @param toRemove Figury do usunięcia.
+     */
+    private void removeAll( List<MyShape> toRemove )
+    {
+        int[] ids = idsOf( toRemove );
+        HashSet<Node> nodes = new HashSet<>( toRemove.size() * 2 );
+        for( MyShape shape : toRemove )
+            nodes.add( (Node) shape );
+        shapes.removeAll( nodes );
+        model.removeAll( ids, ids.length );
+    }
+
+    /**
+     * Spłaszcza zaznaczone figury: zastępuje je jedną figurą złożoną, która leży
+     * na miejscu najwyższej z nich. Kolory wypełnienia części są zachowane, a figura
+     * złożona przesuwa się, skaluje, zmienia kolor i zapisuje jak każda inna figura.
+     * Części figur złożonych, które były w zaznaczeniu, trafiają do nowej figury bez zmian.
+     */
+    public void flatten()
+    {
+        selectionScale.end();
+        ArrayList<MyShape> focusedShapes = getFocusedShapes();
+        if( focusedShapes.size() < 2 )
+        {
+            console.write( "Zaznacz co najmniej dwie figury!" );
+            return;
+        }
+        ZOrder zOrder = model.getZOrder();
+        focusedShapes.sort( Comparator.comparingDouble( shape -> zOrder.keyOf( shape.getShapeId() ) ) );
+        CompoundLayout.Builder parts = new CompoundLayout.Builder();
+        for( MyShape shape : focusedShapes )
+        {
+            int id = shape.getShapeId();
+            if( model.getKind( id ) == SceneModel.COMPOUND )
+                parts.addAll( model.getCoords( id ) );
+            else
+                parts.add( model.getKind( id ), model.getStyle( id ), model.getCoords( id ) );
+        }
+        int topId = focusedShapes.get( focusedShapes.size() - 1 ).getShapeId();
+        double topKey = zOrder.keyOf( topId );
+        Style style = model.getStyle( topId );
+
+        removeAll( focusedShapes );
+        int id = model.add( SceneModel.COMPOUND, style, parts.build() );
+        zOrder.place( id, topKey );
+        MyShape.createView( shapes, model, id ).makeFocused( true );
+        console.write( "Spłaszczono " + focusedShapes.size() + " figur (części: " + parts.getPartCount() + ")" );
+    }
+
+    /**
+     * Przesuwa zaznaczone figury na wierzch, zachowując ich wzajemną kolejność.
+     */
+    public void bringToFront()
+    {
+        reorder( true, model.getZOrder()::bringToFront, "Przesunięto na wierzch" );
+    }
+
+    /**
+     * Przesuwa zaznaczone figury o jedną pozycję w górę.
+     */
+    public void bringForward()
+    {
+        reorder( false, model.getZOrder()::bringForward, "Przesunięto do przodu" );
+    }
+
+    /**
+     * Przesuwa zaznaczone figury o jedną pozycję w dół.
+     */
+    public void sendBackward()
+    {
+        reorder( true, model.getZOrder()::sendBackward, "Przesunięto do tyłu" );
+    }
+
+    /**
+     * Przesuwa zaznaczone figury na spód, zachowując ich wzajemną kolejność.
+     */
+    public void sendToBack()
+    {
+        reorder( false, model.getZOrder()::sendToBack, "Przesunięto na spód" );
+    }
+
+    /**
+     * Zmienia kolejność rysowania zaznaczonych figur.
+     * Figury przetwarzane są w kolejności rysowania (od dołu lub od góry),
+     * dzięki czemu ich wzajemne położenie się nie zmienia.
+     * @param fromBottom Czy zaczynać od najniższej figury.
+     * @param operation Operacja na kolejności wykonywana dla każdej figury.
+     * @param message Komunikat wypisywany po zmianie.
+     */
+    private void reorder( boolean fromBottom, IntConsumer operation, String message )
+    {
+        ArrayList<MyShape> focusedShapes = getFocusedShapes();
+        if( focusedShapes.isEmpty() )
+        {
+            console.write( "Nie zaznaczono figury!" );
+            return;
+        }
+        ZOrder zOrder = model.getZOrder();
+        Comparator<MyShape> byOrder = Comparator.comparingDouble( shape -> zOrder.keyOf( shape.getShapeId() ) );
+        focusedShapes.sort( fromBottom ? byOrder : byOrder.reversed() );
+        for( MyShape shape : focusedShapes )
+            operation.accept( shape.getShapeId() );
+        console.write( message );
+    }
+
+    /**
+     * Ustawia kolejność wyświetlania widoku figury po zmianie jej kolejności w modelu.
+     * Figura o mniejszym {@code viewOrder} rysowana jest wyżej, więc lista elementów
+     * planszy nie musi być przestawiana.
+     * @param id Identyfikator figury.
+     */
+    private void onOrderChanged( int id )
+    {
+        MyShape view = views.get( id );
+        if( view != null )
+            ( (Node) view ).setViewOrder( -model.getZOrder().keyOf( id ) );
+    }
+
     /**
      * Zmienia rozmiar zaznaczonych figur.
      * @param scale nowa skala dla figur (1.0 = bez zmian).
      */
     public void resizeShapes( double scale )
     {
+        selectionScale.end();
         ArrayList<MyShape> focusedShapes = getFocusedShapes();
         if( focusedShapes.size() > 0 )
         {
@@ -228,8 +708,7 @@ public class Editor
                     focusedShapes.size() == 1 ? "y" : "") + " o " + (scale >= 1.0 ? "+" : "")
                     + newScale + "%" );
 
-            for( MyShape shape : focusedShapes )
-                shape.rescale( scale );
+            rescaleAll( focusedShapes, scale );
         }
         else
             console.write( "Nie zaznaczono figury!" );
@@ -241,8 +720,15 @@ public class Editor
      */
     private void onClick( MouseEvent e )
     {
+        inputCoalescer.flush();
         int x = (int) e.getX();
         int y = (int) e.getY();
+        if( isCreating() && snapping.snap( e.getX(), e.getY(), this::isSnapTarget ) )
+        {
+            // Figury dodawane myszą mają współrzędne całkowite - punkt przyciągania zaokrąglany jest do piksela.
+            x = (int) Math.round( snapping.getX() );
+            y = (int) Math.round( snapping.getY() );
+        }
         if( e.getButton() == MouseButton.PRIMARY )
         {
             switch( currentMode )
@@ -259,39 +745,92 @@ public class Editor
                 else
                     addPolygon( x, y, false );
                 break;
+            case VERTICES:
+                if( e.getClickCount() == 2 )
+                    vertexEditing.doubleClick( e.getX(), e.getY() );
+                break;
             default:
                 break;
             }
         }
     }
 
+    /**
+     * Obsługuje rysowanie odręczne. Zdarzenia przechwytywane są, zanim trafią do figur
+     * (które w tym trybie są nieaktywne), a każde zdarzenie przeciągania przekazywane jest
+     * od razu - łączenie zdarzeń z jednej klatki zgubiłoby kształt linii.
+     * @param e zdarzenie myszy.
+     */
+    private void onFreehandEvent( MouseEvent e )
+    {
+        if( currentMode != Mode.FREEHAND || ( e.getButton() != MouseButton.PRIMARY && !freehandDrawing.isActive() ) )
+            return;
+        if( e.getEventType() == MouseEvent.MOUSE_PRESSED )
+            freehandDrawing.begin( clampX( e.getX() ), clampY( e.getY() ) );
+        else if( e.getEventType() == MouseEvent.MOUSE_DRAGGED )
+            freehandDrawing.add( clampX( e.getX() ), clampY( e.getY() ) );
+        else if( e.getEventType() == MouseEvent.MOUSE_RELEASED && freehandDrawing.isActive() )
+        {
+            freehandDrawing.add( clampX( e.getX() ), clampY( e.getY() ) );
+            MyPolygon drawn = freehandDrawing.end();
+            setMode( Mode.DEFAULT );
+            if( drawn != null )
+                drawn.makeFocused( false );
+        }
+        else
+            return;
+        e.consume();
+    }
+
     /**
      * Obsługuje poruszanie myszy nad planszą.
+     * Pozycja kursora przekazywana jest do {@link InputCoalescer}, który
+     * raz na klatkę wywoła {@link Editor#applyPointerMoved(double, double, boolean)}.
      * @param e zdarzenie poruszenia myszy.
      */
     private void onMouseMoved( MouseEvent e )
     {
+        inputCoalescer.pointerMoved( e.getX(), e.getY(), e.isShiftDown() );
+    }
+
+    /**
+     * Aktualizuje dodawaną figurę i konsolę po ruchu myszy.
+     * Wywoływana co najwyżej raz na klatkę, z ostatnią pozycją kursora.
+     * Pozycja kursora przyciągana jest do najbliższego punktu innych figur ({@link Snapping}).
+     * @param x pozycja X kursora.
+     * @param y pozycja Y kursora.
+     * @param isShiftDown czy wciśnięty jest Shift.
+     */
+    private void applyPointerMoved( double x, double y, boolean isShiftDown )
+    {
+        lastPointerX = x;
+        lastPointerY = y;
+        if( isCreating() && snapping.snap( x, y, this::isSnapTarget ) )
+        {
+            x = snapping.getX();
+            y = snapping.getY();
+        }
         switch( currentMode )
         {
         case RECTANGLE:
             if( clickCount == 0 )
-                console.rewriteLastLine( "Wierzchołek 1: (" + (int)e.getX() + ", " + (int)e.getY() + ")" );
+                console.rewriteLastLine( "Wierzchołek 1: (" + (int)x + ", " + (int)y + ")" );
             if( clickCount == 1)
             {
                 console.rewriteLastLine( "Wierzchołek 2: (" + myRect.getX2() + ", " + myRect.getY2() + ")" );
-                if( e.isShiftDown() )
-                    myRect.setEnd( e.getX(), e.getY(), true );
+                if( isShiftDown )
+                    myRect.setEnd( x, y, true );
                 else
-                    myRect.setEnd( e.getX(), e.getY(), false );
+                    myRect.setEnd( x, y, false );
             }
             break;
         case CIRCLE:
             if( clickCount == 0 )
-                console.rewriteLastLine( "Środek koła: (" + (int)e.getX() + ", " + (int)e.getY() + ")" );
+                console.rewriteLastLine( "Środek koła: (" + (int)x + ", " + (int)y + ")" );
             if( clickCount == 1 )
             {
-                double x1 = e.getX();
-                double y1 = e.getY();
+                double x1 = x;
+                double y1 = y;
                 double x2 = myCircle.getCenterX();
                 double y2 = myCircle.getCenterY();
                 console.rewriteLastLine( "Promień: " + (int)myCircle.getRadius() );
@@ -305,26 +844,207 @@ public class Editor
             else
                 vertexNumber = 1;
             console.rewriteLastLine( "Wierzchołek " + vertexNumber + ": (" +
-                    (int) e.getX() + ", " + (int) e.getY() + ")" );
+                    (int) x + ", " + (int) y + ")" );
 
             if( clickCount > 0 )
-                myPolygon.visualize( e.getX(), e.getY() );
+                myPolygon.visualize( x, y );
+            break;
+        case VERTICES:
+            vertexEditing.pointerMoved( x, y );
             break;
         }
     }
 
+    /**
+     * @return Czy edytor jest w trybie dodawania figury.
+     */
+    private boolean isCreating()
+    {
+        return currentMode == Mode.RECTANGLE || currentMode == Mode.CIRCLE || currentMode == Mode.POLYGON;
+    }
+
+    /**
+     * Sprawdza, czy do punktów figury można przyciągać kursor w trakcie dodawania figury.
+     * @param id Identyfikator figury.
+     * @return {@code false} dla figury, która jest właśnie dodawana.
+     */
+    private boolean isSnapTarget( int id )
+    {
+        if( clickCount == 0 )
+            return true;
+        switch( currentMode )
+        {
+        case RECTANGLE:
+            return id != myRect.getShapeId();
+        case CIRCLE:
+            return id != myCircle.getShapeId();
+        case POLYGON:
+            return id != myPolygon.getShapeId();
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * Aktualizuje słownik widoków figur po zmianie zawartości planszy.
+     * @param change zmiana listy elementów planszy.
+     */
+    private void onBoardChanged( ListChangeListener.Change<? extends Node> change )
+    {
+        while( change.next() )
+        {
+            for( Node node : change.getRemoved() )
+                if( node instanceof MyShape && views.get( ( (MyShape) node ).getShapeId() ) == node )
+                    views.remove( ( (MyShape) node ).getShapeId() );
+            for( Node node : change.getAddedSubList() )
+                if( node instanceof MyShape )
+                    views.put( ( (MyShape) node ).getShapeId(), (MyShape) node );
+        }
+    }
+
+    /**
+     * Obsługuje wciśnięcie przycisku myszy nad planszą.
+     * Jest to jedyna obsługa wciśnięcia dla wszystkich figur - figury nie rejestrują
+     * własnych obsług zdarzeń, a figura pod kursorem wyszukiwana jest przez {@link Editor#shapeAt(MouseEvent)}.
+     * Wciśnięcie na figurze zaznacza ją i rozpoczyna przeciąganie wszystkich
+     * zaznaczonych figur, a wciśnięcie na pustej planszy rozpoczyna zaznaczanie prostokątem.
+     * @param e zdarzenie wciśnięcia przycisku myszy.
+     */
+    private void onMousePressed( MouseEvent e )
+    {
+        selectionScale.end();
+        if( currentMode == Mode.VERTICES )
+        {
+            // Wciśnięcie z dala od uchwytów, krawędzi i wnętrza edytowanego wielokąta kończy edycję wierzchołków.
+            if( e.getButton() != MouseButton.PRIMARY || vertexEditing.press( e.getX(), e.getY() )
+                    || ( vertexEditing.isActive() && shapeAt( e ) == vertexEditing.getPolygon() )
+                    || vertexEditing.isNear( e.getX(), e.getY() ) )
+                return;
+            setMode( Mode.DEFAULT );
+        }
+        if( currentMode != Mode.DEFAULT )
+            return;
+        MyShape shape = shapeAt( e );
+        // Kliknięcie w zaznaczoną figurę nie zmienia zaznaczenia, aby można było
+        // przeciągnąć wszystkie zaznaczone figury naraz.
+        if( shape != null && ( !shape.getFocused() || e.isControlDown() ) )
+            shape.makeFocused( e.isControlDown() );
+        if( e.getButton() != MouseButton.PRIMARY )
+            return;
+        if( shape != null )
+            selectionDrag.begin( getFocusedShapes(), clampX( e.getX() ), clampY( e.getY() ) );
+        else
+            marqueeSelection.begin( clampX( e.getX() ), clampY( e.getY() ), e.isControlDown() );
+    }
+
+    /**
+     * Obsługuje przeciąganie myszy nad planszą.
+     * @param e zdarzenie przeciągania myszy.
+     */
+    private void onMouseDragged( MouseEvent e )
+    {
+        if( currentMode == Mode.VERTICES )
+            vertexEditing.drag( clampX( e.getX() ), clampY( e.getY() ) );
+        else if( selectionDrag.isActive() )
+            selectionDrag.drag( clampX( e.getX() ), clampY( e.getY() ) );
+        else if( marqueeSelection.isActive() )
+            marqueeSelection.drag( clampX( e.getX() ), clampY( e.getY() ) );
+    }
+
+    /**
+     * Obsługuje puszczenie przycisku myszy nad planszą.
+     * Jeśli figur nie przesunięto, kliknięcie bez Ctrl w jedną z zaznaczonych
+     * figur pozostawia zaznaczoną tylko ją.
+     * @param e zdarzenie puszczenia przycisku myszy.
+     */
+    private void onMouseReleased( MouseEvent e )
+    {
+        vertexEditing.release();
+        if( marqueeSelection.isActive() )
+            marqueeSelection.end();
+        if( !selectionDrag.isActive() )
+            return;
+        boolean wasMoved = selectionDrag.end();
+        MyShape shape = shapeAt( e );
+        if( !wasMoved && !e.isControlDown() && shape != null )
+            shape.makeFocused( false );
+    }
+
+    /**
+     * Wyszukuje figurę, nad którą nastąpiło zdarzenie myszy.
+     * @param e zdarzenie myszy.
+     * @return Figura pod kursorem lub {@code null}, jeśli kursor jest nad pustą planszą.
+     */
+    private MyShape shapeAt( MouseEvent e )
+    {
+        Node node = e.getPickResult().getIntersectedNode();
+        while( node != null && node != board )
+        {
+            if( node instanceof MyShape )
+                return (MyShape) node;
+            node = node.getParent();
+        }
+        return null;
+    }
+
+    /**
+     * Ogranicza współrzędną X do obszaru planszy.
+     * @param x współrzędna X.
+     * @return współrzędna X leżąca na planszy.
+     */
+    private double clampX( double x )
+    {
+        return Math.min( Math.max( x, 0 ), board.getWidth() );
+    }
+
+    /**
+     * Ogranicza współrzędną Y do obszaru planszy.
+     * @param y współrzędna Y.
+     * @return współrzędna Y leżąca na planszy.
+     */
+    private double clampY( double y )
+    {
+        return Math.min( Math.max( y, 0 ), board.getHeight() );
+    }
+
     /**
      * Obsługuje uzycie scrolla nad planszą.
      * @param e zdarzenie scrolla.
      */
     private void onScroll( ScrollEvent e )
     {
-        ArrayList<MyShape> focusedShapes = getFocusedShapes();
-        for( MyShape shape : focusedShapes )
-            if( e.getDeltaY() > 0 )
-                shape.rescale( 1.05 );
-            else
-                shape.rescale( 0.95 );
+        // Skalowanie przestawiłoby wierzchołki pod uchwytami.
+        if( currentMode == Mode.VERTICES )
+            return;
+        if( e.getDeltaY() > 0 )
+            inputCoalescer.scaled( 1.05 );
+        else
+            inputCoalescer.scaled( 0.95 );
+    }
+
+    /**
+     * Zmienia rozmiar zaznaczonych figur o skale zebrane z wielu obrotów kółka myszy.
+     * Wywoływana co najwyżej raz na klatkę.
+     * @param scales skale kolejnych obrotów kółka od ostatniej klatki.
+     * @param count liczba skal.
+     */
+    private void applyScale( double[] scales, int count )
+    {
+        selectionScale.scale( getFocusedShapes(), scales, count );
+    }
+
+    /**
+     * Zmienia rozmiar podanych figur jedną operacją na modelu,
+     * a następnie odświeża ich widoki.
+     * @param toScale Figury, których rozmiar ma się zmienić.
+     * @param scale Nowa skala (1.0 = bez zmian).
+     */
+    private void rescaleAll( List<MyShape> toScale, double scale )
+    {
+        int[] ids = idsOf( toScale );
+        model.rescaleAll( ids, ids.length, scale );
+        for( MyShape shape : toScale )
+            shape.refresh();
     }
 
     /**
@@ -337,7 +1057,7 @@ public class Editor
     {
         if( clickCount == 0 )
         {
-            myRect = new MyRectangle( shapes, x, y );
+            myRect = new MyRectangle( shapes, model, x, y );
             console.rewriteLastLine( "Wierzchołek 1: (" + (int) myRect.getX() + ", " + (int) myRect.getY() + ")" );
             console.write( "Wierzchołek 2: (" + myRect.getX2() + ", " + myRect.getY2() + ")" );
             clickCount++;
@@ -361,7 +1081,7 @@ public class Editor
     {
         if( clickCount == 0 )
         {
-            myCircle = new MyCircle( shapes, x, y );
+            myCircle = new MyCircle( shapes, model, x, y );
             console.rewriteLastLine( "Środek koła: (" + (int) myCircle.getCenterX() + ", " + (int) myCircle.getCenterY() + ")" );
             console.write( "Promień: " + myCircle.getRadius() );
             clickCount++;
@@ -401,7 +1121,7 @@ public class Editor
         }
         else if( clickCount == 0 )
         {
-            myPolygon = new MyPolygon( shapes, x, y );
+            myPolygon = new MyPolygon( shapes, model, x, y );
             clickCount++;
             console.write( "Wierzchołek 2: (" + x + ", " + y + ")" );
         }
@@ -425,7 +1145,7 @@ public class Editor
     {
         for( Node n : shapes )
         {
-            if( n instanceof Shape )
+            if( n instanceof MyShape )
                 n.setDisable( true );
         }
     }
@@ -438,11 +1158,36 @@ public class Editor
     {
         for( Node n : shapes )
         {
-            if( n instanceof Shape )
+            if( n instanceof MyShape )
                 n.setDisable( false );
         }
     }
 
+    /**
+     * Zwraca identyfikatory podanych figur.
+     * @param list Lista figur.
+     * @return Tablica identyfikatorów w tej samej kolejności.
+     */
+    private static int[] idsOf( List<MyShape> list )
+    {
+        int[] ids = new int[ list.size() ];
+        for( int i = 0; i < ids.length; i++ )
+            ids[ i ] = list.get( i ).getShapeId();
+        return ids;
+    }
+
+    /**
+     * Wybiera ze wszystkich figur te, które są zaznaczone, i porządkuje je od najniższej do najwyższej.
+     * @return Lista zaznaczonych figur w kolejności rysowania.
+     */
+    private ArrayList<MyShape> getFocusedShapesInOrder()
+    {
+        ArrayList<MyShape> focusedShapes = getFocusedShapes();
+        ZOrder zOrder = model.getZOrder();
+        focusedShapes.sort( Comparator.comparingDouble( shape -> zOrder.keyOf( shape.getShapeId() ) ) );
+        return focusedShapes;
+    }
+
     /**
      * Wybiera ze wszystkich figur te, które są zaznaczone.
      * @return Lista zaznaczonych figur.
@@ -0,0 +1,149 @@
+package nano.paint.editor;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import nano.paint.Console;
+import nano.paint.model.SceneModel;
+import nano.paint.shapes.MyPolygon;
+
+/**
+ * Rysowanie odręczne: figura powstaje z punktów, przez które przeszedł kursor w trakcie przeciągania.
+ * Punkty nie są zapamiętywane - każdy od razu trafia do {@link SleeveSimplifier}, a do wielokąta
+ * dopisywane są tylko wierzchołki uproszczonej linii. Ostatni wierzchołek wielokąta podąża za kursorem
+ * i jest przesuwany bez przeliczania pozostałych, więc koszt jednego zdarzenia myszy nie rośnie
+ * z długością linii.
+ *
+ * Dokładność uproszczenia w pikselach można zmienić właściwością systemową
+ * {@code nano.paint.freehandTolerance} (domyślnie 1.5).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see SleeveSimplifier
+ */
+public class FreehandDrawing
+{
+    /** Właściwość systemowa z dokładnością uproszczenia linii w pikselach. */
+    public static final String TOLERANCE_PROPERTY = "nano.paint.freehandTolerance";
+    /** Domyślna dokładność uproszczenia linii w pikselach. */
+    private static final double DEFAULT_TOLERANCE = 1.5;
+
+    /** Elementy planszy, do których dodawana jest figura. */
+    private ObservableList<Node> shapes;
+    /** Model z danymi figur. */
+    private SceneModel model;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private Console console;
+    /** Upraszczanie linii w trakcie rysowania. */
+    private final SleeveSimplifier simplifier;
+    /** Rysowana figura lub {@code null}, jeśli rysowanie nie jest w toku. */
+    private MyPolygon polygon;
+
+    /**
+     * @param shapes Elementy planszy, do których dodawane będą figury.
+     * @param model Model z danymi figur.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     */
+    public FreehandDrawing( ObservableList<Node> shapes, SceneModel model, Console console )
+    {
+        this.shapes = shapes;
+        this.model = model;
+        this.console = console;
+        this.simplifier = new SleeveSimplifier( readTolerance(), this::addVertex );
+    }
+
+    /**
+     * Rozpoczyna rysowanie linii.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void begin( double x, double y )
+    {
+        cancel();
+        // Wielokąt zaczyna się od dwóch wierzchołków: pierwszego punktu i wierzchołka podążającego za kursorem.
+        polygon = new MyPolygon( shapes, model, x, y );
+        simplifier.begin( x, y );
+    }
+
+    /**
+     * Dodaje do linii kolejny punkt.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void add( double x, double y )
+    {
+        if( polygon == null )
+            return;
+        simplifier.add( x, y );
+        polygon.visualize( x, y );
+    }
+
+    /**
+     * Kończy rysowanie linii.
+     * @return Narysowana figura lub {@code null}, jeśli figura nie spełniała wymagań wielokąta.
+     */
+    public MyPolygon end()
+    {
+        if( polygon == null )
+            return null;
+        MyPolygon drawn = polygon;
+        polygon = null;
+        try
+        {
+            drawn.validate();
+        }
+        catch( RuntimeException e )
+        {
+            console.write( e.getMessage() );
+            return null;
+        }
+        console.write( "Dodano figurę odręczną: " + model.getCoordCount( drawn.getShapeId() ) / 2
+                + " wierzchołków z " + simplifier.getSampleCount() + " punktów" );
+        return drawn;
+    }
+
+    /**
+     * Przerywa rysowanie i usuwa rysowaną figurę.
+     */
+    public void cancel()
+    {
+        if( polygon == null )
+            return;
+        polygon.remove();
+        polygon = null;
+    }
+
+    /**
+     * @return Czy rysowanie jest w toku.
+     */
+    public boolean isActive()
+    {
+        return polygon != null;
+    }
+
+    /**
+     * Dopisuje wierzchołek uproszczonej linii: ustawia w nim wierzchołek podążający
+     * za kursorem i dodaje za nim nowy.
+     * @param x Współrzędna X wierzchołka.
+     * @param y Współrzędna Y wierzchołka.
+     */
+    private void addVertex( double x, double y )
+    {
+        polygon.visualize( x, y );
+        polygon.addVertex( x, y );
+    }
+
+    /**
+     * @return Dokładność uproszczenia linii z właściwości systemowej (lub domyślna).
+     */
+    private static double readTolerance()
+    {
+        try
+        {
+            return Math.max( 0, Double.parseDouble( System.getProperty( TOLERANCE_PROPERTY, String.valueOf( DEFAULT_TOLERANCE ) ) ) );
+        }
+        catch( NumberFormatException e )
+        {
+            return DEFAULT_TOLERANCE;
+        }
+    }
+}
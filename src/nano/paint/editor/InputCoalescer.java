@@ -0,0 +1,150 @@
+package nano.paint.editor;
+
+import javafx.animation.AnimationTimer;
+
+import java.util.Arrays;
+
+/**
+ * Łączy zdarzenia ruchu myszy i scrolla, które przyszły w trakcie jednej klatki.
+ * Zapamiętywana jest tylko ostatnia pozycja kursora oraz skale kolejnych obrotów kółka myszy.
+ * Skale nie są mnożone w jedną, bo pomniejszenie poniżej najmniejszego rozmiaru figury
+ * jest pomijane dla każdego obrotu osobno, a iloczyn mógłby pominąć także obroty, które
+ * powinny się wykonać. Zebrane dane przekazywane są dalej raz na klatkę animacji:
+ * dla każdej figury kolejne skale sprawdzane są tylko na jej rozmiarze (kilka liczb na obrót),
+ * a współrzędne figury zmieniane są raz na klatkę, niezależnie od liczby zdarzeń.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ */
+public class InputCoalescer
+{
+    /**
+     * Odbiorca połączonych ruchów myszy.
+     */
+    public interface MoveHandler
+    {
+        /**
+         * @param x Ostatnia pozycja X kursora.
+         * @param y Ostatnia pozycja Y kursora.
+         * @param isShiftDown Czy przy ostatnim ruchu wciśnięty był Shift.
+         */
+        void pointerMoved( double x, double y, boolean isShiftDown );
+    }
+
+    /**
+     * Odbiorca połączonych zmian skali.
+     */
+    public interface ScaleHandler
+    {
+        /**
+         * @param scales Skale zebrane od ostatniej klatki, w kolejności obrotów kółka.
+         * @param count Liczba skal.
+         */
+        void scaled( double[] scales, int count );
+    }
+
+    /** Odbiorca ruchów myszy. */
+    private MoveHandler moveHandler;
+    /** Odbiorca zmian skali. */
+    private ScaleHandler scaleHandler;
+    /** Zegar wywoływany raz na klatkę, dopóki są zaległe zdarzenia. */
+    private final AnimationTimer timer;
+    /** Czy zegar jest uruchomiony. */
+    private boolean isRunning = false;
+
+    /** Czy jest zaległy ruch myszy. */
+    private boolean hasMove = false;
+    /** Ostatnia pozycja X kursora. */
+    private double pointerX;
+    /** Ostatnia pozycja Y kursora. */
+    private double pointerY;
+    /** Czy przy ostatnim ruchu wciśnięty był Shift. */
+    private boolean isShiftDown;
+
+    /** Zebrane skale, w kolejności obrotów kółka. */
+    private double[] scales = new double[ 4 ];
+    /** Liczba zebranych skal. */
+    private int scaleCount = 0;
+
+    /**
+     * @param moveHandler Odbiorca połączonych ruchów myszy.
+     * @param scaleHandler Odbiorca połączonych zmian skali.
+     */
+    public InputCoalescer( MoveHandler moveHandler, ScaleHandler scaleHandler )
+    {
+        this.moveHandler = moveHandler;
+        this.scaleHandler = scaleHandler;
+        this.timer = new AnimationTimer()
+        {
+            @Override
+            public void handle( long now )
+            {
+                flush();
+            }
+        };
+    }
+
+    /**
+     * Zapamiętuje nową pozycję kursora. Poprzednia, jeszcze nieprzekazana pozycja jest zastępowana.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @param isShiftDown Czy wciśnięty jest Shift.
+     */
+    public void pointerMoved( double x, double y, boolean isShiftDown )
+    {
+        pointerX = x;
+        pointerY = y;
+        this.isShiftDown = isShiftDown;
+        hasMove = true;
+        start();
+    }
+
+    /**
+     * Dołącza skalę do zebranych skal.
+     * @param factor Skala pojedynczego zdarzenia.
+     */
+    public void scaled( double factor )
+    {
+        if( scaleCount == scales.length )
+            scales = Arrays.copyOf( scales, scales.length * 2 );
+        scales[ scaleCount++ ] = factor;
+        start();
+    }
+
+    /**
+     * Natychmiast przekazuje zaległe zdarzenia.
+     * Należy ją wywołać przed obsługą zdarzeń, które zależą od aktualnego stanu
+     * (np. kliknięcia kończącego rysowanie figury).
+     */
+    public void flush()
+    {
+        if( hasMove )
+        {
+            hasMove = false;
+            moveHandler.pointerMoved( pointerX, pointerY, isShiftDown );
+        }
+        if( scaleCount > 0 )
+        {
+            double[] pendingScales = Arrays.copyOf( scales, scaleCount );
+            scaleCount = 0;
+            scaleHandler.scaled( pendingScales, pendingScales.length );
+        }
+        if( isRunning )
+        {
+            timer.stop();
+            isRunning = false;
+        }
+    }
+
+    /**
+     * Uruchamia zegar, jeśli jeszcze nie działa.
+     */
+    private void start()
+    {
+        if( !isRunning )
+        {
+            timer.start();
+            isRunning = true;
+        }
+    }
+}
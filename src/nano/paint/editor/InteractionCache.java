@@ -0,0 +1,203 @@
+package nano.paint.editor;
+
+import javafx.scene.CacheHint;
+import javafx.scene.Node;
+import nano.paint.model.SceneModel;
+import nano.paint.shapes.MyShape;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Zasada buforowania figur w trakcie przeciągania i skalowania.
+ * Na czas przekształcania figura z dużą liczbą współrzędnych jest buforowana
+ * jako obraz ({@link Node#setCache(boolean)}) ze wskazówką nastawioną na szybkość,
+ * więc JavaFX przesuwa i skaluje gotowy obraz zamiast rysować geometrię od nowa.
+ * Po zakończeniu przekształcania przywracane są poprzednie ustawienia figury,
+ * a z nimi dokładne rysowanie.
+ *
+ * Z jednej figury może korzystać kilka przekształceń naraz (np. przeciąganie
+ * w trakcie skalowania) - ustawienia przywracane są dopiero, gdy zwolnią ją wszystkie.
+ *
+ * Zasadę można ustawić właściwościami systemowymi:
+ * <ul>
+ *     <li>{@code nano.paint.interactionCache} - wskazówka ({@link CacheHint}) lub {@code OFF}, domyślnie {@code SPEED}</li>
+ *     <li>{@code nano.paint.interactionCache.minCoords} - najmniejsza liczba współrzędnych buforowanej figury, domyślnie 64</li>
+ * </ul>
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SelectionDrag
+ * @see SelectionScale
+ */
+public class InteractionCache
+{
+    /** Właściwość systemowa z wskazówką buforowania. */
+    public static final String HINT_PROPERTY = "nano.paint.interactionCache";
+    /** Właściwość systemowa z najmniejszą liczbą współrzędnych buforowanej figury. */
+    public static final String MIN_COORDS_PROPERTY = "nano.paint.interactionCache.minCoords";
+
+    /**
+     * Ustawienia buforowania figury sprzed przekształcenia.
+     */
+    private static class Entry
+    {
+        /** Liczba przekształceń, które korzystają z figury. */
+        private int users;
+        /** Czy figura była buforowana. */
+        private boolean wasCached;
+        /** Poprzednia wskazówka buforowania. */
+        private CacheHint previousHint;
+    }
+
+    /** Model z figurami. */
+    private final SceneModel model;
+    /** Figury buforowane w trakcie przekształceń. */
+    private final HashMap<Node, Entry> entries = new HashMap<>();
+    /** Wskazówka buforowania lub {@code null}, jeśli buforowanie jest wyłączone. */
+    private CacheHint hint;
+    /** Najmniejsza liczba współrzędnych figury, która jest buforowana. */
+    private int minCoords;
+
+    /** Liczba rozpoczętych przekształceń. */
+    private long interactionCount = 0;
+    /** Liczba włączeń buforowania figur. */
+    private long cachedCount = 0;
+    /** Liczba figur pominiętych, bo ich geometria jest prosta. */
+    private long skippedCount = 0;
+
+    /**
+     * Tworzy zasadę buforowania z ustawieniami z właściwości systemowych.
+     * @param model Model z figurami.
+     */
+    public InteractionCache( SceneModel model )
+    {
+        this.model = model;
+        String value = System.getProperty( HINT_PROPERTY, CacheHint.SPEED.name() );
+        try
+        {
+            hint = value.equalsIgnoreCase( "OFF" ) ? null : CacheHint.valueOf( value.toUpperCase() );
+        }
+        catch( IllegalArgumentException e )
+        {
+            hint = CacheHint.SPEED;
+        }
+        minCoords = Math.max( 0, Integer.getInteger( MIN_COORDS_PROPERTY, 64 ) );
+    }
+
+    /**
+     * Włącza buforowanie przekształcanych figur.
+     * @param shapes Figury, które zaczynają być przekształcane.
+     */
+    public void acquire( List<MyShape> shapes )
+    {
+        interactionCount++;
+        if( hint == null )
+            return;
+        for( MyShape shape : shapes )
+        {
+            Node node = (Node) shape;
+            Entry entry = entries.get( node );
+            if( entry == null )
+            {
+                if( !model.contains( shape.getShapeId() ) || model.getCoordCount( shape.getShapeId() ) < minCoords )
+                {
+                    skippedCount++;
+                    continue;
+                }
+                entry = new Entry();
+                entry.wasCached = node.isCache();
+                entry.previousHint = node.getCacheHint();
+                entries.put( node, entry );
+                node.setCache( true );
+                node.setCacheHint( hint );
+                cachedCount++;
+            }
+            entry.users++;
+        }
+    }
+
+    /**
+     * Przywraca poprzednie ustawienia figur, których nie przekształca już nic innego.
+     * @param shapes Figury, które przestały być przekształcane.
+     */
+    public void release( List<MyShape> shapes )
+    {
+        for( MyShape shape : shapes )
+        {
+            Node node = (Node) shape;
+            Entry entry = entries.get( node );
+            if( entry == null || --entry.users > 0 )
+                continue;
+            entries.remove( node );
+            node.setCacheHint( entry.previousHint );
+            node.setCache( entry.wasCached );
+        }
+    }
+
+    /**
+     * @return Wskazówka buforowania lub {@code null}, jeśli buforowanie jest wyłączone.
+     */
+    public CacheHint getHint()
+    {
+        return hint;
+    }
+
+    /**
+     * Ustawia wskazówkę buforowania dla kolejnych przekształceń.
+     * @param hint Wskazówka buforowania lub {@code null}, aby wyłączyć buforowanie.
+     */
+    public void setHint( CacheHint hint )
+    {
+        this.hint = hint;
+    }
+
+    /**
+     * @return Najmniejsza liczba współrzędnych figury, która jest buforowana.
+     */
+    public int getMinCoords()
+    {
+        return minCoords;
+    }
+
+    /**
+     * Ustawia, od jakiej liczby współrzędnych figury są buforowane.
+     * Proste figury rysują się szybko, a ich buforowanie zajmuje tylko pamięć karty graficznej.
+     * @param minCoords Najmniejsza liczba współrzędnych buforowanej figury.
+     */
+    public void setMinCoords( int minCoords )
+    {
+        this.minCoords = Math.max( 0, minCoords );
+    }
+
+    /**
+     * @return Liczba rozpoczętych przekształceń.
+     */
+    public long getInteractionCount()
+    {
+        return interactionCount;
+    }
+
+    /**
+     * @return Liczba włączeń buforowania figur.
+     */
+    public long getCachedCount()
+    {
+        return cachedCount;
+    }
+
+    /**
+     * @return Liczba figur, których nie buforowano, bo ich geometria jest prosta.
+     */
+    public long getSkippedCount()
+    {
+        return skippedCount;
+    }
+
+    /**
+     * @return Liczba figur buforowanych w tej chwili.
+     */
+    public int getActiveCount()
+    {
+        return entries.size();
+    }
+}
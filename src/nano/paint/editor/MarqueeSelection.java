@@ -0,0 +1,154 @@
+package nano.paint.editor;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import nano.paint.Console;
+import nano.paint.model.OverlapQuery;
+import nano.paint.model.SceneModel;
+import nano.paint.model.SpatialIndex;
+import nano.paint.shapes.MyShape;
+
+import java.util.HashSet;
+import java.util.Map;
+
+/**
+ * Zaznaczanie figur prostokątem rozciąganym myszą po pustej części planszy.
+ * Zaznaczane są wszystkie figury, które leżą wewnątrz prostokąta lub go przecinają.
+ * Figury pod prostokątem wyszukiwane są przez {@link OverlapQuery}: kandydaci pochodzą
+ * z {@link SpatialIndex}, a następnie każdy sprawdzany jest dokładnie, więc np. koło,
+ * którego tylko prostokąt opisany zahacza o zaznaczenie, nie jest zaznaczane. Przy każdym
+ * ruchu myszy zmieniany jest stan tylko tych figur, które weszły do prostokąta
+ * lub z niego wyszły.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ */
+public class MarqueeSelection
+{
+    /** Plansza, na której rysowany jest prostokąt zaznaczenia. */
+    private Pane board;
+    /** Model z danymi figur. */
+    private SceneModel model;
+    /** Wyszukiwanie figur nakładających się na prostokąt zaznaczenia. */
+    private OverlapQuery overlapQuery;
+    /** Widoki figur według ich identyfikatorów. */
+    private Map<Integer, MyShape> views;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private Console console;
+
+    /** Prostokąt zaznaczenia widoczny na planszy. */
+    private final Rectangle band = new Rectangle();
+    /** Pozycja X, w której rozpoczęto zaznaczanie. */
+    private double startX;
+    /** Pozycja Y, w której rozpoczęto zaznaczanie. */
+    private double startY;
+    /** Czy zaznaczanie jest w toku. */
+    private boolean isActive = false;
+    /** Figury zaznaczone przez prostokąt (bez figur zaznaczonych wcześniej). */
+    private HashSet<Integer> hits = new HashSet<>();
+
+    /**
+     * @param board Plansza, na której rysowany będzie prostokąt zaznaczenia.
+     * @param model Model z danymi figur.
+     * @param overlapQuery Wyszukiwanie figur nakładających się na prostokąt zaznaczenia.
+     * @param views Widoki figur według ich identyfikatorów.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     */
+    public MarqueeSelection( Pane board, SceneModel model, OverlapQuery overlapQuery, Map<Integer, MyShape> views, Console console )
+    {
+        this.board = board;
+        this.model = model;
+        this.overlapQuery = overlapQuery;
+        this.views = views;
+        this.console = console;
+
+        band.setFill( Color.DODGERBLUE.deriveColor( 0, 1, 1, 0.15 ) );
+        band.setStroke( Color.DODGERBLUE );
+        band.getStrokeDashArray().addAll( 4.0, 4.0 );
+        band.setMouseTransparent( true );
+        band.setViewOrder( -Double.MAX_VALUE );
+    }
+
+    /**
+     * Rozpoczyna zaznaczanie prostokątem.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @param isCtrlDown Jeśli {@code true}, figury zostaną dodane do obecnego zaznaczenia,
+     *                   w przeciwnym przypadku obecne zaznaczenie zostanie usunięte.
+     */
+    public void begin( double x, double y, boolean isCtrlDown )
+    {
+        if( !isCtrlDown )
+            Editor.clearFocus();
+        startX = x;
+        startY = y;
+        hits = new HashSet<>();
+        updateBand( x, y );
+        board.getChildren().add( band );
+        isActive = true;
+    }
+
+    /**
+     * Rozciąga prostokąt do pozycji kursora i aktualizuje zaznaczenie.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void drag( double x, double y )
+    {
+        if( !isActive )
+            return;
+        updateBand( x, y );
+
+        HashSet<Integer> newHits = new HashSet<>();
+        overlapQuery.inRectangle( band.getX(), band.getY(), band.getX() + band.getWidth(), band.getY() + band.getHeight(), id ->
+        {
+            // Figura zaznaczona przed rozpoczęciem (z Ctrl) pozostaje nietknięta.
+            if( hits.contains( id ) || !model.isFocused( id ) )
+                newHits.add( id );
+        } );
+
+        for( Integer id : hits )
+            if( !newHits.contains( id ) && views.containsKey( id ) )
+                views.get( id ).removeFocused();
+        for( Integer id : newHits )
+            if( !hits.contains( id ) && views.containsKey( id ) )
+                views.get( id ).makeFocused( true );
+        hits = newHits;
+    }
+
+    /**
+     * Kończy zaznaczanie i usuwa prostokąt z planszy.
+     */
+    public void end()
+    {
+        if( !isActive )
+            return;
+        board.getChildren().remove( band );
+        isActive = false;
+        if( !hits.isEmpty() )
+            console.write( "Zaznaczono " + hits.size() + ( hits.size() == 1 ? " figurę" : " figur" ) );
+        hits = new HashSet<>();
+    }
+
+    /**
+     * @return Czy zaznaczanie jest w toku.
+     */
+    public boolean isActive()
+    {
+        return isActive;
+    }
+
+    /**
+     * Ustawia położenie i rozmiar prostokąta zaznaczenia.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    private void updateBand( double x, double y )
+    {
+        band.setX( Math.min( startX, x ) );
+        band.setY( Math.min( startY, y ) );
+        band.setWidth( Math.abs( x - startX ) );
+        band.setHeight( Math.abs( y - startY ) );
+    }
+}
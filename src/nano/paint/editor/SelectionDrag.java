@@ -0,0 +1,137 @@
+package nano.paint.editor;
+
+import javafx.scene.Node;
+import javafx.scene.transform.Translate;
+import nano.paint.Console;
+import nano.paint.model.SceneModel;
+import nano.paint.shapes.MyShape;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Przeciąganie wszystkich zaznaczonych figur naraz.
+ * W trakcie przeciągania do każdej przeciąganej figury dołączone jest to samo
+ * przekształcenie {@link Translate}, więc każde zdarzenie myszy to jedna zmiana
+ * przesunięcia - niezależnie od liczby figur i ich wierzchołków.
+ * Dopiero po puszczeniu przycisku przesunięcie zapisywane jest w modelu,
+ * a przekształcenie jest usuwane z figur. W trakcie przeciągania figury mogą być
+ * buforowane jako obraz ({@link InteractionCache}), a przesunięcie jest przyciągane
+ * do punktów pozostałych figur ({@link Snapping}).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ */
+public class SelectionDrag
+{
+    /** Model, w którym zapisywane jest przesunięcie po zakończeniu przeciągania. */
+    private SceneModel model;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private Console console;
+    /** Buforowanie figur w trakcie przeciągania. */
+    private InteractionCache cache;
+    /** Przyciąganie przesunięcia do punktów pozostałych figur. */
+    private Snapping snapping;
+    /** Przekształcenie współdzielone przez wszystkie przeciągane figury. */
+    private final Translate translate = new Translate();
+    /** Figury, które są aktualnie przeciągane. */
+    private List<MyShape> shapes = new ArrayList<>();
+    /** Pozycja X kursora, w której rozpoczęto przeciąganie. */
+    private double startX;
+    /** Pozycja Y kursora, w której rozpoczęto przeciąganie. */
+    private double startY;
+    /** Czy przeciąganie zostało rozpoczęte. */
+    private boolean isActive = false;
+    /** Czy figury zostały już przesunięte (przekształcenie jest dołączone). */
+    private boolean isMoved = false;
+
+    /**
+     * @param model Model, w którym zapisywane będzie przesunięcie figur.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     * @param cache Buforowanie figur w trakcie przeciągania.
+     * @param snapping Przyciąganie przesunięcia do punktów pozostałych figur.
+     */
+    public SelectionDrag( SceneModel model, Console console, InteractionCache cache, Snapping snapping )
+    {
+        this.model = model;
+        this.console = console;
+        this.cache = cache;
+        this.snapping = snapping;
+    }
+
+    /**
+     * Rozpoczyna przeciąganie figur.
+     * @param selected Figury do przeciągania.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void begin( List<MyShape> selected, double x, double y )
+    {
+        shapes = selected;
+        startX = x;
+        startY = y;
+        isActive = !selected.isEmpty();
+        isMoved = false;
+        if( isActive )
+            snapping.beginDrag( x, y );
+    }
+
+    /**
+     * Przesuwa przeciągane figury tak, aby podążały za kursorem.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void drag( double x, double y )
+    {
+        if( !isActive )
+            return;
+        if( !isMoved )
+        {
+            console.write( "Przemieszczanie " + shapes.size() + ( shapes.size() == 1 ? " figury..." : " figur..." ) );
+            translate.setX( 0 );
+            translate.setY( 0 );
+            for( MyShape shape : shapes )
+                ( (Node) shape ).getTransforms().add( translate );
+            cache.acquire( shapes );
+            isMoved = true;
+        }
+        snapping.snapDrag( x - startX, y - startY );
+        translate.setX( snapping.getX() );
+        translate.setY( snapping.getY() );
+    }
+
+    /**
+     * Kończy przeciąganie i zapisuje przesunięcie w geometrii figur.
+     * @return {@code true}, jeśli figury zostały przesunięte.
+     */
+    public boolean end()
+    {
+        boolean wasMoved = isMoved;
+        snapping.endDrag();
+        if( isMoved )
+        {
+            double dx = translate.getX();
+            double dy = translate.getY();
+            for( MyShape shape : shapes )
+            {
+                ( (Node) shape ).getTransforms().remove( translate );
+                model.translate( shape.getShapeId(), dx, dy );
+                shape.refresh();
+            }
+            cache.release( shapes );
+            console.write( "Przesunięto o (" + (int) dx + ", " + (int) dy + ")" );
+        }
+        shapes = new ArrayList<>();
+        isActive = false;
+        isMoved = false;
+        return wasMoved;
+    }
+
+    /**
+     * @return Czy przeciąganie jest w toku.
+     */
+    public boolean isActive()
+    {
+        return isActive;
+    }
+}
@@ -0,0 +1,166 @@
+package nano.paint.editor;
+
+import javafx.animation.PauseTransition;
+import javafx.scene.Node;
+import javafx.scene.transform.Affine;
+import javafx.util.Duration;
+import nano.paint.model.SceneModel;
+import nano.paint.shapes.MyShape;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Skalowanie zaznaczonych figur kółkiem myszy.
+ * Każdy obrót kółka od razu zmienia geometrię w modelu, ale widoki figur nie są
+ * przebudowywane - do każdej figury dołączone jest przekształcenie, które przenosi
+ * jej prostokąt opisany sprzed skalowania na prostokąt aktualny. Figury skalują się
+ * zawsze względem punktu, który nie zmienia położenia, więc obraz jest zgodny z modelem
+ * (poza grubością obramowania). Dopiero gdy kółko przestanie się obracać, przekształcenia
+ * są usuwane, a widoki odświeżane z modelu. W trakcie skalowania figury mogą być
+ * buforowane jako obraz ({@link InteractionCache}).
+ *
+ * Czas bezczynności, po którym skalowanie się kończy, można ustawić właściwością
+ * systemową {@code nano.paint.scaleIdleMillis} (domyślnie 250 ms).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see SelectionDrag
+ */
+public class SelectionScale
+{
+    /** Właściwość systemowa z czasem bezczynności kończącym skalowanie (w milisekundach). */
+    public static final String IDLE_PROPERTY = "nano.paint.scaleIdleMillis";
+
+    /** Model, w którym zapisywana jest geometria figur. */
+    private SceneModel model;
+    /** Buforowanie figur w trakcie skalowania. */
+    private InteractionCache cache;
+    /** Odlicza czas od ostatniego obrotu kółka. */
+    private final PauseTransition idle;
+    /** Skalowane figury. */
+    private List<MyShape> shapes = new ArrayList<>();
+    /** Identyfikatory skalowanych figur. */
+    private int[] ids = new int[ 0 ];
+    /** Przekształcenia dołączone do skalowanych figur. */
+    private Affine[] transforms = new Affine[ 0 ];
+    /** Prostokąty opisane na figurach przed skalowaniem (minX, minY, maxX, maxY kolejno dla każdej figury). */
+    private double[] startBounds = new double[ 0 ];
+    /** Czy skalowanie jest w toku. */
+    private boolean isActive = false;
+    /** Liczba odświeżeń widoków, których uniknięto w trakcie skalowania. */
+    private long deferredRefreshCount = 0;
+
+    /**
+     * @param model Model, w którym zapisywana będzie geometria figur.
+     * @param cache Buforowanie figur w trakcie skalowania.
+     */
+    public SelectionScale( SceneModel model, InteractionCache cache )
+    {
+        this.model = model;
+        this.cache = cache;
+        idle = new PauseTransition( Duration.millis( Math.max( 1, Integer.getInteger( IDLE_PROPERTY, 250 ) ) ) );
+        idle.setOnFinished( e -> end() );
+    }
+
+    /**
+     * Zmienia rozmiar figur o kolejne skale. Jeśli w trakcie skalowania zmieniło się zaznaczenie,
+     * poprzednie skalowanie jest najpierw kończone.
+     * @param selected Figury do przeskalowania.
+     * @param scales Skale stosowane po kolei (1.0 = bez zmian).
+     * @param count Liczba skal.
+     */
+    public void scale( List<MyShape> selected, double[] scales, int count )
+    {
+        if( isActive && !selected.equals( shapes ) )
+            end();
+        if( selected.isEmpty() )
+            return;
+        if( !isActive )
+            begin( selected );
+
+        model.rescaleAll( ids, ids.length, scales, count );
+        for( int i = 0; i < ids.length; i++ )
+        {
+            int b = 4 * i;
+            double sx = ( model.getMaxX( ids[ i ] ) - model.getMinX( ids[ i ] ) ) / extent( startBounds[ b ], startBounds[ b + 2 ] );
+            double sy = ( model.getMaxY( ids[ i ] ) - model.getMinY( ids[ i ] ) ) / extent( startBounds[ b + 1 ], startBounds[ b + 3 ] );
+            transforms[ i ].setToTransform( sx, 0, model.getMinX( ids[ i ] ) - startBounds[ b ] * sx,
+                    0, sy, model.getMinY( ids[ i ] ) - startBounds[ b + 1 ] * sy );
+        }
+        deferredRefreshCount += ids.length;
+        idle.playFromStart();
+    }
+
+    /**
+     * Kończy skalowanie: usuwa przekształcenia i odświeża widoki figur z modelu.
+     * Wywołanie, gdy skalowanie nie jest w toku, niczego nie zmienia.
+     */
+    public void end()
+    {
+        idle.stop();
+        if( !isActive )
+            return;
+        for( int i = 0; i < ids.length; i++ )
+        {
+            MyShape shape = shapes.get( i );
+            ( (Node) shape ).getTransforms().remove( transforms[ i ] );
+            if( model.contains( ids[ i ] ) )
+                shape.refresh();
+        }
+        deferredRefreshCount -= ids.length;
+        cache.release( shapes );
+        shapes = new ArrayList<>();
+        isActive = false;
+    }
+
+    /**
+     * @return Czy skalowanie jest w toku.
+     */
+    public boolean isActive()
+    {
+        return isActive;
+    }
+
+    /**
+     * @return Liczba odświeżeń widoków, których uniknięto dzięki odłożeniu ich do końca skalowania.
+     */
+    public long getDeferredRefreshCount()
+    {
+        return deferredRefreshCount;
+    }
+
+    /**
+     * Rozpoczyna skalowanie: zapamiętuje prostokąty opisane na figurach i dołącza do nich przekształcenia.
+     * @param selected Figury do przeskalowania.
+     */
+    private void begin( List<MyShape> selected )
+    {
+        shapes = new ArrayList<>( selected );
+        ids = new int[ shapes.size() ];
+        transforms = new Affine[ shapes.size() ];
+        startBounds = new double[ 4 * shapes.size() ];
+        for( int i = 0; i < ids.length; i++ )
+        {
+            ids[ i ] = shapes.get( i ).getShapeId();
+            startBounds[ 4 * i ] = model.getMinX( ids[ i ] );
+            startBounds[ 4 * i + 1 ] = model.getMinY( ids[ i ] );
+            startBounds[ 4 * i + 2 ] = model.getMaxX( ids[ i ] );
+            startBounds[ 4 * i + 3 ] = model.getMaxY( ids[ i ] );
+            transforms[ i ] = new Affine();
+            ( (Node) shapes.get( i ) ).getTransforms().add( transforms[ i ] );
+        }
+        cache.acquire( shapes );
+        isActive = true;
+    }
+
+    /**
+     * @param min Początek przedziału.
+     * @param max Koniec przedziału.
+     * @return Długość przedziału, ale nie mniej niż 1 (aby można było przez nią dzielić).
+     */
+    private static double extent( double min, double max )
+    {
+        return Math.max( max - min, 1 );
+    }
+}
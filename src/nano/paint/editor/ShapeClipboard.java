@@ -0,0 +1,138 @@
+package nano.paint.editor;
+
+import javafx.scene.input.Clipboard;
+import javafx.scene.input.ClipboardContent;
+import javafx.scene.input.DataFormat;
+import nano.paint.model.NumberWriter;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.ShapeRecord;
+import nano.paint.model.Style;
+import nano.paint.model.UsedStyles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Kopiowanie figur do schowka systemowego i wklejanie ich ze schowka.
+ * Figury zapisywane są w tym samym formacie tekstowym co w plikach ({@link ShapeCodec}):
+ * najpierw tablica stylów, a potem po jednej linii na figurę, w kolejności rysowania.
+ * Dane trafiają do schowka pod własnym typem, więc nie mieszają się z tekstem kopiowanym
+ * w innych programach, ale można je wkleić w innym oknie programu.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see ShapeCodec
+ */
+public class ShapeClipboard
+{
+    /** Typ danych figur w schowku systemowym. */
+    public static final DataFormat FORMAT = lookupFormat( "application/x-nano-paint-shapes" );
+
+    /** Model z danymi figur. */
+    private SceneModel model;
+
+    /**
+     * @param model Model z danymi figur.
+     */
+    public ShapeClipboard( SceneModel model )
+    {
+        this.model = model;
+    }
+
+    /**
+     * Kopiuje figury do schowka systemowego.
+     * @param ids Identyfikatory figur w kolejności rysowania (od najniższej).
+     */
+    public void copy( int[] ids )
+    {
+        ClipboardContent content = new ClipboardContent();
+        content.put( FORMAT, format( model, ids ) );
+        Clipboard.getSystemClipboard().setContent( content );
+    }
+
+    /**
+     * @return Czy w schowku systemowym są figury.
+     */
+    public boolean hasShapes()
+    {
+        return Clipboard.getSystemClipboard().hasContent( FORMAT );
+    }
+
+    /**
+     * Odczytuje figury ze schowka systemowego.
+     * @return Figury w kolejności rysowania (bez identyfikatorów) lub {@code null}, jeśli w schowku nie ma figur.
+     * @throws IllegalArgumentException gdy schowek zawiera niepoprawne dane.
+     */
+    public List<ShapeRecord> paste()
+    {
+        Object content = Clipboard.getSystemClipboard().getContent( FORMAT );
+        if( !( content instanceof String ) )
+            return null;
+        return parse( (String) content );
+    }
+
+    /**
+     * Zapisuje figury w formie tekstu. Zapisywane są tylko style używane przez kopiowane figury,
+     * ponumerowane od nowa ({@link UsedStyles}).
+     * @param model Model z danymi figur.
+     * @param ids Identyfikatory figur w kolejności rysowania (od najniższej).
+     * @return Figury w formie tekstu.
+     */
+    public static String format( SceneModel model, int[] ids )
+    {
+        StringBuilder out = new StringBuilder( ids.length * 32 );
+        UsedStyles styles = new UsedStyles( model, ids );
+        for( Style style : styles.getStyles() )
+            out.append( ShapeCodec.formatStyle( style, NumberWriter.EXACT ) ).append( '\n' );
+        for( int id : ids )
+        {
+            ShapeCodec.formatHeader( model, id, styles.indexOf( id ), out );
+            ShapeCodec.formatValues( model, id, NumberWriter.EXACT, out ).append( '\n' );
+        }
+        return out.toString();
+    }
+
+    /**
+     * Odczytuje figury z tekstu zapisanego przez {@link ShapeClipboard#format(SceneModel, int[])}.
+     * Zapisane identyfikatory są pomijane - wklejone figury zawsze dostają nowe.
+     * @param text Figury w formie tekstu.
+     * @return Figury w kolejności rysowania.
+     * @throws IllegalArgumentException gdy tekst zawiera niepoprawne dane.
+     */
+    public static List<ShapeRecord> parse( String text )
+    {
+        List<Style> styles = new ArrayList<>();
+        List<ShapeRecord> records = new ArrayList<>();
+        int start = 0;
+        while( start < text.length() )
+        {
+            int end = text.indexOf( '\n', start );
+            if( end < 0 )
+                end = text.length();
+            String line = text.substring( start, end );
+            start = end + 1;
+            if( line.isEmpty() )
+                continue;
+            if( ShapeCodec.isStyle( line ) )
+                styles.add( ShapeCodec.parseStyle( line ) );
+            else
+            {
+                ShapeRecord record = ShapeCodec.parse( line, styles );
+                records.add( new ShapeRecord( record.getKind(), record.getStyle(), record.getCoords() ) );
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Zwraca typ danych o podanej nazwie, tworząc go, jeśli nie był jeszcze zarejestrowany.
+     * @param mimeType Nazwa typu danych.
+     * @return Typ danych.
+     */
+    private static DataFormat lookupFormat( String mimeType )
+    {
+        DataFormat format = DataFormat.lookupMimeType( mimeType );
+        return format != null ? format : new DataFormat( mimeType );
+    }
+}
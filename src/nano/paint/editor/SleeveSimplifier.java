@@ -0,0 +1,163 @@
+package nano.paint.editor;
+
+/**
+ * Upraszczanie łamanej w trakcie jej rysowania (algorytm "rękawa", ang. sleeve fitting).
+ * Punkty przychodzą po kolei, a upraszczanie zapamiętuje tylko ostatni wierzchołek, ostatni
+ * punkt i zakres kierunków, w którym może leżeć następny wierzchołek - niezależnie od długości
+ * łamanej zajmuje więc stałą pamięć, a każdy punkt przetwarza w czasie O(1).
+ *
+ * Każdy pominięty punkt leży nie dalej niż {@code tolerance} od prostej wyznaczonej przez
+ * wierzchołki, między którymi został pominięty: dla każdego punktu zapamiętywany jest zakres
+ * kierunków z ostatniego wierzchołka, przy których ta odległość nie jest przekroczona, a zakresy
+ * kolejnych punktów są ze sobą przecinane. Gdy kierunek do nowego punktu wypada poza część wspólną
+ * albo linia zawraca w stronę ostatniego wierzchołka (o więcej niż {@code tolerance}),
+ * poprzedni punkt staje się wierzchołkiem.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see FreehandDrawing
+ */
+public class SleeveSimplifier
+{
+    /**
+     * Odbiorca wierzchołków uproszczonej łamanej.
+     */
+    public interface VertexSink
+    {
+        /**
+         * Wywoływane, gdy punkt staje się kolejnym wierzchołkiem.
+         * @param x Współrzędna X wierzchołka.
+         * @param y Współrzędna Y wierzchołka.
+         */
+        void vertex( double x, double y );
+    }
+
+    /** Największa odległość pominiętego punktu od łamanej. */
+    private final double tolerance;
+    /** Odbiorca wierzchołków. */
+    private final VertexSink sink;
+
+    /** Współrzędna X ostatniego wierzchołka. */
+    private double anchorX;
+    /** Współrzędna Y ostatniego wierzchołka. */
+    private double anchorY;
+    /** Współrzędna X ostatniego punktu. */
+    private double lastX;
+    /** Współrzędna Y ostatniego punktu. */
+    private double lastY;
+    /** Odległość najdalszego punktu od ostatniego wierzchołka. */
+    private double farthest;
+    /** Czy zakres kierunków jest już ograniczony przez któryś punkt. */
+    private boolean hasSleeve = false;
+    /** Kierunek, względem którego mierzone są granice zakresu. */
+    private double direction;
+    /** Dolna granica zakresu kierunków (względem {@link SleeveSimplifier#direction}). */
+    private double low;
+    /** Górna granica zakresu kierunków (względem {@link SleeveSimplifier#direction}). */
+    private double high;
+    /** Liczba przetworzonych punktów. */
+    private int sampleCount = 0;
+    /** Liczba wierzchołków (łącznie z pierwszym punktem). */
+    private int vertexCount = 0;
+
+    /**
+     * @param tolerance Największa odległość pominiętego punktu od łamanej.
+     * @param sink Odbiorca kolejnych wierzchołków (bez pierwszego punktu, przekazanego do {@link SleeveSimplifier#begin(double, double)}).
+     */
+    public SleeveSimplifier( double tolerance, VertexSink sink )
+    {
+        this.tolerance = tolerance;
+        this.sink = sink;
+    }
+
+    /**
+     * Rozpoczyna nową łamaną. Pierwszy punkt jest zawsze jej wierzchołkiem.
+     * @param x Współrzędna X pierwszego punktu.
+     * @param y Współrzędna Y pierwszego punktu.
+     */
+    public void begin( double x, double y )
+    {
+        anchorX = x;
+        anchorY = y;
+        lastX = x;
+        lastY = y;
+        hasSleeve = false;
+        farthest = 0;
+        sampleCount = 1;
+        vertexCount = 1;
+    }
+
+    /**
+     * Dodaje kolejny punkt łamanej. Jeśli poprzedni punkt stał się wierzchołkiem,
+     * zostaje on przekazany do odbiorcy.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     */
+    public void add( double x, double y )
+    {
+        sampleCount++;
+        if( x == lastX && y == lastY )
+            return;
+        if( !fits( x, y ) )
+        {
+            sink.vertex( lastX, lastY );
+            vertexCount++;
+            anchorX = lastX;
+            anchorY = lastY;
+            hasSleeve = false;
+            farthest = 0;
+            fits( x, y );
+        }
+        lastX = x;
+        lastY = y;
+    }
+
+    /** @return Liczba przetworzonych punktów. */
+    public int getSampleCount() { return sampleCount; }
+
+    /** @return Liczba wierzchołków przekazanych dotąd do odbiorcy (łącznie z pierwszym punktem). */
+    public int getVertexCount() { return vertexCount; }
+
+    /**
+     * Sprawdza, czy punkt może być końcem odcinka z ostatniego wierzchołka, i jeśli tak - zawęża zakres kierunków.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     * @return {@code false}, jeśli kierunek do punktu wypada poza zakres albo linia zawraca (zakres nie jest wtedy zmieniany).
+     */
+    private boolean fits( double x, double y )
+    {
+        double dx = x - anchorX;
+        double dy = y - anchorY;
+        double distance = Math.sqrt( dx * dx + dy * dy );
+        // Linia zawraca - pominięte punkty wystawałyby poza odcinek.
+        if( distance < farthest - tolerance )
+            return false;
+        double previousFarthest = farthest;
+        farthest = Math.max( farthest, distance );
+        // Punkt leżący blisko wierzchołka nie ogranicza kierunku.
+        if( distance <= tolerance )
+            return true;
+        double angle = Math.atan2( dy, dx );
+        double spread = Math.asin( tolerance / distance );
+        if( !hasSleeve )
+        {
+            direction = angle;
+            low = -spread;
+            high = spread;
+            hasSleeve = true;
+            return true;
+        }
+        double relative = angle - direction;
+        if( relative > Math.PI )
+            relative -= 2 * Math.PI;
+        else if( relative < -Math.PI )
+            relative += 2 * Math.PI;
+        if( relative < low || relative > high )
+        {
+            farthest = previousFarthest;
+            return false;
+        }
+        low = Math.max( low, relative - spread );
+        high = Math.min( high, relative + spread );
+        return true;
+    }
+}
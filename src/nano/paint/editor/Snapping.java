@@ -0,0 +1,208 @@
+package nano.paint.editor;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Circle;
+import nano.paint.model.SceneModel;
+import nano.paint.model.SnapIndex;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Przyciąganie kursora do wierzchołków, narożników i środków figur.
+ * Przy dodawaniu figury przyciągana jest pozycja kursora, a przy przeciąganiu
+ * zaznaczonych figur - ich punkt leżący najbliżej miejsca, w którym chwycono figury.
+ * Punkty wyszukiwane są w {@link SnapIndex}, a punkt, do którego nastąpiło
+ * przyciągnięcie, oznaczany jest na planszy kółkiem.
+ *
+ * Odległość przyciągania w pikselach można zmienić właściwością systemową
+ * {@code nano.paint.snapDistance} (0 wyłącza przyciąganie).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see SnapIndex
+ */
+public class Snapping
+{
+    /** Właściwość systemowa z odległością przyciągania w pikselach. */
+    public static final String DISTANCE_PROPERTY = "nano.paint.snapDistance";
+    /** Domyślna odległość przyciągania w pikselach. */
+    private static final int DEFAULT_DISTANCE = 8;
+
+    /** Plansza, na której oznaczany jest punkt przyciągania. */
+    private Pane board;
+    /** Model z danymi figur. */
+    private SceneModel model;
+    /** Punkty przyciągania figur z modelu. */
+    private SnapIndex index;
+
+    /** Znacznik punktu przyciągania widoczny na planszy. */
+    private final Circle marker = new Circle( 5 );
+    /** Największa odległość, z której kursor jest przyciągany. */
+    private double distance = Integer.getInteger( DISTANCE_PROPERTY, DEFAULT_DISTANCE );
+    /** Czy przyciąganie jest włączone. */
+    private boolean isEnabled = true;
+    /** Współrzędna X wyniku ostatniego przyciągania. */
+    private double x;
+    /** Współrzędna Y wyniku ostatniego przyciągania. */
+    private double y;
+    /** Punkt przeciąganych figur, który jest przyciągany, lub -1, jeśli go nie ma. */
+    private int anchor = -1;
+    /** Współrzędna X przyciąganego punktu przeciąganych figur. */
+    private double anchorX;
+    /** Współrzędna Y przyciąganego punktu przeciąganych figur. */
+    private double anchorY;
+
+    /**
+     * @param board Plansza, na której oznaczany będzie punkt przyciągania.
+     * @param model Model z danymi figur.
+     */
+    public Snapping( Pane board, SceneModel model )
+    {
+        this.board = board;
+        this.model = model;
+        this.index = new SnapIndex( model );
+
+        marker.setFill( Color.TRANSPARENT );
+        marker.setStroke( Color.ORANGERED );
+        marker.setStrokeWidth( 2 );
+        marker.setMouseTransparent( true );
+        marker.setViewOrder( -Double.MAX_VALUE );
+    }
+
+    /**
+     * Przyciąga punkt do najbliższego punktu figur i oznacza go na planszy.
+     * Wynik można odczytać przez {@link Snapping#getX()} i {@link Snapping#getY()}
+     * - jeśli w pobliżu nie ma żadnego punktu, jest to punkt podany.
+     * @param x Współrzędna X kursora.
+     * @param y Współrzędna Y kursora.
+     * @param accept Sprawdza, czy do figury o podanym identyfikatorze można przyciągać.
+     * @return {@code true}, jeśli punkt został przyciągnięty.
+     */
+    public boolean snap( double x, double y, IntPredicate accept )
+    {
+        int point = isEnabled ? index.nearest( x, y, distance, accept ) : -1;
+        if( point < 0 )
+        {
+            this.x = x;
+            this.y = y;
+            hide();
+            return false;
+        }
+        this.x = index.getX( point );
+        this.y = index.getY( point );
+        show( this.x, this.y );
+        return true;
+    }
+
+    /**
+     * Rozpoczyna przyciąganie przeciąganych (zaznaczonych) figur.
+     * Przyciągany będzie punkt tych figur leżący najbliżej kursora.
+     * @param x Współrzędna X kursora.
+     * @param y Współrzędna Y kursora.
+     */
+    public void beginDrag( double x, double y )
+    {
+        anchor = isEnabled ? index.nearest( x, y, Double.POSITIVE_INFINITY, model::isFocused ) : -1;
+        if( anchor >= 0 )
+        {
+            anchorX = index.getX( anchor );
+            anchorY = index.getY( anchor );
+        }
+    }
+
+    /**
+     * Przyciąga przesunięcie przeciąganych figur tak, aby ich punkt wybrany
+     * w {@link Snapping#beginDrag(double, double)} trafił na najbliższy punkt
+     * pozostałych figur. Wynik można odczytać przez {@link Snapping#getX()} i {@link Snapping#getY()}.
+     * @param dx Przesunięcie w osi X.
+     * @param dy Przesunięcie w osi Y.
+     * @return {@code true}, jeśli przesunięcie zostało przyciągnięte.
+     */
+    public boolean snapDrag( double dx, double dy )
+    {
+        if( anchor < 0 || !snap( anchorX + dx, anchorY + dy, id -> !model.isFocused( id ) ) )
+        {
+            x = dx;
+            y = dy;
+            return false;
+        }
+        x -= anchorX;
+        y -= anchorY;
+        return true;
+    }
+
+    /**
+     * Kończy przyciąganie przeciąganych figur i ukrywa znacznik.
+     */
+    public void endDrag()
+    {
+        anchor = -1;
+        hide();
+    }
+
+    /**
+     * @return Współrzędna X (lub przesunięcie w osi X) wyniku ostatniego przyciągania.
+     */
+    public double getX()
+    {
+        return x;
+    }
+
+    /**
+     * @return Współrzędna Y (lub przesunięcie w osi Y) wyniku ostatniego przyciągania.
+     */
+    public double getY()
+    {
+        return y;
+    }
+
+    /**
+     * Ukrywa znacznik punktu przyciągania.
+     */
+    public void hide()
+    {
+        if( marker.getParent() != null )
+            board.getChildren().remove( marker );
+    }
+
+    /**
+     * Włącza lub wyłącza przyciąganie.
+     * @param isEnabled Czy przyciąganie ma być włączone.
+     */
+    public void setEnabled( boolean isEnabled )
+    {
+        this.isEnabled = isEnabled;
+        if( !isEnabled )
+            endDrag();
+    }
+
+    /**
+     * @return Czy przyciąganie jest włączone.
+     */
+    public boolean isEnabled()
+    {
+        return isEnabled;
+    }
+
+    /**
+     * @return Punkty przyciągania figur z modelu.
+     */
+    public SnapIndex getIndex()
+    {
+        return index;
+    }
+
+    /**
+     * Pokazuje znacznik w podanym punkcie.
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     */
+    private void show( double x, double y )
+    {
+        marker.setCenterX( x );
+        marker.setCenterY( y );
+        if( marker.getParent() == null )
+            board.getChildren().add( marker );
+    }
+}
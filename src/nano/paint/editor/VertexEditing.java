@@ -0,0 +1,426 @@
+package nano.paint.editor;
+
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.Rectangle;
+import nano.paint.Console;
+import nano.paint.model.SceneModel;
+import nano.paint.shapes.MyPolygon;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+/**
+ * Edycja wierzchołków zaznaczonego wielokąta.
+ * Wierzchołki oznaczone są uchwytami, które można przeciągać myszą. Dwuklik na uchwycie usuwa
+ * wierzchołek, a dwuklik na krawędzi wstawia w tym miejscu nowy.
+ *
+ * Przeciągnięcie wierzchołka zmienia w modelu tylko ten jeden wierzchołek
+ * ({@link SceneModel#moveVertex(int, int, double, double)}), więc kosztuje tyle samo niezależnie
+ * od liczby wierzchołków. Uchwyty tworzone są tylko dla wierzchołków leżących na planszy, i to
+ * najwyżej dla {@link VertexEditing#MAX_HANDLES} z nich - jeśli na planszy jest ich więcej,
+ * uchwyty dostają wierzchołki najbliższe kursorowi i podążają za nim.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Editor
+ * @see MyPolygon
+ */
+public class VertexEditing
+{
+    /** Największa liczba uchwytów widocznych naraz (właściwość systemowa {@code nano.paint.maxVertexHandles}). */
+    public static final int MAX_HANDLES = Math.max( 1, Integer.getInteger( "nano.paint.maxVertexHandles", 500 ) );
+    /** Długość boku uchwytu. */
+    private static final double HANDLE_SIZE = 7;
+    /** Największa odległość kursora od krawędzi, przy której dwuklik wstawia wierzchołek. */
+    private static final double EDGE_DISTANCE = 5;
+    /** Najmniejsza liczba wierzchołków wielokąta. */
+    private static final int MIN_VERTICES = 3;
+
+    /** Plansza, na której rysowane są uchwyty. */
+    private Pane board;
+    /** Model z danymi figur. */
+    private SceneModel model;
+    /** Przyciąganie przeciąganego wierzchołka do punktów innych figur. */
+    private Snapping snapping;
+    /** Konsola, do której wypisywane są komunikaty. */
+    private Console console;
+
+    /** Edytowany wielokąt lub {@code null}, jeśli edycja nie jest w toku. */
+    private MyPolygon polygon;
+    /** Uchwyty (tworzone w miarę potrzeby i używane ponownie). */
+    private ArrayList<Rectangle> handles = new ArrayList<>();
+    /** Numery wierzchołków przypisanych do kolejnych uchwytów. */
+    private int[] handleVertex = new int[ 0 ];
+    /** Liczba uchwytów przypisanych do wierzchołków. */
+    private int handleCount = 0;
+    /** Czy na planszy jest więcej wierzchołków niż uchwytów (uchwyty podążają wtedy za kursorem). */
+    private boolean isCapped = false;
+    /** Numery wierzchołków leżących na planszy. */
+    private int[] candidates = new int[ 0 ];
+    /** Kwadraty odległości wierzchołków z {@link VertexEditing#candidates} od kursora. */
+    private double[] distances = new double[ 0 ];
+
+    /** Współrzędna X punktu krawędzi znalezionego przez {@link VertexEditing#edgeAt(double, double)}. */
+    private double edgeX;
+    /** Współrzędna Y punktu krawędzi znalezionego przez {@link VertexEditing#edgeAt(double, double)}. */
+    private double edgeY;
+
+    /** Uchwyt przeciąganego wierzchołka lub -1. */
+    private int dragged = -1;
+    /** Czy przeciągany wierzchołek został przesunięty. */
+    private boolean isMoved = false;
+
+    /**
+     * @param board Plansza, na której rysowane będą uchwyty.
+     * @param model Model z danymi figur.
+     * @param snapping Przyciąganie przeciąganego wierzchołka do punktów innych figur.
+     * @param console Konsola, do której wypisywane będą komunikaty.
+     */
+    public VertexEditing( Pane board, SceneModel model, Snapping snapping, Console console )
+    {
+        this.board = board;
+        this.model = model;
+        this.snapping = snapping;
+        this.console = console;
+    }
+
+    /**
+     * Rozpoczyna edycję wierzchołków wielokąta.
+     * @param polygon Edytowany wielokąt.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void begin( MyPolygon polygon, double x, double y )
+    {
+        end();
+        this.polygon = polygon;
+        refresh( x, y );
+    }
+
+    /**
+     * Kończy edycję wierzchołków i usuwa uchwyty z planszy.
+     */
+    public void end()
+    {
+        if( polygon == null )
+            return;
+        snapping.hide();
+        board.getChildren().removeAll( new HashSet<>( handles ) );
+        handles = new ArrayList<>();
+        handleCount = 0;
+        dragged = -1;
+        polygon = null;
+    }
+
+    /**
+     * @return Czy edycja wierzchołków jest w toku (i wielokąt wciąż jest w modelu).
+     */
+    public boolean isActive()
+    {
+        return polygon != null && model.contains( polygon.getShapeId() );
+    }
+
+    /**
+     * @return Edytowany wielokąt lub {@code null}.
+     */
+    public MyPolygon getPolygon()
+    {
+        return polygon;
+    }
+
+    /**
+     * Przypisuje uchwyty wierzchołkom najbliższym kursorowi, jeśli wszystkich wierzchołków
+     * na planszy jest więcej niż uchwytów.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void pointerMoved( double x, double y )
+    {
+        if( isCapped && dragged < 0 && isActive() )
+            refresh( x, y );
+    }
+
+    /**
+     * Chwyta wierzchołek, którego uchwyt leży pod kursorem.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @return {@code true}, jeśli pod kursorem był uchwyt.
+     */
+    public boolean press( double x, double y )
+    {
+        if( !isActive() )
+            return false;
+        dragged = handleAt( x, y );
+        isMoved = false;
+        return dragged >= 0;
+    }
+
+    /**
+     * Przesuwa chwycony wierzchołek do kursora (lub do punktu innej figury, do którego został przyciągnięty).
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void drag( double x, double y )
+    {
+        if( dragged < 0 || !isActive() )
+            return;
+        int id = polygon.getShapeId();
+        if( snapping.snap( x, y, other -> other != id ) )
+        {
+            x = snapping.getX();
+            y = snapping.getY();
+        }
+        polygon.moveVertex( handleVertex[ dragged ], x, y );
+        place( handles.get( dragged ), x, y );
+        isMoved = true;
+    }
+
+    /**
+     * Puszcza chwycony wierzchołek.
+     */
+    public void release()
+    {
+        if( dragged < 0 )
+            return;
+        if( isMoved && isActive() )
+            console.write( "Przesunięto wierzchołek " + ( handleVertex[ dragged ] + 1 ) );
+        snapping.hide();
+        dragged = -1;
+    }
+
+    /**
+     * Usuwa wierzchołek, którego uchwyt leży pod kursorem, albo wstawia nowy wierzchołek
+     * na krawędzi leżącej pod kursorem.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    public void doubleClick( double x, double y )
+    {
+        if( !isActive() )
+            return;
+        int id = polygon.getShapeId();
+        int vertexCount = model.getCoordCount( id ) / 2;
+        int handle = handleAt( x, y );
+        if( handle >= 0 )
+        {
+            if( vertexCount <= MIN_VERTICES )
+            {
+                console.write( "Wielokąt musi mieć co najmniej " + MIN_VERTICES + " wierzchołki!" );
+                return;
+            }
+            int vertex = handleVertex[ handle ];
+            polygon.removeVertex( vertex );
+            console.write( "Usunięto wierzchołek " + ( vertex + 1 ) );
+            refresh( x, y );
+            return;
+        }
+
+        int edge = edgeAt( x, y );
+        if( edge < 0 )
+            return;
+        polygon.insertVertex( edge + 1, edgeX, edgeY );
+        console.write( "Wstawiono wierzchołek " + ( edge + 2 ) );
+        refresh( x, y );
+    }
+
+    /**
+     * Sprawdza, czy pod kursorem jest uchwyt lub krawędź edytowanego wielokąta.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @return {@code true}, jeśli pod kursorem jest uchwyt lub krawędź.
+     */
+    public boolean isNear( double x, double y )
+    {
+        return isActive() && ( handleAt( x, y ) >= 0 || edgeAt( x, y ) >= 0 );
+    }
+
+    /**
+     * Wyszukuje krawędź najbliższą kursorowi. Przegląda wszystkie krawędzie, więc
+     * wywoływana jest tylko przy wciśnięciu przycisku myszy, a nie przy każdym ruchu.
+     * Punkt krawędzi najbliższy kursorowi zapisywany jest w {@link VertexEditing#edgeX} i {@link VertexEditing#edgeY}.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @return Numer krawędzi (krawędź i zaczyna się w wierzchołku i) lub -1, jeśli żadna nie leży blisko kursora.
+     */
+    private int edgeAt( double x, double y )
+    {
+        int id = polygon.getShapeId();
+        int vertexCount = model.getCoordCount( id ) / 2;
+        int bestEdge = -1;
+        double bestDistance = EDGE_DISTANCE * EDGE_DISTANCE;
+        for( int edge = 0; edge < vertexCount; edge++ )
+        {
+            int next = edge + 1 == vertexCount ? 0 : edge + 1;
+            double x1 = model.getCoord( id, 2 * edge );
+            double y1 = model.getCoord( id, 2 * edge + 1 );
+            double dx = model.getCoord( id, 2 * next ) - x1;
+            double dy = model.getCoord( id, 2 * next + 1 ) - y1;
+            double length = dx * dx + dy * dy;
+            double t = length == 0 ? 0 : Math.min( 1, Math.max( 0, ( ( x - x1 ) * dx + ( y - y1 ) * dy ) / length ) );
+            double px = x1 + t * dx;
+            double py = y1 + t * dy;
+            double distance = ( px - x ) * ( px - x ) + ( py - y ) * ( py - y );
+            if( distance < bestDistance )
+            {
+                bestEdge = edge;
+                bestDistance = distance;
+                edgeX = px;
+                edgeY = py;
+            }
+        }
+        return bestEdge;
+    }
+
+    /**
+     * Wyszukuje uchwyt pod kursorem.
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     * @return Numer uchwytu najbliższego kursorowi lub -1, jeśli pod kursorem nie ma uchwytu.
+     */
+    private int handleAt( double x, double y )
+    {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for( int k = 0; k < handleCount; k++ )
+        {
+            Rectangle handle = handles.get( k );
+            double dx = handle.getX() + HANDLE_SIZE / 2 - x;
+            double dy = handle.getY() + HANDLE_SIZE / 2 - y;
+            if( Math.abs( dx ) > HANDLE_SIZE / 2 + 1 || Math.abs( dy ) > HANDLE_SIZE / 2 + 1 )
+                continue;
+            if( dx * dx + dy * dy < bestDistance )
+            {
+                best = k;
+                bestDistance = dx * dx + dy * dy;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Przypisuje uchwyty wierzchołkom leżącym na planszy (a jeśli jest ich za dużo - najbliższym kursorowi).
+     * @param x Pozycja X kursora.
+     * @param y Pozycja Y kursora.
+     */
+    private void refresh( double x, double y )
+    {
+        int id = polygon.getShapeId();
+        int vertexCount = model.getCoordCount( id ) / 2;
+        if( candidates.length < vertexCount )
+        {
+            candidates = new int[ vertexCount ];
+            distances = new double[ vertexCount ];
+        }
+        double width = board.getWidth();
+        double height = board.getHeight();
+        int count = 0;
+        for( int vertex = 0; vertex < vertexCount; vertex++ )
+        {
+            double vx = model.getCoord( id, 2 * vertex );
+            double vy = model.getCoord( id, 2 * vertex + 1 );
+            if( vx < 0 || vy < 0 || vx > width || vy > height )
+                continue;
+            candidates[ count ] = vertex;
+            distances[ count ] = ( vx - x ) * ( vx - x ) + ( vy - y ) * ( vy - y );
+            count++;
+        }
+        isCapped = count > MAX_HANDLES;
+        if( isCapped )
+        {
+            selectNearest( 0, count - 1, MAX_HANDLES );
+            count = MAX_HANDLES;
+        }
+
+        if( handles.size() < count )
+        {
+            ArrayList<Rectangle> created = new ArrayList<>( count - handles.size() );
+            while( handles.size() + created.size() < count )
+                created.add( createHandle() );
+            handles.addAll( created );
+            board.getChildren().addAll( created );
+        }
+        if( handleVertex.length < count )
+            handleVertex = new int[ handles.size() ];
+        handleCount = count;
+        for( int k = 0; k < handles.size(); k++ )
+        {
+            Rectangle handle = handles.get( k );
+            handle.setVisible( k < count );
+            if( k >= count )
+                continue;
+            handleVertex[ k ] = candidates[ k ];
+            place( handle, model.getCoord( id, 2 * candidates[ k ] ), model.getCoord( id, 2 * candidates[ k ] + 1 ) );
+        }
+    }
+
+    /**
+     * Przestawia wierzchołki w {@link VertexEditing#candidates} tak, aby pierwsze {@code k}
+     * z nich było najbliżej kursora (w dowolnej kolejności).
+     * @param from Początek zakresu (włącznie).
+     * @param to Koniec zakresu (włącznie).
+     * @param k Liczba najbliższych wierzchołków.
+     */
+    private void selectNearest( int from, int to, int k )
+    {
+        while( from < to )
+        {
+            double pivot = distances[ ( from + to ) >>> 1 ];
+            int i = from;
+            int j = to;
+            while( i <= j )
+            {
+                while( distances[ i ] < pivot )
+                    i++;
+                while( distances[ j ] > pivot )
+                    j--;
+                if( i <= j )
+                    swap( i++, j-- );
+            }
+            if( k - 1 <= j )
+                to = j;
+            else if( k - 1 >= i )
+                from = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Zamienia miejscami dwa wierzchołki w {@link VertexEditing#candidates}.
+     * @param i Pierwsza pozycja.
+     * @param j Druga pozycja.
+     */
+    private void swap( int i, int j )
+    {
+        int vertex = candidates[ i ];
+        candidates[ i ] = candidates[ j ];
+        candidates[ j ] = vertex;
+        double distance = distances[ i ];
+        distances[ i ] = distances[ j ];
+        distances[ j ] = distance;
+    }
+
+    /**
+     * @return Nowy uchwyt wierzchołka.
+     */
+    private static Rectangle createHandle()
+    {
+        Rectangle handle = new Rectangle( HANDLE_SIZE, HANDLE_SIZE, Color.WHITE );
+        handle.setStroke( Color.DODGERBLUE );
+        handle.setMouseTransparent( true );
+        handle.setViewOrder( -Double.MAX_VALUE );
+        return handle;
+    }
+
+    /**
+     * Ustawia uchwyt na wierzchołku.
+     * @param handle Uchwyt.
+     * @param x Współrzędna X wierzchołka.
+     * @param y Współrzędna Y wierzchołka.
+     */
+    private static void place( Rectangle handle, double x, double y )
+    {
+        handle.setX( x - HANDLE_SIZE / 2 );
+        handle.setY( y - HANDLE_SIZE / 2 );
+    }
+}
@@ -0,0 +1,210 @@
+package nano.paint.model;
+
+import java.util.Arrays;
+
+/**
+ * Układ współrzędnych figury złożonej ({@link SceneModel#COMPOUND}).
+ * Figura złożona to ciąg części, a każda część zapisana jest jako:
+ * <pre>
+ * rodzaj, czerwony, zielony, niebieski, nieprzezroczystość, liczba współrzędnych, współrzędne...
+ * </pre>
+ * Rodzaj części to {@link SceneModel#RECTANGLE}, {@link SceneModel#CIRCLE} lub
+ * {@link SceneModel#POLYGON}, a jej współrzędne mają taki sam układ, jak w zwykłej figurze.
+ * Każda część pamięta własny kolor wypełnienia, a obramowanie jest wspólne dla całej figury.
+ * Dzięki temu figura złożona jest zwykłą tablicą liczb i może leżeć we wspólnej puli współrzędnych.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ */
+public final class CompoundLayout
+{
+    /** Liczba komórek nagłówka części (rodzaj, kolor, liczba współrzędnych). */
+    public static final int HEADER = 6;
+
+    /** Klasa zawiera wyłącznie metody statyczne. */
+    private CompoundLayout()
+    {
+    }
+
+    /**
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @return Rodzaj części.
+     */
+    public static byte kind( double[] coords, int part )
+    {
+        return (byte) coords[ part ];
+    }
+
+    /**
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @param base Kolor obramowania całej figury.
+     * @return Styl części: jej wypełnienie z obramowaniem całej figury.
+     */
+    public static Style style( double[] coords, int part, Style base )
+    {
+        return base.withFill( coords[ part + 1 ], coords[ part + 2 ], coords[ part + 3 ], coords[ part + 4 ] );
+    }
+
+    /**
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @return Indeks pierwszej współrzędnej części.
+     */
+    public static int valuesStart( double[] coords, int part )
+    {
+        return part + HEADER;
+    }
+
+    /**
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @return Liczba współrzędnych części.
+     */
+    public static int valueCount( double[] coords, int part )
+    {
+        return (int) coords[ part + HEADER - 1 ];
+    }
+
+    /**
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @return Indeks początku następnej części.
+     */
+    public static int next( double[] coords, int part )
+    {
+        return part + HEADER + valueCount( coords, part );
+    }
+
+    /**
+     * Zmienia kolor wypełnienia części.
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     * @param r Składowa czerwona.
+     * @param g Składowa zielona.
+     * @param b Składowa niebieska.
+     * @param a Nieprzezroczystość.
+     */
+    public static void setFill( double[] coords, int part, double r, double g, double b, double a )
+    {
+        coords[ part + 1 ] = r;
+        coords[ part + 2 ] = g;
+        coords[ part + 3 ] = b;
+        coords[ part + 4 ] = a;
+    }
+
+    /**
+     * Sprawdza, czy fragment tablicy jest poprawną figurą złożoną.
+     * @param coords Tablica ze współrzędnymi.
+     * @param start Indeks pierwszej komórki figury.
+     * @param end Indeks za ostatnią komórką figury.
+     * @throws IllegalArgumentException gdy układ współrzędnych jest niepoprawny.
+     */
+    public static void check( double[] coords, int start, int end )
+    {
+        if( start == end )
+            throw new IllegalArgumentException( "Figura złożona wymaga co najmniej jednej części" );
+        for( int part = start; part < end; )
+        {
+            if( part + HEADER > end )
+                throw new IllegalArgumentException( "Niepełny nagłówek części figury złożonej" );
+            double count = coords[ part + HEADER - 1 ];
+            if( count != Math.rint( count ) || count < 0 || part + HEADER + count > end )
+                throw new IllegalArgumentException( "Niepoprawna liczba współrzędnych części figury złożonej" );
+            switch( kind( coords, part ) )
+            {
+            case SceneModel.RECTANGLE:
+                if( count != 4 )
+                    throw new IllegalArgumentException( "Prostokąt wymaga 4 współrzędnych" );
+                break;
+            case SceneModel.CIRCLE:
+                if( count != 3 )
+                    throw new IllegalArgumentException( "Koło wymaga 3 współrzędnych" );
+                break;
+            case SceneModel.POLYGON:
+                if( count % 2 != 0 || count < 6 )
+                    throw new IllegalArgumentException( "Wielokąt wymaga co najmniej 3 wierzchołków" );
+                break;
+            default:
+                throw new IllegalArgumentException( "Nieznany rodzaj części: " + coords[ part ] );
+            }
+            part = next( coords, part );
+        }
+    }
+
+    /**
+     * Składanie współrzędnych figury złożonej z kolejnych części.
+     */
+    public static class Builder
+    {
+        /** Dotychczas zapisane współrzędne. */
+        private double[] coords = new double[ 64 ];
+        /** Liczba zajętych komórek. */
+        private int size = 0;
+        /** Liczba dodanych części. */
+        private int parts = 0;
+
+        /**
+         * Dodaje część na końcu figury (czyli nad wcześniejszymi częściami o tym samym kolorze).
+         * @param kind Rodzaj części.
+         * @param fill Styl, z którego brany jest kolor wypełnienia części.
+         * @param values Współrzędne części.
+         * @return Ten sam obiekt.
+         */
+        public Builder add( byte kind, Style fill, double[] values )
+        {
+            ensureCapacity( size + HEADER + values.length );
+            coords[ size ] = kind;
+            coords[ size + 1 ] = fill.getFillRed();
+            coords[ size + 2 ] = fill.getFillGreen();
+            coords[ size + 3 ] = fill.getFillBlue();
+            coords[ size + 4 ] = fill.getFillOpacity();
+            coords[ size + 5 ] = values.length;
+            System.arraycopy( values, 0, coords, size + HEADER, values.length );
+            size += HEADER + values.length;
+            parts++;
+            return this;
+        }
+
+        /**
+         * Dodaje wszystkie części innej figury złożonej.
+         * @param compound Współrzędne figury złożonej.
+         * @return Ten sam obiekt.
+         */
+        public Builder addAll( double[] compound )
+        {
+            ensureCapacity( size + compound.length );
+            System.arraycopy( compound, 0, coords, size, compound.length );
+            size += compound.length;
+            for( int part = 0; part < compound.length; part = next( compound, part ) )
+                parts++;
+            return this;
+        }
+
+        /**
+         * @return Liczba dodanych części.
+         */
+        public int getPartCount()
+        {
+            return parts;
+        }
+
+        /**
+         * @return Współrzędne figury złożonej.
+         */
+        public double[] build()
+        {
+            return Arrays.copyOf( coords, size );
+        }
+
+        /**
+         * @param capacity Wymagana liczba komórek.
+         */
+        private void ensureCapacity( int capacity )
+        {
+            if( capacity > coords.length )
+                coords = Arrays.copyOf( coords, Math.max( capacity, coords.length * 2 ) );
+        }
+    }
+}
@@ -0,0 +1,366 @@
+package nano.paint.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Sprawdzanie, czy punkt leży wewnątrz figury z modelu.
+ * Najpierw sprawdzany jest prostokąt opisany na figurze. Dla dużych wielokątów
+ * budowany jest (dopiero przy pierwszym zapytaniu) podział na poziome pasy, w którym
+ * każdy pas zna krawędzie przecinające jego wysokość - zapytanie przegląda wtedy
+ * tylko kilka krawędzi zamiast wszystkich. Podział jest usuwany, gdy wielokąt się zmieni - z wyjątkiem
+ * przesunięcia pojedynczych wierzchołków: krawędzie przy przesuniętym wierzchołku są wtedy
+ * sprawdzane osobno, a podział budowany jest od nowa dopiero, gdy takich krawędzi zbierze się dużo.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ */
+public class HitTester implements SceneModel.Listener
+{
+    /**
+     * Reguła rozstrzygająca, które obszary wielokąta z przecinającymi się krawędziami są wewnątrz.
+     */
+    public enum Rule
+    {
+        /** Punkt jest wewnątrz, gdy półprosta z punktu przecina brzeg nieparzystą liczbę razy. */
+        EVEN_ODD,
+        /** Punkt jest wewnątrz, gdy brzeg okrąża go niezerową liczbę razy. */
+        NON_ZERO
+    }
+
+    /** Wielokąty o mniejszej liczbie wierzchołków sprawdzane są bez budowania podziału na pasy. */
+    private static final int MIN_INDEXED_VERTICES = 32;
+
+    /** Model z figurami. */
+    private final SceneModel model;
+    /** Podziały na pasy zbudowane dla wielokątów (według identyfikatora). */
+    private final HashMap<Integer, EdgeBands> bands = new HashMap<>();
+
+    /**
+     * Tworzy obiekt sprawdzający figury z modelu i rejestruje się jako obserwator modelu.
+     * @param model Model z figurami.
+     */
+    public HitTester( SceneModel model )
+    {
+        this.model = model;
+        model.addListener( this );
+    }
+
+    /**
+     * Sprawdza, czy punkt leży wewnątrz figury (brzeg figury nie jest brany pod uwagę).
+     * @param id Identyfikator figury.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     * @param rule Reguła wypełniania wielokątów.
+     * @return {@code true}, jeśli punkt leży wewnątrz figury.
+     */
+    public boolean contains( int id, double x, double y, Rule rule )
+    {
+        if( x < model.getMinX( id ) || x > model.getMaxX( id ) || y < model.getMinY( id ) || y > model.getMaxY( id ) )
+            return false;
+        switch( model.getKind( id ) )
+        {
+        case SceneModel.RECTANGLE:
+            return true;
+        case SceneModel.CIRCLE:
+        {
+            double dx = x - model.getCoord( id, 0 );
+            double dy = y - model.getCoord( id, 1 );
+            double r = model.getCoord( id, 2 );
+            return dx * dx + dy * dy <= r * r;
+        }
+        case SceneModel.POLYGON:
+        {
+            int vertices = model.getCoordCount( id ) / 2;
+            if( vertices < MIN_INDEXED_VERTICES )
+                return EdgeBands.inside( model.getCoords( id ), x, y, rule );
+            EdgeBands polygon = bands.get( id );
+            if( polygon == null )
+            {
+                polygon = new EdgeBands( model.getCoords( id ) );
+                bands.put( id, polygon );
+            }
+            return polygon.contains( x, y, rule );
+        }
+        case SceneModel.COMPOUND:
+            return compoundContains( model.getCoords( id ), x, y, rule );
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Sprawdza, czy punkt leży wewnątrz którejkolwiek części figury złożonej.
+     * Części sprawdzane są bez podziału na pasy.
+     * @param coords Współrzędne figury złożonej.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     * @param rule Reguła wypełniania wielokątów.
+     * @return {@code true}, jeśli punkt leży wewnątrz jednej z części.
+     */
+    private static boolean compoundContains( double[] coords, double x, double y, Rule rule )
+    {
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+        {
+            int start = CompoundLayout.valuesStart( coords, part );
+            switch( CompoundLayout.kind( coords, part ) )
+            {
+            case SceneModel.RECTANGLE:
+                if( x >= coords[ start ] && x <= coords[ start ] + coords[ start + 2 ]
+                        && y >= coords[ start + 1 ] && y <= coords[ start + 1 ] + coords[ start + 3 ] )
+                    return true;
+                break;
+            case SceneModel.CIRCLE:
+            {
+                double dx = x - coords[ start ];
+                double dy = y - coords[ start + 1 ];
+                if( dx * dx + dy * dy <= coords[ start + 2 ] * coords[ start + 2 ] )
+                    return true;
+                break;
+            }
+            default:
+            {
+                double[] points = Arrays.copyOfRange( coords, start, start + CompoundLayout.valueCount( coords, part ) );
+                if( EdgeBands.inside( points, x, y, rule ) )
+                    return true;
+                break;
+            }
+            }
+        }
+        return false;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeRemoved( int id )
+    {
+        bands.remove( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void geometryChanged( int id )
+    {
+        bands.remove( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void vertexMoved( int id, int vertex )
+    {
+        EdgeBands polygon = bands.get( id );
+        if( polygon != null && !polygon.moveVertex( vertex, model.getCoord( id, 2 * vertex ), model.getCoord( id, 2 * vertex + 1 ) ) )
+            bands.remove( id );
+    }
+
+    /**
+     * Krawędzie wielokąta pogrupowane w poziome pasy o równej wysokości.
+     * Krawędź należy do każdego pasa, który przecina jej zakres współrzędnych Y.
+     */
+    private static class EdgeBands
+    {
+        /** Średnia liczba pasów, do których może należeć krawędź, zanim zmniejszymy liczbę pasów. */
+        private static final int MAX_BANDS_PER_EDGE = 8;
+
+        /** Wierzchołki wielokąta: x0, y0, x1, y1... */
+        private final double[] points;
+        /** Górna krawędź pierwszego pasa. */
+        private final double minY;
+        /** Wysokość pasa. */
+        private final double bandHeight;
+        /** Liczba pasów. */
+        private final int bandCount;
+        /** Początek listy krawędzi pasa w {@link EdgeBands#edges} (o jeden element więcej niż pasów). */
+        private final int[] bandStart;
+        /** Numery krawędzi kolejnych pasów. Krawędź i łączy wierzchołek i z wierzchołkiem i + 1. */
+        private final int[] edges;
+        /** Czy krawędź zmieniła się od zbudowania podziału (wtedy jej pasy są nieaktualne). */
+        private final boolean[] isMoved;
+        /** Krawędzie, które zmieniły się od zbudowania podziału. */
+        private final int[] moved;
+        /** Liczba krawędzi, które zmieniły się od zbudowania podziału. */
+        private int movedCount = 0;
+
+        /**
+         * Buduje podział na pasy.
+         * @param points Wierzchołki wielokąta.
+         */
+        private EdgeBands( double[] points )
+        {
+            this.points = points;
+            int n = points.length / 2;
+            double top = Double.POSITIVE_INFINITY;
+            double bottom = Double.NEGATIVE_INFINITY;
+            for( int i = 0; i < n; i++ )
+            {
+                top = Math.min( top, points[ 2 * i + 1 ] );
+                bottom = Math.max( bottom, points[ 2 * i + 1 ] );
+            }
+            minY = top;
+
+            // Liczba pasów rośnie z liczbą krawędzi, ale długie krawędzie nie mogą zapełnić pamięci.
+            int count = Math.max( 1, n / 2 );
+            long total;
+            double height;
+            while( true )
+            {
+                height = Math.max( ( bottom - top ) / count, Double.MIN_NORMAL );
+                total = 0;
+                for( int i = 0; i < n; i++ )
+                    total += bandTo( i, height, count ) - bandFrom( i, height, count ) + 1;
+                if( total <= (long) MAX_BANDS_PER_EDGE * n || count == 1 )
+                    break;
+                count = Math.max( 1, count / 2 );
+            }
+            bandHeight = height;
+            bandCount = count;
+
+            bandStart = new int[ count + 1 ];
+            for( int i = 0; i < n; i++ )
+                if( !isHorizontal( i ) )
+                    for( int b = bandFrom( i, height, count ); b <= bandTo( i, height, count ); b++ )
+                        bandStart[ b + 1 ]++;
+            for( int b = 0; b < count; b++ )
+                bandStart[ b + 1 ] += bandStart[ b ];
+            edges = new int[ bandStart[ count ] ];
+            int[] fill = Arrays.copyOf( bandStart, count );
+            for( int i = 0; i < n; i++ )
+                if( !isHorizontal( i ) )
+                    for( int b = bandFrom( i, height, count ); b <= bandTo( i, height, count ); b++ )
+                        edges[ fill[ b ]++ ] = i;
+            isMoved = new boolean[ n ];
+            moved = new int[ Math.max( 2, n / 16 ) ];
+        }
+
+        /**
+         * Przesuwa wierzchołek. Obie krawędzie przy wierzchołku będą sprawdzane osobno, bez pasów.
+         * @param vertex Numer wierzchołka.
+         * @param x Nowa współrzędna X.
+         * @param y Nowa współrzędna Y.
+         * @return {@code false}, jeśli zmienionych krawędzi jest już tak dużo, że podział trzeba zbudować od nowa.
+         */
+        private boolean moveVertex( int vertex, double x, double y )
+        {
+            int n = points.length / 2;
+            if( vertex >= n )
+                return false;
+            points[ 2 * vertex ] = x;
+            points[ 2 * vertex + 1 ] = y;
+            int previous = vertex == 0 ? n - 1 : vertex - 1;
+            return markMoved( previous ) && markMoved( vertex );
+        }
+
+        /**
+         * @param edge Numer krawędzi, która się zmieniła.
+         * @return {@code false}, jeśli nie ma już miejsca na kolejne zmienione krawędzie.
+         */
+        private boolean markMoved( int edge )
+        {
+            if( isMoved[ edge ] )
+                return true;
+            if( movedCount == moved.length )
+                return false;
+            isMoved[ edge ] = true;
+            moved[ movedCount++ ] = edge;
+            return true;
+        }
+
+        /**
+         * Sprawdza, czy punkt leży wewnątrz wielokąta, przeglądając tylko krawędzie z pasa punktu.
+         * @param x Współrzędna X punktu.
+         * @param y Współrzędna Y punktu.
+         * @param rule Reguła wypełniania.
+         * @return {@code true}, jeśli punkt leży wewnątrz.
+         */
+        private boolean contains( double x, double y, Rule rule )
+        {
+            int band = Math.min( bandCount - 1, Math.max( 0, (int) ( ( y - minY ) / bandHeight ) ) );
+            int winding = 0;
+            for( int k = bandStart[ band ]; k < bandStart[ band + 1 ]; k++ )
+                if( !isMoved[ edges[ k ] ] )
+                    winding += crossing( points, edges[ k ], x, y );
+            for( int k = 0; k < movedCount; k++ )
+                winding += crossing( points, moved[ k ], x, y );
+            return rule == Rule.EVEN_ODD ? ( winding & 1 ) != 0 : winding != 0;
+        }
+
+        /**
+         * Sprawdza, czy punkt leży wewnątrz wielokąta, przeglądając wszystkie krawędzie.
+         * @param points Wierzchołki wielokąta.
+         * @param x Współrzędna X punktu.
+         * @param y Współrzędna Y punktu.
+         * @param rule Reguła wypełniania.
+         * @return {@code true}, jeśli punkt leży wewnątrz.
+         */
+        private static boolean inside( double[] points, double x, double y, Rule rule )
+        {
+            int winding = 0;
+            int n = points.length / 2;
+            for( int i = 0; i < n; i++ )
+                winding += crossing( points, i, x, y );
+            return rule == Rule.EVEN_ODD ? ( winding & 1 ) != 0 : winding != 0;
+        }
+
+        /**
+         * Sprawdza, czy krawędź przecina poziomą półprostą biegnącą z punktu w prawo.
+         * Krawędź obejmuje swój dolny koniec (mniejsze Y), a nie obejmuje górnego,
+         * dzięki czemu półprosta przechodząca przez wierzchołek liczona jest raz.
+         * Dla reguły parzystości liczy się tylko nieparzystość wyniku, więc znak nie przeszkadza.
+         * @param points Wierzchołki wielokąta.
+         * @param edge Numer krawędzi.
+         * @param x Współrzędna X punktu.
+         * @param y Współrzędna Y punktu.
+         * @return +1 lub -1 (zależnie od kierunku krawędzi), jeśli krawędź przecina półprostą, w przeciwnym razie 0.
+         */
+        private static int crossing( double[] points, int edge, double x, double y )
+        {
+            int next = ( edge + 1 ) * 2 == points.length ? 0 : edge + 1;
+            double x1 = points[ 2 * edge ];
+            double y1 = points[ 2 * edge + 1 ];
+            double x2 = points[ 2 * next ];
+            double y2 = points[ 2 * next + 1 ];
+            if( ( y1 <= y ) == ( y2 <= y ) )
+                return 0;
+            double crossX = x1 + ( y - y1 ) * ( x2 - x1 ) / ( y2 - y1 );
+            if( crossX <= x )
+                return 0;
+            return y2 > y1 ? 1 : -1;
+        }
+
+        /**
+         * @param edge Numer krawędzi.
+         * @return Czy krawędź jest pozioma (nigdy nie przecina poziomej półprostej).
+         */
+        private boolean isHorizontal( int edge )
+        {
+            int next = ( edge + 1 ) * 2 == points.length ? 0 : edge + 1;
+            return points[ 2 * edge + 1 ] == points[ 2 * next + 1 ];
+        }
+
+        /**
+         * @param edge Numer krawędzi.
+         * @param height Wysokość pasa.
+         * @param count Liczba pasów.
+         * @return Pierwszy pas, który przecina krawędź.
+         */
+        private int bandFrom( int edge, double height, int count )
+        {
+            int next = ( edge + 1 ) * 2 == points.length ? 0 : edge + 1;
+            double y = Math.min( points[ 2 * edge + 1 ], points[ 2 * next + 1 ] );
+            return Math.min( count - 1, (int) ( ( y - minY ) / height ) );
+        }
+
+        /**
+         * @param edge Numer krawędzi.
+         * @param height Wysokość pasa.
+         * @param count Liczba pasów.
+         * @return Ostatni pas, który przecina krawędź.
+         */
+        private int bandTo( int edge, double height, int count )
+        {
+            int next = ( edge + 1 ) * 2 == points.length ? 0 : edge + 1;
+            double y = Math.max( points[ 2 * edge + 1 ], points[ 2 * next + 1 ] );
+            return Math.min( count - 1, (int) ( ( y - minY ) / height ) );
+        }
+    }
+}
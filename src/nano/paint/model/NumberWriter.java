@@ -0,0 +1,183 @@
+package nano.paint.model;
+
+/**
+ * Zapis liczb w plikach z figurami bezpośrednio do {@link StringBuilder}, bez tworzenia
+ * osobnego napisu dla każdej liczby.
+ *
+ * Domyślnie liczba zapisywana jest w najkrótszej postaci dziesiętnej, z której
+ * {@link Double#parseDouble(String)} odtworzy dokładnie tę samą wartość - np. {@code 154}
+ * zamiast {@code 154.0}. Bardzo duże i bardzo małe liczby zapisywane są tak jak przez
+ * {@link Double#toString(double)}, bo zapis z wykładnikiem jest dla nich krótszy.
+ *
+ * Opcjonalnie współrzędne mogą być zaokrąglane do podanej liczby miejsc po przecinku,
+ * a kolory stylów zapisywane jako 8-bitowe składowe ({@code #rrggbbaa}). Oba tryby tracą
+ * część dokładności, ale wyraźnie zmniejszają pliki.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeCodec
+ */
+public final class NumberWriter
+{
+    /** Liczba miejsc po przecinku oznaczająca zapis najkrótszy, bez utraty dokładności. */
+    public static final int SHORTEST = -1;
+    /** Zapis wszystkich liczb bez utraty dokładności. */
+    public static final NumberWriter EXACT = new NumberWriter( SHORTEST, false );
+
+    /** Największa liczba miejsc po przecinku, dla której szukany jest krótki zapis. */
+    private static final int MAX_DECIMALS = 17;
+    /** Największa liczba całkowita, którą {@code double} przechowuje dokładnie. */
+    private static final double MAX_EXACT = 9007199254740992.0;
+    /** Najmniejsza wartość bezwzględna zapisywana bez wykładnika. */
+    private static final double MIN_PLAIN = 1e-3;
+    /** Wartość bezwzględna, od której liczby zapisywane są z wykładnikiem. */
+    private static final double MAX_PLAIN = 1e7;
+    /** Kolejne potęgi dziesięciu jako {@code double}. */
+    private static final double[] POWERS = new double[ MAX_DECIMALS + 1 ];
+    /** Kolejne potęgi dziesięciu jako {@code long}. */
+    private static final long[] LONG_POWERS = new long[ MAX_DECIMALS + 1 ];
+    /** Cyfry szesnastkowe. */
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    static
+    {
+        POWERS[ 0 ] = 1;
+        LONG_POWERS[ 0 ] = 1;
+        for( int i = 1; i <= MAX_DECIMALS; i++ )
+        {
+            POWERS[ i ] = POWERS[ i - 1 ] * 10;
+            LONG_POWERS[ i ] = LONG_POWERS[ i - 1 ] * 10;
+        }
+    }
+
+    /** Liczba miejsc po przecinku współrzędnych lub {@link NumberWriter#SHORTEST}. */
+    private final int coordinateDecimals;
+    /** Czy kolory stylów zapisywane są jako 8-bitowe składowe. */
+    private final boolean eightBitColors;
+
+    /**
+     * @param coordinateDecimals Liczba miejsc po przecinku współrzędnych (0-{@value #MAX_DECIMALS})
+     *                           lub {@link NumberWriter#SHORTEST}, aby zapisywać je bez utraty dokładności.
+     * @param eightBitColors Czy kolory stylów zapisywać jako 8-bitowe składowe.
+     */
+    public NumberWriter( int coordinateDecimals, boolean eightBitColors )
+    {
+        if( coordinateDecimals < SHORTEST || coordinateDecimals > MAX_DECIMALS )
+            throw new IllegalArgumentException( "Niepoprawna liczba miejsc po przecinku: " + coordinateDecimals );
+        this.coordinateDecimals = coordinateDecimals;
+        this.eightBitColors = eightBitColors;
+    }
+
+    /**
+     * @return Liczba miejsc po przecinku współrzędnych lub {@link NumberWriter#SHORTEST}.
+     */
+    public int getCoordinateDecimals()
+    {
+        return coordinateDecimals;
+    }
+
+    /**
+     * @return Czy kolory stylów zapisywane są jako 8-bitowe składowe.
+     */
+    public boolean isEightBitColors()
+    {
+        return eightBitColors;
+    }
+
+    /**
+     * Zapisuje współrzędną - w najkrótszej postaci albo zaokrągloną, zależnie od ustawień.
+     * @param out Bufor, do którego dopisywana jest liczba.
+     * @param value Wartość.
+     * @return Ten sam bufor.
+     */
+    public StringBuilder appendCoordinate( StringBuilder out, double value )
+    {
+        if( coordinateDecimals == SHORTEST )
+            return appendShortest( out, value );
+        return appendFixed( out, value, coordinateDecimals );
+    }
+
+    /**
+     * Zapisuje składową koloru - w najkrótszej postaci albo jako dwie cyfry szesnastkowe (0-255).
+     * @param out Bufor, do którego dopisywana jest składowa.
+     * @param value Wartość składowej (0.0-1.0).
+     * @return Ten sam bufor.
+     */
+    public StringBuilder appendColorChannel( StringBuilder out, double value )
+    {
+        if( !eightBitColors )
+            return appendShortest( out, value );
+        int channel = (int) Math.round( Math.min( 1, Math.max( 0, value ) ) * 255 );
+        return out.append( HEX[ channel >> 4 ] ).append( HEX[ channel & 15 ] );
+    }
+
+    /**
+     * Zapisuje liczbę w najkrótszej postaci dziesiętnej, która odczytana da dokładnie tę samą wartość.
+     * @param out Bufor, do którego dopisywana jest liczba.
+     * @param value Wartość.
+     * @return Ten sam bufor.
+     */
+    public static StringBuilder appendShortest( StringBuilder out, double value )
+    {
+        if( value == 0 )
+            return out.append( 1 / value < 0 ? "-0" : "0" );
+        // Poza tym zakresem zapis wykładniczy z Double.toString jest krótszy od zwykłego.
+        double magnitude = Math.abs( value );
+        if( Double.isNaN( value ) || magnitude < MIN_PLAIN || magnitude >= MAX_PLAIN )
+            return out.append( value );
+        for( int decimals = 0; decimals <= MAX_DECIMALS; decimals++ )
+        {
+            double scaled = value * POWERS[ decimals ];
+            if( Math.abs( scaled ) >= MAX_EXACT )
+                break;
+            // Licznik i mianownik są dokładne, więc iloraz jest dokładnie tym, co zwróci parseDouble.
+            double digits = Math.rint( scaled );
+            if( digits / POWERS[ decimals ] == value )
+                return appendScaled( out, (long) digits, decimals );
+        }
+        return out.append( value );
+    }
+
+    /**
+     * Zapisuje liczbę zaokrągloną do podanej liczby miejsc po przecinku (bez końcowych zer).
+     * @param out Bufor, do którego dopisywana jest liczba.
+     * @param value Wartość.
+     * @param decimals Liczba miejsc po przecinku.
+     * @return Ten sam bufor.
+     */
+    public static StringBuilder appendFixed( StringBuilder out, double value, int decimals )
+    {
+        double scaled = Math.rint( value * POWERS[ decimals ] );
+        if( Double.isNaN( scaled ) || Math.abs( scaled ) >= MAX_EXACT )
+            return appendShortest( out, value );
+        return appendScaled( out, (long) scaled, decimals );
+    }
+
+    /**
+     * Zapisuje liczbę {@code digits / 10^decimals}, pomijając końcowe zera części ułamkowej.
+     * @param out Bufor, do którego dopisywana jest liczba.
+     * @param digits Cyfry liczby.
+     * @param decimals Liczba cyfr po przecinku.
+     * @return Ten sam bufor.
+     */
+    private static StringBuilder appendScaled( StringBuilder out, long digits, int decimals )
+    {
+        while( decimals > 0 && digits % 10 == 0 )
+        {
+            digits /= 10;
+            decimals--;
+        }
+        if( digits < 0 )
+        {
+            out.append( '-' );
+            digits = -digits;
+        }
+        if( decimals == 0 )
+            return out.append( digits );
+        long unit = LONG_POWERS[ decimals ];
+        long fraction = digits % unit;
+        out.append( digits / unit ).append( '.' );
+        for( long power = unit / 10; power > fraction; power /= 10 )
+            out.append( '0' );
+        return out.append( fraction );
+    }
+}
@@ -0,0 +1,540 @@
+package nano.paint.model;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Wyszukiwanie figur, które się nakładają (mają wspólny punkt, wliczając brzeg).
+ * Kandydaci wybierani są przez {@link SpatialIndex} na podstawie prostokątów opisanych,
+ * a następnie każda para sprawdzana jest dokładnie, osobno dla każdego połączenia
+ * prostokąta, koła i wielokąta. Wnętrze wielokąta wyznaczane jest regułą niezerowego
+ * nawinięcia, tak jak przy rysowaniu. Figury złożone porównywane są w przybliżeniu,
+ * przez prostokąty opisane na ich częściach.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SpatialIndex
+ * @see HitTester
+ */
+public class OverlapQuery
+{
+    /**
+     * Odbiorca par nakładających się figur.
+     */
+    public interface PairConsumer
+    {
+        /**
+         * @param first Identyfikator pierwszej figury (mniejszy).
+         * @param second Identyfikator drugiej figury (większy).
+         */
+        void accept( int first, int second );
+    }
+
+    /** Model z figurami. */
+    private final SceneModel model;
+    /** Indeks przestrzenny figur z modelu. */
+    private final SpatialIndex index;
+
+    /**
+     * @param model Model z figurami.
+     * @param index Indeks przestrzenny figur z tego samego modelu.
+     */
+    public OverlapQuery( SceneModel model, SpatialIndex index )
+    {
+        this.model = model;
+        this.index = index;
+    }
+
+    /**
+     * Wyszukuje wszystkie figury, które nakładają się na podaną figurę.
+     * @param id Identyfikator figury.
+     * @param consumer Odbiorca identyfikatorów nakładających się figur (bez samej figury).
+     */
+    public void intersecting( int id, IntConsumer consumer )
+    {
+        index.query( model.getMinX( id ), model.getMinY( id ), model.getMaxX( id ), model.getMaxY( id ), other ->
+        {
+            if( other != id && intersects( id, other ) )
+                consumer.accept( other );
+        } );
+    }
+
+    /**
+     * Wyszukuje wszystkie figury, które mają wspólny punkt z prostokątem (np. z prostokątem zaznaczenia).
+     * @param minX Lewa krawędź prostokąta.
+     * @param minY Górna krawędź prostokąta.
+     * @param maxX Prawa krawędź prostokąta.
+     * @param maxY Dolna krawędź prostokąta.
+     * @param consumer Odbiorca identyfikatorów figur.
+     */
+    public void inRectangle( double minX, double minY, double maxX, double maxY, IntConsumer consumer )
+    {
+        index.query( minX, minY, maxX, maxY, id ->
+        {
+            if( intersectsRectangle( id, minX, minY, maxX, maxY ) )
+                consumer.accept( id );
+        } );
+    }
+
+    /**
+     * Sprawdza dokładnie, czy figura ma wspólny punkt z prostokątem.
+     * Figury złożone porównywane są w przybliżeniu, przez prostokąty opisane na ich częściach.
+     * @param id Identyfikator figury.
+     * @param minX Lewa krawędź prostokąta.
+     * @param minY Górna krawędź prostokąta.
+     * @param maxX Prawa krawędź prostokąta.
+     * @param maxY Dolna krawędź prostokąta.
+     * @return {@code true}, jeśli figura i prostokąt się nakładają.
+     */
+    public boolean intersectsRectangle( int id, double minX, double minY, double maxX, double maxY )
+    {
+        if( model.getMinX( id ) > maxX || model.getMaxX( id ) < minX || model.getMinY( id ) > maxY || model.getMaxY( id ) < minY )
+            return false;
+        switch( model.getKind( id ) )
+        {
+        case SceneModel.RECTANGLE:
+            return true;
+        case SceneModel.CIRCLE:
+            return circleTouchesRectangle( model.getCoord( id, 0 ), model.getCoord( id, 1 ), model.getCoord( id, 2 ),
+                    minX, minY, maxX, maxY );
+        case SceneModel.POLYGON:
+            return polygonTouchesRectangle( id, minX, minY, maxX, maxY );
+        default:
+            double[] bounds = partBounds( id, SceneModel.COMPOUND );
+            for( int i = 0; i < bounds.length; i += 4 )
+                if( bounds[ i ] <= maxX && bounds[ i + 2 ] >= minX && bounds[ i + 1 ] <= maxY && bounds[ i + 3 ] >= minY )
+                    return true;
+            return false;
+        }
+    }
+
+    /**
+     * Wyszukuje wszystkie pary nakładających się figur. Każda para zgłaszana jest raz.
+     * @param consumer Odbiorca par.
+     */
+    public void overlappingPairs( PairConsumer consumer )
+    {
+        for( int i = 0; i < model.size(); i++ )
+        {
+            int id = model.idAt( i );
+            index.query( model.getMinX( id ), model.getMinY( id ), model.getMaxX( id ), model.getMaxY( id ), other ->
+            {
+                if( other > id && intersects( id, other ) )
+                    consumer.accept( id, other );
+            } );
+        }
+    }
+
+    /**
+     * Sprawdza dokładnie, czy dwie figury mają wspólny punkt.
+     * @param a Identyfikator pierwszej figury.
+     * @param b Identyfikator drugiej figury.
+     * @return {@code true}, jeśli figury się nakładają.
+     */
+    public boolean intersects( int a, int b )
+    {
+        if( model.getMinX( a ) > model.getMaxX( b ) || model.getMaxX( a ) < model.getMinX( b )
+                || model.getMinY( a ) > model.getMaxY( b ) || model.getMaxY( a ) < model.getMinY( b ) )
+            return false;
+
+        byte kindA = model.getKind( a );
+        byte kindB = model.getKind( b );
+        if( kindA == SceneModel.COMPOUND || kindB == SceneModel.COMPOUND )
+            return compoundBounds( a, kindA, b, kindB );
+        // Każda para sprawdzana jest w jednym porządku: prostokąt < koło < wielokąt.
+        if( rank( kindA ) > rank( kindB ) )
+        {
+            int swap = a;
+            a = b;
+            b = swap;
+            byte swapKind = kindA;
+            kindA = kindB;
+            kindB = swapKind;
+        }
+
+        if( kindA == SceneModel.RECTANGLE && kindB == SceneModel.RECTANGLE )
+            return true; // Prostokąt jest równy swojemu prostokątowi opisanemu.
+        if( kindA == SceneModel.RECTANGLE && kindB == SceneModel.CIRCLE )
+            return rectangleCircle( a, b );
+        if( kindA == SceneModel.CIRCLE && kindB == SceneModel.CIRCLE )
+            return circleCircle( a, b );
+        if( kindA == SceneModel.RECTANGLE )
+            return rectanglePolygon( a, b );
+        if( kindA == SceneModel.CIRCLE )
+            return circlePolygon( a, b );
+        return polygonPolygon( a, b );
+    }
+
+    /**
+     * Przybliżone sprawdzenie dla figur złożonych: porównuje prostokąty opisane na ich częściach.
+     * Może więc zgłosić figury, które leżą blisko siebie, ale nie pomija żadnej nakładającej się pary.
+     * @param a Identyfikator pierwszej figury.
+     * @param kindA Rodzaj pierwszej figury.
+     * @param b Identyfikator drugiej figury.
+     * @param kindB Rodzaj drugiej figury.
+     * @return Czy prostokąt opisany na którejś części pierwszej figury przecina prostokąt opisany na części drugiej.
+     */
+    private boolean compoundBounds( int a, byte kindA, int b, byte kindB )
+    {
+        double[] boundsA = partBounds( a, kindA );
+        double[] boundsB = partBounds( b, kindB );
+        for( int i = 0; i < boundsA.length; i += 4 )
+            for( int j = 0; j < boundsB.length; j += 4 )
+                if( boundsA[ i ] <= boundsB[ j + 2 ] && boundsA[ i + 2 ] >= boundsB[ j ]
+                        && boundsA[ i + 1 ] <= boundsB[ j + 3 ] && boundsA[ i + 3 ] >= boundsB[ j + 1 ] )
+                    return true;
+        return false;
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @param kind Rodzaj figury.
+     * @return Prostokąty opisane na częściach figury złożonej (minX, minY, maxX, maxY kolejno dla każdej części)
+     *         lub prostokąt opisany na zwykłej figurze.
+     */
+    private double[] partBounds( int id, byte kind )
+    {
+        if( kind != SceneModel.COMPOUND )
+            return new double[] { model.getMinX( id ), model.getMinY( id ), model.getMaxX( id ), model.getMaxY( id ) };
+        double[] coords = model.getCoords( id );
+        int count = 0;
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+            count++;
+        double[] bounds = new double[ 4 * count ];
+        int k = 0;
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ), k += 4 )
+        {
+            int start = CompoundLayout.valuesStart( coords, part );
+            switch( CompoundLayout.kind( coords, part ) )
+            {
+            case SceneModel.RECTANGLE:
+                bounds[ k ] = coords[ start ];
+                bounds[ k + 1 ] = coords[ start + 1 ];
+                bounds[ k + 2 ] = coords[ start ] + coords[ start + 2 ];
+                bounds[ k + 3 ] = coords[ start + 1 ] + coords[ start + 3 ];
+                break;
+            case SceneModel.CIRCLE:
+                bounds[ k ] = coords[ start ] - coords[ start + 2 ];
+                bounds[ k + 1 ] = coords[ start + 1 ] - coords[ start + 2 ];
+                bounds[ k + 2 ] = coords[ start ] + coords[ start + 2 ];
+                bounds[ k + 3 ] = coords[ start + 1 ] + coords[ start + 2 ];
+                break;
+            default:
+                bounds[ k ] = bounds[ k + 1 ] = Double.POSITIVE_INFINITY;
+                bounds[ k + 2 ] = bounds[ k + 3 ] = Double.NEGATIVE_INFINITY;
+                int end = start + CompoundLayout.valueCount( coords, part );
+                for( int i = start; i < end; i += 2 )
+                {
+                    bounds[ k ] = Math.min( bounds[ k ], coords[ i ] );
+                    bounds[ k + 1 ] = Math.min( bounds[ k + 1 ], coords[ i + 1 ] );
+                    bounds[ k + 2 ] = Math.max( bounds[ k + 2 ], coords[ i ] );
+                    bounds[ k + 3 ] = Math.max( bounds[ k + 3 ], coords[ i + 1 ] );
+                }
+                break;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * @param kind Rodzaj figury.
+     * @return Pozycja rodzaju w porządku prostokąt, koło, wielokąt.
+     */
+    private static int rank( byte kind )
+    {
+        return kind == SceneModel.RECTANGLE ? 0 : kind == SceneModel.CIRCLE ? 1 : 2;
+    }
+
+    /**
+     * @param rect Identyfikator prostokąta.
+     * @param circle Identyfikator koła.
+     * @return Czy prostokąt i koło się nakładają.
+     */
+    private boolean rectangleCircle( int rect, int circle )
+    {
+        return circleTouchesRectangle( model.getCoord( circle, 0 ), model.getCoord( circle, 1 ), model.getCoord( circle, 2 ),
+                model.getMinX( rect ), model.getMinY( rect ), model.getMaxX( rect ), model.getMaxY( rect ) );
+    }
+
+    /**
+     * @param cx Współrzędna X środka koła.
+     * @param cy Współrzędna Y środka koła.
+     * @param r Promień koła.
+     * @param minX Lewa krawędź prostokąta.
+     * @param minY Górna krawędź prostokąta.
+     * @param maxX Prawa krawędź prostokąta.
+     * @param maxY Dolna krawędź prostokąta.
+     * @return Czy koło i prostokąt się nakładają.
+     */
+    private static boolean circleTouchesRectangle( double cx, double cy, double r,
+                                                   double minX, double minY, double maxX, double maxY )
+    {
+        double dx = cx - clamp( cx, minX, maxX );
+        double dy = cy - clamp( cy, minY, maxY );
+        return dx * dx + dy * dy <= r * r;
+    }
+
+    /**
+     * @param a Identyfikator pierwszego koła.
+     * @param b Identyfikator drugiego koła.
+     * @return Czy koła się nakładają.
+     */
+    private boolean circleCircle( int a, int b )
+    {
+        double dx = model.getCoord( a, 0 ) - model.getCoord( b, 0 );
+        double dy = model.getCoord( a, 1 ) - model.getCoord( b, 1 );
+        double r = model.getCoord( a, 2 ) + model.getCoord( b, 2 );
+        return dx * dx + dy * dy <= r * r;
+    }
+
+    /**
+     * @param rect Identyfikator prostokąta.
+     * @param polygon Identyfikator wielokąta.
+     * @return Czy prostokąt i wielokąt się nakładają.
+     */
+    private boolean rectanglePolygon( int rect, int polygon )
+    {
+        return polygonTouchesRectangle( polygon, model.getMinX( rect ), model.getMinY( rect ),
+                model.getMaxX( rect ), model.getMaxY( rect ) );
+    }
+
+    /**
+     * @param polygon Identyfikator wielokąta.
+     * @param minX Lewa krawędź prostokąta.
+     * @param minY Górna krawędź prostokąta.
+     * @param maxX Prawa krawędź prostokąta.
+     * @param maxY Dolna krawędź prostokąta.
+     * @return Czy wielokąt i prostokąt się nakładają.
+     */
+    private boolean polygonTouchesRectangle( int polygon, double minX, double minY, double maxX, double maxY )
+    {
+        double[] points = model.getCoords( polygon );
+        int n = points.length / 2;
+        for( int i = 0; i < n; i++ )
+        {
+            int j = i + 1 == n ? 0 : i + 1;
+            if( segmentTouchesRectangle( points[ 2 * i ], points[ 2 * i + 1 ], points[ 2 * j ], points[ 2 * j + 1 ],
+                    minX, minY, maxX, maxY ) )
+                return true;
+        }
+        // Żadna krawędź nie dotyka prostokąta - prostokąt może leżeć w całości wewnątrz wielokąta.
+        return insidePolygon( polygon, minX, minY );
+    }
+
+    /**
+     * @param circle Identyfikator koła.
+     * @param polygon Identyfikator wielokąta.
+     * @return Czy koło i wielokąt się nakładają.
+     */
+    private boolean circlePolygon( int circle, int polygon )
+    {
+        double cx = model.getCoord( circle, 0 );
+        double cy = model.getCoord( circle, 1 );
+        double r = model.getCoord( circle, 2 );
+        double[] points = model.getCoords( polygon );
+        int n = points.length / 2;
+        for( int i = 0; i < n; i++ )
+        {
+            int j = i + 1 == n ? 0 : i + 1;
+            if( segmentDistanceSquared( cx, cy, points[ 2 * i ], points[ 2 * i + 1 ], points[ 2 * j ], points[ 2 * j + 1 ] ) <= r * r )
+                return true;
+        }
+        // Brzeg wielokąta jest daleko od koła - koło może leżeć w całości wewnątrz wielokąta.
+        return insidePolygon( polygon, cx, cy );
+    }
+
+    /**
+     * @param a Identyfikator pierwszego wielokąta.
+     * @param b Identyfikator drugiego wielokąta.
+     * @return Czy wielokąty się nakładają.
+     */
+    private boolean polygonPolygon( int a, int b )
+    {
+        // Tylko krawędzie leżące we wspólnej części prostokątów opisanych mogą się przecinać.
+        double minX = Math.max( model.getMinX( a ), model.getMinX( b ) );
+        double minY = Math.max( model.getMinY( a ), model.getMinY( b ) );
+        double maxX = Math.min( model.getMaxX( a ), model.getMaxX( b ) );
+        double maxY = Math.min( model.getMaxY( a ), model.getMaxY( b ) );
+        double[] pa = model.getCoords( a );
+        double[] pb = model.getCoords( b );
+        int[] edgesA = edgesIn( pa, minX, minY, maxX, maxY );
+        int[] edgesB = edgesIn( pb, minX, minY, maxX, maxY );
+        int na = pa.length / 2;
+        int nb = pb.length / 2;
+        for( int k = 1; k <= edgesA[ 0 ]; k++ )
+        {
+            int i = edgesA[ k ];
+            int i2 = i + 1 == na ? 0 : i + 1;
+            for( int m = 1; m <= edgesB[ 0 ]; m++ )
+            {
+                int j = edgesB[ m ];
+                int j2 = j + 1 == nb ? 0 : j + 1;
+                if( segmentsIntersect( pa[ 2 * i ], pa[ 2 * i + 1 ], pa[ 2 * i2 ], pa[ 2 * i2 + 1 ],
+                        pb[ 2 * j ], pb[ 2 * j + 1 ], pb[ 2 * j2 ], pb[ 2 * j2 + 1 ] ) )
+                    return true;
+            }
+        }
+        // Brzegi się nie przecinają - jeden wielokąt może zawierać drugi.
+        return insidePolygon( b, pa[ 0 ], pa[ 1 ] ) || insidePolygon( a, pb[ 0 ], pb[ 1 ] );
+    }
+
+    /**
+     * Wybiera krawędzie wielokąta, których prostokąt opisany przecina podany obszar.
+     * @param points Wierzchołki wielokąta.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     * @return Tablica, w której pierwszy element to liczba krawędzi, a dalej są ich numery.
+     */
+    private static int[] edgesIn( double[] points, double minX, double minY, double maxX, double maxY )
+    {
+        int n = points.length / 2;
+        int[] edges = new int[ n + 1 ];
+        for( int i = 0; i < n; i++ )
+        {
+            int j = i + 1 == n ? 0 : i + 1;
+            if( Math.min( points[ 2 * i ], points[ 2 * j ] ) <= maxX && Math.max( points[ 2 * i ], points[ 2 * j ] ) >= minX
+                    && Math.min( points[ 2 * i + 1 ], points[ 2 * j + 1 ] ) <= maxY
+                    && Math.max( points[ 2 * i + 1 ], points[ 2 * j + 1 ] ) >= minY )
+                edges[ ++edges[ 0 ] ] = i;
+        }
+        return edges;
+    }
+
+    /**
+     * @param polygon Identyfikator wielokąta.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     * @return Czy punkt leży wewnątrz wielokąta.
+     */
+    private boolean insidePolygon( int polygon, double x, double y )
+    {
+        return model.getHitTester().contains( polygon, x, y, HitTester.Rule.NON_ZERO );
+    }
+
+    /**
+     * Sprawdza, czy odcinek ma wspólny punkt z prostokątem (wraz z wnętrzem),
+     * przycinając odcinek do prostokąta (algorytm Lianga-Barsky'ego).
+     * @param x1 Współrzędna X początku odcinka.
+     * @param y1 Współrzędna Y początku odcinka.
+     * @param x2 Współrzędna X końca odcinka.
+     * @param y2 Współrzędna Y końca odcinka.
+     * @param minX Lewa krawędź prostokąta.
+     * @param minY Górna krawędź prostokąta.
+     * @param maxX Prawa krawędź prostokąta.
+     * @param maxY Dolna krawędź prostokąta.
+     * @return {@code true}, jeśli odcinek dotyka prostokąta.
+     */
+    private static boolean segmentTouchesRectangle( double x1, double y1, double x2, double y2,
+                                                    double minX, double minY, double maxX, double maxY )
+    {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double[] p = { -dx, dx, -dy, dy };
+        double[] q = { x1 - minX, maxX - x1, y1 - minY, maxY - y1 };
+        double t0 = 0;
+        double t1 = 1;
+        for( int i = 0; i < 4; i++ )
+        {
+            if( p[ i ] == 0 )
+            {
+                if( q[ i ] < 0 )
+                    return false;
+                continue;
+            }
+            double t = q[ i ] / p[ i ];
+            if( p[ i ] < 0 )
+                t0 = Math.max( t0, t );
+            else
+                t1 = Math.min( t1, t );
+            if( t0 > t1 )
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @param px Współrzędna X punktu.
+     * @param py Współrzędna Y punktu.
+     * @param x1 Współrzędna X początku odcinka.
+     * @param y1 Współrzędna Y początku odcinka.
+     * @param x2 Współrzędna X końca odcinka.
+     * @param y2 Współrzędna Y końca odcinka.
+     * @return Kwadrat odległości punktu od odcinka.
+     */
+    private static double segmentDistanceSquared( double px, double py, double x1, double y1, double x2, double y2 )
+    {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? 0 : clamp( ( ( px - x1 ) * dx + ( py - y1 ) * dy ) / lengthSquared, 0, 1 );
+        double ex = x1 + t * dx - px;
+        double ey = y1 + t * dy - py;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Sprawdza, czy dwa odcinki mają wspólny punkt (także gdy się stykają lub pokrywają).
+     * @param ax1 Współrzędna X początku pierwszego odcinka.
+     * @param ay1 Współrzędna Y początku pierwszego odcinka.
+     * @param ax2 Współrzędna X końca pierwszego odcinka.
+     * @param ay2 Współrzędna Y końca pierwszego odcinka.
+     * @param bx1 Współrzędna X początku drugiego odcinka.
+     * @param by1 Współrzędna Y początku drugiego odcinka.
+     * @param bx2 Współrzędna X końca drugiego odcinka.
+     * @param by2 Współrzędna Y końca drugiego odcinka.
+     * @return {@code true}, jeśli odcinki się przecinają.
+     */
+    private static boolean segmentsIntersect( double ax1, double ay1, double ax2, double ay2,
+                                              double bx1, double by1, double bx2, double by2 )
+    {
+        double d1 = cross( bx1, by1, bx2, by2, ax1, ay1 );
+        double d2 = cross( bx1, by1, bx2, by2, ax2, ay2 );
+        double d3 = cross( ax1, ay1, ax2, ay2, bx1, by1 );
+        double d4 = cross( ax1, ay1, ax2, ay2, bx2, by2 );
+        if( ( ( d1 > 0 && d2 < 0 ) || ( d1 < 0 && d2 > 0 ) ) && ( ( d3 > 0 && d4 < 0 ) || ( d3 < 0 && d4 > 0 ) ) )
+            return true;
+        return ( d1 == 0 && onSegment( bx1, by1, bx2, by2, ax1, ay1 ) )
+                || ( d2 == 0 && onSegment( bx1, by1, bx2, by2, ax2, ay2 ) )
+                || ( d3 == 0 && onSegment( ax1, ay1, ax2, ay2, bx1, by1 ) )
+                || ( d4 == 0 && onSegment( ax1, ay1, ax2, ay2, bx2, by2 ) );
+    }
+
+    /**
+     * @param x1 Współrzędna X początku wektora.
+     * @param y1 Współrzędna Y początku wektora.
+     * @param x2 Współrzędna X końca wektora.
+     * @param y2 Współrzędna Y końca wektora.
+     * @param px Współrzędna X punktu.
+     * @param py Współrzędna Y punktu.
+     * @return Iloczyn wektorowy (x2 - x1, y2 - y1) x (px - x1, py - y1).
+     */
+    private static double cross( double x1, double y1, double x2, double y2, double px, double py )
+    {
+        return ( x2 - x1 ) * ( py - y1 ) - ( y2 - y1 ) * ( px - x1 );
+    }
+
+    /**
+     * @param x1 Współrzędna X początku odcinka.
+     * @param y1 Współrzędna Y początku odcinka.
+     * @param x2 Współrzędna X końca odcinka.
+     * @param y2 Współrzędna Y końca odcinka.
+     * @param px Współrzędna X punktu.
+     * @param py Współrzędna Y punktu.
+     * @return Czy punkt (px, py), współliniowy z odcinkiem, leży w jego prostokącie opisanym.
+     */
+    private static boolean onSegment( double x1, double y1, double x2, double y2, double px, double py )
+    {
+        return px >= Math.min( x1, x2 ) && px <= Math.max( x1, x2 ) && py >= Math.min( y1, y2 ) && py <= Math.max( y1, y2 );
+    }
+
+    /**
+     * @param value Wartość.
+     * @param min Dolna granica.
+     * @param max Górna granica.
+     * @return Wartość ograniczona do przedziału [min, max].
+     */
+    private static double clamp( double value, double min, double max )
+    {
+        return value < min ? min : value > max ? max : value;
+    }
+}
@@ -0,0 +1,1277 @@
+package nano.paint.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Model sceny niezależny od JavaFX.
+ * Przechowuje geometrię, style i stan zaznaczenia wszystkich figur w układzie
+ * kolumnowym (struct-of-arrays) - każda cecha figury ma własną tablicę, a figura
+ * zajmuje w nich ten sam indeks. Każda figura ma stały identyfikator, który nie zmienia
+ * się przy usuwaniu innych figur. Węzły JavaFX ({@link nano.paint.shapes.MyShape})
+ * są jedynie widokami synchronizowanymi z modelem. Kolory figur przechowywane są
+ * w {@link StyleTable} - figura pamięta tylko numer swojego stylu.
+ *
+ * Współrzędne figur trzymane są we wspólnej puli:
+ * <ul>
+ *     <li>prostokąt - x, y, szerokość, wysokość</li>
+ *     <li>koło - środek x, środek y, promień</li>
+ *     <li>wielokąt - kolejne pary x, y wierzchołków</li>
+ *     <li>figura złożona - kolejne części, każda z własnym kolorem wypełnienia (zob. {@link CompoundLayout})</li>
+ * </ul>
+ * <b>Uwaga:</b> klasa nie jest bezpieczna wątkowo. Można jej używać poza wątkiem JavaFX
+ * (np. przy wczytywaniu w tle), o ile jeden egzemplarz nie jest modyfikowany z kilku wątków naraz.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeRecord
+ * @see ShapeCodec
+ */
+public class SceneModel
+{
+    /**
+     * Obserwator zmian w modelu. Powiadomienia przychodzą w wątku, który zmienia model.
+     */
+    public interface Listener
+    {
+        /**
+         * Wywoływane po dodaniu figury do modelu.
+         * @param id Identyfikator figury.
+         */
+        default void shapeAdded( int id ) {}
+
+        /**
+         * Wywoływane po usunięciu figury z modelu.
+         * @param id Identyfikator usuniętej figury.
+         */
+        default void shapeRemoved( int id ) {}
+
+        /**
+         * Wywoływane po zmianie geometrii figury.
+         * @param id Identyfikator figury.
+         */
+        default void geometryChanged( int id ) {}
+
+        /**
+         * Wywoływane po przesunięciu jednego wierzchołka wielokąta. Pozostałe wierzchołki się nie
+         * zmieniły, więc obserwator może zaktualizować tylko ten jeden - domyślnie wywołuje
+         * {@link Listener#geometryChanged(int)}.
+         * @param id Identyfikator wielokąta.
+         * @param vertex Numer przesuniętego wierzchołka.
+         */
+        default void vertexMoved( int id, int vertex ) { geometryChanged( id ); }
+
+        /**
+         * Wywoływane po wstawieniu wierzchołka do wielokąta (również na końcu).
+         * Domyślnie wywołuje {@link Listener#geometryChanged(int)}.
+         * @param id Identyfikator wielokąta.
+         * @param vertex Numer wstawionego wierzchołka.
+         */
+        default void vertexInserted( int id, int vertex ) { geometryChanged( id ); }
+
+        /**
+         * Wywoływane po usunięciu wierzchołka wielokąta.
+         * Domyślnie wywołuje {@link Listener#geometryChanged(int)}.
+         * @param id Identyfikator wielokąta.
+         * @param vertex Numer, który miał usunięty wierzchołek.
+         */
+        default void vertexRemoved( int id, int vertex ) { geometryChanged( id ); }
+
+        /**
+         * Wywoływane po zmianie stylu (koloru) figury.
+         * @param id Identyfikator figury.
+         */
+        default void styleChanged( int id ) {}
+    }
+
+    /** Rodzaj figury: prostokąt. */
+    public static final byte RECTANGLE = 'r';
+    /** Rodzaj figury: koło. */
+    public static final byte CIRCLE = 'c';
+    /** Rodzaj figury: wielokąt. */
+    public static final byte POLYGON = 'p';
+    /** Rodzaj figury: figura złożona z wielu części (zob. {@link CompoundLayout}). */
+    public static final byte COMPOUND = 'g';
+
+    /** Minimalny rozmiar figury, poniżej którego nie można jej pomniejszyć. */
+    public static final int MIN_SIZE = 20;
+
+    /** Początkowa pojemność kolumn. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Liczba figur w modelu. */
+    private int size = 0;
+    /** Następny wolny identyfikator. */
+    private int nextId = 1;
+
+    /** Identyfikatory figur. */
+    private int[] ids = new int[ INITIAL_CAPACITY ];
+    /** Rodzaje figur. */
+    private byte[] kinds = new byte[ INITIAL_CAPACITY ];
+    /** Numery stylów figur w {@link SceneModel#styleTable}. */
+    private int[] styles = new int[ INITIAL_CAPACITY ];
+    /** Czy figura jest zaznaczona. */
+    private boolean[] focused = new boolean[ INITIAL_CAPACITY ];
+    /** Indeks pierwszej współrzędnej figury w puli {@link SceneModel#coords}. */
+    private int[] coordStart = new int[ INITIAL_CAPACITY ];
+    /** Liczba współrzędnych figury. */
+    private int[] coordCount = new int[ INITIAL_CAPACITY ];
+    /** Prostokąt opisany na figurze - najmniejsze X. */
+    private double[] minX = new double[ INITIAL_CAPACITY ];
+    /** Prostokąt opisany na figurze - najmniejsze Y. */
+    private double[] minY = new double[ INITIAL_CAPACITY ];
+    /** Prostokąt opisany na figurze - największe X. */
+    private double[] maxX = new double[ INITIAL_CAPACITY ];
+    /** Prostokąt opisany na figurze - największe Y. */
+    private double[] maxY = new double[ INITIAL_CAPACITY ];
+
+    /** Wspólna pula współrzędnych wszystkich figur. */
+    private double[] coords = new double[ INITIAL_CAPACITY * 4 ];
+    /** Koniec zajętej części puli współrzędnych. */
+    private int coordsEnd = 0;
+    /** Liczba nieużywanych już komórek w puli współrzędnych. */
+    private int garbage = 0;
+
+    /** Indeks figury w kolumnach dla danego identyfikatora (-1, gdy figury nie ma). */
+    private int[] slotOfId = new int[ INITIAL_CAPACITY ];
+
+    /** Style współdzielone przez figury. */
+    private StyleTable styleTable = new StyleTable();
+
+    /** Obserwatorzy zmian w modelu. */
+    private List<Listener> listeners = new ArrayList<>();
+
+    /** Kolejność rysowania figur. */
+    private ZOrder zOrder;
+
+    /** Sprawdzanie, czy punkt leży wewnątrz figury. */
+    private HitTester hitTester;
+
+    /**
+     * Tworzy pusty model.
+     */
+    public SceneModel()
+    {
+        Arrays.fill( slotOfId, -1 );
+        zOrder = new ZOrder( this );
+        hitTester = new HitTester( this );
+    }
+
+    /**
+     * Dodaje figurę z czarnym obramowaniem do modelu.
+     * @param kind Rodzaj figury ({@link SceneModel#RECTANGLE}, {@link SceneModel#CIRCLE}, {@link SceneModel#POLYGON}).
+     * @param r Składowa czerwona koloru.
+     * @param g Składowa zielona koloru.
+     * @param b Składowa niebieska koloru.
+     * @param a Nieprzezroczystość koloru.
+     * @param values Współrzędne figury.
+     * @return Identyfikator nowej figury.
+     */
+    public int add( byte kind, double r, double g, double b, double a, double[] values )
+    {
+        return add( kind, new Style( r, g, b, a ), values );
+    }
+
+    /**
+     * Dodaje figurę do modelu.
+     * @param kind Rodzaj figury ({@link SceneModel#RECTANGLE}, {@link SceneModel#CIRCLE}, {@link SceneModel#POLYGON}, {@link SceneModel#COMPOUND}).
+     * @param style Styl figury.
+     * @param values Współrzędne figury.
+     * @return Identyfikator nowej figury.
+     */
+    public int add( byte kind, Style style, double[] values )
+    {
+        return add( 0, kind, style, values );
+    }
+
+    /**
+     * Dodaje figurę do modelu pod podanym identyfikatorem.
+     * Jeśli identyfikator jest zajęty lub nie jest dodatni, figura dostaje nowy identyfikator.
+     * @param requestedId Preferowany identyfikator figury (np. odczytany z pliku).
+     * @param kind Rodzaj figury ({@link SceneModel#RECTANGLE}, {@link SceneModel#CIRCLE}, {@link SceneModel#POLYGON}, {@link SceneModel#COMPOUND}).
+     * @param style Styl figury.
+     * @param values Współrzędne figury.
+     * @return Identyfikator nowej figury.
+     */
+    public int add( int requestedId, byte kind, Style style, double[] values )
+    {
+        checkCoords( kind, values );
+        int id;
+        if( requestedId > 0 && !contains( requestedId ) )
+        {
+            id = requestedId;
+            nextId = Math.max( nextId, id + 1 );
+        }
+        else
+            id = nextId++;
+        int slot = size++;
+        ensureCapacity( size );
+        ensureIdCapacity( id );
+
+        ids[ slot ] = id;
+        kinds[ slot ] = kind;
+        styles[ slot ] = styleTable.intern( style );
+        focused[ slot ] = false;
+        coordStart[ slot ] = allocate( values.length );
+        coordCount[ slot ] = values.length;
+        System.arraycopy( values, 0, coords, coordStart[ slot ], values.length );
+        slotOfId[ id ] = slot;
+        updateBounds( slot );
+        for( Listener listener : listeners )
+            listener.shapeAdded( id );
+        return id;
+    }
+
+    /**
+     * Dodaje do modelu figurę opisaną rekordem.
+     * Zapisany w rekordzie identyfikator jest zachowywany, jeśli jest wolny.
+     * @param record Dane figury.
+     * @return Identyfikator nowej figury.
+     */
+    public int add( ShapeRecord record )
+    {
+        return add( record.getId(), record.getKind(), record.getStyle(), record.getCoords() );
+    }
+
+    /**
+     * Dodaje do modelu wiele figur naraz, przesuwając je o podany wektor (np. przy wklejaniu).
+     * Kolumny i pula współrzędnych powiększane są raz, przed dodaniem pierwszej figury,
+     * a figury trafiają na wierzch w kolejności z listy.
+     * Zapisane w rekordach identyfikatory są zachowywane, jeśli są wolne.
+     * @param records Dane figur.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     * @return Identyfikatory nowych figur, w kolejności z listy.
+     */
+    public int[] addAll( List<ShapeRecord> records, double dx, double dy )
+    {
+        int totalCoords = 0;
+        for( ShapeRecord record : records )
+        {
+            checkCoords( record.getKind(), record.getCoords() );
+            totalCoords += record.getCoords().length;
+        }
+        ensureCapacity( size + records.size() );
+        ensureCoordCapacity( totalCoords );
+
+        int[] added = new int[ records.size() ];
+        for( int i = 0; i < added.length; i++ )
+        {
+            ShapeRecord record = records.get( i );
+            int id = record.getId() > 0 && !contains( record.getId() ) ? record.getId() : nextId;
+            nextId = Math.max( nextId, id + 1 );
+            int slot = size++;
+            ensureIdCapacity( id );
+
+            double[] values = record.getCoords();
+            ids[ slot ] = id;
+            kinds[ slot ] = record.getKind();
+            styles[ slot ] = styleTable.intern( record.getStyle() );
+            focused[ slot ] = false;
+            coordStart[ slot ] = allocate( values.length );
+            coordCount[ slot ] = values.length;
+            System.arraycopy( values, 0, coords, coordStart[ slot ], values.length );
+            if( dx != 0 || dy != 0 )
+                translateSlot( slot, dx, dy );
+            slotOfId[ id ] = slot;
+            updateBounds( slot );
+            added[ i ] = id;
+            for( Listener listener : listeners )
+                listener.shapeAdded( id );
+        }
+        return added;
+    }
+
+    /**
+     * Rezerwuje identyfikatory do podanego włącznie dla figur, które zostaną dodane później
+     * z zachowaniem zapisanych identyfikatorów. Nowe figury dostaną większe identyfikatory.
+     * @param maxId Największy zarezerwowany identyfikator.
+     */
+    public void reserveIds( int maxId )
+    {
+        nextId = Math.max( nextId, maxId + 1 );
+    }
+
+    /**
+     * Usuwa figurę z modelu.
+     * @param id Identyfikator figury.
+     */
+    public void remove( int id )
+    {
+        removeAll( new int[]{ id }, 1 );
+    }
+
+    /**
+     * Usuwa wiele figur w jednym przebiegu po kolumnach.
+     * @param idsToRemove Identyfikatory usuwanych figur.
+     * @param count Liczba identyfikatorów branych pod uwagę.
+     */
+    public void removeAll( int[] idsToRemove, int count )
+    {
+        boolean[] removed = new boolean[ size ];
+        int removedCount = 0;
+        for( int i = 0; i < count; i++ )
+        {
+            int slot = slotOf( idsToRemove[ i ] );
+            if( !removed[ slot ] )
+            {
+                removed[ slot ] = true;
+                removedCount++;
+            }
+        }
+
+        int[] removedIds = new int[ removedCount ];
+        int removedIndex = 0;
+        int target = 0;
+        for( int slot = 0; slot < size; slot++ )
+        {
+            if( removed[ slot ] )
+            {
+                garbage += coordCount[ slot ];
+                slotOfId[ ids[ slot ] ] = -1;
+                removedIds[ removedIndex++ ] = ids[ slot ];
+                continue;
+            }
+            if( target != slot )
+                moveSlot( slot, target );
+            target++;
+        }
+        size -= removedCount;
+        compactIfNeeded();
+
+        for( int id : removedIds )
+            for( Listener listener : listeners )
+                listener.shapeRemoved( id );
+    }
+
+    /**
+     * Usuwa wszystkie figury z modelu.
+     */
+    public void clear()
+    {
+        int[] removedIds = Arrays.copyOf( ids, size );
+        for( int slot = 0; slot < size; slot++ )
+            slotOfId[ ids[ slot ] ] = -1;
+        size = 0;
+        coordsEnd = 0;
+        garbage = 0;
+        for( int id : removedIds )
+            for( Listener listener : listeners )
+                listener.shapeRemoved( id );
+        // Żadna figura nie odwołuje się już do stylów ani kluczy kolejności - nowy rysunek zaczyna od zera.
+        styleTable.clear();
+        zOrder.clear();
+    }
+
+    /**
+     * Dodaje obserwatora zmian w modelu.
+     * @param listener Obserwator.
+     */
+    public void addListener( Listener listener )
+    {
+        listeners.add( listener );
+    }
+
+    /**
+     * Usuwa obserwatora zmian w modelu.
+     * @param listener Obserwator.
+     */
+    public void removeListener( Listener listener )
+    {
+        listeners.remove( listener );
+    }
+
+    /**
+     * @return Liczba figur w modelu.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Zwraca identyfikator figury na podanej pozycji (w kolejności dodawania).
+     * @param index Pozycja figury, od 0 do {@link SceneModel#size()} - 1.
+     * @return Identyfikator figury.
+     */
+    public int idAt( int index )
+    {
+        if( index < 0 || index >= size )
+            throw new IndexOutOfBoundsException( "index: " + index );
+        return ids[ index ];
+    }
+
+    /**
+     * Sprawdza, czy figura o podanym identyfikatorze znajduje się w modelu.
+     * @param id Identyfikator figury.
+     * @return {@code true}, jeśli figura istnieje.
+     */
+    public boolean contains( int id )
+    {
+        return id > 0 && id < slotOfId.length && slotOfId[ id ] >= 0 && id < nextId;
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Rodzaj figury.
+     */
+    public byte getKind( int id )
+    {
+        return kinds[ slotOf( id ) ];
+    }
+
+    /**
+     * @return Tablica stylów współdzielonych przez figury z modelu.
+     */
+    public StyleTable getStyleTable()
+    {
+        return styleTable;
+    }
+
+    /**
+     * @return Kolejność rysowania figur z modelu.
+     */
+    public ZOrder getZOrder()
+    {
+        return zOrder;
+    }
+
+    /**
+     * @return Obiekt sprawdzający, czy punkt leży wewnątrz figury z modelu.
+     */
+    public HitTester getHitTester()
+    {
+        return hitTester;
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Numer stylu figury w {@link SceneModel#getStyleTable()}.
+     */
+    public int getStyleIndex( int id )
+    {
+        return styles[ slotOf( id ) ];
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Styl figury.
+     */
+    public Style getStyle( int id )
+    {
+        return styleTable.get( styles[ slotOf( id ) ] );
+    }
+
+    /**
+     * Zmienia styl figury.
+     * @param id Identyfikator figury.
+     * @param style Nowy styl.
+     */
+    public void setStyle( int id, Style style )
+    {
+        styles[ slotOf( id ) ] = styleTable.intern( style );
+        for( Listener listener : listeners )
+            listener.styleChanged( id );
+    }
+
+    /**
+     * Zmienia kolor wypełnienia figury.
+     * @param id Identyfikator figury.
+     * @param r Składowa czerwona.
+     * @param g Składowa zielona.
+     * @param b Składowa niebieska.
+     * @param a Nieprzezroczystość.
+     */
+    public void setColor( int id, double r, double g, double b, double a )
+    {
+        recolorParts( slotOf( id ), r, g, b, a );
+        setStyle( id, getStyle( id ).withFill( r, g, b, a ) );
+    }
+
+    /**
+     * Zmienia kolor wypełnienia wielu figur naraz.
+     * @param idsToChange Identyfikatory figur.
+     * @param count Liczba identyfikatorów branych pod uwagę.
+     * @param r Składowa czerwona.
+     * @param g Składowa zielona.
+     * @param b Składowa niebieska.
+     * @param a Nieprzezroczystość.
+     */
+    public void setColorAll( int[] idsToChange, int count, double r, double g, double b, double a )
+    {
+        // Zaznaczone figury zwykle mają niewiele różnych stylów - pamiętamy ostatnią zamianę.
+        int lastStyle = -1;
+        int lastNewStyle = -1;
+        for( int i = 0; i < count; i++ )
+        {
+            int slot = slotOf( idsToChange[ i ] );
+            recolorParts( slot, r, g, b, a );
+            if( styles[ slot ] != lastStyle )
+            {
+                lastStyle = styles[ slot ];
+                lastNewStyle = styleTable.intern( styleTable.get( lastStyle ).withFill( r, g, b, a ) );
+            }
+            styles[ slot ] = lastNewStyle;
+        }
+        for( int i = 0; i < count; i++ )
+            for( Listener listener : listeners )
+                listener.styleChanged( idsToChange[ i ] );
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Czy figura jest zaznaczona.
+     */
+    public boolean isFocused( int id )
+    {
+        return focused[ slotOf( id ) ];
+    }
+
+    /**
+     * Zaznacza lub odznacza figurę.
+     * @param id Identyfikator figury.
+     * @param isFocused Nowy stan zaznaczenia.
+     */
+    public void setFocused( int id, boolean isFocused )
+    {
+        focused[ slotOf( id ) ] = isFocused;
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Liczba współrzędnych figury.
+     */
+    public int getCoordCount( int id )
+    {
+        return coordCount[ slotOf( id ) ];
+    }
+
+    /**
+     * Zwraca pojedynczą współrzędną figury.
+     * @param id Identyfikator figury.
+     * @param index Numer współrzędnej.
+     * @return Wartość współrzędnej.
+     */
+    public double getCoord( int id, int index )
+    {
+        int slot = slotOf( id );
+        checkCoordIndex( slot, index );
+        return coords[ coordStart[ slot ] + index ];
+    }
+
+    /**
+     * Zwraca kopię wszystkich współrzędnych figury.
+     * @param id Identyfikator figury.
+     * @return Nowa tablica ze współrzędnymi.
+     */
+    public double[] getCoords( int id )
+    {
+        int slot = slotOf( id );
+        return Arrays.copyOfRange( coords, coordStart[ slot ], coordStart[ slot ] + coordCount[ slot ] );
+    }
+
+    /**
+     * Ustawia pojedynczą współrzędną figury.
+     * @param id Identyfikator figury.
+     * @param index Numer współrzędnej.
+     * @param value Nowa wartość.
+     */
+    public void setCoord( int id, int index, double value )
+    {
+        int slot = slotOf( id );
+        checkCoordIndex( slot, index );
+        coords[ coordStart[ slot ] + index ] = value;
+        updateBounds( slot );
+        fireGeometryChanged( id );
+    }
+
+    /**
+     * Zastępuje wszystkie współrzędne figury.
+     * @param id Identyfikator figury.
+     * @param values Nowe współrzędne.
+     */
+    public void setCoords( int id, double[] values )
+    {
+        int slot = slotOf( id );
+        checkCoords( kinds[ slot ], values );
+        if( values.length != coordCount[ slot ] )
+        {
+            garbage += coordCount[ slot ];
+            coordStart[ slot ] = allocate( values.length );
+            coordCount[ slot ] = values.length;
+        }
+        System.arraycopy( values, 0, coords, coordStart[ slot ], values.length );
+        updateBounds( slot );
+        fireGeometryChanged( id );
+    }
+
+    /**
+     * Dodaje wierzchołek na końcu wielokąta.
+     * @param id Identyfikator wielokąta.
+     * @param x Współrzędna X wierzchołka.
+     * @param y Współrzędna Y wierzchołka.
+     */
+    public void addVertex( int id, double x, double y )
+    {
+        insertVertex( id, getCoordCount( id ) / 2, x, y );
+    }
+
+    /**
+     * Wstawia wierzchołek do wielokąta. Kolejne wierzchołki przesuwają się o jeden numer dalej.
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer, który będzie miał nowy wierzchołek (liczba wierzchołków - na końcu).
+     * @param x Współrzędna X wierzchołka.
+     * @param y Współrzędna Y wierzchołka.
+     */
+    public void insertVertex( int id, int vertex, double x, double y )
+    {
+        int slot = slotOf( id );
+        checkPolygon( slot );
+        int start = coordStart[ slot ];
+        int count = coordCount[ slot ];
+        if( vertex < 0 || 2 * vertex > count )
+            throw new IndexOutOfBoundsException( "vertex: " + vertex );
+        if( start + count == coordsEnd && coordsEnd + 2 <= coords.length )
+        {
+            coordsEnd += 2;
+        }
+        else
+        {
+            // Wielokąt nie ma miejsca na końcu puli - przenosimy go na koniec.
+            int newStart = allocate( count + 2 );
+            start = coordStart[ slot ];
+            System.arraycopy( coords, start, coords, newStart, count );
+            garbage += count;
+            coordStart[ slot ] = newStart;
+            start = newStart;
+        }
+        int at = start + 2 * vertex;
+        System.arraycopy( coords, at, coords, at + 2, count - 2 * vertex );
+        coords[ at ] = x;
+        coords[ at + 1 ] = y;
+        coordCount[ slot ] = count + 2;
+        includeInBounds( slot, x, y );
+        for( Listener listener : listeners )
+            listener.vertexInserted( id, vertex );
+    }
+
+    /**
+     * Przesuwa jeden wierzchołek wielokąta. Prostokąt opisany na wielokącie przeliczany jest
+     * od nowa tylko wtedy, gdy wierzchołek leżał na jego brzegu i odsunął się do środka -
+     * w przeciwnym razie zmiana kosztuje O(1), niezależnie od liczby wierzchołków.
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer wierzchołka.
+     * @param x Nowa współrzędna X wierzchołka.
+     * @param y Nowa współrzędna Y wierzchołka.
+     */
+    public void moveVertex( int id, int vertex, double x, double y )
+    {
+        int slot = slotOf( id );
+        checkPolygon( slot );
+        checkCoordIndex( slot, 2 * vertex + 1 );
+        int at = coordStart[ slot ] + 2 * vertex;
+        double oldX = coords[ at ];
+        double oldY = coords[ at + 1 ];
+        coords[ at ] = x;
+        coords[ at + 1 ] = y;
+        if( ( oldX == minX[ slot ] && x > oldX ) || ( oldX == maxX[ slot ] && x < oldX )
+                || ( oldY == minY[ slot ] && y > oldY ) || ( oldY == maxY[ slot ] && y < oldY ) )
+            updateBounds( slot );
+        else
+            includeInBounds( slot, x, y );
+        for( Listener listener : listeners )
+            listener.vertexMoved( id, vertex );
+    }
+
+    /**
+     * Usuwa wierzchołek wielokąta. Kolejne wierzchołki przesuwają się o jeden numer wstecz.
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer wierzchołka.
+     */
+    public void removeVertex( int id, int vertex )
+    {
+        int slot = slotOf( id );
+        checkPolygon( slot );
+        checkCoordIndex( slot, 2 * vertex + 1 );
+        int at = coordStart[ slot ] + 2 * vertex;
+        System.arraycopy( coords, at + 2, coords, at, coordCount[ slot ] - 2 * vertex - 2 );
+        coordCount[ slot ] -= 2;
+        garbage += 2;
+        updateBounds( slot );
+        for( Listener listener : listeners )
+            listener.vertexRemoved( id, vertex );
+    }
+
+    /**
+     * Usuwa ostatni wierzchołek wielokąta.
+     * @param id Identyfikator wielokąta.
+     */
+    public void removeLastVertex( int id )
+    {
+        int slot = slotOf( id );
+        checkPolygon( slot );
+        if( coordCount[ slot ] < 2 )
+            throw new IllegalStateException( "Wielokąt nie ma wierzchołków" );
+        removeVertex( id, coordCount[ slot ] / 2 - 1 );
+    }
+
+    /**
+     * Przesuwa figurę o podany wektor.
+     * @param id Identyfikator figury.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     */
+    public void translate( int id, double dx, double dy )
+    {
+        int slot = slotOf( id );
+        translateSlot( slot, dx, dy );
+        minX[ slot ] += dx;
+        maxX[ slot ] += dx;
+        minY[ slot ] += dy;
+        maxY[ slot ] += dy;
+        fireGeometryChanged( id );
+    }
+
+    /**
+     * Przesuwa współrzędne figury (bez prostokąta opisanego na niej) o podany wektor.
+     * @param slot Indeks figury w kolumnach.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     */
+    private void translateSlot( int slot, double dx, double dy )
+    {
+        int start = coordStart[ slot ];
+        int end = start + coordCount[ slot ];
+        if( kinds[ slot ] == COMPOUND )
+        {
+            for( int part = start; part < end; part = CompoundLayout.next( coords, part ) )
+                translateValues( CompoundLayout.kind( coords, part ), CompoundLayout.valuesStart( coords, part ),
+                        CompoundLayout.valueCount( coords, part ), dx, dy );
+        }
+        else
+            translateValues( kinds[ slot ], start, coordCount[ slot ], dx, dy );
+    }
+
+    /**
+     * Zmienia rozmiar figury. Pomniejszenie jest ignorowane, jeśli figura
+     * stałaby się mniejsza niż {@link SceneModel#MIN_SIZE}.
+     * Prostokąt skaluje się względem lewego górnego rogu, koło względem środka,
+     * a wielokąt i figura złożona względem środka prostokąta opisanego na figurze.
+     * @param id Identyfikator figury.
+     * @param scale Skala (1.0 = bez zmian).
+     */
+    public void rescale( int id, double scale )
+    {
+        rescaleSlot( slotOf( id ), scale );
+        fireGeometryChanged( id );
+    }
+
+    /**
+     * Zmienia rozmiar figury zapisanej w podanym miejscu kolumn, tak jak {@link SceneModel#rescale(int, double)},
+     * ale bez powiadamiania obserwatorów.
+     * @param slot Miejsce figury w kolumnach.
+     * @param scale Skala (1.0 = bez zmian).
+     */
+    private void rescaleSlot( int slot, double scale )
+    {
+        if( canScale( kinds[ slot ], extentX( slot ), extentY( slot ), scale ) )
+            scaleSlot( slot, scale );
+    }
+
+    /**
+     * Zmienia rozmiar figury o kolejne skale, tak jak {@link SceneModel#rescaleSlot(int, double)} wywołane
+     * osobno dla każdej skali. Dla każdej skali sprawdzany jest tylko rozmiar figury (dwie liczby),
+     * a współrzędne zmieniane są raz, o iloczyn przyjętych skal.
+     * @param slot Miejsce figury w kolumnach.
+     * @param scales Skale stosowane po kolei (1.0 = bez zmian).
+     * @param scaleCount Liczba skal.
+     */
+    private void rescaleSlot( int slot, double[] scales, int scaleCount )
+    {
+        byte kind = kinds[ slot ];
+        double width = extentX( slot );
+        double height = extentY( slot );
+        double factor = 1.0;
+        for( int s = 0; s < scaleCount; s++ )
+        {
+            if( canScale( kind, width, height, scales[ s ] ) )
+            {
+                factor *= scales[ s ];
+                width *= scales[ s ];
+                height *= scales[ s ];
+            }
+        }
+        if( factor != 1.0 )
+            scaleSlot( slot, factor );
+    }
+
+    /**
+     * Sprawdza, czy pomniejszenie nie zmniejszy figury poniżej {@link SceneModel#MIN_SIZE}.
+     * Wielokąt sprawdzany jest według rozmiaru sprzed skalowania, a pozostałe figury - po skalowaniu.
+     * @param kind Rodzaj figury.
+     * @param width Rozmiar figury w poziomie (zob. {@link SceneModel#extentX(int)}).
+     * @param height Rozmiar figury w pionie (zob. {@link SceneModel#extentY(int)}).
+     * @param scale Skala.
+     * @return Czy figurę można przeskalować.
+     */
+    private static boolean canScale( byte kind, double width, double height, double scale )
+    {
+        if( scale > 1.0 )
+            return true;
+        if( kind == POLYGON )
+            return width > MIN_SIZE && height > MIN_SIZE;
+        return width * scale > MIN_SIZE && height * scale > MIN_SIZE;
+    }
+
+    /**
+     * @param slot Miejsce figury w kolumnach.
+     * @return Rozmiar figury w poziomie sprawdzany przy pomniejszaniu: szerokość prostokąta,
+     *         promień koła, a dla pozostałych figur szerokość prostokąta opisanego na figurze.
+     */
+    private double extentX( int slot )
+    {
+        if( kinds[ slot ] == RECTANGLE || kinds[ slot ] == CIRCLE )
+            return coords[ coordStart[ slot ] + 2 ];
+        return maxX[ slot ] - minX[ slot ];
+    }
+
+    /**
+     * @param slot Miejsce figury w kolumnach.
+     * @return Rozmiar figury w pionie sprawdzany przy pomniejszaniu: wysokość prostokąta,
+     *         promień koła, a dla pozostałych figur wysokość prostokąta opisanego na figurze.
+     */
+    private double extentY( int slot )
+    {
+        if( kinds[ slot ] == RECTANGLE )
+            return coords[ coordStart[ slot ] + 3 ];
+        if( kinds[ slot ] == CIRCLE )
+            return coords[ coordStart[ slot ] + 2 ];
+        return maxY[ slot ] - minY[ slot ];
+    }
+
+    /**
+     * Skaluje współrzędne figury bez sprawdzania najmniejszego rozmiaru i bez powiadamiania obserwatorów.
+     * @param slot Miejsce figury w kolumnach.
+     * @param scale Skala.
+     */
+    private void scaleSlot( int slot, double scale )
+    {
+        int start = coordStart[ slot ];
+        switch( kinds[ slot ] )
+        {
+        case RECTANGLE:
+            coords[ start + 2 ] *= scale;
+            coords[ start + 3 ] *= scale;
+            break;
+        case CIRCLE:
+            coords[ start + 2 ] *= scale;
+            break;
+        case POLYGON:
+        {
+            double centerX = minX[ slot ] + ( maxX[ slot ] - minX[ slot ] ) / 2;
+            double centerY = minY[ slot ] + ( maxY[ slot ] - minY[ slot ] ) / 2;
+            int end = start + coordCount[ slot ];
+            for( int i = start; i < end; i += 2 )
+            {
+                coords[ i ] = centerX + scale * ( coords[ i ] - centerX );
+                coords[ i + 1 ] = centerY + scale * ( coords[ i + 1 ] - centerY );
+            }
+            break;
+        }
+        case COMPOUND:
+        {
+            double centerX = minX[ slot ] + ( maxX[ slot ] - minX[ slot ] ) / 2;
+            double centerY = minY[ slot ] + ( maxY[ slot ] - minY[ slot ] ) / 2;
+            int end = start + coordCount[ slot ];
+            for( int part = start; part < end; part = CompoundLayout.next( coords, part ) )
+                scaleValues( CompoundLayout.kind( coords, part ), CompoundLayout.valuesStart( coords, part ),
+                        CompoundLayout.valueCount( coords, part ), centerX, centerY, scale );
+            break;
+        }
+        }
+        updateBounds( slot );
+    }
+
+    /**
+     * Przesuwa współrzędne prostej figury (lub części figury złożonej) zapisane w puli.
+     * @param kind Rodzaj figury.
+     * @param start Indeks pierwszej współrzędnej.
+     * @param count Liczba współrzędnych.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     */
+    private void translateValues( byte kind, int start, int count, double dx, double dy )
+    {
+        if( kind == POLYGON )
+        {
+            int end = start + count;
+            for( int i = start; i < end; i += 2 )
+            {
+                coords[ i ] += dx;
+                coords[ i + 1 ] += dy;
+            }
+        }
+        else
+        {
+            coords[ start ] += dx;
+            coords[ start + 1 ] += dy;
+        }
+    }
+
+    /**
+     * Skaluje współrzędne części figury złożonej względem podanego punktu.
+     * @param kind Rodzaj części.
+     * @param start Indeks pierwszej współrzędnej.
+     * @param count Liczba współrzędnych.
+     * @param centerX Współrzędna X środka skalowania.
+     * @param centerY Współrzędna Y środka skalowania.
+     * @param scale Skala.
+     */
+    private void scaleValues( byte kind, int start, int count, double centerX, double centerY, double scale )
+    {
+        int end = kind == POLYGON ? start + count : start + 2;
+        for( int i = start; i < end; i += 2 )
+        {
+            coords[ i ] = centerX + scale * ( coords[ i ] - centerX );
+            coords[ i + 1 ] = centerY + scale * ( coords[ i + 1 ] - centerY );
+        }
+        if( kind == RECTANGLE )
+        {
+            coords[ start + 2 ] *= scale;
+            coords[ start + 3 ] *= scale;
+        }
+        else if( kind == CIRCLE )
+            coords[ start + 2 ] *= scale;
+    }
+
+    /**
+     * Zmienia kolor wypełnienia wszystkich części figury złożonej.
+     * Dla pozostałych figur nic nie robi.
+     * @param slot Indeks figury w kolumnach.
+     * @param r Składowa czerwona.
+     * @param g Składowa zielona.
+     * @param b Składowa niebieska.
+     * @param a Nieprzezroczystość.
+     */
+    private void recolorParts( int slot, double r, double g, double b, double a )
+    {
+        if( kinds[ slot ] != COMPOUND )
+            return;
+        int end = coordStart[ slot ] + coordCount[ slot ];
+        for( int part = coordStart[ slot ]; part < end; part = CompoundLayout.next( coords, part ) )
+            CompoundLayout.setFill( coords, part, r, g, b, a );
+    }
+
+    /**
+     * Zmienia rozmiar wielu figur naraz. Każda figura skalowana jest tak,
+     * jak w {@link SceneModel#rescale(int, double)}.
+     * @param idsToScale Identyfikatory figur.
+     * @param count Liczba identyfikatorów branych pod uwagę.
+     * @param scale Skala (1.0 = bez zmian).
+     */
+    public void rescaleAll( int[] idsToScale, int count, double scale )
+    {
+        for( int i = 0; i < count; i++ )
+            rescale( idsToScale[ i ], scale );
+    }
+
+    /**
+     * Zmienia rozmiar wielu figur naraz o kolejne skale. Wynik jest taki sam jak przy wywołaniu
+     * {@link SceneModel#rescaleAll(int[], int, double)} osobno dla każdej skali - pomniejszenie
+     * poniżej {@link SceneModel#MIN_SIZE} pomijane jest dla każdej skali osobno - ale współrzędne
+     * każdej figury zmieniane są raz, a obserwatorzy powiadamiani są o każdej figurze tylko raz.
+     * @param idsToScale Identyfikatory figur.
+     * @param count Liczba identyfikatorów branych pod uwagę.
+     * @param scales Skale stosowane po kolei (1.0 = bez zmian).
+     * @param scaleCount Liczba skal.
+     */
+    public void rescaleAll( int[] idsToScale, int count, double[] scales, int scaleCount )
+    {
+        for( int i = 0; i < count; i++ )
+        {
+            rescaleSlot( slotOf( idsToScale[ i ] ), scales, scaleCount );
+            fireGeometryChanged( idsToScale[ i ] );
+        }
+    }
+
+    /**
+     * Przesuwa wiele figur naraz o ten sam wektor.
+     * @param idsToMove Identyfikatory figur.
+     * @param count Liczba identyfikatorów branych pod uwagę.
+     * @param dx Przesunięcie w poziomie.
+     * @param dy Przesunięcie w pionie.
+     */
+    public void translateAll( int[] idsToMove, int count, double dx, double dy )
+    {
+        for( int i = 0; i < count; i++ )
+            translate( idsToMove[ i ], dx, dy );
+    }
+
+    /** @param id Identyfikator figury. @return Najmniejsza współrzędna X figury. */
+    public double getMinX( int id ) { return minX[ slotOf( id ) ]; }
+
+    /** @param id Identyfikator figury. @return Najmniejsza współrzędna Y figury. */
+    public double getMinY( int id ) { return minY[ slotOf( id ) ]; }
+
+    /** @param id Identyfikator figury. @return Największa współrzędna X figury. */
+    public double getMaxX( int id ) { return maxX[ slotOf( id ) ]; }
+
+    /** @param id Identyfikator figury. @return Największa współrzędna Y figury. */
+    public double getMaxY( int id ) { return maxY[ slotOf( id ) ]; }
+
+    /**
+     * Powiadamia obserwatorów o zmianie geometrii figury.
+     * @param id Identyfikator figury.
+     */
+    private void fireGeometryChanged( int id )
+    {
+        for( Listener listener : listeners )
+            listener.geometryChanged( id );
+    }
+
+    /**
+     * Zwraca indeks figury w kolumnach.
+     * @param id Identyfikator figury.
+     * @return Indeks w kolumnach.
+     * @throws IllegalArgumentException gdy figury nie ma w modelu.
+     */
+    private int slotOf( int id )
+    {
+        if( !contains( id ) )
+            throw new IllegalArgumentException( "Brak figury o identyfikatorze " + id );
+        return slotOfId[ id ];
+    }
+
+    /**
+     * Przenosi wszystkie dane figury z jednego indeksu kolumn na inny.
+     * @param from Indeks źródłowy.
+     * @param to Indeks docelowy.
+     */
+    private void moveSlot( int from, int to )
+    {
+        ids[ to ] = ids[ from ];
+        kinds[ to ] = kinds[ from ];
+        styles[ to ] = styles[ from ];
+        focused[ to ] = focused[ from ];
+        coordStart[ to ] = coordStart[ from ];
+        coordCount[ to ] = coordCount[ from ];
+        minX[ to ] = minX[ from ];
+        minY[ to ] = minY[ from ];
+        maxX[ to ] = maxX[ from ];
+        maxY[ to ] = maxY[ from ];
+        slotOfId[ ids[ to ] ] = to;
+    }
+
+    /**
+     * Wylicza prostokąt opisany na figurze.
+     * @param slot Indeks figury w kolumnach.
+     */
+    private void updateBounds( int slot )
+    {
+        int start = coordStart[ slot ];
+        switch( kinds[ slot ] )
+        {
+        case RECTANGLE:
+            minX[ slot ] = coords[ start ];
+            minY[ slot ] = coords[ start + 1 ];
+            maxX[ slot ] = coords[ start ] + coords[ start + 2 ];
+            maxY[ slot ] = coords[ start + 1 ] + coords[ start + 3 ];
+            break;
+        case CIRCLE:
+            minX[ slot ] = coords[ start ] - coords[ start + 2 ];
+            minY[ slot ] = coords[ start + 1 ] - coords[ start + 2 ];
+            maxX[ slot ] = coords[ start ] + coords[ start + 2 ];
+            maxY[ slot ] = coords[ start + 1 ] + coords[ start + 2 ];
+            break;
+        case POLYGON:
+        case COMPOUND:
+            minX[ slot ] = Double.POSITIVE_INFINITY;
+            minY[ slot ] = Double.POSITIVE_INFINITY;
+            maxX[ slot ] = Double.NEGATIVE_INFINITY;
+            maxY[ slot ] = Double.NEGATIVE_INFINITY;
+            int end = start + coordCount[ slot ];
+            if( kinds[ slot ] == POLYGON )
+            {
+                for( int i = start; i < end; i += 2 )
+                    includeInBounds( slot, coords[ i ], coords[ i + 1 ] );
+                break;
+            }
+            for( int part = start; part < end; part = CompoundLayout.next( coords, part ) )
+                includePartInBounds( slot, CompoundLayout.kind( coords, part ), CompoundLayout.valuesStart( coords, part ),
+                        CompoundLayout.valueCount( coords, part ) );
+            break;
+        }
+    }
+
+    /**
+     * Rozszerza prostokąt opisany na figurze złożonej tak, aby zawierał jedną z jej części.
+     * @param slot Indeks figury w kolumnach.
+     * @param kind Rodzaj części.
+     * @param start Indeks pierwszej współrzędnej części.
+     * @param count Liczba współrzędnych części.
+     */
+    private void includePartInBounds( int slot, byte kind, int start, int count )
+    {
+        switch( kind )
+        {
+        case RECTANGLE:
+            includeInBounds( slot, coords[ start ], coords[ start + 1 ] );
+            includeInBounds( slot, coords[ start ] + coords[ start + 2 ], coords[ start + 1 ] + coords[ start + 3 ] );
+            break;
+        case CIRCLE:
+            includeInBounds( slot, coords[ start ] - coords[ start + 2 ], coords[ start + 1 ] - coords[ start + 2 ] );
+            includeInBounds( slot, coords[ start ] + coords[ start + 2 ], coords[ start + 1 ] + coords[ start + 2 ] );
+            break;
+        default:
+            for( int i = start; i < start + count; i += 2 )
+                includeInBounds( slot, coords[ i ], coords[ i + 1 ] );
+            break;
+        }
+    }
+
+    /**
+     * Rozszerza prostokąt opisany na figurze tak, aby zawierał podany punkt.
+     * @param slot Indeks figury w kolumnach.
+     * @param x Współrzędna X punktu.
+     * @param y Współrzędna Y punktu.
+     */
+    private void includeInBounds( int slot, double x, double y )
+    {
+        if( x < minX[ slot ] ) minX[ slot ] = x;
+        if( x > maxX[ slot ] ) maxX[ slot ] = x;
+        if( y < minY[ slot ] ) minY[ slot ] = y;
+        if( y > maxY[ slot ] ) maxY[ slot ] = y;
+    }
+
+    /**
+     * Rezerwuje miejsce na końcu puli współrzędnych.
+     * @param count Liczba rezerwowanych komórek.
+     * @return Indeks pierwszej zarezerwowanej komórki.
+     */
+    private int allocate( int count )
+    {
+        ensureCoordCapacity( count );
+        int start = coordsEnd;
+        coordsEnd += count;
+        return start;
+    }
+
+    /**
+     * Zapewnia w puli miejsce na podaną liczbę współrzędnych za jej zajętą częścią.
+     * @param count Liczba współrzędnych.
+     */
+    private void ensureCoordCapacity( int count )
+    {
+        if( coordsEnd + count <= coords.length )
+            return;
+        compactIfNeeded();
+        if( coordsEnd + count > coords.length )
+            coords = Arrays.copyOf( coords, Math.max( coords.length * 2, coordsEnd + count ) );
+    }
+
+    /**
+     * Przepisuje pulę współrzędnych bez nieużywanych komórek,
+     * jeśli stanowią one ponad połowę zajętego miejsca.
+     */
+    private void compactIfNeeded()
+    {
+        if( garbage * 2 <= coordsEnd )
+            return;
+        double[] compacted = new double[ Math.max( INITIAL_CAPACITY, coords.length ) ];
+        int end = 0;
+        for( int slot = 0; slot < size; slot++ )
+        {
+            System.arraycopy( coords, coordStart[ slot ], compacted, end, coordCount[ slot ] );
+            coordStart[ slot ] = end;
+            end += coordCount[ slot ];
+        }
+        coords = compacted;
+        coordsEnd = end;
+        garbage = 0;
+    }
+
+    /**
+     * Powiększa kolumny tak, aby zmieściły podaną liczbę figur.
+     * @param capacity Wymagana pojemność.
+     */
+    private void ensureCapacity( int capacity )
+    {
+        if( capacity <= ids.length )
+            return;
+        int newCapacity = Math.max( capacity, ids.length * 2 );
+        ids = Arrays.copyOf( ids, newCapacity );
+        kinds = Arrays.copyOf( kinds, newCapacity );
+        styles = Arrays.copyOf( styles, newCapacity );
+        focused = Arrays.copyOf( focused, newCapacity );
+        coordStart = Arrays.copyOf( coordStart, newCapacity );
+        coordCount = Arrays.copyOf( coordCount, newCapacity );
+        minX = Arrays.copyOf( minX, newCapacity );
+        minY = Arrays.copyOf( minY, newCapacity );
+        maxX = Arrays.copyOf( maxX, newCapacity );
+        maxY = Arrays.copyOf( maxY, newCapacity );
+    }
+
+    /**
+     * Powiększa tablicę {@link SceneModel#slotOfId} tak, aby mieściła podany identyfikator.
+     * @param id Identyfikator figury.
+     */
+    private void ensureIdCapacity( int id )
+    {
+        if( id < slotOfId.length )
+            return;
+        int oldLength = slotOfId.length;
+        slotOfId = Arrays.copyOf( slotOfId, Math.max( id + 1, oldLength * 2 ) );
+        Arrays.fill( slotOfId, oldLength, slotOfId.length, -1 );
+    }
+
+    /**
+     * Sprawdza, czy współrzędne pasują do rodzaju figury.
+     * @param kind Rodzaj figury.
+     * @param values Współrzędne.
+     */
+    private static void checkCoords( byte kind, double[] values )
+    {
+        int count = values.length;
+        switch( kind )
+        {
+        case RECTANGLE:
+            if( count != 4 )
+                throw new IllegalArgumentException( "Prostokąt wymaga 4 współrzędnych" );
+            break;
+        case CIRCLE:
+            if( count != 3 )
+                throw new IllegalArgumentException( "Koło wymaga 3 współrzędnych" );
+            break;
+        case POLYGON:
+            if( count % 2 != 0 )
+                throw new IllegalArgumentException( "Wielokąt wymaga par współrzędnych" );
+            break;
+        case COMPOUND:
+            CompoundLayout.check( values, 0, count );
+            break;
+        default:
+            throw new IllegalArgumentException( "Nieznany rodzaj figury: " + kind );
+        }
+    }
+
+    /**
+     * Sprawdza, czy numer współrzędnej mieści się w zakresie.
+     * @param slot Indeks figury w kolumnach.
+     * @param index Numer współrzędnej.
+     */
+    private void checkCoordIndex( int slot, int index )
+    {
+        if( index < 0 || index >= coordCount[ slot ] )
+            throw new IndexOutOfBoundsException( "coord: " + index );
+    }
+
+    /**
+     * Sprawdza, czy figura jest wielokątem.
+     * @param slot Indeks figury w kolumnach.
+     */
+    private void checkPolygon( int slot )
+    {
+        if( kinds[ slot ] != POLYGON )
+            throw new IllegalArgumentException( "Figura nie jest wielokątem" );
+    }
+}
@@ -0,0 +1,289 @@
+package nano.paint.model;
+
+import java.util.List;
+
+/**
+ * Zamiana figur na linie tekstu zapisywane w plikach {@code .shapes} i odwrotnie.
+ * Nie korzysta z JavaFX, więc może działać w dowolnym wątku.
+ *
+ * Plik zaczyna się od linii stylów, a figury odwołują się do nich numerem:
+ * <pre>
+ * s 0.5 0.4 0.8 1.0 0.0 0.0 0.0 1.0
+ * c#17 @0 154.0 377.0 38.0
+ * </pre>
+ * Po rodzaju figury zapisany jest jej identyfikator, dzięki czemu figury zachowują
+ * tożsamość po zapisie i ponownym odczycie. Identyfikator jest opcjonalny.
+ * Numer stylu to kolejność linii {@code s} w pliku. Odczytywane są również
+ * starsze pliki, w których każda figura zawiera pełen kolor:
+ * {@code c 0.5 0.4 0.8 1.0 154.0 377.0 38.0}.
+ * Współrzędne figury złożonej zapisywane są w układzie {@link CompoundLayout},
+ * razem z nagłówkami części.
+ * Liczby zapisywane są przez {@link NumberWriter} - domyślnie w najkrótszej dokładnej postaci.
+ * Styl może mieć też postać z 8-bitowymi składowymi: {@code s #7f66ccff #000000ff}.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ * @see ShapeRecord
+ */
+public final class ShapeCodec
+{
+    /** Pierwszy znak linii opisującej styl. */
+    public static final char STYLE = 's';
+    /** Znak oddzielający rodzaj figury od jej identyfikatora. */
+    private static final char ID_SEPARATOR = '#';
+    /** Pierwszy znak odwołania do stylu. */
+    private static final char STYLE_REFERENCE = '@';
+    /** Pierwszy znak koloru zapisanego 8-bitowymi składowymi. */
+    private static final char HEX_COLOR = '#';
+
+    /** Klasa zawiera wyłącznie metody statyczne. */
+    private ShapeCodec()
+    {
+    }
+
+    /**
+     * Sprawdza, czy linia opisuje styl.
+     * @param line Linia tekstu z pliku.
+     * @return {@code true}, jeśli linia opisuje styl.
+     */
+    public static boolean isStyle( String line )
+    {
+        return !line.isEmpty() && line.charAt( 0 ) == STYLE;
+    }
+
+    /**
+     * Odczytuje styl z linii tekstu wygenerowanej przez {@link ShapeCodec#formatStyle(Style)}.
+     * @param line Linia tekstu z danymi stylu.
+     * @return Odczytany styl.
+     * @throws IllegalArgumentException gdy linia nie opisuje poprawnego stylu.
+     */
+    public static Style parseStyle( String line )
+    {
+        String[] values = line.split( " " );
+        if( values.length == 3 && values[ 0 ].equals( "s" ) )
+        {
+            double[] fill = parseHexColor( values[ 1 ], line );
+            double[] stroke = parseHexColor( values[ 2 ], line );
+            return new Style( fill[ 0 ], fill[ 1 ], fill[ 2 ], fill[ 3 ], stroke[ 0 ], stroke[ 1 ], stroke[ 2 ], stroke[ 3 ] );
+        }
+        if( values.length != 9 || !values[ 0 ].equals( "s" ) )
+            throw new IllegalArgumentException( "Niepoprawny styl: " + line );
+        double[] v = new double[ 8 ];
+        for( int i = 0; i < v.length; i++ )
+            v[ i ] = Double.parseDouble( values[ i + 1 ] );
+        return new Style( v[ 0 ], v[ 1 ], v[ 2 ], v[ 3 ], v[ 4 ], v[ 5 ], v[ 6 ], v[ 7 ] );
+    }
+
+    /**
+     * Odczytuje kolor zapisany 8-bitowymi składowymi ({@code #rrggbbaa}).
+     * @param value Zapisany kolor.
+     * @param line Cała linia (do komunikatu o błędzie).
+     * @return Składowe koloru: czerwona, zielona, niebieska, nieprzezroczystość.
+     */
+    private static double[] parseHexColor( String value, String line )
+    {
+        if( value.length() != 9 || value.charAt( 0 ) != HEX_COLOR )
+            throw new IllegalArgumentException( "Niepoprawny styl: " + line );
+        double[] channels = new double[ 4 ];
+        for( int i = 0; i < 4; i++ )
+            channels[ i ] = Integer.parseInt( value.substring( 1 + 2 * i, 3 + 2 * i ), 16 ) / 255.0;
+        return channels;
+    }
+
+    /**
+     * Zapisuje styl w linii tekstu bez utraty dokładności.
+     * @param style Styl.
+     * @return Linia tekstu z danymi stylu.
+     */
+    public static String formatStyle( Style style )
+    {
+        return formatStyle( style, NumberWriter.EXACT );
+    }
+
+    /**
+     * Zapisuje styl w linii tekstu.
+     * @param style Styl.
+     * @param numbers Sposób zapisu liczb (np. 8-bitowe składowe kolorów).
+     * @return Linia tekstu z danymi stylu.
+     */
+    public static String formatStyle( Style style, NumberWriter numbers )
+    {
+        StringBuilder builder = new StringBuilder( 64 ).append( STYLE );
+        if( numbers.isEightBitColors() )
+        {
+            builder.append( ' ' ).append( HEX_COLOR );
+            numbers.appendColorChannel( builder, style.getFillRed() );
+            numbers.appendColorChannel( builder, style.getFillGreen() );
+            numbers.appendColorChannel( builder, style.getFillBlue() );
+            numbers.appendColorChannel( builder, style.getFillOpacity() );
+            builder.append( ' ' ).append( HEX_COLOR );
+            numbers.appendColorChannel( builder, style.getStrokeRed() );
+            numbers.appendColorChannel( builder, style.getStrokeGreen() );
+            numbers.appendColorChannel( builder, style.getStrokeBlue() );
+            numbers.appendColorChannel( builder, style.getStrokeOpacity() );
+            return builder.toString();
+        }
+        double[] channels = { style.getFillRed(), style.getFillGreen(), style.getFillBlue(), style.getFillOpacity(),
+                style.getStrokeRed(), style.getStrokeGreen(), style.getStrokeBlue(), style.getStrokeOpacity() };
+        for( double channel : channels )
+            NumberWriter.appendShortest( builder.append( ' ' ), channel );
+        return builder.toString();
+    }
+
+    /**
+     * Odczytuje figurę z linii tekstu wygenerowanej przez {@link ShapeCodec#format(SceneModel, int)}
+     * lub z linii w starszym formacie, zawierającej pełen kolor.
+     * @param line Linia tekstu z danymi figury.
+     * @param styles Style odczytane wcześniej z tego samego pliku.
+     * @return Odczytana figura.
+     * @throws IllegalArgumentException gdy linia nie opisuje poprawnej figury.
+     */
+    public static ShapeRecord parse( String line, List<Style> styles )
+    {
+        String[] values = line.split( " " );
+        if( values.length < 2 || values[ 0 ].isEmpty() )
+            throw new IllegalArgumentException( "Niepoprawna linia: " + line );
+
+        int id = 0;
+        if( values[ 0 ].length() > 1 )
+        {
+            if( values[ 0 ].charAt( 1 ) != ID_SEPARATOR )
+                throw new IllegalArgumentException( "Niepoprawna linia: " + line );
+            id = Integer.parseInt( values[ 0 ].substring( 2 ) );
+            if( id <= 0 )
+                throw new IllegalArgumentException( "Niepoprawny identyfikator: " + line );
+        }
+
+        Style style;
+        int first;
+        if( !values[ 1 ].isEmpty() && values[ 1 ].charAt( 0 ) == STYLE_REFERENCE )
+        {
+            int index = Integer.parseInt( values[ 1 ].substring( 1 ) );
+            if( index < 0 || index >= styles.size() )
+                throw new IllegalArgumentException( "Nieznany styl: " + line );
+            style = styles.get( index );
+            first = 2;
+        }
+        else
+        {
+            if( values.length < 5 )
+                throw new IllegalArgumentException( "Niepoprawna linia: " + line );
+            style = new Style( Double.parseDouble( values[ 1 ] ), Double.parseDouble( values[ 2 ] ),
+                    Double.parseDouble( values[ 3 ] ), Double.parseDouble( values[ 4 ] ) );
+            first = 5;
+        }
+
+        byte kind = (byte) values[ 0 ].charAt( 0 );
+        int count = values.length - first;
+        switch( kind )
+        {
+        case SceneModel.RECTANGLE:
+            if( count != 4 )
+                throw new IllegalArgumentException( "Niepoprawny prostokąt: " + line );
+            break;
+        case SceneModel.CIRCLE:
+            if( count != 3 )
+                throw new IllegalArgumentException( "Niepoprawne koło: " + line );
+            break;
+        case SceneModel.POLYGON:
+            if( count % 2 != 0 || count < 6 )
+                throw new IllegalArgumentException( "Niepoprawny wielokąt: " + line );
+            break;
+        case SceneModel.COMPOUND:
+            break;
+        default:
+            throw new IllegalArgumentException( "Nieznana figura: " + line );
+        }
+
+        double[] coords = new double[ count ];
+        for( int i = 0; i < count; i++ )
+            coords[ i ] = Double.parseDouble( values[ i + first ] );
+        if( kind == SceneModel.COMPOUND )
+        {
+            try
+            {
+                CompoundLayout.check( coords, 0, count );
+            }
+            catch( IllegalArgumentException e )
+            {
+                throw new IllegalArgumentException( "Niepoprawna figura złożona: " + line, e );
+            }
+        }
+        return new ShapeRecord( id, kind, style, coords );
+    }
+
+    /**
+     * Zapisuje wszystkie dane na temat figury w linii tekstu (razem z jej identyfikatorem).
+     * Styl zapisywany jest jako numer w {@link SceneModel#getStyleTable()},
+     * więc przed figurami należy zapisać wszystkie style z tej tablicy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury.
+     * @return Dane figury w formie tekstu, które mogą być zinterpretowane przez {@link ShapeCodec#parse(String, List)}.
+     */
+    public static String format( SceneModel model, int id )
+    {
+        return format( model, id, NumberWriter.EXACT, new StringBuilder() ).toString();
+    }
+
+    /**
+     * Dopisuje linię tekstu z danymi figury do bufora (bez znaku końca linii).
+     * Styl zapisywany jest jako numer w {@link SceneModel#getStyleTable()}.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury.
+     * @param numbers Sposób zapisu liczb.
+     * @param out Bufor, do którego dopisywana jest linia.
+     * @return Ten sam bufor.
+     * @see ShapeCodec#formatValues(SceneModel, int, NumberWriter, StringBuilder)
+     */
+    public static StringBuilder format( SceneModel model, int id, NumberWriter numbers, StringBuilder out )
+    {
+        return formatValues( model, id, numbers, formatHeader( model, id, model.getStyleIndex( id ), out ) );
+    }
+
+    /**
+     * Dopisuje do bufora początek linii figury: rodzaj, identyfikator i numer stylu.
+     * Numer stylu podawany jest osobno, bo przy zapisie pliku style numerowane są od nowa ({@link UsedStyles}).
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury.
+     * @param styleIndex Numer stylu figury wśród zapisanych linii stylów.
+     * @param out Bufor, do którego dopisywany jest tekst.
+     * @return Ten sam bufor.
+     */
+    public static StringBuilder formatHeader( SceneModel model, int id, int styleIndex, StringBuilder out )
+    {
+        return out.append( (char) model.getKind( id ) ).append( ID_SEPARATOR ).append( id )
+                .append( ' ' ).append( STYLE_REFERENCE ).append( styleIndex );
+    }
+
+    /**
+     * Dopisuje do bufora współrzędne figury, każdą poprzedzoną spacją - resztę linii po
+     * {@link ShapeCodec#formatHeader(SceneModel, int, int, StringBuilder)}.
+     * Nagłówki części figury złożonej (rodzaj, kolor, liczba współrzędnych) zapisywane są
+     * zawsze bez utraty dokładności, a zaokrąglane mogą być tylko współrzędne.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury.
+     * @param numbers Sposób zapisu liczb.
+     * @param out Bufor, do którego dopisywany jest tekst.
+     * @return Ten sam bufor.
+     */
+    public static StringBuilder formatValues( SceneModel model, int id, NumberWriter numbers, StringBuilder out )
+    {
+        int count = model.getCoordCount( id );
+        if( model.getKind( id ) != SceneModel.COMPOUND )
+        {
+            for( int i = 0; i < count; i++ )
+                numbers.appendCoordinate( out.append( ' ' ), model.getCoord( id, i ) );
+            return out;
+        }
+        double[] coords = model.getCoords( id );
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+        {
+            int start = CompoundLayout.valuesStart( coords, part );
+            for( int i = part; i < start; i++ )
+                NumberWriter.appendShortest( out.append( ' ' ), coords[ i ] );
+            for( int i = start; i < start + CompoundLayout.valueCount( coords, part ); i++ )
+                numbers.appendCoordinate( out.append( ' ' ), coords[ i ] );
+        }
+        return out;
+    }
+}
@@ -0,0 +1,145 @@
+package nano.paint.model;
+
+import java.util.Arrays;
+
+/**
+ * Pamięć podręczna linii tekstu z danymi figur, używana przy zapisie do pliku.
+ * Linia figury generowana jest przez {@link ShapeCodec#formatValues(SceneModel, int, NumberWriter, StringBuilder)} tylko wtedy,
+ * gdy figura jest nowa lub zmieniła się od poprzedniego zapisu (przesunięcie, zmiana
+ * rozmiaru, zmiana koloru). Dla pozostałych figur zwracana jest zapamiętana linia,
+ * więc kolejny zapis dużego rysunku nie formatuje ponownie wszystkich liczb.
+ * Pamięć aktualizuje się sama, nasłuchując zmian w {@link SceneModel}. Numer stylu w linii
+ * podawany jest przy każdym zapisie ({@link UsedStyles}), więc linia generowana jest od nowa
+ * także wtedy, gdy styl figury dostał w pliku inny numer niż poprzednio.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeCodec
+ */
+public class ShapeLineCache implements SceneModel.Listener
+{
+    /** Model, z którego pochodzą figury. */
+    private final SceneModel model;
+    /** Zapamiętane linie według identyfikatorów figur ({@code null} = figura zmieniona). */
+    private String[] lines = new String[ 64 ];
+    /** Numery stylów zapisane w zapamiętanych liniach. */
+    private int[] lineStyles = new int[ 64 ];
+    /** Liczba linii wygenerowanych od nowa przy ostatnich wywołaniach {@link ShapeLineCache#line(int, int)}. */
+    private int formatted = 0;
+    /** Sposób zapisu liczb. */
+    private NumberWriter numbers = NumberWriter.EXACT;
+    /** Bufor, w którym formatowane są kolejne linie. */
+    private final StringBuilder buffer = new StringBuilder( 128 );
+
+    /**
+     * Tworzy pustą pamięć i rejestruje się jako obserwator modelu.
+     * @param model Model, z którego pochodzą figury.
+     */
+    public ShapeLineCache( SceneModel model )
+    {
+        this.model = model;
+        model.addListener( this );
+    }
+
+    /**
+     * Zwraca linię tekstu z danymi figury, generując ją tylko wtedy, gdy figura się zmieniła
+     * lub jej styl ma inny numer niż w zapamiętanej linii.
+     * @param id Identyfikator figury.
+     * @param styleIndex Numer stylu figury wśród zapisywanych linii stylów.
+     * @return Dane figury w formie tekstu.
+     */
+    public String line( int id, int styleIndex )
+    {
+        ensureIdCapacity( id );
+        String line = lines[ id ];
+        if( line == null || lineStyles[ id ] != styleIndex )
+        {
+            buffer.setLength( 0 );
+            ShapeCodec.formatHeader( model, id, styleIndex, buffer );
+            line = ShapeCodec.formatValues( model, id, numbers, buffer ).toString();
+            lines[ id ] = line;
+            lineStyles[ id ] = styleIndex;
+            formatted++;
+        }
+        return line;
+    }
+
+    /**
+     * Zmienia sposób zapisu liczb. Wszystkie zapamiętane linie są usuwane.
+     * @param numbers Nowy sposób zapisu liczb.
+     */
+    public void setNumberWriter( NumberWriter numbers )
+    {
+        this.numbers = numbers;
+        Arrays.fill( lines, null );
+    }
+
+    /**
+     * @return Sposób zapisu liczb.
+     */
+    public NumberWriter getNumberWriter()
+    {
+        return numbers;
+    }
+
+    /**
+     * Zwraca liczbę linii wygenerowanych od nowa od poprzedniego wywołania tej funkcji.
+     * @return Liczba sformatowanych figur.
+     */
+    public int takeFormattedCount()
+    {
+        int count = formatted;
+        formatted = 0;
+        return count;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeAdded( int id )
+    {
+        invalidate( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeRemoved( int id )
+    {
+        invalidate( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void geometryChanged( int id )
+    {
+        invalidate( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void styleChanged( int id )
+    {
+        invalidate( id );
+    }
+
+    /**
+     * Oznacza figurę jako zmienioną.
+     * @param id Identyfikator figury.
+     */
+    private void invalidate( int id )
+    {
+        if( id < lines.length )
+            lines[ id ] = null;
+    }
+
+    /**
+     * Powiększa tablicę linii tak, aby mieściła podany identyfikator.
+     * @param id Identyfikator figury.
+     */
+    private void ensureIdCapacity( int id )
+    {
+        if( id >= lines.length )
+        {
+            lines = Arrays.copyOf( lines, Math.max( id + 1, lines.length * 2 ) );
+            lineStyles = Arrays.copyOf( lineStyles, lines.length );
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package nano.paint.model;
+
+/**
+ * Niezmienny opis pojedynczej figury, niezależny od JavaFX.
+ * Używany przy odczycie figur z pliku - rekordy można tworzyć w dowolnym
+ * wątku, a dopiero później dodać do {@link SceneModel}.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeCodec
+ */
+public class ShapeRecord
+{
+    /** Zapisany identyfikator figury lub 0, jeśli figura go nie ma. */
+    private final int id;
+    /** Rodzaj figury. */
+    private final byte kind;
+    /** Styl figury. */
+    private final Style style;
+    /** Współrzędne figury w układzie opisanym w {@link SceneModel}. */
+    private final double[] coords;
+
+    /**
+     * Tworzy rekord figury bez zapisanego identyfikatora.
+     * @param kind Rodzaj figury.
+     * @param style Styl figury.
+     * @param coords Współrzędne figury.
+     */
+    public ShapeRecord( byte kind, Style style, double[] coords )
+    {
+        this( 0, kind, style, coords );
+    }
+
+    /**
+     * @param id Zapisany identyfikator figury lub 0, jeśli figura go nie ma.
+     * @param kind Rodzaj figury.
+     * @param style Styl figury.
+     * @param coords Współrzędne figury.
+     */
+    public ShapeRecord( int id, byte kind, Style style, double[] coords )
+    {
+        this.id = id;
+        this.kind = kind;
+        this.style = style;
+        this.coords = coords;
+    }
+
+    /** @return Zapisany identyfikator figury lub 0, jeśli figura go nie ma. */
+    public int getId() { return id; }
+
+    /** @return Rodzaj figury. */
+    public byte getKind() { return kind; }
+
+    /** @return Styl figury. */
+    public Style getStyle() { return style; }
+
+    /** @return Współrzędne figury. */
+    public double[] getCoords() { return coords; }
+}
@@ -0,0 +1,710 @@
+package nano.paint.model;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Punkty przyciągania figur (wierzchołki wielokątów, narożniki prostokątów i środki figur)
+ * w drzewie k-wymiarowym (k-d), które pozwala szybko znaleźć punkt najbliższy kursorowi.
+ * Drzewo aktualizuje się samo, nasłuchując zmian w {@link SceneModel}:
+ * <ul>
+ *     <li>nowe punkty podłączane są dopiero przed najbliższym wyszukiwaniem - duża porcja
+ *     (np. przy wczytywaniu pliku) przez zbudowanie całego drzewa od nowa, a mała przez wstawienie
+ *     każdego punktu w liść drzewa, a gdy któraś gałąź stanie się zbyt głęboka,
+ *     najwyższe poddrzewo, które straciło równowagę, jest budowane od nowa (jak w drzewie kozła ofiarnego),</li>
+ *     <li>punkty usuniętych figur są tylko oznaczane jako usunięte, a gdy usuniętych jest więcej
+ *     niż aktywnych, całe drzewo budowane jest od nowa bez nich.</li>
+ * </ul>
+ * Dzięki temu wysokość drzewa jest zawsze logarytmiczna, a wyszukiwanie zajmuje ułamek
+ * milisekundy nawet przy milionach punktów.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ * @see SpatialIndex
+ */
+public class SnapIndex implements SceneModel.Listener
+{
+    /** Rodzaj punktu: wierzchołek wielokąta. */
+    public static final byte VERTEX = 0;
+    /** Rodzaj punktu: narożnik prostokąta. */
+    public static final byte CORNER = 1;
+    /** Rodzaj punktu: środek figury. */
+    public static final byte CENTER = 2;
+
+    /** Największy dopuszczalny udział jednego poddrzewa w rozmiarze rodzica. */
+    private static final double ALPHA = 0.7;
+    /** Liczba usuniętych punktów, poniżej której drzewo nie jest przebudowywane. */
+    private static final int MIN_GARBAGE = 1024;
+    /** Brak węzła. */
+    private static final int NONE = -1;
+
+    /** Indeksowany model. */
+    private final SceneModel model;
+
+    /** Współrzędne X punktów (według numeru węzła). */
+    private double[] xs = new double[ 64 ];
+    /** Współrzędne Y punktów. */
+    private double[] ys = new double[ 64 ];
+    /** Identyfikatory figur, do których należą punkty. */
+    private int[] owners = new int[ 64 ];
+    /** Rodzaje punktów. */
+    private byte[] kinds = new byte[ 64 ];
+    /** Oś podziału węzła: 0 - X, 1 - Y. */
+    private byte[] axes = new byte[ 64 ];
+    /** Czy punkt został usunięty. */
+    private boolean[] removed = new boolean[ 64 ];
+    /** Lewe poddrzewa (współrzędna nie większa niż w węźle). */
+    private int[] left = new int[ 64 ];
+    /** Prawe poddrzewa (współrzędna nie mniejsza niż w węźle). */
+    private int[] right = new int[ 64 ];
+    /** Liczba węzłów w poddrzewie (razem z usuniętymi). */
+    private int[] sizes = new int[ 64 ];
+    /** Liczba zajętych węzłów. */
+    private int count = 0;
+    /** Liczba punktów, które nie zostały usunięte. */
+    private int liveCount = 0;
+    /** Korzeń drzewa. */
+    private int root = NONE;
+
+    /** Węzły punktów każdej figury (według identyfikatora). */
+    private int[][] pointsOf = new int[ 64 ][];
+    /** Liczba punktów każdej figury (tablice w {@link SnapIndex#pointsOf} mogą mieć zapas na kolejne wierzchołki). */
+    private int[] pointCounts = new int[ 64 ];
+    /** Węzły dodane od ostatniego wyszukiwania, jeszcze niepodłączone do drzewa. */
+    private int[] unlinked = new int[ 64 ];
+    /** Liczba węzłów niepodłączonych do drzewa. */
+    private int unlinkedCount = 0;
+    /** Ścieżka od korzenia do wstawianego węzła. */
+    private int[] path = new int[ 64 ];
+    /** Bufor na punkty dodawanej figury: x, y, rodzaj kolejno. */
+    private double[] pending = new double[ 48 ];
+    /** Liczba wartości w buforze punktów. */
+    private int pendingSize = 0;
+
+    /** Najbliższy dotąd znaleziony węzeł. */
+    private int best;
+    /** Kwadrat odległości od najbliższego dotąd znalezionego węzła. */
+    private double bestDistance;
+
+    /**
+     * Tworzy indeks i wpisuje do niego punkty figur z modelu.
+     * Indeks rejestruje się jako obserwator modelu.
+     * @param model Indeksowany model.
+     */
+    public SnapIndex( SceneModel model )
+    {
+        this.model = model;
+        for( int i = 0; i < model.size(); i++ )
+            insert( model.idAt( i ) );
+        model.addListener( this );
+    }
+
+    /**
+     * Wyszukuje punkt najbliższy podanemu.
+     * Zwrócony numer punktu jest ważny do następnej zmiany w modelu.
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     * @param maxDistance Największa odległość punktu ({@link Double#POSITIVE_INFINITY} - bez ograniczeń).
+     * @param accept Sprawdza, czy punkty figury o podanym identyfikatorze są brane pod uwagę.
+     * @return Numer najbliższego punktu lub -1, jeśli w podanej odległości nie ma żadnego.
+     */
+    public int nearest( double x, double y, double maxDistance, IntPredicate accept )
+    {
+        link();
+        best = NONE;
+        bestDistance = maxDistance * maxDistance;
+        search( root, x, y, accept );
+        return best;
+    }
+
+    /**
+     * @param point Numer punktu zwrócony przez {@link SnapIndex#nearest(double, double, double, IntPredicate)}.
+     * @return Współrzędna X punktu.
+     */
+    public double getX( int point ) { return xs[ point ]; }
+
+    /**
+     * @param point Numer punktu.
+     * @return Współrzędna Y punktu.
+     */
+    public double getY( int point ) { return ys[ point ]; }
+
+    /**
+     * @param point Numer punktu.
+     * @return Rodzaj punktu ({@link SnapIndex#VERTEX}, {@link SnapIndex#CORNER} lub {@link SnapIndex#CENTER}).
+     */
+    public byte getKind( int point ) { return kinds[ point ]; }
+
+    /**
+     * @param point Numer punktu.
+     * @return Identyfikator figury, do której należy punkt.
+     */
+    public int getOwner( int point ) { return owners[ point ]; }
+
+    /**
+     * @return Liczba punktów w indeksie.
+     */
+    public int size()
+    {
+        return liveCount;
+    }
+
+    /**
+     * @return Wysokość drzewa (razem z usuniętymi punktami, które są jeszcze w drzewie).
+     */
+    public int getDepth()
+    {
+        link();
+        return depth( root );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeAdded( int id )
+    {
+        insert( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeRemoved( int id )
+    {
+        erase( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void geometryChanged( int id )
+    {
+        erase( id );
+        insert( id );
+    }
+
+    /**
+     * Zastępuje tylko punkt przesuniętego wierzchołka (i środek wielokąta, jeśli się zmienił).
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer przesuniętego wierzchołka.
+     */
+    @Override
+    public void vertexMoved( int id, int vertex )
+    {
+        int[] nodes = polygonPoints( id, 0 );
+        if( nodes == null )
+        {
+            geometryChanged( id );
+            return;
+        }
+        nodes[ vertex ] = replace( nodes[ vertex ], model.getCoord( id, 2 * vertex ), model.getCoord( id, 2 * vertex + 1 ) );
+        updateCenter( id );
+        compactIfNeeded();
+    }
+
+    /**
+     * Dodaje tylko punkt wstawionego wierzchołka (i zmienia środek wielokąta, jeśli się zmienił).
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer wstawionego wierzchołka.
+     */
+    @Override
+    public void vertexInserted( int id, int vertex )
+    {
+        int[] nodes = polygonPoints( id, 1 );
+        if( nodes == null )
+        {
+            geometryChanged( id );
+            return;
+        }
+        int size = pointCounts[ id ];
+        // Tablica rośnie z zapasem, więc dopisywanie wierzchołków na końcu kosztuje średnio O(1).
+        if( size == nodes.length )
+            nodes = pointsOf[ id ] = Arrays.copyOf( nodes, size * 2 );
+        System.arraycopy( nodes, vertex, nodes, vertex + 1, size - vertex );
+        nodes[ vertex ] = insertPoint( model.getCoord( id, 2 * vertex ), model.getCoord( id, 2 * vertex + 1 ), id, VERTEX );
+        pointCounts[ id ] = size + 1;
+        updateCenter( id );
+        compactIfNeeded();
+    }
+
+    /**
+     * Usuwa tylko punkt usuniętego wierzchołka (i zmienia środek wielokąta, jeśli się zmienił).
+     * @param id Identyfikator wielokąta.
+     * @param vertex Numer, który miał usunięty wierzchołek.
+     */
+    @Override
+    public void vertexRemoved( int id, int vertex )
+    {
+        int[] nodes = polygonPoints( id, -1 );
+        if( nodes == null )
+        {
+            geometryChanged( id );
+            return;
+        }
+        removed[ nodes[ vertex ] ] = true;
+        liveCount--;
+        int size = --pointCounts[ id ];
+        System.arraycopy( nodes, vertex + 1, nodes, vertex, size - vertex );
+        updateCenter( id );
+        compactIfNeeded();
+    }
+
+    /**
+     * Przeszukuje poddrzewo w poszukiwaniu najbliższego punktu.
+     * @param node Korzeń poddrzewa.
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     * @param accept Sprawdza, czy punkty figury są brane pod uwagę.
+     */
+    private void search( int node, double x, double y, IntPredicate accept )
+    {
+        while( node != NONE )
+        {
+            double dx = x - xs[ node ];
+            double dy = y - ys[ node ];
+            double distance = dx * dx + dy * dy;
+            if( distance < bestDistance && !removed[ node ] && accept.test( owners[ node ] ) )
+            {
+                best = node;
+                bestDistance = distance;
+            }
+            double split = axes[ node ] == 0 ? dx : dy;
+            int near = split < 0 ? left[ node ] : right[ node ];
+            int far = split < 0 ? right[ node ] : left[ node ];
+            search( near, x, y, accept );
+            // Druga strona podziału może zawierać bliższy punkt tylko wtedy, gdy leży bliżej niż dotąd znaleziony.
+            if( split * split >= bestDistance )
+                return;
+            node = far;
+        }
+    }
+
+    /**
+     * Wpisuje punkty figury do drzewa.
+     * @param id Identyfikator figury.
+     */
+    private void insert( int id )
+    {
+        pendingSize = 0;
+        double[] coords = model.getCoords( id );
+        byte kind = model.getKind( id );
+        if( kind == SceneModel.COMPOUND )
+        {
+            for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+                collect( CompoundLayout.kind( coords, part ), coords, CompoundLayout.valuesStart( coords, part ),
+                        CompoundLayout.valueCount( coords, part ) );
+        }
+        else
+        {
+            collect( kind, coords, 0, coords.length );
+            if( kind == SceneModel.POLYGON )
+                addPending( ( model.getMinX( id ) + model.getMaxX( id ) ) / 2, ( model.getMinY( id ) + model.getMaxY( id ) ) / 2, CENTER );
+        }
+
+        int[] nodes = new int[ pendingSize / 3 ];
+        for( int i = 0; i < nodes.length; i++ )
+            nodes[ i ] = insertPoint( pending[ 3 * i ], pending[ 3 * i + 1 ], id, (byte) pending[ 3 * i + 2 ] );
+        if( id >= pointsOf.length )
+        {
+            pointsOf = Arrays.copyOf( pointsOf, Math.max( id + 1, pointsOf.length * 2 ) );
+            pointCounts = Arrays.copyOf( pointCounts, pointsOf.length );
+        }
+        pointsOf[ id ] = nodes;
+        pointCounts[ id ] = nodes.length;
+    }
+
+    /**
+     * Zbiera punkty przyciągania prostej figury.
+     * @param kind Rodzaj figury (prostokąt, koło lub wielokąt).
+     * @param coords Tablica ze współrzędnymi.
+     * @param start Indeks pierwszej współrzędnej figury.
+     * @param count Liczba współrzędnych figury.
+     */
+    private void collect( byte kind, double[] coords, int start, int count )
+    {
+        switch( kind )
+        {
+        case SceneModel.RECTANGLE:
+        {
+            double x = coords[ start ];
+            double y = coords[ start + 1 ];
+            double w = coords[ start + 2 ];
+            double h = coords[ start + 3 ];
+            addPending( x, y, CORNER );
+            addPending( x + w, y, CORNER );
+            addPending( x + w, y + h, CORNER );
+            addPending( x, y + h, CORNER );
+            addPending( x + w / 2, y + h / 2, CENTER );
+            break;
+        }
+        case SceneModel.CIRCLE:
+            addPending( coords[ start ], coords[ start + 1 ], CENTER );
+            break;
+        default:
+            for( int i = start; i + 1 < start + count; i += 2 )
+                addPending( coords[ i ], coords[ i + 1 ], VERTEX );
+            break;
+        }
+    }
+
+    /**
+     * Dodaje punkt do bufora punktów wstawianej figury.
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     * @param kind Rodzaj punktu.
+     */
+    private void addPending( double x, double y, byte kind )
+    {
+        if( pendingSize + 3 > pending.length )
+            pending = Arrays.copyOf( pending, pending.length * 2 );
+        pending[ pendingSize++ ] = x;
+        pending[ pendingSize++ ] = y;
+        pending[ pendingSize++ ] = kind;
+    }
+
+    /**
+     * Oznacza punkty figury jako usunięte i przebudowuje drzewo, jeśli usuniętych jest za dużo.
+     * @param id Identyfikator figury.
+     */
+    private void erase( int id )
+    {
+        if( id >= pointsOf.length || pointsOf[ id ] == null )
+            return;
+        int[] nodes = pointsOf[ id ];
+        for( int i = 0; i < pointCounts[ id ]; i++ )
+            removed[ nodes[ i ] ] = true;
+        liveCount -= pointCounts[ id ];
+        pointsOf[ id ] = null;
+        pointCounts[ id ] = 0;
+        compactIfNeeded();
+    }
+
+    /**
+     * Zwraca punkty wielokąta, jeśli ich liczba zgadza się z liczbą wierzchołków przed zmianą.
+     * Punkty wielokąta to jego wierzchołki, a na końcu środek prostokąta opisanego.
+     * @param id Identyfikator figury.
+     * @param added O ile zmieniła się liczba wierzchołków (1 - wstawienie, -1 - usunięcie, 0 - przesunięcie).
+     * @return Węzły punktów wielokąta lub {@code null}, jeśli trzeba wpisać figurę od nowa.
+     */
+    private int[] polygonPoints( int id, int added )
+    {
+        int[] nodes = id < pointsOf.length ? pointsOf[ id ] : null;
+        if( nodes == null || model.getKind( id ) != SceneModel.POLYGON || pointCounts[ id ] != model.getCoordCount( id ) / 2 - added + 1 )
+            return null;
+        return nodes;
+    }
+
+    /**
+     * Przenosi punkt środka wielokąta, jeśli zmienił się prostokąt opisany na wielokącie.
+     * @param id Identyfikator wielokąta.
+     */
+    private void updateCenter( int id )
+    {
+        int[] nodes = pointsOf[ id ];
+        int center = pointCounts[ id ] - 1;
+        double centerX = ( model.getMinX( id ) + model.getMaxX( id ) ) / 2;
+        double centerY = ( model.getMinY( id ) + model.getMaxY( id ) ) / 2;
+        if( xs[ nodes[ center ] ] != centerX || ys[ nodes[ center ] ] != centerY )
+            nodes[ center ] = replace( nodes[ center ], centerX, centerY );
+    }
+
+    /**
+     * Oznacza punkt jako usunięty i dodaje w jego miejsce nowy punkt tej samej figury i tego samego rodzaju.
+     * @param node Zastępowany węzeł.
+     * @param x Nowa współrzędna X.
+     * @param y Nowa współrzędna Y.
+     * @return Węzeł nowego punktu.
+     */
+    private int replace( int node, double x, double y )
+    {
+        removed[ node ] = true;
+        liveCount--;
+        return insertPoint( x, y, owners[ node ], kinds[ node ] );
+    }
+
+    /**
+     * Buduje całe drzewo od nowa, jeśli usuniętych punktów jest więcej niż aktywnych.
+     */
+    private void compactIfNeeded()
+    {
+        if( count - liveCount > Math.max( liveCount, MIN_GARBAGE ) )
+            compact();
+    }
+
+    /**
+     * Zajmuje węzeł dla nowego punktu. Węzeł zostanie podłączony do drzewa przed najbliższym wyszukiwaniem.
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     * @param owner Identyfikator figury.
+     * @param kind Rodzaj punktu.
+     * @return Numer węzła punktu (ważny do najbliższej przebudowy całego drzewa).
+     */
+    private int insertPoint( double x, double y, int owner, byte kind )
+    {
+        int node = allocate( x, y, owner, kind );
+        liveCount++;
+        if( unlinkedCount == unlinked.length )
+            unlinked = Arrays.copyOf( unlinked, unlinkedCount * 2 );
+        unlinked[ unlinkedCount++ ] = node;
+        return node;
+    }
+
+    /**
+     * Podłącza do drzewa węzły dodane od ostatniego wyszukiwania.
+     */
+    private void link()
+    {
+        if( unlinkedCount == 0 )
+            return;
+        // Wstawianie pojedynczo kosztuje O(log n) na punkt, ale z chybieniami w pamięci podręcznej
+        // na każdym poziomie - dużą porcję taniej jest dołączyć, budując całe drzewo od nowa.
+        if( unlinkedCount > count / 4 )
+        {
+            compact();
+            return;
+        }
+        for( int i = 0; i < unlinkedCount; i++ )
+            if( !removed[ unlinked[ i ] ] )
+                link( unlinked[ i ] );
+        unlinkedCount = 0;
+    }
+
+    /**
+     * Wstawia węzeł w liść drzewa. Jeśli liść leży zbyt głęboko, przebudowuje
+     * najwyżej położone poddrzewo na ścieżce, które straciło równowagę.
+     * @param node Numer węzła.
+     */
+    private void link( int node )
+    {
+        if( root == NONE )
+        {
+            root = node;
+            axes[ node ] = 0;
+            return;
+        }
+
+        double x = xs[ node ];
+        double y = ys[ node ];
+        int depth = 0;
+        int current = root;
+        while( true )
+        {
+            if( depth == path.length )
+                path = Arrays.copyOf( path, depth * 2 );
+            path[ depth++ ] = current;
+            sizes[ current ]++;
+            boolean toLeft = axes[ current ] == 0 ? x < xs[ current ] : y < ys[ current ];
+            int next = toLeft ? left[ current ] : right[ current ];
+            if( next == NONE )
+            {
+                if( toLeft )
+                    left[ current ] = node;
+                else
+                    right[ current ] = node;
+                axes[ node ] = (byte) ( 1 - axes[ current ] );
+                break;
+            }
+            current = next;
+        }
+
+        if( depth <= maxDepth( sizes[ root ] ) )
+            return;
+        int child = node;
+        for( int i = depth - 1; i >= 0; i-- )
+        {
+            int parent = path[ i ];
+            if( sizes[ child ] > ALPHA * sizes[ parent ] )
+            {
+                int before = sizes[ parent ];
+                int rebuilt = rebuild( parent );
+                int dropped = before - ( rebuilt == NONE ? 0 : sizes[ rebuilt ] );
+                for( int j = 0; j < i; j++ )
+                    sizes[ path[ j ] ] -= dropped;
+                if( i == 0 )
+                    root = rebuilt;
+                else if( left[ path[ i - 1 ] ] == parent )
+                    left[ path[ i - 1 ] ] = rebuilt;
+                else
+                    right[ path[ i - 1 ] ] = rebuilt;
+                return;
+            }
+            child = parent;
+        }
+    }
+
+    /**
+     * @param size Liczba węzłów w drzewie.
+     * @return Największa głębokość węzła w drzewie, które zachowuje równowagę.
+     */
+    private static int maxDepth( int size )
+    {
+        return (int) ( Math.log( size ) / Math.log( 1 / ALPHA ) ) + 1;
+    }
+
+    /**
+     * Buduje poddrzewo od nowa, w pełni zrównoważone i bez usuniętych punktów.
+     * @param subtree Korzeń poddrzewa.
+     * @return Korzeń nowego poddrzewa lub -1, jeśli wszystkie punkty były usunięte.
+     */
+    private int rebuild( int subtree )
+    {
+        int[] nodes = new int[ sizes[ subtree ] ];
+        int size = 0;
+        int[] stack = new int[ 64 ];
+        int top = 0;
+        stack[ top++ ] = subtree;
+        while( top > 0 )
+        {
+            int node = stack[ --top ];
+            if( !removed[ node ] )
+                nodes[ size++ ] = node;
+            if( top + 2 > stack.length )
+                stack = Arrays.copyOf( stack, stack.length * 2 );
+            if( left[ node ] != NONE )
+                stack[ top++ ] = left[ node ];
+            if( right[ node ] != NONE )
+                stack[ top++ ] = right[ node ];
+        }
+        return build( nodes, 0, size, axes[ subtree ] );
+    }
+
+    /**
+     * Buduje zrównoważone poddrzewo z podanych węzłów, dzieląc je medianą na przemian według X i Y.
+     * @param nodes Węzły (kolejność zostanie zmieniona).
+     * @param from Początek zakresu (włącznie).
+     * @param to Koniec zakresu (wyłącznie).
+     * @param axis Oś podziału korzenia poddrzewa.
+     * @return Korzeń poddrzewa lub -1 dla pustego zakresu.
+     */
+    private int build( int[] nodes, int from, int to, byte axis )
+    {
+        if( from >= to )
+            return NONE;
+        int middle = ( from + to ) >>> 1;
+        select( nodes, from, to - 1, middle, axis );
+        int node = nodes[ middle ];
+        byte next = (byte) ( 1 - axis );
+        axes[ node ] = axis;
+        left[ node ] = build( nodes, from, middle, next );
+        right[ node ] = build( nodes, middle + 1, to, next );
+        sizes[ node ] = to - from;
+        return node;
+    }
+
+    /**
+     * Ustawia węzły tak, aby na pozycji {@code k} był węzeł, który znalazłby się tam po posortowaniu,
+     * przed nim węzły o nie większej, a za nim o nie mniejszej współrzędnej.
+     * @param nodes Węzły.
+     * @param from Początek zakresu (włącznie).
+     * @param to Koniec zakresu (włącznie).
+     * @param k Szukana pozycja.
+     * @param axis Oś, według której porównywane są węzły.
+     */
+    private void select( int[] nodes, int from, int to, int k, byte axis )
+    {
+        double[] values = axis == 0 ? xs : ys;
+        while( from < to )
+        {
+            double pivot = values[ nodes[ ( from + to ) >>> 1 ] ];
+            int i = from;
+            int j = to;
+            while( i <= j )
+            {
+                while( values[ nodes[ i ] ] < pivot )
+                    i++;
+                while( values[ nodes[ j ] ] > pivot )
+                    j--;
+                if( i <= j )
+                {
+                    int swap = nodes[ i ];
+                    nodes[ i++ ] = nodes[ j ];
+                    nodes[ j-- ] = swap;
+                }
+            }
+            if( k <= j )
+                to = j;
+            else if( k >= i )
+                from = i;
+            else
+                return;
+        }
+    }
+
+    /**
+     * Przenosi aktywne punkty na początek tablic i buduje z nich całe drzewo od nowa
+     * (razem z punktami, które nie były jeszcze podłączone do drzewa).
+     */
+    private void compact()
+    {
+        int[] moved = new int[ count ];
+        int target = 0;
+        for( int node = 0; node < count; node++ )
+        {
+            if( removed[ node ] )
+            {
+                moved[ node ] = NONE;
+                continue;
+            }
+            moved[ node ] = target;
+            xs[ target ] = xs[ node ];
+            ys[ target ] = ys[ node ];
+            owners[ target ] = owners[ node ];
+            kinds[ target ] = kinds[ node ];
+            removed[ target ] = false;
+            target++;
+        }
+        count = target;
+        for( int id = 0; id < pointsOf.length; id++ )
+            for( int i = 0; i < pointCounts[ id ]; i++ )
+                pointsOf[ id ][ i ] = moved[ pointsOf[ id ][ i ] ];
+
+        int[] all = new int[ count ];
+        for( int i = 0; i < count; i++ )
+            all[ i ] = i;
+        root = build( all, 0, count, (byte) 0 );
+        unlinkedCount = 0;
+    }
+
+    /**
+     * Zajmuje nowy węzeł (liść).
+     * @param x Współrzędna X.
+     * @param y Współrzędna Y.
+     * @param owner Identyfikator figury.
+     * @param kind Rodzaj punktu.
+     * @return Numer węzła.
+     */
+    private int allocate( double x, double y, int owner, byte kind )
+    {
+        if( count == xs.length )
+        {
+            int capacity = count * 2;
+            xs = Arrays.copyOf( xs, capacity );
+            ys = Arrays.copyOf( ys, capacity );
+            owners = Arrays.copyOf( owners, capacity );
+            kinds = Arrays.copyOf( kinds, capacity );
+            axes = Arrays.copyOf( axes, capacity );
+            removed = Arrays.copyOf( removed, capacity );
+            left = Arrays.copyOf( left, capacity );
+            right = Arrays.copyOf( right, capacity );
+            sizes = Arrays.copyOf( sizes, capacity );
+        }
+        int node = count++;
+        xs[ node ] = x;
+        ys[ node ] = y;
+        owners[ node ] = owner;
+        kinds[ node ] = kind;
+        removed[ node ] = false;
+        left[ node ] = NONE;
+        right[ node ] = NONE;
+        sizes[ node ] = 1;
+        return node;
+    }
+
+    /**
+     * @param node Korzeń poddrzewa.
+     * @return Wysokość poddrzewa.
+     */
+    private int depth( int node )
+    {
+        if( node == NONE )
+            return 0;
+        return 1 + Math.max( depth( left[ node ] ), depth( right[ node ] ) );
+    }
+}
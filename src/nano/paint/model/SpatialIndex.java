@@ -0,0 +1,312 @@
+package nano.paint.model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.function.IntConsumer;
+
+/**
+ * Indeks przestrzenny figur oparty na jednorodnej siatce komórek.
+ * Każda figura wpisana jest do komórek, które pokrywa prostokąt na niej opisany,
+ * dzięki czemu zapytanie o obszar przegląda tylko figury z pobliskich komórek
+ * zamiast wszystkich figur na planszy. Indeks aktualizuje się sam, nasłuchując
+ * zmian w {@link SceneModel}.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ */
+public class SpatialIndex implements SceneModel.Listener
+{
+    /** Domyślny rozmiar boku komórki siatki. */
+    public static final double DEFAULT_CELL_SIZE = 64;
+    /** Figury pokrywające więcej komórek trafiają na osobną listę dużych figur. */
+    private static final int MAX_CELLS_PER_SHAPE = 256;
+
+    /** Figura nie jest w indeksie. */
+    private static final byte ABSENT = 0;
+    /** Figura jest wpisana do komórek siatki. */
+    private static final byte IN_CELLS = 1;
+    /** Figura jest na liście dużych figur. */
+    private static final byte OVERSIZED = 2;
+
+    /** Indeksowany model. */
+    private final SceneModel model;
+    /** Rozmiar boku komórki. */
+    private final double cellSize;
+    /** Zawartość niepustych komórek, kluczem są połączone współrzędne komórki. */
+    private final HashMap<Long, IntBucket> cells = new HashMap<>();
+    /** Figury zbyt duże, aby wpisywać je do komórek. */
+    private final IntBucket oversized = new IntBucket();
+
+    /** Stan figury w indeksie (według identyfikatora). */
+    private byte[] state = new byte[ 64 ];
+    /** Zakres komórek zajmowanych przez figurę: x0, y0, x1, y1 (według identyfikatora). */
+    private int[] cellRange = new int[ 64 * 4 ];
+    /** Znaczniki używane do pomijania powtórzeń figur w jednym zapytaniu. */
+    private int[] stamp = new int[ 64 ];
+    /** Znacznik bieżącego zapytania. */
+    private int currentStamp = 0;
+
+    /**
+     * Tworzy indeks z domyślnym rozmiarem komórki i wpisuje do niego figury z modelu.
+     * @param model Indeksowany model.
+     */
+    public SpatialIndex( SceneModel model )
+    {
+        this( model, DEFAULT_CELL_SIZE );
+    }
+
+    /**
+     * Tworzy indeks i wpisuje do niego figury z modelu.
+     * Indeks rejestruje się jako obserwator modelu.
+     * @param model Indeksowany model.
+     * @param cellSize Rozmiar boku komórki.
+     */
+    public SpatialIndex( SceneModel model, double cellSize )
+    {
+        this.model = model;
+        this.cellSize = cellSize;
+        for( int i = 0; i < model.size(); i++ )
+            insert( model.idAt( i ) );
+        model.addListener( this );
+    }
+
+    /**
+     * Wyszukuje figury, których prostokąt opisany przecina podany prostokąt.
+     * Każda figura zgłaszana jest co najwyżej raz.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     * @param consumer Odbiorca identyfikatorów znalezionych figur.
+     */
+    public void query( double minX, double minY, double maxX, double maxY, IntConsumer consumer )
+    {
+        int x0 = cell( minX );
+        int y0 = cell( minY );
+        int x1 = cell( maxX );
+        int y1 = cell( maxY );
+
+        // Dla bardzo dużego obszaru szybciej jest przejrzeć wszystkie figury.
+        if( (long) ( x1 - x0 + 1 ) * ( y1 - y0 + 1 ) > model.size() )
+        {
+            for( int i = 0; i < model.size(); i++ )
+            {
+                int id = model.idAt( i );
+                if( intersects( id, minX, minY, maxX, maxY ) )
+                    consumer.accept( id );
+            }
+            return;
+        }
+
+        nextStamp();
+        for( int cy = y0; cy <= y1; cy++ )
+            for( int cx = x0; cx <= x1; cx++ )
+            {
+                IntBucket bucket = cells.get( key( cx, cy ) );
+                if( bucket != null )
+                    report( bucket, minX, minY, maxX, maxY, consumer );
+            }
+        report( oversized, minX, minY, maxX, maxY, consumer );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeAdded( int id )
+    {
+        insert( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeRemoved( int id )
+    {
+        erase( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void geometryChanged( int id )
+    {
+        int base = id * 4;
+        if( state[ id ] == IN_CELLS
+                && cellRange[ base ] == cell( model.getMinX( id ) ) && cellRange[ base + 1 ] == cell( model.getMinY( id ) )
+                && cellRange[ base + 2 ] == cell( model.getMaxX( id ) ) && cellRange[ base + 3 ] == cell( model.getMaxY( id ) ) )
+            return;
+        erase( id );
+        insert( id );
+    }
+
+    /**
+     * Przekazuje odbiorcy figury z kubełka, które nie zostały jeszcze zgłoszone
+     * i przecinają podany prostokąt.
+     * @param bucket Przeglądany kubełek.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     * @param consumer Odbiorca identyfikatorów znalezionych figur.
+     */
+    private void report( IntBucket bucket, double minX, double minY, double maxX, double maxY, IntConsumer consumer )
+    {
+        for( int i = 0; i < bucket.size; i++ )
+        {
+            int id = bucket.values[ i ];
+            if( stamp[ id ] == currentStamp )
+                continue;
+            stamp[ id ] = currentStamp;
+            if( intersects( id, minX, minY, maxX, maxY ) )
+                consumer.accept( id );
+        }
+    }
+
+    /**
+     * Sprawdza, czy prostokąt opisany na figurze przecina podany prostokąt.
+     * @param id Identyfikator figury.
+     * @param minX Lewa krawędź obszaru.
+     * @param minY Górna krawędź obszaru.
+     * @param maxX Prawa krawędź obszaru.
+     * @param maxY Dolna krawędź obszaru.
+     * @return {@code true}, jeśli prostokąty się przecinają.
+     */
+    private boolean intersects( int id, double minX, double minY, double maxX, double maxY )
+    {
+        return model.getMinX( id ) <= maxX && model.getMaxX( id ) >= minX
+                && model.getMinY( id ) <= maxY && model.getMaxY( id ) >= minY;
+    }
+
+    /**
+     * Wpisuje figurę do indeksu.
+     * @param id Identyfikator figury.
+     */
+    private void insert( int id )
+    {
+        ensureIdCapacity( id );
+        int x0 = cell( model.getMinX( id ) );
+        int y0 = cell( model.getMinY( id ) );
+        int x1 = cell( model.getMaxX( id ) );
+        int y1 = cell( model.getMaxY( id ) );
+        if( (long) ( x1 - x0 + 1 ) * ( y1 - y0 + 1 ) > MAX_CELLS_PER_SHAPE )
+        {
+            oversized.add( id );
+            state[ id ] = OVERSIZED;
+            return;
+        }
+        for( int cy = y0; cy <= y1; cy++ )
+            for( int cx = x0; cx <= x1; cx++ )
+                cells.computeIfAbsent( key( cx, cy ), k -> new IntBucket() ).add( id );
+        int base = id * 4;
+        cellRange[ base ] = x0;
+        cellRange[ base + 1 ] = y0;
+        cellRange[ base + 2 ] = x1;
+        cellRange[ base + 3 ] = y1;
+        state[ id ] = IN_CELLS;
+    }
+
+    /**
+     * Usuwa figurę z indeksu.
+     * @param id Identyfikator figury.
+     */
+    private void erase( int id )
+    {
+        if( id >= state.length )
+            return;
+        if( state[ id ] == OVERSIZED )
+            oversized.remove( id );
+        else if( state[ id ] == IN_CELLS )
+        {
+            int base = id * 4;
+            for( int cy = cellRange[ base + 1 ]; cy <= cellRange[ base + 3 ]; cy++ )
+                for( int cx = cellRange[ base ]; cx <= cellRange[ base + 2 ]; cx++ )
+                {
+                    Long key = key( cx, cy );
+                    IntBucket bucket = cells.get( key );
+                    if( bucket != null && bucket.remove( id ) && bucket.size == 0 )
+                        cells.remove( key );
+                }
+        }
+        state[ id ] = ABSENT;
+    }
+
+    /**
+     * Zwraca numer komórki, w której leży współrzędna.
+     * @param value Współrzędna.
+     * @return Numer komórki.
+     */
+    private int cell( double value )
+    {
+        return (int) Math.floor( value / cellSize );
+    }
+
+    /**
+     * Łączy współrzędne komórki w jeden klucz.
+     * @param cx Numer kolumny komórki.
+     * @param cy Numer wiersza komórki.
+     * @return Klucz komórki.
+     */
+    private static long key( int cx, int cy )
+    {
+        return ( (long) cx << 32 ) | ( cy & 0xffffffffL );
+    }
+
+    /**
+     * Rozpoczyna nowe zapytanie - wszystkie figury stają się niezgłoszone.
+     */
+    private void nextStamp()
+    {
+        currentStamp++;
+        if( currentStamp == Integer.MAX_VALUE )
+        {
+            Arrays.fill( stamp, 0 );
+            currentStamp = 1;
+        }
+    }
+
+    /**
+     * Powiększa tablice indeksowane identyfikatorem figury.
+     * @param id Identyfikator figury.
+     */
+    private void ensureIdCapacity( int id )
+    {
+        if( id < state.length )
+            return;
+        int capacity = Math.max( id + 1, state.length * 2 );
+        state = Arrays.copyOf( state, capacity );
+        stamp = Arrays.copyOf( stamp, capacity );
+        cellRange = Arrays.copyOf( cellRange, capacity * 4 );
+    }
+
+    /**
+     * Prosta, rosnąca lista liczb całkowitych bez opakowywania w obiekty.
+     */
+    private static class IntBucket
+    {
+        /** Elementy listy. */
+        private int[] values = new int[ 4 ];
+        /** Liczba elementów. */
+        private int size = 0;
+
+        /** @param value Dodawany element. */
+        private void add( int value )
+        {
+            if( size == values.length )
+                values = Arrays.copyOf( values, size * 2 );
+            values[ size++ ] = value;
+        }
+
+        /**
+         * Usuwa element, zastępując go ostatnim elementem listy.
+         * @param value Usuwany element.
+         * @return {@code true}, jeśli element był na liście.
+         */
+        private boolean remove( int value )
+        {
+            for( int i = 0; i < size; i++ )
+                if( values[ i ] == value )
+                {
+                    values[ i ] = values[ --size ];
+                    return true;
+                }
+            return false;
+        }
+    }
+}
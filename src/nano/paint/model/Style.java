@@ -0,0 +1,131 @@
+package nano.paint.model;
+
+/**
+ * Niezmienny styl figury - kolor wypełnienia i kolor obramowania.
+ * Style porównywane są po wartościach, dzięki czemu mogą być współdzielone
+ * przez wiele figur za pośrednictwem {@link StyleTable}.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see StyleTable
+ */
+public final class Style
+{
+    /** Składowa czerwona wypełnienia. */
+    private final double fillRed;
+    /** Składowa zielona wypełnienia. */
+    private final double fillGreen;
+    /** Składowa niebieska wypełnienia. */
+    private final double fillBlue;
+    /** Nieprzezroczystość wypełnienia. */
+    private final double fillOpacity;
+    /** Składowa czerwona obramowania. */
+    private final double strokeRed;
+    /** Składowa zielona obramowania. */
+    private final double strokeGreen;
+    /** Składowa niebieska obramowania. */
+    private final double strokeBlue;
+    /** Nieprzezroczystość obramowania. */
+    private final double strokeOpacity;
+
+    /**
+     * Tworzy styl z podanym wypełnieniem i czarnym obramowaniem.
+     * @param fillRed Składowa czerwona wypełnienia.
+     * @param fillGreen Składowa zielona wypełnienia.
+     * @param fillBlue Składowa niebieska wypełnienia.
+     * @param fillOpacity Nieprzezroczystość wypełnienia.
+     */
+    public Style( double fillRed, double fillGreen, double fillBlue, double fillOpacity )
+    {
+        this( fillRed, fillGreen, fillBlue, fillOpacity, 0.0, 0.0, 0.0, 1.0 );
+    }
+
+    /**
+     * @param fillRed Składowa czerwona wypełnienia.
+     * @param fillGreen Składowa zielona wypełnienia.
+     * @param fillBlue Składowa niebieska wypełnienia.
+     * @param fillOpacity Nieprzezroczystość wypełnienia.
+     * @param strokeRed Składowa czerwona obramowania.
+     * @param strokeGreen Składowa zielona obramowania.
+     * @param strokeBlue Składowa niebieska obramowania.
+     * @param strokeOpacity Nieprzezroczystość obramowania.
+     */
+    public Style( double fillRed, double fillGreen, double fillBlue, double fillOpacity,
+                  double strokeRed, double strokeGreen, double strokeBlue, double strokeOpacity )
+    {
+        this.fillRed = fillRed;
+        this.fillGreen = fillGreen;
+        this.fillBlue = fillBlue;
+        this.fillOpacity = fillOpacity;
+        this.strokeRed = strokeRed;
+        this.strokeGreen = strokeGreen;
+        this.strokeBlue = strokeBlue;
+        this.strokeOpacity = strokeOpacity;
+    }
+
+    /**
+     * Zwraca styl z tym samym obramowaniem i nowym wypełnieniem.
+     * @param red Składowa czerwona wypełnienia.
+     * @param green Składowa zielona wypełnienia.
+     * @param blue Składowa niebieska wypełnienia.
+     * @param opacity Nieprzezroczystość wypełnienia.
+     * @return Nowy styl.
+     */
+    public Style withFill( double red, double green, double blue, double opacity )
+    {
+        return new Style( red, green, blue, opacity, strokeRed, strokeGreen, strokeBlue, strokeOpacity );
+    }
+
+    /** @return Składowa czerwona wypełnienia. */
+    public double getFillRed() { return fillRed; }
+
+    /** @return Składowa zielona wypełnienia. */
+    public double getFillGreen() { return fillGreen; }
+
+    /** @return Składowa niebieska wypełnienia. */
+    public double getFillBlue() { return fillBlue; }
+
+    /** @return Nieprzezroczystość wypełnienia. */
+    public double getFillOpacity() { return fillOpacity; }
+
+    /** @return Składowa czerwona obramowania. */
+    public double getStrokeRed() { return strokeRed; }
+
+    /** @return Składowa zielona obramowania. */
+    public double getStrokeGreen() { return strokeGreen; }
+
+    /** @return Składowa niebieska obramowania. */
+    public double getStrokeBlue() { return strokeBlue; }
+
+    /** @return Nieprzezroczystość obramowania. */
+    public double getStrokeOpacity() { return strokeOpacity; }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean equals( Object other )
+    {
+        if( this == other )
+            return true;
+        if( !( other instanceof Style ) )
+            return false;
+        Style style = (Style) other;
+        return Double.compare( fillRed, style.fillRed ) == 0 && Double.compare( fillGreen, style.fillGreen ) == 0
+                && Double.compare( fillBlue, style.fillBlue ) == 0 && Double.compare( fillOpacity, style.fillOpacity ) == 0
+                && Double.compare( strokeRed, style.strokeRed ) == 0 && Double.compare( strokeGreen, style.strokeGreen ) == 0
+                && Double.compare( strokeBlue, style.strokeBlue ) == 0 && Double.compare( strokeOpacity, style.strokeOpacity ) == 0;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int hashCode()
+    {
+        long hash = Double.doubleToLongBits( fillRed );
+        hash = hash * 31 + Double.doubleToLongBits( fillGreen );
+        hash = hash * 31 + Double.doubleToLongBits( fillBlue );
+        hash = hash * 31 + Double.doubleToLongBits( fillOpacity );
+        hash = hash * 31 + Double.doubleToLongBits( strokeRed );
+        hash = hash * 31 + Double.doubleToLongBits( strokeGreen );
+        hash = hash * 31 + Double.doubleToLongBits( strokeBlue );
+        hash = hash * 31 + Double.doubleToLongBits( strokeOpacity );
+        return (int) ( hash ^ ( hash >>> 32 ) );
+    }
+}
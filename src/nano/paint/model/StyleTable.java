@@ -0,0 +1,65 @@
+package nano.paint.model;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Tablica stylów współdzielonych przez figury.
+ * Identyczne style zapisywane są tylko raz, a figury przechowują jedynie
+ * numer stylu w tablicy. Numery nie zmieniają się - style są wyłącznie dopisywane,
+ * dopóki tablica nie zostanie wyczyszczona razem z modelem ({@link SceneModel#clear()}).
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Style
+ * @see SceneModel
+ */
+public class StyleTable
+{
+    /** Style w kolejności dodawania. */
+    private final ArrayList<Style> styles = new ArrayList<>();
+    /** Numery stylów w tablicy. */
+    private final HashMap<Style, Integer> indices = new HashMap<>();
+
+    /**
+     * Zwraca numer stylu, dopisując go do tablicy, jeśli jeszcze go w niej nie ma.
+     * @param style Styl.
+     * @return Numer stylu w tablicy.
+     */
+    public int intern( Style style )
+    {
+        Integer index = indices.get( style );
+        if( index == null )
+        {
+            index = styles.size();
+            styles.add( style );
+            indices.put( style, index );
+        }
+        return index;
+    }
+
+    /**
+     * @param index Numer stylu.
+     * @return Styl o podanym numerze.
+     */
+    public Style get( int index )
+    {
+        return styles.get( index );
+    }
+
+    /**
+     * @return Liczba stylów w tablicy.
+     */
+    public int size()
+    {
+        return styles.size();
+    }
+
+    /**
+     * Usuwa wszystkie style. Wywoływane tylko wtedy, gdy żadna figura nie odwołuje się już do tablicy.
+     */
+    public void clear()
+    {
+        styles.clear();
+        indices.clear();
+    }
+}
@@ -0,0 +1,414 @@
+package nano.paint.model;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+/**
+ * Plik z figurami pogrupowanymi w kwadratowe kafelki, z indeksem kafelków na początku pliku.
+ * Dzięki indeksowi można odczytać tylko te kafelki, które przecinają widoczny obszar,
+ * a pozostałe doczytać później - czas do pierwszego wyświetlenia nie zależy od rozmiaru pliku.
+ * <pre>
+ * t 256.0 2 18
+ * s 0.5 0.4 0.8 1.0 0.0 0.0 0.0 1.0
+ * i 0 0 10.0 12.0 80.0 95.0 1 0 28
+ * i 1 0 300.0 40.0 340.0 80.0 1 28 29
+ * 0 c#17 @0 40.0 50.0 30.0
+ * 1 c#18 @0 320.0 60.0 20.0
+ * </pre>
+ * Nagłówek {@code t} zawiera rozmiar kafelka, liczbę kafelków i największy identyfikator figury, linie {@code s} to style,
+ * a linie {@code i} to indeks: numer kafelka, prostokąt opisany na jego figurach, liczba figur
+ * oraz położenie i długość kafelka w bajtach (licząc od końca nagłówka).
+ * Każda linia figury zaczyna się od jej pozycji w kolejności rysowania, dalej jest zapis
+ * {@link ShapeCodec}. Figura trafia do kafelka, w którym leży środek prostokąta na niej opisanego.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeCodec
+ */
+public class TiledShapeFile implements Closeable
+{
+    /** Pierwszy znak nagłówka pliku. */
+    public static final char HEADER = 't';
+    /** Pierwszy znak linii indeksu. */
+    private static final char INDEX = 'i';
+    /** Domyślny rozmiar boku kafelka. */
+    public static final double DEFAULT_TILE_SIZE = 256;
+
+    /**
+     * Kafelek opisany w indeksie pliku.
+     */
+    public static class Tile
+    {
+        /** Lewa krawędź prostokąta opisanego na figurach kafelka. */
+        private final double minX;
+        /** Górna krawędź prostokąta opisanego na figurach kafelka. */
+        private final double minY;
+        /** Prawa krawędź prostokąta opisanego na figurach kafelka. */
+        private final double maxX;
+        /** Dolna krawędź prostokąta opisanego na figurach kafelka. */
+        private final double maxY;
+        /** Liczba figur w kafelku. */
+        private final int count;
+        /** Położenie kafelka w bajtach od końca nagłówka. */
+        private final long offset;
+        /** Długość kafelka w bajtach. */
+        private final int length;
+
+        /**
+         * @param minX Lewa krawędź prostokąta opisanego na figurach.
+         * @param minY Górna krawędź prostokąta opisanego na figurach.
+         * @param maxX Prawa krawędź prostokąta opisanego na figurach.
+         * @param maxY Dolna krawędź prostokąta opisanego na figurach.
+         * @param count Liczba figur.
+         * @param offset Położenie kafelka w bajtach od końca nagłówka.
+         * @param length Długość kafelka w bajtach.
+         */
+        private Tile( double minX, double minY, double maxX, double maxY, int count, long offset, int length )
+        {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+            this.count = count;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Sprawdza, czy figury kafelka mogą leżeć w podanym obszarze.
+         * @param minX Lewa krawędź obszaru.
+         * @param minY Górna krawędź obszaru.
+         * @param maxX Prawa krawędź obszaru.
+         * @param maxY Dolna krawędź obszaru.
+         * @return {@code true}, jeśli prostokąt opisany na figurach kafelka przecina obszar.
+         */
+        public boolean intersects( double minX, double minY, double maxX, double maxY )
+        {
+            return this.minX <= maxX && this.maxX >= minX && this.minY <= maxY && this.maxY >= minY;
+        }
+
+        /** @return Liczba figur w kafelku. */
+        public int getCount() { return count; }
+    }
+
+    /**
+     * Figura odczytana z kafelka razem z jej pozycją w kolejności rysowania.
+     */
+    public static class Entry
+    {
+        /** Pozycja figury w kolejności rysowania (większa = wyżej). */
+        private final double order;
+        /** Dane figury. */
+        private final ShapeRecord record;
+
+        /**
+         * @param order Pozycja figury w kolejności rysowania.
+         * @param record Dane figury.
+         */
+        private Entry( double order, ShapeRecord record )
+        {
+            this.order = order;
+            this.record = record;
+        }
+
+        /** @return Pozycja figury w kolejności rysowania (większa = wyżej). */
+        public double getOrder() { return order; }
+
+        /** @return Dane figury. */
+        public ShapeRecord getRecord() { return record; }
+    }
+
+    /** Otwarty plik. */
+    private final FileChannel channel;
+    /** Położenie końca nagłówka w pliku. */
+    private final long bodyStart;
+    /** Style zapisane w pliku. */
+    private final List<Style> styles;
+    /** Kafelki z indeksu. */
+    private final List<Tile> tiles;
+    /** Łączna liczba figur w pliku. */
+    private final int shapeCount;
+    /** Największy identyfikator figury w pliku. */
+    private final int maxId;
+
+    /**
+     * Otwiera plik i odczytuje jego nagłówek (style i indeks kafelków).
+     * @param channel Otwarty plik.
+     * @throws IOException gdy odczyt się nie powiódł.
+     * @throws IllegalArgumentException gdy plik nie ma poprawnego nagłówka.
+     */
+    private TiledShapeFile( FileChannel channel ) throws IOException
+    {
+        this.channel = channel;
+        HeaderReader reader = new HeaderReader( Channels.newInputStream( channel.position( 0 ) ) );
+        String[] header = reader.readLine().split( " " );
+        if( header.length != 4 || !header[ 0 ].equals( String.valueOf( HEADER ) ) )
+            throw new IllegalArgumentException( "Niepoprawny nagłówek pliku" );
+        int tileCount = Integer.parseInt( header[ 2 ] );
+        maxId = Integer.parseInt( header[ 3 ] );
+
+        styles = new ArrayList<>();
+        tiles = new ArrayList<>( tileCount );
+        int total = 0;
+        while( tiles.size() < tileCount )
+        {
+            String line = reader.readLine();
+            if( line == null )
+                throw new IllegalArgumentException( "Niekompletny indeks kafelków" );
+            if( ShapeCodec.isStyle( line ) )
+            {
+                styles.add( ShapeCodec.parseStyle( line ) );
+                continue;
+            }
+            String[] values = line.split( " " );
+            if( values.length != 10 || values[ 0 ].charAt( 0 ) != INDEX )
+                throw new IllegalArgumentException( "Niepoprawna linia indeksu: " + line );
+            Tile tile = new Tile( Double.parseDouble( values[ 3 ] ), Double.parseDouble( values[ 4 ] ),
+                    Double.parseDouble( values[ 5 ] ), Double.parseDouble( values[ 6 ] ),
+                    Integer.parseInt( values[ 7 ] ), Long.parseLong( values[ 8 ] ), Integer.parseInt( values[ 9 ] ) );
+            tiles.add( tile );
+            total += tile.count;
+        }
+        bodyStart = reader.getPosition();
+        shapeCount = total;
+    }
+
+    /**
+     * Otwiera plik z kafelkami.
+     * @param path Ścieżka do pliku.
+     * @return Otwarty plik z odczytanym indeksem.
+     * @throws IOException gdy odczyt się nie powiódł.
+     * @throws IllegalArgumentException gdy plik nie ma poprawnego nagłówka.
+     */
+    public static TiledShapeFile open( Path path ) throws IOException
+    {
+        FileChannel channel = FileChannel.open( path, StandardOpenOption.READ );
+        try
+        {
+            return new TiledShapeFile( channel );
+        }
+        catch( IOException | RuntimeException e )
+        {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** @return Style zapisane w pliku. */
+    public List<Style> getStyles()
+    {
+        return Collections.unmodifiableList( styles );
+    }
+
+    /** @return Kafelki z indeksu pliku. */
+    public List<Tile> getTiles()
+    {
+        return Collections.unmodifiableList( tiles );
+    }
+
+    /** @return Łączna liczba figur w pliku. */
+    public int getShapeCount()
+    {
+        return shapeCount;
+    }
+
+    /** @return Największy identyfikator figury w pliku. */
+    public int getMaxId()
+    {
+        return maxId;
+    }
+
+    /**
+     * Odczytuje figury z kafelka. Funkcję można wywoływać z wielu wątków jednocześnie.
+     * @param tile Kafelek z indeksu tego pliku.
+     * @return Figury z kafelka.
+     * @throws IOException gdy odczyt się nie powiódł.
+     */
+    public List<Entry> readTile( Tile tile ) throws IOException
+    {
+        ByteBuffer buffer = ByteBuffer.allocate( tile.length );
+        long position = bodyStart + tile.offset;
+        while( buffer.hasRemaining() )
+            if( channel.read( buffer, position + buffer.position() ) < 0 )
+                throw new IOException( "Nieoczekiwany koniec pliku" );
+
+        String text = new String( buffer.array(), StandardCharsets.UTF_8 );
+        List<Entry> entries = new ArrayList<>( tile.count );
+        int start = 0;
+        while( start < text.length() )
+        {
+            int end = text.indexOf( '\n', start );
+            if( end < 0 )
+                end = text.length();
+            int space = text.indexOf( ' ', start );
+            if( space < 0 || space > end )
+                throw new IllegalArgumentException( "Niepoprawna linia: " + text.substring( start, end ) );
+            double order = Double.parseDouble( text.substring( start, space ) );
+            entries.add( new Entry( order, ShapeCodec.parse( text.substring( space + 1, end ), styles ) ) );
+            start = end + 1;
+        }
+        return entries;
+    }
+
+    /**
+     * Zamyka plik.
+     * @throws IOException gdy zamknięcie się nie powiodło.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    /**
+     * Sprawdza, czy pierwsza linia pliku jest nagłówkiem pliku z kafelkami.
+     * @param firstLine Pierwsza linia pliku.
+     * @return {@code true}, jeśli plik jest plikiem z kafelkami.
+     */
+    public static boolean isTiled( String firstLine )
+    {
+        return firstLine != null && firstLine.length() > 1 && firstLine.charAt( 0 ) == HEADER && firstLine.charAt( 1 ) == ' ';
+    }
+
+    /**
+     * Zapisuje wszystkie figury z modelu w postaci kafelków.
+     * Linie figur muszą składać się wyłącznie ze znaków ASCII (tak jak linie z {@link ShapeCodec}),
+     * bo położenia kafelków liczone są z długości linii.
+     * @param model Model z figurami.
+     * @param styles Style zapisywane na początku pliku ({@link UsedStyles#getStyles()}).
+     * @param lineOf Zwraca linię tekstu figury o podanym identyfikatorze, z numerem stylu wśród {@code styles}.
+     * @param numbers Sposób zapisu liczb w liniach stylów.
+     * @param tileSize Rozmiar boku kafelka.
+     * @param writer Strumień, do którego zapisywany jest plik.
+     * @throws IOException gdy zapis się nie powiódł.
+     */
+    public static void write( SceneModel model, List<Style> styles, IntFunction<String> lineOf, NumberWriter numbers,
+                              double tileSize, BufferedWriter writer ) throws IOException
+    {
+        int[] order = model.getZOrder().idsInOrder();
+
+        // Figury w kafelkach, w kolejności rysowania; kafelki posortowane wierszami.
+        TreeMap<Long, List<Integer>> byTile = new TreeMap<>();
+        int maxId = 0;
+        for( int rank = 0; rank < order.length; rank++ )
+        {
+            int id = order[ rank ];
+            maxId = Math.max( maxId, id );
+            long tx = (long) Math.floor( ( model.getMinX( id ) + model.getMaxX( id ) ) / 2 / tileSize );
+            long ty = (long) Math.floor( ( model.getMinY( id ) + model.getMaxY( id ) ) / 2 / tileSize );
+            byTile.computeIfAbsent( ( ty << 32 ) | ( tx & 0xffffffffL ), k -> new ArrayList<>() ).add( rank );
+        }
+
+        writer.write( HEADER + " " + tileSize + " " + byTile.size() + " " + maxId );
+        writer.newLine();
+        for( Style style : styles )
+        {
+            writer.write( ShapeCodec.formatStyle( style, numbers ) );
+            writer.newLine();
+        }
+
+        long offset = 0;
+        for( Map.Entry<Long, List<Integer>> tile : byTile.entrySet() )
+        {
+            double minX = Double.POSITIVE_INFINITY;
+            double minY = Double.POSITIVE_INFINITY;
+            double maxX = Double.NEGATIVE_INFINITY;
+            double maxY = Double.NEGATIVE_INFINITY;
+            long length = 0;
+            for( int rank : tile.getValue() )
+            {
+                int id = order[ rank ];
+                minX = Math.min( minX, model.getMinX( id ) );
+                minY = Math.min( minY, model.getMinY( id ) );
+                maxX = Math.max( maxX, model.getMaxX( id ) );
+                maxY = Math.max( maxY, model.getMaxY( id ) );
+                length += String.valueOf( rank ).length() + 1 + lineOf.apply( id ).length() + 1;
+            }
+            long key = tile.getKey();
+            writer.write( INDEX + " " + (int) key + " " + (int) ( key >> 32 ) + " " + minX + " " + minY + " " + maxX
+                    + " " + maxY + " " + tile.getValue().size() + " " + offset + " " + length );
+            writer.newLine();
+            offset += length;
+        }
+
+        for( List<Integer> tile : byTile.values() )
+            for( int rank : tile )
+            {
+                writer.write( String.valueOf( rank ) );
+                writer.write( ' ' );
+                writer.write( lineOf.apply( order[ rank ] ) );
+                writer.write( '\n' );
+            }
+    }
+
+    /**
+     * Czyta linie nagłówka bajt po bajcie, licząc ich położenie w pliku.
+     */
+    private static class HeaderReader
+    {
+        /** Źródło danych. */
+        private final InputStream in;
+        /** Liczba odczytanych bajtów. */
+        private long position = 0;
+        /** Bufor odczytu. */
+        private final byte[] buffer = new byte[ 8192 ];
+        /** Liczba bajtów w buforze. */
+        private int length = 0;
+        /** Pozycja w buforze. */
+        private int index = 0;
+
+        /** @param in Źródło danych. */
+        private HeaderReader( InputStream in )
+        {
+            this.in = in;
+        }
+
+        /**
+         * @return Następna linia lub {@code null} na końcu pliku.
+         * @throws IOException gdy odczyt się nie powiódł.
+         */
+        private String readLine() throws IOException
+        {
+            StringBuilder line = new StringBuilder();
+            while( true )
+            {
+                if( index == length )
+                {
+                    length = in.read( buffer );
+                    index = 0;
+                    if( length <= 0 )
+                    {
+                        length = 0;
+                        return line.length() == 0 ? null : line.toString();
+                    }
+                }
+                byte b = buffer[ index++ ];
+                position++;
+                if( b == '\n' )
+                    break;
+                if( b != '\r' )
+                    line.append( (char) b );
+            }
+            return line.toString();
+        }
+
+        /** @return Położenie za ostatnią odczytaną linią. */
+        private long getPosition()
+        {
+            return position;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package nano.paint.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Style używane przez wybrane figury, ponumerowane od nowa w kolejności pierwszego użycia.
+ * {@link StyleTable} tylko rośnie (zostają w niej np. kolory sprzed zmiany koloru figury),
+ * więc przy zapisie do pliku lub do schowka zapisywane są wyłącznie style z tej klasy,
+ * a figury odwołują się do nich nowymi numerami.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see ShapeCodec
+ * @see StyleTable
+ */
+public class UsedStyles
+{
+    /** Model, w którym znajdują się figury. */
+    private final SceneModel model;
+    /** Nowy numer stylu według numeru w {@link SceneModel#getStyleTable()} (-1, gdy styl nie jest używany). */
+    private final int[] newIndexOf;
+    /** Używane style według nowych numerów. */
+    private final List<Style> styles = new ArrayList<>();
+
+    /**
+     * @param model Model, w którym znajdują się figury.
+     * @param ids Identyfikatory zapisywanych figur.
+     */
+    public UsedStyles( SceneModel model, int[] ids )
+    {
+        this.model = model;
+        StyleTable table = model.getStyleTable();
+        newIndexOf = new int[ table.size() ];
+        Arrays.fill( newIndexOf, -1 );
+        for( int id : ids )
+        {
+            int index = model.getStyleIndex( id );
+            if( newIndexOf[ index ] < 0 )
+            {
+                newIndexOf[ index ] = styles.size();
+                styles.add( table.get( index ) );
+            }
+        }
+    }
+
+    /**
+     * @return Używane style w kolejności nowych numerów.
+     */
+    public List<Style> getStyles()
+    {
+        return styles;
+    }
+
+    /**
+     * @param id Identyfikator jednej z figur podanych w konstruktorze.
+     * @return Nowy numer stylu figury.
+     */
+    public int indexOf( int id )
+    {
+        return newIndexOf[ model.getStyleIndex( id ) ];
+    }
+}
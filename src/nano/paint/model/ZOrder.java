@@ -0,0 +1,273 @@
+package nano.paint.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Kolejność rysowania figur (z-order).
+ * Każda figura ma klucz kolejności - figura o większym kluczu leży wyżej.
+ * Klucze trzymane są w drzewie, więc przesunięcie figury na wierzch, na spód
+ * lub o jedną pozycję wymaga O(log n) operacji i nie zmienia listy elementów planszy.
+ * Przy przesuwaniu o jedną pozycję nowy klucz jest średnią kluczy sąsiadów;
+ * gdy zabraknie precyzji, wszystkie klucze są numerowane od nowa.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see SceneModel
+ */
+public class ZOrder implements SceneModel.Listener
+{
+    /**
+     * Obserwator zmian kolejności figur.
+     */
+    public interface Listener
+    {
+        /**
+         * Wywoływane po zmianie klucza kolejności figury.
+         * @param id Identyfikator figury.
+         */
+        void orderChanged( int id );
+    }
+
+    /** Identyfikatory figur według kluczy kolejności. */
+    private final TreeMap<Double, Integer> byKey = new TreeMap<>();
+    /** Klucze kolejności według identyfikatorów figur. */
+    private double[] keyOfId = new double[ 64 ];
+    /** Obserwatorzy zmian kolejności. */
+    private final List<Listener> listeners = new ArrayList<>();
+    /** Klucze do tej wartości włącznie są zarezerwowane dla figur, które zostaną dopiero wczytane. */
+    private double reservedTop = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Tworzy kolejność dla figur z modelu (w kolejności ich dodania)
+     * i rejestruje się jako obserwator modelu.
+     * @param model Model z figurami.
+     */
+    public ZOrder( SceneModel model )
+    {
+        for( int i = 0; i < model.size(); i++ )
+            shapeAdded( model.idAt( i ) );
+        model.addListener( this );
+    }
+
+    /**
+     * Dodaje obserwatora zmian kolejności.
+     * @param listener Obserwator.
+     */
+    public void addListener( Listener listener )
+    {
+        listeners.add( listener );
+    }
+
+    /**
+     * @param id Identyfikator figury.
+     * @return Klucz kolejności figury (większy = wyżej).
+     */
+    public double keyOf( int id )
+    {
+        return keyOfId[ id ];
+    }
+
+    /**
+     * Zwraca identyfikatory wszystkich figur od najniższej do najwyższej.
+     * @return Tablica identyfikatorów.
+     */
+    public int[] idsInOrder()
+    {
+        int[] ids = new int[ byKey.size() ];
+        int i = 0;
+        for( Integer id : byKey.values() )
+            ids[ i++ ] = id;
+        return ids;
+    }
+
+    /**
+     * Przesuwa figurę na wierzch.
+     * @param id Identyfikator figury.
+     */
+    public void bringToFront( int id )
+    {
+        if( byKey.lastKey() != keyOfId[ id ] || reservedTop >= keyOfId[ id ] )
+            move( id, top() + 1 );
+    }
+
+    /**
+     * Ustawia figurze podany klucz kolejności (np. odczytany z pliku).
+     * Jeśli klucz jest zajęty, figura trafia tuż nad figurę, która go zajmuje.
+     * @param id Identyfikator figury.
+     * @param key Klucz kolejności.
+     */
+    public void place( int id, double key )
+    {
+        if( keyOfId[ id ] == key )
+            return;
+        Integer holder = byKey.get( key );
+        if( holder == null )
+        {
+            move( id, key );
+            return;
+        }
+        Double above = byKey.higherKey( key );
+        if( above != null && above == keyOfId[ id ] )
+            return;
+        double newKey = above == null ? key + 1 : key + ( above - key ) / 2;
+        if( newKey <= key || ( above != null && newKey >= above ) )
+        {
+            renumber();
+            placeAbove( id, holder );
+            return;
+        }
+        move( id, newKey );
+    }
+
+    /**
+     * Rezerwuje klucze kolejności dla figur, które zostaną wczytane później.
+     * Nowe figury oraz figury przesuwane na wierzch otrzymają klucz większy niż podany.
+     * @param maxKey Największy zarezerwowany klucz.
+     */
+    public void reserve( double maxKey )
+    {
+        reservedTop = maxKey;
+    }
+
+    /**
+     * Usuwa wszystkie klucze kolejności oraz rezerwację z {@link ZOrder#reserve(double)}.
+     * Wywoływane przy czyszczeniu modelu ({@link SceneModel#clear()}), więc pierwsza figura
+     * nowego rysunku znów dostaje klucz 0.
+     */
+    public void clear()
+    {
+        byKey.clear();
+        reservedTop = Double.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Przesuwa figurę na spód.
+     * @param id Identyfikator figury.
+     */
+    public void sendToBack( int id )
+    {
+        if( byKey.firstKey() != keyOfId[ id ] )
+            move( id, byKey.firstKey() - 1 );
+    }
+
+    /**
+     * Przesuwa figurę o jedną pozycję w górę.
+     * @param id Identyfikator figury.
+     */
+    public void bringForward( int id )
+    {
+        Double above = byKey.higherKey( keyOfId[ id ] );
+        if( above == null )
+            return;
+        Double next = byKey.higherKey( above );
+        if( next == null )
+        {
+            move( id, above + 1 );
+            return;
+        }
+        double key = above + ( next - above ) / 2;
+        if( key <= above || key >= next )
+        {
+            renumber();
+            bringForward( id );
+            return;
+        }
+        move( id, key );
+    }
+
+    /**
+     * Przesuwa figurę o jedną pozycję w dół.
+     * @param id Identyfikator figury.
+     */
+    public void sendBackward( int id )
+    {
+        Double below = byKey.lowerKey( keyOfId[ id ] );
+        if( below == null )
+            return;
+        Double previous = byKey.lowerKey( below );
+        if( previous == null )
+        {
+            move( id, below - 1 );
+            return;
+        }
+        double key = previous + ( below - previous ) / 2;
+        if( key <= previous || key >= below )
+        {
+            renumber();
+            sendBackward( id );
+            return;
+        }
+        move( id, key );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeAdded( int id )
+    {
+        if( id >= keyOfId.length )
+            keyOfId = Arrays.copyOf( keyOfId, Math.max( id + 1, keyOfId.length * 2 ) );
+        double key = byKey.isEmpty() && reservedTop == Double.NEGATIVE_INFINITY ? 0 : top() + 1;
+        keyOfId[ id ] = key;
+        byKey.put( key, id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void shapeRemoved( int id )
+    {
+        byKey.remove( keyOfId[ id ] );
+    }
+
+    /**
+     * @return Największy używany lub zarezerwowany klucz.
+     */
+    private double top()
+    {
+        return byKey.isEmpty() ? reservedTop : Math.max( byKey.lastKey(), reservedTop );
+    }
+
+    /**
+     * Umieszcza figurę bezpośrednio nad inną figurą.
+     * @param id Identyfikator przesuwanej figury.
+     * @param other Identyfikator figury, nad którą ma się znaleźć.
+     */
+    private void placeAbove( int id, int other )
+    {
+        double key = keyOfId[ other ];
+        Double above = byKey.higherKey( key );
+        move( id, above == null ? key + 1 : key + ( above - key ) / 2 );
+    }
+
+    /**
+     * Zmienia klucz kolejności figury.
+     * @param id Identyfikator figury.
+     * @param key Nowy klucz.
+     */
+    private void move( int id, double key )
+    {
+        byKey.remove( keyOfId[ id ] );
+        keyOfId[ id ] = key;
+        byKey.put( key, id );
+        for( Listener listener : listeners )
+            listener.orderChanged( id );
+    }
+
+    /**
+     * Nadaje wszystkim figurom kolejne klucze 0, 1, 2... zachowując ich kolejność.
+     */
+    private void renumber()
+    {
+        int[] ids = idsInOrder();
+        byKey.clear();
+        for( int i = 0; i < ids.length; i++ )
+        {
+            keyOfId[ ids[ i ] ] = i;
+            byKey.put( (double) i, ids[ i ] );
+        }
+        for( int id : ids )
+            for( Listener listener : listeners )
+                listener.orderChanged( id );
+    }
+}
@@ -2,10 +2,12 @@ package nano.paint.shapes;
 
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import nano.paint.editor.Editor;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.SceneModel;
+import nano.paint.model.Style;
 
 /**
  * Klasa reprezentująca figurę koła.
@@ -15,70 +17,70 @@ import nano.paint.editor.Editor;
  */
 public class MyCircle extends Circle implements MyShape
 {
-    /** Pozycja myszy X, gdzie rozpoczęto Drag na figurze */
-    private int mouseX;
-    /** Pozycja myszy Y, gdzie rozpoczęto Drag na figurze */
-    private int mouseY;
     /** minimalna długość promienia */
-    private final int MIN_SIZE = 20;
-    /** Czy figura jest aktualnie zaznaczona */
-    private boolean isFocused = false;
+    private static final int MIN_SIZE = 20;
     /** Zbiór elementów przypisanych do planszy */
     private ObservableList<Node> shapes;
-    /** Czy figura jest aktualnie ciągnięta */
-    private boolean isDragged = false;
+    /** Model, w którym przechowywane są dane figury */
+    private SceneModel model;
+    /** Identyfikator figury w modelu */
+    private int id;
 
     /**
      * Podstawowy konstruktor wykorzystywany przez {@link Editor}
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param model Model, do którego figura zostanie dodana.
      * @param x Pozycja początkowa X
      * @param y Pozycja początkowa Y
      */
-    public MyCircle( ObservableList<Node> shapes, int x, int y )
+    public MyCircle( ObservableList<Node> shapes, SceneModel model, int x, int y )
     {
-        setCenterX( x );
-        setCenterY( y );
-        setRadius( MIN_SIZE );
-        setFill( Color.DODGERBLUE );
-        initialize( shapes );
+        this.model = model;
+        Color color = Color.DODGERBLUE;
+        this.id = model.add( SceneModel.CIRCLE, color.getRed(), color.getGreen(), color.getBlue(),
+                color.getOpacity(), new double[]{ x, y, MIN_SIZE } );
+        refresh();
+        initialize( shapes, true );
     }
 
     /**
-     * Konstruktor odczytujący ustawienia z tekstu, które wygenerowała funkcja {@link MyCircle#saveToString()}
+     * Konstruktor tworzący widok koła, które znajduje się już w modelu.
      * @param shapes Kontener, do którego figura się dopisze.
-     * @param data Tekst z danymi figury wygenerowany przez {@link MyCircle#saveToString()}
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
      */
-    public MyCircle( ObservableList<Node> shapes, String data )
+    public MyCircle( ObservableList<Node> shapes, SceneModel model, int id )
     {
-        String[] values = data.split( " " );
-        if( values.length != 8 || !values[ 0 ].equals( "c" ) )
-            throw new RuntimeException();
-
-        Color color = new Color( Double.parseDouble( values[ 1 ] ), Double.parseDouble( values[ 2 ] ),
-                Double.parseDouble( values[ 3 ] ), Double.parseDouble( values[ 4 ] ) );
-
-        setFill( color );
-        setCenterX( Double.parseDouble( values[ 5 ] ) );
-        setCenterY( Double.parseDouble( values[ 6 ] ) );
-        setRadius( Double.parseDouble( values[ 7 ] ) );
+        this( shapes, model, id, true );
+    }
 
-        initialize( shapes );
+    /**
+     * Konstruktor tworzący widok koła, które znajduje się już w modelu, z możliwością odłożenia dodania go do planszy
+     * (używany przez {@link ShapeViews#create(ObservableList, SceneModel, int, boolean)}).
+     * @param shapes Kontener, do którego figura należy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @param attach Czy od razu dodać figurę do kontenera.
+     */
+    MyCircle( ObservableList<Node> shapes, SceneModel model, int id, boolean attach )
+    {
+        this.model = model;
+        this.id = id;
+        refresh();
+        initialize( shapes, attach );
     }
 
     /**
      * Ustawia wartości początkowe figury.
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param attach Czy dodać figurę do kontenera.
      */
-    private void initialize( ObservableList<Node> shapes )
+    private void initialize( ObservableList<Node> shapes, boolean attach )
     {
         this.shapes = shapes;
         setStrokeWidth( 1 );
-        setStroke( Color.BLACK );
-        this.shapes.add( this );
-
-        addEventHandler( MouseEvent.MOUSE_DRAGGED, this::move );
-        addEventHandler( MouseEvent.MOUSE_PRESSED, this::mousePressed );
-        addEventHandler( MouseEvent.MOUSE_RELEASED, e -> mouseReleased() );
+        if( attach )
+            this.shapes.add( this );
     }
 
     /**
@@ -90,14 +92,36 @@ public class MyCircle extends Circle implements MyShape
     {
         if( radius < MIN_SIZE )
             radius = MIN_SIZE;
-        setRadius( (int)radius );
+        model.setCoord( id, 2, (int)radius );
+        refresh();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getShapeId()
+    {
+        return id;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void refresh()
+    {
+        Style style = model.getStyle( id );
+        setFill( StylePaints.fill( style ) );
+        setStroke( StylePaints.stroke( style ) );
+        setCenterX( model.getCoord( id, 0 ) );
+        setCenterY( model.getCoord( id, 1 ) );
+        setRadius( model.getCoord( id, 2 ) );
+        setStrokeWidth( model.isFocused( id ) ? 3 : 1 );
+        setViewOrder( -model.getZOrder().keyOf( id ) );
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean getFocused()
     {
-        return isFocused;
+        return model.isFocused( id );
     }
 
     /** {@inheritDoc} */
@@ -108,26 +132,21 @@ public class MyCircle extends Circle implements MyShape
         {
             Editor.clearFocus();
             // Jeśli figura nie jest na wierzchu, to ma być.
-            if( shapes.indexOf( this ) != shapes.size()-1 )
-            {
-                shapes.remove( this );
-                shapes.add( this );
-            }
+            model.getZOrder().bringToFront( id );
+            setViewOrder( -model.getZOrder().keyOf( id ) );
         }
 
         setStrokeWidth( 3 );
 
-        isFocused = true;
+        model.setFocused( id, true );
     }
 
     /** {@inheritDoc} */
     @Override
     public void rescale( double scale )
     {
-        if( scale > 1.0 )
-            setRadius( getRadius()*scale );
-        else if( getRadius() * scale > MIN_SIZE )
-            setRadius( getRadius() * scale );
+        model.rescale( id, scale );
+        refresh();
     }
 
     /** {@inheritDoc} */
@@ -135,6 +154,7 @@ public class MyCircle extends Circle implements MyShape
     public void remove()
     {
         Editor.console.write( "Usunięto koło" );
+        model.remove( id );
         shapes.remove( this );
     }
 
@@ -142,7 +162,7 @@ public class MyCircle extends Circle implements MyShape
     @Override
     public void removeFocused()
     {
-        isFocused = false;
+        model.setFocused( id, false );
         setStrokeWidth( 1 );
     }
 
@@ -150,62 +170,14 @@ public class MyCircle extends Circle implements MyShape
     @Override
     public void changeColor( Color color )
     {
-        setFill( color );
+        model.setColor( id, color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity() );
+        setFill( StylePaints.fill( model.getStyle( id ) ) );
     }
 
     /** {@inheritDoc} */
     @Override
     public String saveToString()
     {
-        double r = ( (Color) getFill() ).getRed();
-        double g = ( (Color) getFill() ).getGreen();
-        double b = ( (Color) getFill() ).getBlue();
-        double opacity = ( (Color) getFill() ).getOpacity();
-        String saveString = "c " + r + " " + g + " " + b + " " + opacity + " "
-                + getCenterX() + " " + getCenterY() + " " + getRadius();
-        return saveString;
-    }
-
-    /**
-     * Przesuwa figurę w nową pozycję, na której znajduje się kursor.
-     * @param e Zdarzenie przesunięcia myszy.
-     */
-    private void move( MouseEvent e )
-    {
-        if( !isDragged )
-        {
-            Editor.console.write( "Przemieszczanie koła..." );
-            Editor.console.write( "Pozycja początkowa: " + (int) getCenterX() + ", " + (int) getCenterY() + ")" );
-        }
-        isDragged = true;
-
-        if( e.getX() >= 0 && e.getX() <= 500 )
-            setCenterX( e.getX() - mouseX );
-        if( e.getY() >= 0 && e.getY() <= 500 )
-            setCenterY( e.getY() - mouseY );
-    }
-
-    /**
-     * Obsługuje kliknięcie myszą w figurę
-     * @param e Zdarzenie kliknięcia myszą.
-     */
-    private void mousePressed( MouseEvent e )
-    {
-        mouseX = (int)(e.getX() - getCenterX());
-        mouseY = (int)(e.getY() - getCenterY());
-
-        makeFocused( e.isControlDown() );
-    }
-
-    /**
-     * Obsługuje pyszczenie przycisku po wcześniejszym przeciąganiu.
-     */
-    private void mouseReleased()
-    {
-        if( isDragged )
-        {
-            Editor.console.write( "Pozycja końcowa: (" + (int)getCenterX() + ", " + (int)getCenterY() + ")" );
-            isDragged = false;
-        }
+        return ShapeCodec.format( model, id );
     }
 }
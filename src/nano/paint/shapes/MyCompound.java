@@ -0,0 +1,254 @@
+package nano.paint.shapes;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.paint.Color;
+import javafx.scene.shape.ArcTo;
+import javafx.scene.shape.ClosePath;
+import javafx.scene.shape.LineTo;
+import javafx.scene.shape.MoveTo;
+import javafx.scene.shape.Path;
+import javafx.scene.shape.PathElement;
+import nano.paint.editor.Editor;
+import nano.paint.model.CompoundLayout;
+import nano.paint.model.SceneModel;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.Style;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Klasa reprezentująca figurę złożoną, powstałą przez spłaszczenie kilku figur.
+ * Kolejne części o tym samym kolorze rysowane są jedną ścieżką ({@link Path}), więc figura składa się
+ * z tylu węzłów, ile razy kolor zmienia się między kolejnymi częściami. Części innego koloru
+ * nie są łączone, bo zmieniłoby to, która część leży na wierzchu.
+ * Wszystkie kontury rysowane są w tym samym kierunku, aby nakładające się części tego samego koloru
+ * tworzyły wspólny obszar, a nie dziury.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see MyShape
+ * @see CompoundLayout
+ */
+public class MyCompound extends Group implements MyShape
+{
+    /** Zbiór elementów przypisanych do planszy */
+    private ObservableList<Node> shapes;
+    /** Model, w którym przechowywane są dane figury */
+    private SceneModel model;
+    /** Identyfikator figury w modelu */
+    private int id;
+
+    /**
+     * Konstruktor tworzący widok figury złożonej, która znajduje się już w modelu.
+     * @param shapes Kontener, do którego figura się dopisze.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     */
+    public MyCompound( ObservableList<Node> shapes, SceneModel model, int id )
+    {
+        this( shapes, model, id, true );
+    }
+
+    /**
+     * Konstruktor tworzący widok figury złożonej, która znajduje się już w modelu, z możliwością odłożenia dodania go do planszy
+     * (używany przez {@link ShapeViews#create(ObservableList, SceneModel, int, boolean)}).
+     * @param shapes Kontener, do którego figura należy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @param attach Czy od razu dodać figurę do kontenera.
+     */
+    MyCompound( ObservableList<Node> shapes, SceneModel model, int id, boolean attach )
+    {
+        this.model = model;
+        this.id = id;
+        this.shapes = shapes;
+        refresh();
+        if( attach )
+            shapes.add( this );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getShapeId()
+    {
+        return id;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void refresh()
+    {
+        Style base = model.getStyle( id );
+        double[] coords = model.getCoords( id );
+        double strokeWidth = model.isFocused( id ) ? 3 : 1;
+        List<Path> paths = new ArrayList<>();
+        Style runStyle = null;
+        List<PathElement> elements = null;
+        for( int part = 0; part < coords.length; part = CompoundLayout.next( coords, part ) )
+        {
+            Style style = CompoundLayout.style( coords, part, base );
+            if( !style.equals( runStyle ) )
+            {
+                if( elements != null )
+                    paths.add( createPath( elements, runStyle, base, strokeWidth ) );
+                runStyle = style;
+                elements = new ArrayList<>();
+            }
+            appendOutline( elements, coords, part );
+        }
+        if( elements != null )
+            paths.add( createPath( elements, runStyle, base, strokeWidth ) );
+        getChildren().setAll( paths );
+        setViewOrder( -model.getZOrder().keyOf( id ) );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public boolean getFocused()
+    {
+        return model.isFocused( id );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void makeFocused( boolean isCtrlDown )
+    {
+        if( !isCtrlDown )
+        {
+            Editor.clearFocus();
+            // Jeśli figura nie jest na wierzchu, to ma być.
+            model.getZOrder().bringToFront( id );
+            setViewOrder( -model.getZOrder().keyOf( id ) );
+        }
+
+        setStrokeWidth( 3 );
+
+        model.setFocused( id, true );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void rescale( double scale )
+    {
+        model.rescale( id, scale );
+        refresh();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void remove()
+    {
+        Editor.console.write( "Usunięto figurę złożoną" );
+        model.remove( id );
+        shapes.remove( this );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void removeFocused()
+    {
+        model.setFocused( id, false );
+        setStrokeWidth( 1 );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void changeColor( Color color )
+    {
+        model.setColor( id, color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity() );
+        refresh();
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public String saveToString()
+    {
+        return ShapeCodec.format( model, id );
+    }
+
+    /**
+     * Ustawia grubość obramowania wszystkich ścieżek figury.
+     * @param width Grubość obramowania.
+     */
+    private void setStrokeWidth( double width )
+    {
+        for( Node path : getChildren() )
+            ( (Path) path ).setStrokeWidth( width );
+    }
+
+    /**
+     * Tworzy ścieżkę z konturów kolejnych części o tym samym kolorze.
+     * @param elements Elementy ścieżki.
+     * @param style Styl części.
+     * @param base Styl całej figury (wyznacza kolor obramowania).
+     * @param strokeWidth Grubość obramowania.
+     * @return Nowa ścieżka.
+     */
+    private static Path createPath( List<PathElement> elements, Style style, Style base, double strokeWidth )
+    {
+        Path path = new Path( elements );
+        path.setFill( StylePaints.fill( style ) );
+        path.setStroke( StylePaints.stroke( base ) );
+        path.setStrokeWidth( strokeWidth );
+        return path;
+    }
+
+    /**
+     * Dopisuje kontur części figury do listy elementów ścieżki.
+     * Kontury prowadzone są zgodnie z ruchem wskazówek zegara (na ekranie).
+     * @param elements Elementy ścieżki.
+     * @param coords Współrzędne figury złożonej.
+     * @param part Indeks początku części.
+     */
+    private static void appendOutline( List<PathElement> elements, double[] coords, int part )
+    {
+        int start = CompoundLayout.valuesStart( coords, part );
+        switch( CompoundLayout.kind( coords, part ) )
+        {
+        case SceneModel.RECTANGLE:
+        {
+            double x = coords[ start ];
+            double y = coords[ start + 1 ];
+            double w = coords[ start + 2 ];
+            double h = coords[ start + 3 ];
+            elements.add( new MoveTo( x, y ) );
+            elements.add( new LineTo( x + w, y ) );
+            elements.add( new LineTo( x + w, y + h ) );
+            elements.add( new LineTo( x, y + h ) );
+            break;
+        }
+        case SceneModel.CIRCLE:
+        {
+            double x = coords[ start ];
+            double y = coords[ start + 1 ];
+            double r = coords[ start + 2 ];
+            elements.add( new MoveTo( x - r, y ) );
+            elements.add( new ArcTo( r, r, 0, x + r, y, false, true ) );
+            elements.add( new ArcTo( r, r, 0, x - r, y, false, true ) );
+            break;
+        }
+        default:
+        {
+            int n = CompoundLayout.valueCount( coords, part ) / 2;
+            double area = 0;
+            for( int i = 0; i < n; i++ )
+            {
+                int j = i + 1 == n ? 0 : i + 1;
+                area += coords[ start + 2 * i ] * coords[ start + 2 * j + 1 ] - coords[ start + 2 * j ] * coords[ start + 2 * i + 1 ];
+            }
+            // Przy osi Y skierowanej w dół dodatnie pole oznacza kierunek zgodny z ruchem wskazówek zegara.
+            for( int k = 0; k < n; k++ )
+            {
+                int i = area >= 0 ? k : n - 1 - k;
+                double x = coords[ start + 2 * i ];
+                double y = coords[ start + 2 * i + 1 ];
+                elements.add( k == 0 ? new MoveTo( x, y ) : new LineTo( x, y ) );
+            }
+            break;
+        }
+        }
+        elements.add( new ClosePath() );
+    }
+}
@@ -1,14 +1,18 @@
 package nano.paint.shapes;
 
 import javafx.collections.ObservableList;
-import javafx.geometry.Point2D;
 import javafx.scene.Node;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Polygon;
 import nano.paint.editor.Editor;
+import nano.paint.model.HitTester;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.SceneModel;
+import nano.paint.model.Style;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Klasa reprezentująca figurę wielokąta.
@@ -18,100 +22,136 @@ import java.util.ArrayList;
  */
 public class MyPolygon extends Polygon implements MyShape
 {
-    /** Czy figura jest aktualnie zaznaczona */
-    private boolean isFocused = false;
-
     /**
      * Minimalny rozmiar figury.
      * Liczony jako długość najdalej wysuniętych punktów w poziomie i pionie.
      */
-    private final int MIN_SIZE = 20;
+    private static final int MIN_SIZE = 20;
     /** Zbiór wierzchołków wielokąta */
     private ObservableList<Double> points;
     /** Zbiór elementów przypisanych do planszy */
     private ObservableList<Node> shapes;
-    /** Pozycja myszy X, gdzie rozpoczęto Drag na figurze */
-    private double mouseX;
-    /** Pozycja myszy Y, gdzie rozpoczęto Drag na figurze */
-    private double mouseY;
-    /** Pomocnicza lista przechowująca współrzędne wierzchołków
-     * przed rozpicząciem przeciągania figury. */
-    private ArrayList<Double> primaryPoints;
-    /** Czy figura jest aktualnie ciągnięta */
-    private boolean isDragged = false;
+    /** Model, w którym przechowywane są dane figury */
+    private SceneModel model;
+    /** Identyfikator figury w modelu */
+    private int id;
 
     /**
      * Podstawowy konstruktor wykorzystywany przez {@link Editor}
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param model Model, do którego figura zostanie dodana.
      * @param x Pozycja X pierwszego wierzchołka
      * @param y Pozycja Y pierwiszego wierzchołka
      */
-    public MyPolygon( ObservableList<Node> shapes, double x, double y )
+    public MyPolygon( ObservableList<Node> shapes, SceneModel model, double x, double y )
     {
-        initialize( shapes );
-
-        this.points.addAll( x, y, x, y );
-        setFill( Color.DODGERBLUE );
+        this.model = model;
+        Color color = Color.DODGERBLUE;
+        this.id = model.add( SceneModel.POLYGON, color.getRed(), color.getGreen(), color.getBlue(),
+                color.getOpacity(), new double[]{ x, y, x, y } );
+        initialize( shapes, true );
+        refresh();
     }
 
     /**
-     * Konstruktor odczytujący ustawienia z tekstu, które wygenerowała funkcja {@link MyPolygon#saveToString()}
+     * Konstruktor tworzący widok wielokąta, który znajduje się już w modelu.
      * @param shapes Kontener, do którego figura się dopisze.
-     * @param data Tekst z danymi figury wygenerowany przez {@link MyPolygon#saveToString()}
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
      */
-    public MyPolygon( ObservableList<Node> shapes, String data )
+    public MyPolygon( ObservableList<Node> shapes, SceneModel model, int id )
     {
-        initialize( shapes );
-
-        String[] values = data.split( " " );
-        if( values.length % 2 == 0 || !values[ 0 ].equals( "p" ) )
-            throw new RuntimeException();
-
-        Color color = new Color( Double.parseDouble( values[ 1 ] ), Double.parseDouble( values[ 2 ] ),
-                Double.parseDouble( values[ 3 ] ), Double.parseDouble( values[ 4 ] ) );
-
-        setFill( color );
-
-        for( int i = 5; i < values.length - 1; i += 2 )
-        {
-            addVertex( Double.parseDouble( values[i] ), Double.parseDouble( values[i+1] ) );
-        }
+        this( shapes, model, id, true );
+    }
 
-        if( points.size() < 6 )
-            throw new RuntimeException();
+    /**
+     * Konstruktor tworzący widok wielokąta, który znajduje się już w modelu, z możliwością odłożenia dodania go do planszy
+     * (używany przez {@link ShapeViews#create(ObservableList, SceneModel, int, boolean)}).
+     * @param shapes Kontener, do którego figura należy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @param attach Czy od razu dodać figurę do kontenera.
+     */
+    MyPolygon( ObservableList<Node> shapes, SceneModel model, int id, boolean attach )
+    {
+        this.model = model;
+        this.id = id;
+        initialize( shapes, attach );
+        refresh();
     }
 
     /**
      * Ustawia wartości początkowe figury.
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param attach Czy dodać figurę do kontenera.
      */
-    private void initialize( ObservableList<Node> shapes )
+    private void initialize( ObservableList<Node> shapes, boolean attach )
     {
         this.points = getPoints();
         this.shapes = shapes;
 
-        setStroke( Color.BLACK );
         setStrokeWidth( 1 );
 
-        shapes.add( this );
+        if( attach )
+            shapes.add( this );
+    }
+
+    /**
+     * Sprawdza, czy punkt leży wewnątrz wielokąta. Zamiast przeglądać wszystkie wierzchołki
+     * (jak robi to JavaFX) korzysta z {@link HitTester}, więc kliknięcie lub najechanie
+     * kursorem na wielokąt z bardzo wieloma wierzchołkami jest obsługiwane szybko.
+     * Obramowanie liczy się do wielokąta tylko wtedy, gdy punkt leży wewnątrz niego.
+     * Gdy do widoku dołączone jest przekształcenie (np. w trakcie skalowania kółkiem myszy),
+     * model może mieć już nową geometrię, a punkty widoku wciąż starą - wtedy punkt sprawdzany
+     * jest względem punktów widoku, tak jak robi to JavaFX.
+     * @param localX Współrzędna X punktu.
+     * @param localY Współrzędna Y punktu.
+     * @return {@code true}, jeśli punkt leży wewnątrz wielokąta.
+     */
+    @Override
+    public boolean contains( double localX, double localY )
+    {
+        if( model == null || !model.contains( id ) || !getTransforms().isEmpty() )
+            return super.contains( localX, localY );
+        // JavaFX wypełnia wielokąty według reguły niezerowego nawinięcia.
+        return model.getHitTester().contains( id, localX, localY, HitTester.Rule.NON_ZERO );
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public int getShapeId()
+    {
+        return id;
+    }
 
-        addEventHandler( MouseEvent.MOUSE_DRAGGED, this::move );
-        addEventHandler( MouseEvent.MOUSE_PRESSED, this::mousePressed );
-        addEventHandler( MouseEvent.MOUSE_RELEASED, e -> mouseReleased() );
+    /** {@inheritDoc} */
+    @Override
+    public void refresh()
+    {
+        Style style = model.getStyle( id );
+        setFill( StylePaints.fill( style ) );
+        setStroke( StylePaints.stroke( style ) );
+        double[] values = model.getCoords( id );
+        List<Double> newPoints = new ArrayList<>( values.length );
+        for( double value : values )
+            newPoints.add( value );
+        points.setAll( newPoints );
+        setStrokeWidth( model.isFocused( id ) ? 3 : 1 );
+        setViewOrder( -model.getZOrder().keyOf( id ) );
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean getFocused()
     {
-        return isFocused;
+        return model.isFocused( id );
     }
 
     /** {@inheritDoc} */
     @Override
     public void removeFocused()
     {
-        isFocused = false;
+        model.setFocused( id, false );
         setStrokeWidth( 1 );
     }
 
@@ -119,7 +159,8 @@ public class MyPolygon extends Polygon implements MyShape
     @Override
     public void changeColor( Color color )
     {
-        setFill( color );
+        model.setColor( id, color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity() );
+        setFill( StylePaints.fill( model.getStyle( id ) ) );
     }
 
     /** {@inheritDoc} */
@@ -127,6 +168,7 @@ public class MyPolygon extends Polygon implements MyShape
     public void remove()
     {
         Editor.console.write( "Usunięto " + (points.size() / 2) + "-kąt" );
+        model.remove( id );
         shapes.remove( this );
     }
 
@@ -134,17 +176,7 @@ public class MyPolygon extends Polygon implements MyShape
     @Override
     public String saveToString()
     {
-        double r = ( (Color) getFill() ).getRed();
-        double g = ( (Color) getFill() ).getGreen();
-        double b = ( (Color) getFill() ).getBlue();
-        double opacity = ( (Color) getFill() ).getOpacity();
-
-        String saveString = "p " + r + " " + g + " " + b + " " + opacity;
-
-        StringBuilder builder = new StringBuilder( saveString );
-        for( Double point : points )
-            builder.append(" ").append( point );
-        return builder.toString();
+        return ShapeCodec.format( model, id );
     }
 
     /** {@inheritDoc} */
@@ -155,43 +187,21 @@ public class MyPolygon extends Polygon implements MyShape
         {
             Editor.clearFocus();
             // Jeśli figura nie jest na wierzchu, to ma być.
-            if( shapes.indexOf( this ) != shapes.size()-1 )
-            {
-                shapes.remove( this );
-                shapes.add( this );
-            }
+            model.getZOrder().bringToFront( id );
+            setViewOrder( -model.getZOrder().keyOf( id ) );
         }
 
         setStrokeWidth( 3 );
 
-        isFocused = true;
+        model.setFocused( id, true );
     }
 
     /** {@inheritDoc} */
     @Override
     public void rescale( double scale )
     {
-        Point2D centerPoint = getCenterPoint();
-        if( scale > 1.0 )
-        {
-            for( int i = 0; i < points.size(); i += 2 )
-            {
-                double newX = centerPoint.getX() + scale * ( points.get( i ) - centerPoint.getX() );
-                double newY = centerPoint.getY() + scale * ( points.get( i + 1 ) - centerPoint.getY() );
-                points.set( i, newX );
-                points.set( i+1, newY );
-            }
-        }
-        else if( getMaxX() - getMinX() > MIN_SIZE && getMaxY() - getMinY() > MIN_SIZE )
-        {
-            for( int i = 0; i < points.size(); i += 2 )
-            {
-                double newX = centerPoint.getX() + scale * ( points.get( i ) - centerPoint.getX() );
-                double newY = centerPoint.getY() + scale * ( points.get( i + 1 ) - centerPoint.getY() );
-                points.set( i, newX );
-                points.set( i+1, newY );
-            }
-        }
+        model.rescale( id, scale );
+        refresh();
     }
 
     /**
@@ -201,8 +211,7 @@ public class MyPolygon extends Polygon implements MyShape
      */
     public void visualize( double x, double y )
     {
-        points.set( points.size() - 2, x );
-        points.set( points.size() - 1, y );
+        moveVertex( model.getCoordCount( id ) / 2 - 1, x, y );
     }
 
     /**
@@ -212,103 +221,81 @@ public class MyPolygon extends Polygon implements MyShape
      */
     public void addVertex( double x, double y )
     {
+        model.addVertex( id, x, y );
         points.add( x );
         points.add( y );
     }
 
     /**
-     * Zakończa dodawanie wierzchołków i sprawdza, czy figura spełnia określone warunki.
-     * Warunki konieczne do istnienia wielokąta:
-     * <ul>
-     *     <li>Musi się składać z co najmniej 3 punktów</li>
-     *     <li>Musi być większa, niż rozmiar określony w {@link MyPolygon#MIN_SIZE}</li>
-     * </ul>
-     * @throws RuntimeException rzuca wyjątek, gdy figura nie spełnia podanych wymagań.
+     * Przesuwa jeden wierzchołek wielokąta. W modelu i w widoku zmieniany jest tylko ten wierzchołek.
+     * @param vertex Numer wierzchołka.
+     * @param x Nowa współrzędna X wierzchołka.
+     * @param y Nowa współrzędna Y wierzchołka.
      */
-    public void endShape() throws RuntimeException
+    public void moveVertex( int vertex, double x, double y )
     {
-        points.remove( points.size() - 2 );
-        points.remove( points.size() - 1 );
-        if( getPoints().size() < 6 )
-        {
-            remove();
-            throw new RuntimeException( "Za mało wierzchołków, aby utworzyć figurę!" );
-        }
-        if( getMaxX() - getMinX() < MIN_SIZE || getMaxY() - getMinY() < MIN_SIZE )
-        {
-            remove();
-            throw new RuntimeException( "Figura jest zbyt mała!" );
-        }
+        model.moveVertex( id, vertex, x, y );
+        points.set( 2 * vertex, x );
+        points.set( 2 * vertex + 1, y );
     }
 
     /**
-     * Obsługuje kliknięcie myszą w figurę
-     * @param e Zdarzenie kliknięcia myszą.
+     * Wstawia wierzchołek do wielokąta.
+     * @param vertex Numer, który będzie miał nowy wierzchołek.
+     * @param x Współrzędna X wierzchołka.
+     * @param y Współrzędna Y wierzchołka.
      */
-    private void mousePressed( MouseEvent e )
+    public void insertVertex( int vertex, double x, double y )
     {
-        mouseX = e.getX();
-        mouseY = e.getY();
-        primaryPoints = new ArrayList<>( points );
-        makeFocused( e.isControlDown() );
+        model.insertVertex( id, vertex, x, y );
+        points.addAll( 2 * vertex, Arrays.asList( x, y ) );
     }
 
     /**
-     * Obsługuje pyszczenie przycisku po wcześniejszym przeciąganiu.
+     * Usuwa wierzchołek wielokąta.
+     * @param vertex Numer wierzchołka.
      */
-    private void mouseReleased()
+    public void removeVertex( int vertex )
     {
-        if( isDragged )
-        {
-            Editor.console.write( "Pozycja końcowa: (" + (int) getCenterPoint().getX() + ", " + (int) getCenterPoint().getY() +")" );
-            isDragged = false;
-        }
+        model.removeVertex( id, vertex );
+        points.remove( 2 * vertex, 2 * vertex + 2 );
     }
 
     /**
-     * Przesuwa figurę w nową pozycję, na której znajduje się kursor.
-     * @param e Zdarzenie przesunięcia myszy.
+     * Zakończa dodawanie wierzchołków i sprawdza, czy figura spełnia określone warunki.
+     * Warunki konieczne do istnienia wielokąta:
+     * <ul>
+     *     <li>Musi się składać z co najmniej 3 punktów</li>
+     *     <li>Musi być większa, niż rozmiar określony w {@link MyPolygon#MIN_SIZE}</li>
+     * </ul>
+     * @throws RuntimeException rzuca wyjątek, gdy figura nie spełnia podanych wymagań.
      */
-    private void move( MouseEvent e )
+    public void endShape() throws RuntimeException
     {
-        if( !isDragged )
-        {
-            Editor.console.write( "Przemieszczanie " + points.size()/2 + "-kąta..." );
-            Editor.console.write( "Pozycja początkowa: (" + (int) getCenterPoint().getX() + ", " + (int) getCenterPoint().getY() + ")" );
-        }
-        isDragged = true;
-
-        if( e.getX() >= 0 && e.getX() <= 500 )
-        {
-            for( int i = 0; i < points.size(); i += 2)
-            {
-                double newX = e.getX() + primaryPoints.get( i ) - mouseX;
-                points.set( i, newX );
-            }
-        }
-        if( e.getY() >= 0 && e.getY() <= 500 )
-        {
-            for( int i = 1; i < points.size(); i += 2 )
-            {
-                double newY = e.getY() + primaryPoints.get( i ) - mouseY;
-                points.set( i, newY );
-            }
-        }
+        model.removeLastVertex( id );
+        points.remove( points.size() - 2 );
+        points.remove( points.size() - 1 );
+        validate();
     }
 
     /**
-     * Zwraca punkt, będący środkiem prostokąta opisanego na
-     * skrajnych punktach wielokąta.
-     * @return Punkt środkowy figury.
+     * Sprawdza, czy figura spełnia warunki konieczne do istnienia wielokąta
+     * (te same, co w {@link MyPolygon#endShape()}), i usuwa ją, jeśli nie spełnia.
+     * W przeciwieństwie do {@link MyPolygon#endShape()} nie usuwa ostatniego wierzchołka.
+     * @throws RuntimeException rzuca wyjątek, gdy figura nie spełnia wymagań.
      */
-    private Point2D getCenterPoint()
+    public void validate() throws RuntimeException
     {
-        double minX = getMinX();
-        double maxX = getMaxX();
-        double minY = getMinY();
-        double maxY = getMaxY();
-
-        return new Point2D( minX + ( maxX - minX ) / 2, minY + ( maxY - minY ) / 2 );
+        if( getPoints().size() < 6 )
+        {
+            remove();
+            throw new RuntimeException( "Za mało wierzchołków, aby utworzyć figurę!" );
+        }
+        if( getMaxX() - getMinX() < MIN_SIZE || getMaxY() - getMinY() < MIN_SIZE )
+        {
+            remove();
+            throw new RuntimeException( "Figura jest zbyt mała!" );
+        }
     }
 
     /**
@@ -317,11 +304,7 @@ public class MyPolygon extends Polygon implements MyShape
      */
     private double getMinX()
     {
-        double minX = Double.POSITIVE_INFINITY;
-        for( int i = 0; i < points.size(); i += 2 )
-            if( points.get( i ) < minX )
-                minX = points.get( i );
-        return minX;
+        return model.getMinX( id );
     }
     /**
      * Zwraca największą współrzędną X, która występuje wśród wierzchołków.
@@ -329,11 +312,7 @@ public class MyPolygon extends Polygon implements MyShape
      */
     private double getMaxX()
     {
-        double maxX = Double.NEGATIVE_INFINITY;
-        for( int i = 0; i < points.size(); i += 2 )
-            if( points.get( i ) > maxX )
-                maxX = points.get( i );
-        return maxX;
+        return model.getMaxX( id );
     }
     /**
      * Zwraca najmniejszą współrzędną Y, która występuje wśród wierzchołków.
@@ -341,11 +320,7 @@ public class MyPolygon extends Polygon implements MyShape
      */
     private double getMinY()
     {
-        double minY = Double.POSITIVE_INFINITY;
-        for( int i = 1; i < points.size(); i += 2 )
-            if( points.get( i ) < minY )
-                minY = points.get( i );
-        return minY;
+        return model.getMinY( id );
     }
     /**
      * Zwraca największą współrzędną Y która występuje wśród wierzchołków.
@@ -353,10 +328,6 @@ public class MyPolygon extends Polygon implements MyShape
      */
     private double getMaxY()
     {
-        double maxY = Double.NEGATIVE_INFINITY;
-        for( int i = 1; i < points.size(); i += 2 )
-            if( points.get( i ) > maxY )
-                maxY = points.get( i );
-        return maxY;
+        return model.getMaxY( id );
     }
 }
@@ -2,10 +2,12 @@ package nano.paint.shapes;
 
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
-import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Rectangle;
 import nano.paint.editor.Editor;
+import nano.paint.model.ShapeCodec;
+import nano.paint.model.SceneModel;
+import nano.paint.model.Style;
 
 /**
  * Klasa reprezentująca figurę prostokąta (w szczególnym przypadku kwadratu).
@@ -24,94 +26,118 @@ public class MyRectangle extends Rectangle implements MyShape
     /** Współrzędna y końca kwadratu */
     private int y2;
 
-    /** Czy figura jest aktualnie zaznaczona */
-    private boolean isFocused = false;
-
-    /** Pozycja myszy X, gdzie rozpoczęto Drag na figurze */
-    private int mouseX;
-    /** Pozycja myszy Y, gdzie rozpoczęto Drag na figurze */
-    private int mouseY;
 
     /** Minimalny rozmiar boku prostokąta */
-    private final int MIN_SIZE = 20;
+    private static final int MIN_SIZE = 20;
     /** Zbiór elementów przypisanych do planszy */
     private ObservableList<Node> shapes;
-    /** Czy figura jest aktualnie ciągnięta */
-    private boolean isDragged = false;
+    /** Model, w którym przechowywane są dane figury */
+    private SceneModel model;
+    /** Identyfikator figury w modelu */
+    private int id;
 
     /**
      * Podstawowy konstruktor wykorzystywany przez {@link Editor}
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param model Model, do którego figura zostanie dodana.
      * @param x1 Pozycja początkowa X
      * @param y1 Pozycja początkowa Y
      */
-    public MyRectangle( ObservableList<Node> shapes, int x1, int y1 )
+    public MyRectangle( ObservableList<Node> shapes, SceneModel model, int x1, int y1 )
     {
+        this.model = model;
+        Color color = Color.DODGERBLUE;
+        this.id = model.add( SceneModel.RECTANGLE, color.getRed(), color.getGreen(), color.getBlue(),
+                color.getOpacity(), new double[]{ x1, y1, MIN_SIZE, MIN_SIZE } );
         setBegin( x1, y1 );
         setEnd( x1, y1, false );
-        setFill( Color.DODGERBLUE );
 
-        initialize( shapes );
+        initialize( shapes, true );
     }
 
     /**
-     * Konstruktor odczytujący ustawienia z tekstu, które wygenerowała funkcja {@link MyRectangle#saveToString()}
+     * Konstruktor tworzący widok prostokąta, który znajduje się już w modelu.
      * @param shapes Kontener, do którego figura się dopisze.
-     * @param data Tekst z danymi figury wygenerowany przez {@link MyRectangle#saveToString()}
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
      */
-    public MyRectangle( ObservableList<Node> shapes, String data )
+    public MyRectangle( ObservableList<Node> shapes, SceneModel model, int id )
     {
-        String[] values = data.split( " " );
-        if( values.length != 9 || !values[ 0 ].equals( "r" ) )
-            throw new RuntimeException();
-
-        Color color = new Color( Double.parseDouble( values[ 1 ] ), Double.parseDouble( values[ 2 ] ),
-                Double.parseDouble( values[ 3 ] ), Double.parseDouble( values[ 4 ] ) );
+        this( shapes, model, id, true );
+    }
 
-        setFill( color );
-        setX( Double.parseDouble( values[ 5 ] ) );
-        setY( Double.parseDouble( values[ 6 ] ) );
-        setWidth( Double.parseDouble( values[ 7 ] ) );
-        setHeight( Double.parseDouble( values[ 8 ] ) );
+    /**
+     * Konstruktor tworzący widok prostokąta, który znajduje się już w modelu, z możliwością odłożenia dodania go do planszy
+     * (używany przez {@link ShapeViews#create(ObservableList, SceneModel, int, boolean)}).
+     * @param shapes Kontener, do którego figura należy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @param attach Czy od razu dodać figurę do kontenera.
+     */
+    MyRectangle( ObservableList<Node> shapes, SceneModel model, int id, boolean attach )
+    {
+        this.model = model;
+        this.id = id;
+        refresh();
 
-        initialize( shapes );
+        initialize( shapes, attach );
     }
 
     /**
      * Ustawia wartości początkowe figury.
      * @param shapes Kontener, do którego figura się dopisze.
+     * @param attach Czy dodać figurę do kontenera.
      */
-    private void initialize( ObservableList<Node> shapes )
+    private void initialize( ObservableList<Node> shapes, boolean attach )
     {
         this.shapes = shapes;
         setStrokeWidth( 1 );
-        setStroke( Color.BLACK );
-        shapes.add( this );
+        if( attach )
+            shapes.add( this );
+    }
 
-        addEventHandler( MouseEvent.MOUSE_DRAGGED, this::move );
-        addEventHandler( MouseEvent.MOUSE_PRESSED, this::mousePressed );
-        addEventHandler( MouseEvent.MOUSE_RELEASED, e -> mouseReleased() );
+    /** {@inheritDoc} */
+    @Override
+    public int getShapeId()
+    {
+        return id;
+    }
+
+    /** {@inheritDoc} */
+    @Override
+    public void refresh()
+    {
+        Style style = model.getStyle( id );
+        setFill( StylePaints.fill( style ) );
+        setStroke( StylePaints.stroke( style ) );
+        super.setX( model.getCoord( id, 0 ) );
+        super.setY( model.getCoord( id, 1 ) );
+        super.setWidth( model.getCoord( id, 2 ) );
+        super.setHeight( model.getCoord( id, 3 ) );
+        setStrokeWidth( model.isFocused( id ) ? 3 : 1 );
+        setViewOrder( -model.getZOrder().keyOf( id ) );
     }
 
     /** {@inheritDoc} */
     @Override
     public void changeColor( Color color )
     {
-        setFill( color );
+        model.setColor( id, color.getRed(), color.getGreen(), color.getBlue(), color.getOpacity() );
+        setFill( StylePaints.fill( model.getStyle( id ) ) );
     }
 
     /** {@inheritDoc} */
     @Override
     public boolean getFocused()
     {
-        return isFocused;
+        return model.isFocused( id );
     }
 
     /** {@inheritDoc} */
     @Override
     public void removeFocused()
     {
-        isFocused = false;
+        model.setFocused( id, false );
         setStrokeWidth( 1 );
     }
 
@@ -123,32 +149,21 @@ public class MyRectangle extends Rectangle implements MyShape
         {
             Editor.clearFocus();
             // Jeśli figura nie jest na wierzchu, to ma być.
-            if( shapes.indexOf( this ) != shapes.size()-1 )
-            {
-                shapes.remove( this );
-                shapes.add( this );
-            }
+            model.getZOrder().bringToFront( id );
+            setViewOrder( -model.getZOrder().keyOf( id ) );
         }
 
         setStrokeWidth( 3 );
 
-        isFocused = true;
+        model.setFocused( id, true );
     }
 
     /** {@inheritDoc} */
     @Override
     public void rescale( double scale )
     {
-        if( scale > 1.0 )
-        {
-            setWidth( getWidth()*scale );
-            setHeight( getHeight()*scale );
-        }
-        else if( getWidth() * scale > MIN_SIZE && getHeight() * scale > MIN_SIZE )
-        {
-            setWidth( getWidth()*scale );
-            setHeight( getHeight()*scale );
-        }
+        model.rescale( id, scale );
+        refresh();
     }
 
     /** {@inheritDoc} */
@@ -156,6 +171,7 @@ public class MyRectangle extends Rectangle implements MyShape
     public void remove()
     {
         Editor.console.write( "Usunięto prostokąt" );
+        model.remove( id );
         shapes.remove( this );
     }
 
@@ -163,13 +179,7 @@ public class MyRectangle extends Rectangle implements MyShape
     @Override
     public String saveToString()
     {
-        double r = ( (Color) getFill() ).getRed();
-        double g = ( (Color) getFill() ).getGreen();
-        double b = ( (Color) getFill() ).getBlue();
-        double opacity = ( (Color) getFill() ).getOpacity();
-        String saveString = "r " + r + " " + g + " " + b + " " + opacity + " "
-                + getX() + " " + getY() + " " + getWidth() + " " + getHeight();
-        return saveString;
+        return ShapeCodec.format( model, id );
     }
 
     /**
@@ -272,51 +282,7 @@ public class MyRectangle extends Rectangle implements MyShape
                 y = y2;
         }
 
-        super.setX( x );
-        super.setY( y );
-        super.setWidth( width );
-        super.setHeight( height );
-    }
-
-    /**
-     * Przesuwa figurę w nową pozycję, na której znajduje się kursor.
-     * @param e Zdarzenie przesunięcia myszy.
-     */
-    private void move( MouseEvent e )
-    {
-        if( !isDragged )
-        {
-            Editor.console.write( "Przemieszczanie prostokąta..." );
-            Editor.console.write( "Pozycja początkowa: " + (int) getX() + ", " + (int) getY() + ")" );
-        }
-        isDragged = true;
-        if( e.getX() >= 0 && e.getX() <= 500 )
-            setX( e.getX() - mouseX );
-        if( e.getY() >= 0 && e.getY() <= 500 )
-            setY( e.getY() - mouseY );
-    }
-
-    /**
-     * Obsługuje kliknięcie myszą w figurę
-     * @param e Zdarzenie kliknięcia myszą.
-     */
-    private void mousePressed( MouseEvent e )
-    {
-        mouseX = (int)(e.getX() - getX());
-        mouseY = (int)(e.getY() - getY());
-
-        makeFocused( e.isControlDown() );
-    }
-
-    /**
-     * Obsługuje pyszczenie przycisku po wcześniejszym przeciąganiu.
-     */
-    private void mouseReleased()
-    {
-        if( isDragged )
-        {
-            Editor.console.write( "Pozycja końcowa: (" + (int)getX() + ", " + (int)getY() + ")" );
-            isDragged = false;
-        }
+        model.setCoords( id, new double[]{ x, y, width, height } );
+        refresh();
     }
 }
@@ -1,19 +1,73 @@
 package nano.paint.shapes;
 
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
 import javafx.scene.paint.Color;
 import nano.paint.editor.Editor;
+import nano.paint.model.SceneModel;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Podstawowy interfejs, z którego dziedziczą wszystkie figury
- * obsługiwane przez {@link Editor}
+ * obsługiwane przez {@link Editor}.
+ * Figury są widokami danych przechowywanych w {@link SceneModel}.
  * @author Sebastian Fojcik
  * @version 1.0
  * @see MyRectangle
  * @see MyCircle
  * @see MyPolygon
+ * @see MyCompound
  */
 public interface MyShape
 {
+    /**
+     * Tworzy widok figury, która znajduje się już w modelu, i dodaje go do planszy.
+     * @param shapes Kontener, do którego figura się dopisze.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @return Nowy widok figury.
+     */
+    static MyShape createView( ObservableList<Node> shapes, SceneModel model, int id )
+    {
+        return ShapeViews.create( shapes, model, id, true );
+    }
+
+    /**
+     * Tworzy widoki wielu figur, które znajdują się już w modelu, i dodaje je do planszy naraz.
+     * W przeciwieństwie do {@link MyShape#createView(ObservableList, SceneModel, int)} wywoływanego
+     * dla każdej figury osobno, lista elementów planszy zmienia się tylko raz.
+     * @param shapes Kontener, do którego figury się dopiszą.
+     * @param model Model, w którym znajdują się figury.
+     * @param ids Identyfikatory figur w modelu.
+     * @return Nowe widoki figur, w kolejności identyfikatorów.
+     */
+    static List<MyShape> createViews( ObservableList<Node> shapes, SceneModel model, int[] ids )
+    {
+        List<MyShape> views = new ArrayList<>( ids.length );
+        List<Node> nodes = new ArrayList<>( ids.length );
+        for( int id : ids )
+        {
+            MyShape view = ShapeViews.create( shapes, model, id, false );
+            views.add( view );
+            nodes.add( (Node) view );
+        }
+        shapes.addAll( nodes );
+        return views;
+    }
+
+    /**
+     * Zwraca stały identyfikator figury w {@link SceneModel}.
+     * @return Identyfikator figury.
+     */
+    int getShapeId();
+
+    /**
+     * Synchronizuje węzeł JavaFX z danymi figury zapisanymi w modelu.
+     */
+    void refresh();
+
     /**
      * Sprawdza, czy figura jest aktualnie zaznaczona
      * @return Jeśli figura jest zaznaczona - {@code true}, w przeciwnym przypadku {@code false}.
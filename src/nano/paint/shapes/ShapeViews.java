@@ -0,0 +1,47 @@
+package nano.paint.shapes;
+
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import nano.paint.model.SceneModel;
+
+/**
+ * Tworzenie widoku figury odpowiedniego dla jej rodzaju w {@link SceneModel}.
+ * Jedyne miejsce, w którym rodzaj figury zamieniany jest na klasę widoku -
+ * korzystają z niego {@link MyShape#createView(ObservableList, SceneModel, int)}
+ * i {@link MyShape#createViews(ObservableList, SceneModel, int[])}.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see MyShape
+ */
+final class ShapeViews
+{
+    /** Klasa zawiera wyłącznie metody statyczne. */
+    private ShapeViews()
+    {
+    }
+
+    /**
+     * Tworzy widok figury, która znajduje się już w modelu.
+     * @param shapes Kontener, do którego figura należy.
+     * @param model Model, w którym znajduje się figura.
+     * @param id Identyfikator figury w modelu.
+     * @param attach Czy od razu dodać figurę do kontenera.
+     * @return Nowy widok figury.
+     */
+    static MyShape create( ObservableList<Node> shapes, SceneModel model, int id, boolean attach )
+    {
+        switch( model.getKind( id ) )
+        {
+        case SceneModel.RECTANGLE:
+            return new MyRectangle( shapes, model, id, attach );
+        case SceneModel.CIRCLE:
+            return new MyCircle( shapes, model, id, attach );
+        case SceneModel.POLYGON:
+            return new MyPolygon( shapes, model, id, attach );
+        case SceneModel.COMPOUND:
+            return new MyCompound( shapes, model, id, attach );
+        default:
+            throw new IllegalArgumentException( "Nieznany rodzaj figury" );
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package nano.paint.shapes;
+
+import javafx.scene.paint.Color;
+import nano.paint.model.Style;
+
+import java.util.HashMap;
+
+/**
+ * Pamięć podręczna kolorów JavaFX tworzonych ze stylów figur.
+ * Figury o tym samym kolorze wypełnienia współdzielą jeden obiekt {@link Color},
+ * a figury o tym samym kolorze obramowania - drugi, niezależnie od reszty stylu.
+ * Pamięć czyszczona jest razem z tablicą stylów modelu ({@link StylePaints#clear()}).
+ * Klasa przeznaczona jest do używania wyłącznie w wątku JavaFX.
+ * @author Sebastian Fojcik
+ * @version 1.0
+ * @see Style
+ */
+public final class StylePaints
+{
+    /** Kolory wypełnienia według ich składowych. */
+    private static final HashMap<Rgba, Color> fills = new HashMap<>();
+    /** Kolory obramowania według ich składowych. */
+    private static final HashMap<Rgba, Color> strokes = new HashMap<>();
+
+    /** Klasa zawiera wyłącznie metody statyczne. */
+    private StylePaints()
+    {
+    }
+
+    /**
+     * @param style Styl figury.
+     * @return Współdzielony kolor wypełnienia dla podanego stylu.
+     */
+    public static Color fill( Style style )
+    {
+        return fills.computeIfAbsent( new Rgba( style.getFillRed(), style.getFillGreen(),
+                style.getFillBlue(), style.getFillOpacity() ), Rgba::toColor );
+    }
+
+    /**
+     * @param style Styl figury.
+     * @return Współdzielony kolor obramowania dla podanego stylu.
+     */
+    public static Color stroke( Style style )
+    {
+        return strokes.computeIfAbsent( new Rgba( style.getStrokeRed(), style.getStrokeGreen(),
+                style.getStrokeBlue(), style.getStrokeOpacity() ), Rgba::toColor );
+    }
+
+    /**
+     * Zapomina wszystkie kolory, np. po wyczyszczeniu planszy
+     * (razem z {@link nano.paint.model.SceneModel#clear()}, która czyści tablicę stylów).
+     * Widoki, które już używają kolorów, nie są zmieniane.
+     */
+    public static void clear()
+    {
+        fills.clear();
+        strokes.clear();
+    }
+
+    /**
+     * Składowe koloru - klucz pamięci podręcznej.
+     */
+    private static final class Rgba
+    {
+        /** Składowa czerwona. */
+        private final double red;
+        /** Składowa zielona. */
+        private final double green;
+        /** Składowa niebieska. */
+        private final double blue;
+        /** Nieprzezroczystość. */
+        private final double opacity;
+
+        /**
+         * @param red Składowa czerwona.
+         * @param green Składowa zielona.
+         * @param blue Składowa niebieska.
+         * @param opacity Nieprzezroczystość.
+         */
+        Rgba( double red, double green, double blue, double opacity )
+        {
+            this.red = red;
+            this.green = green;
+            this.blue = blue;
+            this.opacity = opacity;
+        }
+
+        /**
+         * @return Nowy kolor JavaFX o tych składowych.
+         */
+        Color toColor()
+        {
+            return new Color( red, green, blue, opacity );
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public boolean equals( Object other )
+        {
+            if( this == other )
+                return true;
+            if( !( other instanceof Rgba ) )
+                return false;
+            Rgba rgba = (Rgba) other;
+            return Double.compare( red, rgba.red ) == 0 && Double.compare( green, rgba.green ) == 0
+                    && Double.compare( blue, rgba.blue ) == 0 && Double.compare( opacity, rgba.opacity ) == 0;
+        }
+
+        /** {@inheritDoc} */
+        @Override
+        public int hashCode()
+        {
+            int hash = Double.hashCode( red );
+            hash = 31 * hash + Double.hashCode( green );
+            hash = 31 * hash + Double.hashCode( blue );
+            return 31 * hash + Double.hashCode( opacity );
+        }
+    }
+}